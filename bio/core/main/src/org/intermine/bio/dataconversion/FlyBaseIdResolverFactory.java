@@ -84,7 +84,7 @@ public class FlyBaseIdResolverFactory extends IdResolverFactory
                 LOG.info("Creating id resolver from database and caching id resolver to file: "
                         + idResolverCachedFileName);
                 createFromDb(clsCol, DatabaseFactory.getDatabase(propName));
-                resolver.writeToFile(new File(idResolverCachedFileName));
+                writeToCache();
             }
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -100,9 +100,16 @@ public class FlyBaseIdResolverFactory extends IdResolverFactory
     protected boolean restoreFromFile(Set<String> clsCol) {
         try {
             File f = new File(idResolverCachedFileName);
-            if (f.exists()) {
-                LOG.info("Restoring id resolver from cache file: " + idResolverCachedFileName);
-                resolver.populateFromFile(f);
+            File snapshotFile = getSnapshotFile();
+            if (snapshotFile.exists() || f.exists()) {
+                if (snapshotFile.exists()) {
+                    LOG.info("Restoring id resolver from snapshot file: " + snapshotFile);
+                    resolver.attachSnapshot(snapshotFile);
+                } else {
+                    LOG.info("Restoring id resolver from cache file: "
+                            + idResolverCachedFileName);
+                    resolver.populateFromFile(f);
+                }
 
                 // if file doesn't contain classes, revisit db
                 Set<String> existedClsSet = resolver.getClassNames();
@@ -114,7 +121,7 @@ public class FlyBaseIdResolverFactory extends IdResolverFactory
                     LOG.info("Query from database for: " + existedClsSet
                             + " and caching id resolver to file.");
                     createFromDb(existedClsSet, DatabaseFactory.getDatabase(propName));
-                    resolver.writeToFile(f);
+                    writeToCache();
                 }
                 return true;
             }
@@ -57,6 +57,7 @@ public class GFF3Converter extends DataConverter
     private GFF3RecordHandler handler;
     private GFF3SeqHandler sequenceHandler;
     private boolean dontCreateLocations;
+    private int parserThreads = 1;
     private final Map<String, Item> dataSets = new HashMap<String, Item>();
     private final Map<String, Item> dataSources = new HashMap<String, Item>();
 
@@ -196,7 +197,8 @@ public class GFF3Converter extends DataConverter
     }
 
     /**
-     * Parse a bufferedReader and process GFF3 record
+     * Parse a bufferedReader and process GFF3 record. The lines may be parsed by several threads,
+     * as set by setParserThreads(), but the records are processed in file order on this thread.
      * @param bReader the Reader
      * @throws java.io.IOException if an error occurs reading GFF
      * @throws ObjectStoreException if an error occurs storing items
@@ -210,7 +212,7 @@ public class GFF3Converter extends DataConverter
         boolean duplicates = false;
         Set<String> processedIds = new HashSet<String>();
         Set<String> duplicatedIds = new HashSet<String>();
-        for (Iterator<?> i = GFF3Parser.parse(bReader); i.hasNext();) {
+        for (Iterator<?> i = GFF3Parser.parse(bReader, parserThreads); i.hasNext();) {
             record = (GFF3Record) i.next();
 
             // we only care about dupes if we are NOT creating locations
@@ -723,6 +725,18 @@ public class GFF3Converter extends DataConverter
         this.dontCreateLocations = dontCreateLocations;
     }
 
+    /**
+     * Set the number of threads that parse GFF lines while this converter processes the
+     * records, in the order of the file. The default is 1, which parses the lines as they are
+     * processed. Only the parsing of lines is done by these threads - records are always
+     * converted to Items one at a time, on the thread that calls parse(), because the
+     * identifier map, the sequences and the GFF3RecordHandler are shared between records.
+     * @param parserThreads the number of threads
+     */
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
     /**
      * Create and add a synonym Item from the given information.
      * @param subject the subject of the new Synonym
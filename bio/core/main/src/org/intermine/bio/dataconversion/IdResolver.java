@@ -56,6 +56,8 @@ public class IdResolver
     protected Map<MultiKey, Map<String, Set<String>>> orgIdMainMaps = new MultiKeyMap();
     @SuppressWarnings("unchecked")
     protected Map<MultiKey, Map<String, Set<String>>> orgIdSynMaps = new MultiKeyMap();
+    // taxon ids and class names that are not in the maps above are looked up in here
+    private IdResolverSnapshot snapshot = null;
 
     /**
      * Construct and empty IdResolver
@@ -79,7 +81,7 @@ public class IdResolver
      * @param className which class to resolve
      */
     protected void checkTaxonId(String taxonId, String className) {
-        if (!orgIdMaps.containsKey(new MultiKey(taxonId, className))) {
+        if (!getKeys().contains(new MultiKey(taxonId, className))) {
             throw new IllegalArgumentException(className + " IdResolver has no data for taxonId: '"
                                                + taxonId + "'.");
         }
@@ -94,7 +96,11 @@ public class IdResolver
      */
     public boolean isPrimaryIdentifier(String taxonId, String className, String id) {
         checkTaxonId(taxonId, className);
-        return orgIdMaps.get(new MultiKey(taxonId, className)).containsKey(id);
+        MultiKey key = new MultiKey(taxonId, className);
+        if (inSnapshot(key)) {
+            return snapshot.isPrimaryIdentifier(key, id);
+        }
+        return orgIdMaps.get(key).containsKey(id);
     }
 
     /**
@@ -122,6 +128,14 @@ public class IdResolver
         if (isPrimaryIdentifier(taxonId, className, id)) {
             return Collections.singleton(id);
         }
+        MultiKey key = new MultiKey(taxonId, className);
+        if (inSnapshot(key)) {
+            Set<String> primaryIds = snapshot.getPrimaryIdsForMainId(key, id);
+            if (primaryIds == null) {
+                primaryIds = snapshot.getPrimaryIdsForSynonym(key, id);
+            }
+            return primaryIds == null ? Collections.<String>emptySet() : primaryIds;
+        }
         if (orgMainMaps.containsKey(new MultiKey(taxonId, className))
             && orgMainMaps.get(new MultiKey(taxonId, className)).containsKey(id)) {
             return orgMainMaps.get(new MultiKey(taxonId, className)).get(id);
@@ -195,6 +209,10 @@ public class IdResolver
         if (!isPrimaryIdentifier(taxonId, className, primaryIdentifier)) {
             return null;
         }
+        MultiKey key = new MultiKey(taxonId, className);
+        if (inSnapshot(key)) {
+            return snapshot.getSynonyms(key, primaryIdentifier);
+        }
         return orgIdMaps.get(new MultiKey(taxonId, className)).get(primaryIdentifier);
     }
 
@@ -248,7 +266,7 @@ public class IdResolver
      */
     public boolean hasTaxons(Set<String> taxonIds) {
         Set<String> taxonIdSet = new HashSet<String>();
-        for (MultiKey key : orgIdMaps.keySet()) {
+        for (MultiKey key : getKeys()) {
             taxonIdSet.add((String) key.getKey(0));
         }
         return taxonIdSet.containsAll(taxonIds);
@@ -260,7 +278,7 @@ public class IdResolver
      */
     public Set<String> getTaxons() {
         Set<String> taxonIdSet = new LinkedHashSet<String>();
-        for (MultiKey key : orgIdMaps.keySet()) {
+        for (MultiKey key : getKeys()) {
             taxonIdSet.add((String) key.getKey(0));
         }
         return taxonIdSet;
@@ -273,7 +291,7 @@ public class IdResolver
      */
     public boolean hasClassName(String className) {
         Set<String> clsNameSet = new HashSet<String>();
-        for (MultiKey key : orgIdMaps.keySet()) {
+        for (MultiKey key : getKeys()) {
             clsNameSet.add((String) key.getKey(1));
         }
         return clsNameSet.contains(className);
@@ -285,7 +303,7 @@ public class IdResolver
      */
     public Set<String> getClassNames() {
         Set<String> clsNameSet = new HashSet<String>();
-        for (MultiKey key : orgIdMaps.keySet()) {
+        for (MultiKey key : getKeys()) {
             clsNameSet.add((String) key.getKey(1));
         }
         return clsNameSet;
@@ -298,7 +316,7 @@ public class IdResolver
      * @return true if the resolver has data for this taxon ID and data type
      */
     public boolean hasTaxonAndClassName(String taxonId, String className) {
-        return orgIdMaps.keySet().contains(new MultiKey(taxonId, className));
+        return getKeys().contains(new MultiKey(taxonId, className));
     }
 
     /**
@@ -344,7 +362,7 @@ public class IdResolver
             }
         }
 
-        return orgIdMaps.keySet().containsAll(keySet);
+        return getKeys().containsAll(keySet);
     }
 
     /**
@@ -353,7 +371,7 @@ public class IdResolver
      */
     public Map<String, Set<String>> getTaxonsAndClassNames() {
         Map<String, Set<String>> taxonIdAndClsNameMap = new HashMap<String, Set<String>>();
-        for (MultiKey key : orgIdMaps.keySet()) {
+        for (MultiKey key : getKeys()) {
             String taxonId = (String) key.getKey(0);
             String className = (String) key.getKey(1);
             if (taxonIdAndClsNameMap.get(taxonId) == null) {
@@ -451,6 +469,11 @@ public class IdResolver
         if (idMap == null) {
             idMap = new LinkedHashMap<String, Set<String>>();
             orgIdMaps.put(new MultiKey(taxonId, className), idMap);
+            if ((snapshot != null)
+                    && snapshot.getKeys().contains(new MultiKey(taxonId, className))) {
+                // the snapshot can't be changed, so copy what it holds into the maps first
+                snapshot.copyInto(new MultiKey(taxonId, className), this);
+            }
         }
 
         addToMapList(idMap, primaryIdentifier, ids);
@@ -501,12 +524,13 @@ public class IdResolver
         LOG.info("Writing id resolver to file: " + f.getName());
         FileWriter fw = new FileWriter(f, true); // append if true
 //        FileWriter fw = new FileWriter(f);
-        for (MultiKey key : orgIdMaps.keySet()) {
+        for (MultiKey key : getKeys()) {
 
             // get maps for this organism
-            Map<String, Set<String>> idMap = orgIdMaps.get(key);
-            Map<String, Set<String>> mainIdsMap = orgIdMainMaps.get(key);
-            Map<String, Set<String>> synonymMap = orgIdSynMaps.get(key);
+            IdResolver keyResolver = getResolverForKey(key);
+            Map<String, Set<String>> idMap = keyResolver.orgIdMaps.get(key);
+            Map<String, Set<String>> mainIdsMap = keyResolver.orgIdMainMaps.get(key);
+            Map<String, Set<String>> synonymMap = keyResolver.orgIdSynMaps.get(key);
 
             for (Map.Entry<String, Set<String>> idMapEntry : idMap.entrySet()) {
                 StringBuffer sb = new StringBuffer();
@@ -582,6 +606,66 @@ public class IdResolver
         reader.close();
     }
 
+    /**
+     * Use a snapshot written by writeSnapshot() to look up identifiers for the taxon ids and
+     * class names that it holds. Nothing is read until it is needed, so this is much faster than
+     * populateFromFile() and doesn't use heap for the identifiers.
+     *
+     * @param f the snapshot file
+     * @throws IOException if problem reading from file
+     */
+    public void attachSnapshot(File f) throws IOException {
+        if ((snapshot == null) || !snapshot.getFile().equals(f)) {
+            snapshot = new IdResolverSnapshot(f);
+        }
+    }
+
+    /**
+     * Write IdResolver contents to a snapshot file, which can be read by attachSnapshot().
+     *
+     * @param f the file to write to
+     * @throws IOException if fail to write
+     */
+    public void writeSnapshot(File f) throws IOException {
+        LOG.info("Writing id resolver snapshot to file: " + f.getName());
+        IdResolverSnapshot.write(this, f);
+    }
+
+    /**
+     * Return the taxon ids and class names that this IdResolver has data for.
+     *
+     * @return a set of MultiKeys of taxon id and class name
+     */
+    protected Set<MultiKey> getKeys() {
+        if (snapshot == null) {
+            return orgIdMaps.keySet();
+        }
+        Set<MultiKey> keys = new LinkedHashSet<MultiKey>(orgIdMaps.keySet());
+        keys.addAll(snapshot.getKeys());
+        return keys;
+    }
+
+    /**
+     * Return an IdResolver holding the data for one taxon id and class name in its maps, which
+     * is this IdResolver unless the data is in the attached snapshot.
+     *
+     * @param key the taxon id and class name
+     * @return an IdResolver
+     */
+    protected IdResolver getResolverForKey(MultiKey key) {
+        if (!inSnapshot(key)) {
+            return this;
+        }
+        IdResolver retval = new IdResolver(clsName);
+        snapshot.copyInto(key, retval);
+        return retval;
+    }
+
+    private boolean inSnapshot(MultiKey key) {
+        return (snapshot != null) && !orgIdMaps.containsKey(key)
+            && snapshot.getKeys().contains(key);
+    }
+
     // TODO populate part from file with given taxons and classes, what if there
     // are some data nonexists? Maybe not a good idea...
 
@@ -16,7 +16,9 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.apache.commons.lang.StringUtils;
 import org.intermine.sql.Database;
+import org.intermine.util.PropertiesUtil;
 
 /**
  * Create an IdResolver.
@@ -37,6 +39,9 @@ public abstract class IdResolverFactory
     protected Set<String> clsCol = new HashSet<String>();
 
     protected static String idResolverCachedFileName = "build/idresolver.cache";
+    protected static String idResolverSnapshotFileName = "build/idresolver.snapshot";
+    // set in .intermine/MINE.properties to share one snapshot between all sources of a build
+    private static final String SNAPSHOT_PROP_KEY = "resolver.snapshot.file";
 
     /**
      * Return an IdResolver, if not already built then create it.
@@ -91,6 +96,11 @@ public abstract class IdResolverFactory
      */
     protected boolean restoreFromFile()
         throws IOException {
+        File snapshotFile = getSnapshotFile();
+        if (snapshotFile.exists()) {
+            resolver.attachSnapshot(snapshotFile);
+            return true;
+        }
         File f = new File(idResolverCachedFileName);
         if (f.exists()) {
             resolver.populateFromFile(f);
@@ -99,6 +109,31 @@ public abstract class IdResolverFactory
         return false;
     }
 
+    /**
+     * Write IdResolver contents to the cache file and to the snapshot file, which is read in
+     * preference to the cache file.
+     *
+     * @throws IOException if problem writing to file
+     */
+    protected void writeToCache()
+        throws IOException {
+        resolver.writeToFile(new File(idResolverCachedFileName));
+        resolver.writeSnapshot(getSnapshotFile());
+    }
+
+    /**
+     * Return the snapshot file, which is the resolver.snapshot.file property if it is set.
+     *
+     * @return a File
+     */
+    protected File getSnapshotFile() {
+        String fileName = PropertiesUtil.getProperties().getProperty(SNAPSHOT_PROP_KEY);
+        if (StringUtils.isBlank(fileName)) {
+            return new File(idResolverSnapshotFileName);
+        }
+        return new File(fileName.trim());
+    }
+
     /**
      * Read IdResolver contents from a database.
      *
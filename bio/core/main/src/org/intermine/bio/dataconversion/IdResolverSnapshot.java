@@ -0,0 +1,417 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+import org.apache.log4j.Logger;
+
+/**
+ * A read-only, memory-mapped copy of the contents of an IdResolver. Reading a snapshot costs
+ * almost nothing, whatever its size, and many processes can share the same file.
+ *
+ * The file holds one section for each taxon id and class name. A section has a table of every
+ * identifier in it, sorted by their UTF-8 bytes so that they can be found by binary search, and
+ * four lists of numbers into that table for each identifier: the main ids and synonyms of a
+ * primary identifier, and the primary identifiers of a main id or synonym. A directory of the
+ * sections is at the end of the file.
+ */
+public class IdResolverSnapshot
+{
+    private static final Logger LOG = Logger.getLogger(IdResolverSnapshot.class);
+    private static final String MAGIC = "IMIDRES2";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte PRIMARY = 1;
+    private static final int MAIN_IDS = 0;
+    private static final int SYNONYMS = 1;
+    private static final int MAIN_ID_PRIMARIES = 2;
+    private static final int SYNONYM_PRIMARIES = 3;
+    private static final int TABLES = 4;
+
+    private final File file;
+    private final Map<MultiKey, Section> sections = new LinkedHashMap<MultiKey, Section>();
+
+    /**
+     * Open a snapshot file.
+     *
+     * @param file the file written by write()
+     * @throws IOException if the file can't be read
+     */
+    public IdResolverSnapshot(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] magic = new byte[MAGIC.length()];
+            raf.readFully(magic);
+            if (!MAGIC.equals(new String(magic, "US-ASCII"))) {
+                throw new IOException("File " + file + " is not an id resolver snapshot");
+            }
+            raf.seek(raf.length() - 8);
+            raf.seek(raf.readLong());
+            int sectionCount = raf.readInt();
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < sectionCount; i++) {
+                String taxonId = raf.readUTF();
+                // resolvers made without a class name have a null class name in their keys
+                String className = (raf.readBoolean() ? raf.readUTF() : null);
+                long offset = raf.readLong();
+                long length = raf.readLong();
+                // the mapped buffers stay valid after the file is closed
+                sections.put(new MultiKey(taxonId, className), new Section(
+                            channel.map(FileChannel.MapMode.READ_ONLY, offset, length)));
+            }
+        } finally {
+            raf.close();
+        }
+        LOG.info("Opened id resolver snapshot " + file + " with " + sections.size()
+                + " sections");
+    }
+
+    /**
+     * @return the snapshot file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the taxon id and class name of every section in the snapshot
+     */
+    public Set<MultiKey> getKeys() {
+        return Collections.unmodifiableSet(sections.keySet());
+    }
+
+    /**
+     * Check whether the given id is a primary identifier.
+     *
+     * @param key the taxon id and class name
+     * @param id an identifier
+     * @return true if id is a primary identifier
+     */
+    public boolean isPrimaryIdentifier(MultiKey key, String id) {
+        Section section = sections.get(key);
+        if (section == null) {
+            return false;
+        }
+        int index = section.find(id);
+        return (index >= 0) && section.isPrimary(index);
+    }
+
+    /**
+     * Return the primary identifiers that a main id resolves to.
+     *
+     * @param key the taxon id and class name
+     * @param id a main id
+     * @return a set of primary identifiers, or null if id is not a main id
+     */
+    public Set<String> getPrimaryIdsForMainId(MultiKey key, String id) {
+        return lookup(key, id, MAIN_ID_PRIMARIES);
+    }
+
+    /**
+     * Return the primary identifiers that a synonym resolves to.
+     *
+     * @param key the taxon id and class name
+     * @param id a synonym
+     * @return a set of primary identifiers, or null if id is not a synonym
+     */
+    public Set<String> getPrimaryIdsForSynonym(MultiKey key, String id) {
+        return lookup(key, id, SYNONYM_PRIMARIES);
+    }
+
+    /**
+     * Return the main ids and then the synonyms of a primary identifier.
+     *
+     * @param key the taxon id and class name
+     * @param primaryIdentifier a primary identifier
+     * @return a set of identifiers, or null if primaryIdentifier is not a primary identifier
+     */
+    public Set<String> getSynonyms(MultiKey key, String primaryIdentifier) {
+        Section section = sections.get(key);
+        if (section == null) {
+            return null;
+        }
+        int index = section.find(primaryIdentifier);
+        if ((index < 0) || !section.isPrimary(index)) {
+            return null;
+        }
+        Set<String> retval = new LinkedHashSet<String>();
+        section.addList(MAIN_IDS, index, retval);
+        section.addList(SYNONYMS, index, retval);
+        return retval;
+    }
+
+    private Set<String> lookup(MultiKey key, String id, int table) {
+        Section section = sections.get(key);
+        if (section == null) {
+            return null;
+        }
+        int index = section.find(id);
+        if (index < 0) {
+            return null;
+        }
+        Set<String> retval = new LinkedHashSet<String>();
+        section.addList(table, index, retval);
+        return retval.isEmpty() ? null : retval;
+    }
+
+    /**
+     * Add the contents of one section to an IdResolver.
+     *
+     * @param key the taxon id and class name
+     * @param resolver the IdResolver to add entries to
+     */
+    public void copyInto(MultiKey key, IdResolver resolver) {
+        Section section = sections.get(key);
+        if (section == null) {
+            return;
+        }
+        String taxonId = (String) key.getKey(0);
+        String className = (String) key.getKey(1);
+        for (int i = 0; i < section.size; i++) {
+            if (section.isPrimary(i)) {
+                String primaryId = section.getString(i);
+                List<String> mainIds = new ArrayList<String>();
+                section.addList(MAIN_IDS, i, mainIds);
+                List<String> synonyms = new ArrayList<String>();
+                section.addList(SYNONYMS, i, synonyms);
+                if (!mainIds.isEmpty() || synonyms.isEmpty()) {
+                    resolver.addEntry(taxonId, className, primaryId, mainIds, Boolean.TRUE);
+                }
+                if (!synonyms.isEmpty()) {
+                    resolver.addEntry(taxonId, className, primaryId, synonyms, Boolean.FALSE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the contents of an IdResolver to a snapshot file. The file is written under another
+     * name and then renamed, so that processes that have the old file open can carry on reading
+     * it.
+     *
+     * @param resolver the IdResolver
+     * @param file the file to write
+     * @throws IOException if the file can't be written
+     */
+    public static void write(IdResolver resolver, File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        try {
+            out.writeBytes(MAGIC);
+            Map<MultiKey, long[]> directory = new LinkedHashMap<MultiKey, long[]>();
+            for (MultiKey key : resolver.getKeys()) {
+                IdResolver sectionResolver = resolver.getResolverForKey(key);
+                out.flush();
+                long start = fos.getChannel().position();
+                writeSection(out, sectionResolver, key);
+                out.flush();
+                directory.put(key, new long[] {start, fos.getChannel().position() - start});
+            }
+            long directoryStart = fos.getChannel().position();
+            out.writeInt(directory.size());
+            for (Map.Entry<MultiKey, long[]> entry : directory.entrySet()) {
+                out.writeUTF((String) entry.getKey().getKey(0));
+                String className = (String) entry.getKey().getKey(1);
+                out.writeBoolean(className != null);
+                if (className != null) {
+                    out.writeUTF(className);
+                }
+                out.writeLong(entry.getValue()[0]);
+                out.writeLong(entry.getValue()[1]);
+            }
+            out.writeLong(directoryStart);
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Could not rename " + tmpFile + " to " + file);
+        }
+    }
+
+    private static void writeSection(DataOutputStream out, IdResolver resolver, MultiKey key)
+        throws IOException {
+        Map<String, Set<String>> idMap = resolver.orgIdMaps.get(key);
+        List<Map<String, Set<String>>> tables = new ArrayList<Map<String, Set<String>>>();
+        tables.add(resolver.orgIdMainMaps.get(key));
+        tables.add(resolver.orgIdSynMaps.get(key));
+        tables.add(resolver.orgMainMaps.get(key));
+        tables.add(resolver.orgSynMaps.get(key));
+
+        Set<String> strings = new LinkedHashSet<String>(idMap.keySet());
+        for (Map<String, Set<String>> table : tables) {
+            if (table != null) {
+                strings.addAll(table.keySet());
+            }
+        }
+        byte[][] encoded = new byte[strings.size()][];
+        int i = 0;
+        for (String s : strings) {
+            encoded[i++] = s.getBytes(UTF8);
+        }
+        Arrays.sort(encoded, new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] a, byte[] b) {
+                return compareBytes(a, b);
+            }
+        });
+        String[] sorted = new String[encoded.length];
+        Map<String, Integer> indexes = new HashMap<String, Integer>();
+        for (i = 0; i < encoded.length; i++) {
+            sorted[i] = new String(encoded[i], UTF8);
+            indexes.put(sorted[i], new Integer(i));
+        }
+
+        out.writeInt(sorted.length);
+        int offset = 0;
+        for (i = 0; i < encoded.length; i++) {
+            out.writeInt(offset);
+            offset += encoded[i].length;
+        }
+        out.writeInt(offset);
+        for (i = 0; i < sorted.length; i++) {
+            out.writeByte(idMap.containsKey(sorted[i]) ? PRIMARY : 0);
+        }
+        for (Map<String, Set<String>> table : tables) {
+            int start = 0;
+            for (i = 0; i < sorted.length; i++) {
+                out.writeInt(start);
+                Collection<String> values = (table == null ? null : table.get(sorted[i]));
+                start += (values == null ? 0 : values.size());
+            }
+            out.writeInt(start);
+            for (i = 0; i < sorted.length; i++) {
+                Collection<String> values = (table == null ? null : table.get(sorted[i]));
+                if (values != null) {
+                    for (String value : values) {
+                        out.writeInt(indexes.get(value).intValue());
+                    }
+                }
+            }
+        }
+        for (i = 0; i < encoded.length; i++) {
+            out.write(encoded[i]);
+        }
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * One taxon id and class name in the snapshot, read directly from the mapped file. Only
+     * absolute reads are used, so that one Section can be read by many threads.
+     */
+    private static class Section
+    {
+        private final ByteBuffer buffer;
+        private final int size;
+        private final int stringOffsets;
+        private final int flags;
+        private final int[] tableStarts = new int[TABLES];
+        private final int strings;
+
+        public Section(ByteBuffer buffer) {
+            this.buffer = buffer;
+            size = buffer.getInt(0);
+            stringOffsets = 4;
+            flags = stringOffsets + (size + 1) * 4;
+            int position = flags + size;
+            for (int table = 0; table < TABLES; table++) {
+                tableStarts[table] = position;
+                int values = buffer.getInt(position + size * 4);
+                position += (size + 1 + values) * 4;
+            }
+            strings = position;
+        }
+
+        public boolean isPrimary(int index) {
+            return buffer.get(flags + index) == PRIMARY;
+        }
+
+        public String getString(int index) {
+            int start = buffer.getInt(stringOffsets + index * 4);
+            byte[] bytes = new byte[buffer.getInt(stringOffsets + (index + 1) * 4) - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(strings + start + i);
+            }
+            return new String(bytes, UTF8);
+        }
+
+        public int find(String s) {
+            byte[] key = s.getBytes(UTF8);
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compareAt(mid, key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        private int compareAt(int index, byte[] key) {
+            int start = strings + buffer.getInt(stringOffsets + index * 4);
+            int length = strings + buffer.getInt(stringOffsets + (index + 1) * 4) - start;
+            int common = Math.min(length, key.length);
+            for (int i = 0; i < common; i++) {
+                int diff = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return length - key.length;
+        }
+
+        public void addList(int table, int index, Collection<String> values) {
+            int starts = tableStarts[table];
+            int valueStart = starts + (size + 1) * 4;
+            int end = buffer.getInt(starts + (index + 1) * 4);
+            for (int i = buffer.getInt(starts + index * 4); i < end; i++) {
+                values.add(getString(buffer.getInt(valueStart + i * 4)));
+            }
+        }
+    }
+}
@@ -117,7 +117,7 @@ public class WormBaseIdResolverFactory extends IdResolverFactory
                     }
                     // END OF HACK
 
-                    resolver.writeToFile(new File(idResolverCachedFileName));
+                    writeToCache();
                 } else {
                     LOG.warn("Resolver file not exists: " + wormIdFileName);
                 }
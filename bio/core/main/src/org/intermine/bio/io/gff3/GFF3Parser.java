@@ -10,8 +10,13 @@ package org.intermine.bio.io.gff3;
  *
  */
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -35,22 +40,7 @@ public final class GFF3Parser
      * @throws IOException if there is an error during reading or parsing
      */
     public static Iterator<?> parse(final BufferedReader reader) throws IOException {
-        String line = null;
-
-        while ((line = reader.readLine()) != null) {
-            String trimmedLine = line.trim();
-
-            if (trimmedLine.length() == 0 || trimmedLine.startsWith("#")) {
-                continue;
-            }
-
-            // throws IOException if the first GFF line isn't valid
-            new GFF3Record(trimmedLine);
-
-            break;
-        }
-
-        final String firstGFFLine = line;
+        final String firstGFFLine = readFirstLine(reader);
 
         return new Iterator<Object>() {
             String currentLine = firstGFFLine;
@@ -86,4 +76,205 @@ public final class GFF3Parser
             }
         };
     }
+
+    /**
+     * Read GFF3 lines from a BufferedReader and return an Iterator over the GFF3Records, in the
+     * order of the file. The reading and parsing of lines is done by other threads, so that
+     * the caller only has to process the records.
+     * @param reader the Reader to reader from
+     * @param threads the number of threads to parse lines with - with one thread, this is the
+     * same as parse(reader)
+     * @return an Iterator over the GFF3Record objects from the reader
+     * @throws IOException if there is an error during reading or parsing the first line
+     */
+    public static Iterator<?> parse(final BufferedReader reader, int threads)
+        throws IOException {
+        if (threads <= 1) {
+            return parse(reader);
+        }
+        return new ParallelIterator(reader, readFirstLine(reader), threads);
+    }
+
+    /**
+     * Skip comments and blank lines, and return the first GFF line.
+     */
+    private static String readFirstLine(BufferedReader reader) throws IOException {
+        String line = null;
+
+        while ((line = reader.readLine()) != null) {
+            String trimmedLine = line.trim();
+
+            if (trimmedLine.length() == 0 || trimmedLine.startsWith("#")) {
+                continue;
+            }
+
+            // throws IOException if the first GFF line isn't valid
+            new GFF3Record(trimmedLine);
+
+            break;
+        }
+        return line;
+    }
+
+    /**
+     * A group of lines from the file, and the records parsed from them.
+     */
+    private static class Chunk
+    {
+        private List<String> lines = new ArrayList<String>();
+        private List<GFF3Record> records = new ArrayList<GFF3Record>();
+        // the problem with the line after the last record, if any
+        private Exception error = null;
+        private boolean done = false;
+
+        public synchronized void setDone() {
+            done = true;
+            notifyAll();
+        }
+
+        public synchronized void waitUntilDone() throws InterruptedException {
+            while (!done) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * An Iterator over records that are parsed by a pool of threads. One thread reads chunks of
+     * lines and puts them on two queues: one for the parsing threads and one that holds the
+     * chunks in order for the Iterator. The size of the second queue limits how far ahead of the
+     * caller the other threads get.
+     */
+    private static class ParallelIterator implements Iterator<Object>
+    {
+        private static final int CHUNK_SIZE = 1000;
+        private static final Chunk END = new Chunk();
+
+        private final BlockingQueue<Chunk> ordered;
+        private final BlockingQueue<Chunk> work = new LinkedBlockingQueue<Chunk>();
+        private Chunk current = null;
+        private int position = 0;
+        private boolean finished = false;
+
+        public ParallelIterator(final BufferedReader reader, final String firstGFFLine,
+                final int threads) {
+            ordered = new ArrayBlockingQueue<Chunk>(threads * 4);
+            Thread readerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    readChunks(reader, firstGFFLine, threads);
+                }
+            }, "GFF3Parser reader");
+            readerThread.setDaemon(true);
+            readerThread.start();
+            for (int i = 0; i < threads; i++) {
+                Thread parserThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        parseChunks();
+                    }
+                }, "GFF3Parser worker " + (i + 1));
+                parserThread.setDaemon(true);
+                parserThread.start();
+            }
+        }
+
+        private void readChunks(BufferedReader reader, String firstGFFLine, int threads) {
+            try {
+                try {
+                    String line = firstGFFLine;
+                    while (line != null && !line.startsWith(">")) {
+                        Chunk chunk = new Chunk();
+                        while (line != null && !line.startsWith(">")
+                                && chunk.lines.size() < CHUNK_SIZE) {
+                            chunk.lines.add(line);
+                            line = readNextLine(reader);
+                        }
+                        ordered.put(chunk);
+                        work.put(chunk);
+                    }
+                } catch (IOException e) {
+                    Chunk chunk = new Chunk();
+                    chunk.error = e;
+                    chunk.setDone();
+                    ordered.put(chunk);
+                } finally {
+                    ordered.put(END);
+                    for (int i = 0; i < threads; i++) {
+                        work.put(END);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Nobody is reading the records any more
+            }
+        }
+
+        private static String readNextLine(BufferedReader reader) throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmedLine = line.trim();
+                if (trimmedLine.length() == 0 || trimmedLine.startsWith("#")) {
+                    continue;
+                }
+                break;
+            }
+            return line;
+        }
+
+        private void parseChunks() {
+            try {
+                Chunk chunk;
+                while ((chunk = work.take()) != END) {
+                    try {
+                        for (String line : chunk.lines) {
+                            chunk.records.add(new GFF3Record(line));
+                        }
+                    } catch (Exception e) {
+                        chunk.error = e;
+                    } finally {
+                        chunk.setDone();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Nobody is reading the records any more
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (!finished && (current == null
+                            || (position >= current.records.size() && current.error == null))) {
+                    current = ordered.take();
+                    position = 0;
+                    if (current == END) {
+                        current = null;
+                        finished = true;
+                    } else {
+                        current.waitUntilDone();
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException("Interrupted while waiting for GFF records", e);
+            }
+            return !finished;
+        }
+
+        @Override
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (position >= current.records.size()) {
+                throw new RuntimeException("IOException while getting next GFF record",
+                        current.error);
+            }
+            return current.records.get(position++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove not supported");
+        }
+    }
 }
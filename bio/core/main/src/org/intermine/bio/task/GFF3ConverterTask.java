@@ -20,6 +20,7 @@ import org.intermine.bio.dataconversion.GFF3Converter;
 import org.intermine.bio.dataconversion.GFF3RecordHandler;
 import org.intermine.bio.dataconversion.GFF3SeqHandler;
 import org.intermine.bio.io.gff3.GFF3Parser;
+import org.intermine.dataconversion.ItemFileWriter;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.dataconversion.ObjectStoreItemWriter;
 import org.intermine.metadata.Model;
@@ -53,6 +54,9 @@ public class GFF3ConverterTask extends Task
     private String seqHandlerClassName;
 
     private boolean dontCreateLocations = false;
+    private int parserThreads = 1;
+
+    private String itemFile = null;
 
      /**
      * Set the data fileset
@@ -71,6 +75,15 @@ public class GFF3ConverterTask extends Task
     }
 
 
+    /**
+     * Set the name of an item file to write Items to, instead of the target ObjectStore. An empty
+     * name means that Items are written to the target ObjectStore.
+     * @param itemFile the name of the item file
+     */
+    public void setItemFile(String itemFile) {
+        this.itemFile = itemFile;
+    }
+
     /**
      * Set the target ObjectStore alias
      * @param targetAlias the targetAlias
@@ -154,6 +167,15 @@ public class GFF3ConverterTask extends Task
         this.dontCreateLocations = dontCreateLocations;
     }
 
+    /**
+     * Set the number of threads used to parse GFF lines, the default is 1. The records are
+     * still converted to Items on a single thread.
+     * @param parserThreads the number of threads
+     */
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
     /**
      * @see Task#execute()
      */
@@ -190,8 +212,12 @@ public class GFF3ConverterTask extends Task
         ObjectStoreWriter osw = null;
         ItemWriter writer = null;
         try {
-            osw = ObjectStoreWriterFactory.getObjectStoreWriter(targetAlias);
-            writer = new ObjectStoreItemWriter(osw);
+            if (StringUtils.isEmpty(itemFile)) {
+                osw = ObjectStoreWriterFactory.getObjectStoreWriter(targetAlias);
+                writer = new ObjectStoreItemWriter(osw);
+            } else {
+                writer = new ItemFileWriter(new File(itemFile));
+            }
             Model tgtModel = Model.getInstanceByName(model);
             GFF3RecordHandler recordHandler;
             if (handlerClassName == null) {
@@ -230,6 +256,7 @@ public class GFF3ConverterTask extends Task
             if (dontCreateLocations) {
                 gff3converter.setDontCreateLocations(dontCreateLocations);
             }
+            gff3converter.setParserThreads(parserThreads);
             DirectoryScanner ds = fileSet.getDirectoryScanner(getProject());
             String[] files = ds.getIncludedFiles();
             if (files.length == 0) {
@@ -0,0 +1,239 @@
+package org.intermine.bio.util;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.collections.keyvalue.MultiKey;
+
+/**
+ * Binned counts of the sequence features on each chromosome, by organism and feature class, from
+ * which the number of features overlapping any region can be read without a query.
+ * <p>
+ * For every bin boundary, at multiples of the bin size, the running totals of the features that
+ * start and end at or before it are kept, so the features overlapping a region are those that
+ * start before its end less those that end before its start. Regions are rounded to the nearest
+ * bin boundaries, so counts are exact for regions aligned to bins and otherwise out by at most the
+ * features in half a bin at each end. Coarser zoom levels need no extra storage, as their
+ * boundaries are a subset of these.
+ */
+public final class FeatureDensities
+{
+    /**
+     * The bin size used unless another is given.
+     */
+    public static final int DEFAULT_BIN_SIZE = 10000;
+
+    private final int binSize;
+    // from (taxon id, chromosome primaryIdentifier, unqualified class name) to counts
+    private final Map<MultiKey, Counts> counts = new HashMap<MultiKey, Counts>();
+    private final Set<String> taxonIds = new HashSet<String>();
+
+    /**
+     * Create an empty set of counts, to add features to.
+     *
+     * @param binSize the number of bases in each bin
+     */
+    public FeatureDensities(int binSize) {
+        if (binSize < 1) {
+            throw new IllegalArgumentException("binSize must be greater than 0");
+        }
+        this.binSize = binSize;
+    }
+
+    /**
+     * Returns the number of bases in each bin.
+     *
+     * @return the bin size
+     */
+    public int getBinSize() {
+        return binSize;
+    }
+
+    /**
+     * Adds a feature to the counts.
+     *
+     * @param taxonId the taxon id of the organism of the feature
+     * @param chromosome the primaryIdentifier of the chromosome the feature is located on
+     * @param className the unqualified name of the class of the feature
+     * @param start the start of the location of the feature, in base co-ordinates
+     * @param end the end of the location of the feature, in base co-ordinates
+     */
+    public void add(String taxonId, String chromosome, String className, int start, int end) {
+        MultiKey key = new MultiKey(taxonId, chromosome, className);
+        Counts c = counts.get(key);
+        if (c == null) {
+            c = new Counts();
+            counts.put(key, c);
+            taxonIds.add(taxonId);
+        }
+        c.add(getBoundary(Math.min(start, end)), getBoundary(Math.max(start, end)));
+    }
+
+    // the first bin boundary at or after a position
+    private int getBoundary(int position) {
+        return Math.max(0, (position + binSize - 1) / binSize);
+    }
+
+    /**
+     * Returns true if there are counts for an organism.
+     *
+     * @param taxonId a taxon id
+     * @return true if any features of that organism have been counted
+     */
+    public boolean hasOrganism(String taxonId) {
+        return taxonIds.contains(taxonId);
+    }
+
+    /**
+     * Returns the number of features overlapping a region of a chromosome.
+     *
+     * @param taxonId the taxon id of the organism
+     * @param chromosome the primaryIdentifier of the chromosome
+     * @param classNames the unqualified names of the classes of feature to count, which should
+     * include all the subclasses wanted
+     * @param start the start of the region, in interbase co-ordinates
+     * @param end the end of the region, in interbase co-ordinates
+     * @return the number of features
+     */
+    public int count(String taxonId, String chromosome, Collection<String> classNames, int start,
+            int end) {
+        int first = (Math.max(0, start) + binSize / 2) / binSize;
+        int last = Math.max(first, (Math.max(0, end) + binSize / 2) / binSize);
+        int retval = 0;
+        for (String className : classNames) {
+            Counts c = counts.get(new MultiKey(taxonId, chromosome, className));
+            if (c != null) {
+                retval += c.count(first, last);
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Writes the counts to a stream, compressed, in a form that can be read back by read().
+     *
+     * @param out the stream to write to, which is finished but not closed
+     * @throws IOException if the stream cannot be written to
+     */
+    public void write(OutputStream out) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        DataOutputStream data = new DataOutputStream(gzip);
+        data.writeInt(binSize);
+        data.writeInt(counts.size());
+        for (Map.Entry<MultiKey, Counts> entry : counts.entrySet()) {
+            for (int i = 0; i < 3; i++) {
+                data.writeUTF((String) entry.getKey().getKey(i));
+            }
+            Counts c = entry.getValue();
+            data.writeInt(c.length);
+            for (int i = 0; i < c.length; i++) {
+                data.writeInt(c.starts[i]);
+            }
+            for (int i = 0; i < c.length; i++) {
+                data.writeInt(c.ends[i]);
+            }
+        }
+        data.flush();
+        gzip.finish();
+    }
+
+    /**
+     * Reads counts from a stream written by write().
+     *
+     * @param in the stream to read from
+     * @return a new FeatureDensities object
+     * @throws IOException if the stream cannot be read or is not in the right format
+     */
+    public static FeatureDensities read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new GZIPInputStream(in));
+        FeatureDensities retval = new FeatureDensities(data.readInt());
+        int size = data.readInt();
+        for (int k = 0; k < size; k++) {
+            String taxonId = data.readUTF();
+            String chromosome = data.readUTF();
+            String className = data.readUTF();
+            Counts c = new Counts();
+            c.length = data.readInt();
+            c.starts = new int[c.length];
+            c.ends = new int[c.length];
+            for (int i = 0; i < c.length; i++) {
+                c.starts[i] = data.readInt();
+            }
+            for (int i = 0; i < c.length; i++) {
+                c.ends[i] = data.readInt();
+            }
+            retval.counts.put(new MultiKey(taxonId, chromosome, className), c);
+            retval.taxonIds.add(taxonId);
+        }
+        return retval;
+    }
+
+    /**
+     * The counts for one class of feature on one chromosome.
+     */
+    private static final class Counts
+    {
+        // the numbers of features that start and end at each bin boundary
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int length = 0;
+        // running totals of the above, worked out when first needed
+        private int[] startTotals = null;
+        private int[] endTotals = null;
+
+        void add(int startBoundary, int endBoundary) {
+            if (endBoundary >= starts.length) {
+                int newLength = Math.max(endBoundary + 1, starts.length * 2);
+                starts = Arrays.copyOf(starts, newLength);
+                ends = Arrays.copyOf(ends, newLength);
+            }
+            starts[startBoundary]++;
+            ends[endBoundary]++;
+            length = Math.max(length, endBoundary + 1);
+            startTotals = null;
+            endTotals = null;
+        }
+
+        synchronized int count(int first, int last) {
+            if (startTotals == null) {
+                int[] newStartTotals = new int[length];
+                int[] newEndTotals = new int[length];
+                int startTotal = 0, endTotal = 0;
+                for (int i = 0; i < length; i++) {
+                    startTotal += starts[i];
+                    endTotal += ends[i];
+                    newStartTotals[i] = startTotal;
+                    newEndTotals[i] = endTotal;
+                }
+                startTotals = newStartTotals;
+                endTotals = newEndTotals;
+            }
+            if (length == 0) {
+                return 0;
+            }
+            return startTotals[Math.min(last, length - 1)]
+                - endTotals[Math.min(first, length - 1)];
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.intermine.bio.dataconversion;
 import java.io.File;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 
@@ -67,5 +68,35 @@ public class IdResolverFactoryTest extends TestCase {
         assertTrue(IdResolverFactory.resolver.getTaxons().size() == 3);
         assertEquals(new LinkedHashSet<String>(Arrays.asList(new String[] {"4932", "10090", "7955"})), IdResolverFactory.resolver.getTaxons());
     }
+
+    public void testWriteToCache() throws Exception {
+        MgiIdentifiersResolverFactory mgiFactory = new MgiIdentifiersResolverFactory();
+        File mgiFile = new File(getClass().getClassLoader().getResource(MOUSE_FILE).toURI());
+        mgiFactory.createFromFile(mgiFile);
+
+        String cachedFileName = IdResolverFactory.idResolverCachedFileName;
+        String snapshotFileName = IdResolverFactory.idResolverSnapshotFileName;
+        File cacheFile = File.createTempFile("idresolver", ".cache");
+        File snapshotFile = File.createTempFile("idresolver", ".snapshot");
+        try {
+            IdResolverFactory.idResolverCachedFileName = cacheFile.getPath();
+            IdResolverFactory.idResolverSnapshotFileName = snapshotFile.getPath();
+            mgiFactory.writeToCache();
+            assertTrue(cacheFile.length() > 0);
+            assertTrue(snapshotFile.length() > 0);
+
+            IdResolver fromSnapshot = new IdResolver();
+            fromSnapshot.attachSnapshot(snapshotFile);
+            assertEquals(IdResolverFactory.resolver.getTaxons(), fromSnapshot.getTaxons());
+            assertTrue(fromSnapshot.isPrimaryIdentifier("10090", "MGI:1858420"));
+            assertEquals(IdResolverFactory.resolver.resolveId("10090", "Mcrs1"), fromSnapshot.resolveId("10090", "Mcrs1"));
+            assertEquals(Collections.singleton("MGI:1858420"), fromSnapshot.resolveId("10090", "Mcrs1"));
+        } finally {
+            IdResolverFactory.idResolverCachedFileName = cachedFileName;
+            IdResolverFactory.idResolverSnapshotFileName = snapshotFileName;
+            cacheFile.delete();
+            snapshotFile.delete();
+        }
+    }
 }
 
@@ -224,4 +224,37 @@ public class IdResolverTest extends TestCase
         assertEquals(resolver.orgMainMaps, readFromFile.orgMainMaps);
         assertEquals(resolver.orgSynMaps, readFromFile.orgSynMaps);
     }
+
+    public void testSnapshotRoundTrip() throws Exception {
+        File f = getResolverCache();
+        resolver.writeSnapshot(f);
+
+        IdResolver readFromSnapshot = new IdResolver();
+        readFromSnapshot.attachSnapshot(f);
+        assertTrue(readFromSnapshot.orgIdMaps.isEmpty());
+        assertEquals(resolver.getTaxonsAndClassNames(), readFromSnapshot.getTaxonsAndClassNames());
+        assertTrue(readFromSnapshot.isPrimaryIdentifier(taxId1, clsName1, primaryId1));
+        assertFalse(readFromSnapshot.isPrimaryIdentifier(taxId1, clsName1, mainId1));
+        assertEquals(Collections.singleton(primaryId1), readFromSnapshot.resolveId(taxId1, clsName1, mainId2));
+        assertEquals(new HashSet<String>(Arrays.asList(new String[] {primaryId1, primaryId2})), readFromSnapshot.resolveId(taxId1, clsName1, synonym1));
+        assertEquals(Collections.singleton(primaryId2), readFromSnapshot.resolveId(taxId1, clsName1, synonym3));
+        assertTrue(readFromSnapshot.resolveId(taxId1, clsName1, "unknown").isEmpty());
+        assertEquals(resolver.getSynonyms(taxId1, clsName1, primaryId1), readFromSnapshot.getSynonyms(taxId1, clsName1, primaryId1));
+        assertNull(readFromSnapshot.getSynonyms(taxId1, clsName1, synonym1));
+
+        // adding to a taxon in the snapshot copies the rest of it into the maps
+        readFromSnapshot.addSynonyms(taxId2, clsName1, primaryId1, Collections.singleton(synonym4));
+        assertEquals(Collections.singleton(primaryId1), readFromSnapshot.resolveId(taxId2, clsName1, synonym4));
+        assertEquals(Collections.singleton(primaryId1), readFromSnapshot.resolveId(taxId2, clsName1, mainId3));
+        assertFalse(readFromSnapshot.orgIdMaps.containsKey(new MultiKey(taxId1, clsName1)));
+
+        File f2 = getResolverCache();
+        readFromSnapshot.writeToFile(f2);
+        IdResolver readFromFile = new IdResolver();
+        readFromFile.populateFromFile(f2);
+        resolver.addSynonyms(taxId2, clsName1, primaryId1, Collections.singleton(synonym4));
+        assertEquals(resolver.orgIdMaps, readFromFile.orgIdMaps);
+        assertEquals(resolver.orgMainMaps, readFromFile.orgMainMaps);
+        assertEquals(resolver.orgSynMaps, readFromFile.orgSynMaps);
+    }
 }
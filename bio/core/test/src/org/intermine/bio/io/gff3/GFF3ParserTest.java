@@ -158,4 +158,35 @@ public class GFF3ParserTest extends TestCase
         assertEquals(expected, record.getParents());
     }
 
+    public void testParseInParallel() throws Exception {
+        StringBuffer gff = new StringBuffer("##gff-version 3\n");
+        for (int i = 0; i < 2500; i++) {
+            gff.append("4\t.\texon\t" + (i + 1) + "\t" + (i + 10) + "\t.\t-\t.\tID=exon" + i + "\n");
+            if (i % 100 == 0) {
+                gff.append("# a comment\n\n");
+            }
+        }
+        gff.append(">4\nACGT\n");
+        Iterator iter = GFF3Parser.parse(new BufferedReader(new StringReader(gff.toString())), 3);
+        int count = 0;
+        while (iter.hasNext()) {
+            GFF3Record record = (GFF3Record) iter.next();
+            assertEquals("exon" + count, record.getId());
+            count++;
+        }
+        assertEquals(2500, count);
+    }
+
+    public void testParseInParallelBadLine() throws Exception {
+        String gff = "4\t.\texon\t1\t10\t.\t-\t.\tID=exon1\n"
+            + "4\t.\texon\tone\t10\t.\t-\t.\tID=exon2\n";
+        Iterator iter = GFF3Parser.parse(new BufferedReader(new StringReader(gff)), 2);
+        assertEquals("exon1", ((GFF3Record) iter.next()).getId());
+        assertTrue(iter.hasNext());
+        try {
+            iter.next();
+            fail("Expected RuntimeException");
+        } catch (RuntimeException e) {
+        }
+    }
 }
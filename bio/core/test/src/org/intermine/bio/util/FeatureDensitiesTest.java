@@ -0,0 +1,74 @@
+package org.intermine.bio.util;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class FeatureDensitiesTest extends TestCase
+{
+    private static final Collection<String> GENES = Collections.singleton("Gene");
+    private static final Collection<String> ALL = Arrays.asList("Gene", "Exon");
+
+    public FeatureDensitiesTest(String arg) {
+        super(arg);
+    }
+
+    public void testCount() throws Exception {
+        FeatureDensities densities = new FeatureDensities(100);
+        densities.add("7227", "2L", "Gene", 1, 100);
+        densities.add("7227", "2L", "Gene", 150, 450);
+        densities.add("7227", "2L", "Gene", 1001, 1100);
+        densities.add("7227", "2L", "Exon", 150, 180);
+        densities.add("7227", "3R", "Gene", 1, 5000);
+
+        assertTrue(densities.hasOrganism("7227"));
+        assertFalse(densities.hasOrganism("9606"));
+
+        // Interbase regions aligned to bins give exact counts
+        assertEquals(1, densities.count("7227", "2L", GENES, 0, 100));
+        assertEquals(1, densities.count("7227", "2L", GENES, 100, 200));
+        assertEquals(2, densities.count("7227", "2L", ALL, 100, 200));
+        assertEquals(1, densities.count("7227", "2L", GENES, 300, 500));
+        assertEquals(0, densities.count("7227", "2L", GENES, 500, 1000));
+        assertEquals(1, densities.count("7227", "2L", GENES, 1000, 2000));
+        assertEquals(0, densities.count("7227", "2L", GENES, 2000, 3000));
+        assertEquals(3, densities.count("7227", "2L", GENES, 0, 100000));
+        assertEquals(1, densities.count("7227", "3R", GENES, 2000, 3000));
+        assertEquals(0, densities.count("7227", "X", GENES, 0, 3000));
+        assertEquals(0, densities.count("9606", "2L", GENES, 0, 3000));
+
+        // Other regions are rounded to the nearest bin boundaries
+        assertEquals(1, densities.count("7227", "2L", GENES, 960, 1240));
+        assertEquals(0, densities.count("7227", "2L", GENES, 1140, 1240));
+    }
+
+    public void testWriteAndRead() throws Exception {
+        FeatureDensities densities = new FeatureDensities(1000);
+        for (int i = 0; i < 100; i++) {
+            densities.add("9606", "1", "Gene", i * 1000 + 1, i * 1000 + 1500);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        densities.write(out);
+        FeatureDensities read = FeatureDensities.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(1000, read.getBinSize());
+        assertTrue(read.hasOrganism("9606"));
+        for (int start = 0; start < 110000; start += 5000) {
+            assertEquals(densities.count("9606", "1", GENES, start, start + 10000), read.count("9606", "1", GENES, start, start + 10000));
+        }
+        assertEquals(11, read.count("9606", "1", GENES, 10000, 20000));
+    }
+}
@@ -11,12 +11,15 @@ package org.intermine.bio.postprocess;
  */
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -45,6 +48,7 @@ import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SingletonResults;
 import org.intermine.objectstore.query.iql.IqlQuery;
 import org.intermine.util.DynamicUtil;
+import org.intermine.util.SynchronisedIterator;
 
 
 /**
@@ -63,6 +67,7 @@ public class CalculateLocations
     protected ObjectStoreWriter osw;
     protected ObjectStore os;
     private Model model;
+    private int overlapThreads = 1;
 
 
 
@@ -90,16 +95,21 @@ public class CalculateLocations
      */
     public void createOverlapRelations(List<String> classNamesToIgnore, boolean ignoreSelfMatches)
         throws Exception {
-        osw.beginTransaction();
         Map<String, Integer> summary = new HashMap<String, Integer>();
         Map<Integer, Chromosome> chromosomeMap = makeChromosomeMap();
-        Iterator<?> chromosomeIdIter = chromosomeMap.keySet().iterator();
-        while (chromosomeIdIter.hasNext()) {
-            Integer id = (Integer) chromosomeIdIter.next();
-            createSubjectOverlapRelations(chromosomeMap.get(id), classNamesToIgnore,
+        if (overlapThreads > 1) {
+            createOverlapRelationsInParallel(chromosomeMap.values(), classNamesToIgnore,
                     ignoreSelfMatches, summary);
+        } else {
+            osw.beginTransaction();
+            Iterator<?> chromosomeIdIter = chromosomeMap.keySet().iterator();
+            while (chromosomeIdIter.hasNext()) {
+                Integer id = (Integer) chromosomeIdIter.next();
+                createSubjectOverlapRelations(chromosomeMap.get(id), classNamesToIgnore,
+                        ignoreSelfMatches, osw, summary);
+            }
+            osw.commitTransaction();
         }
-        osw.commitTransaction();
         LOG.info("Stored a total of " + summary.remove("total") + " overlaps");
         List<SortElement> sortList = new ArrayList<SortElement>();
         Iterator<?> summaryIter = summary.entrySet().iterator();
@@ -116,6 +126,139 @@ public class CalculateLocations
         }
     }
 
+    /**
+     * Set the number of threads that createOverlapRelations() uses. With more than one thread,
+     * each thread takes one chromosome at a time and writes its overlaps through its own
+     * ObjectStoreWriter, committing the overlaps of each chromosome when it is done. If a thread
+     * fails, the overlaps of the chromosomes it and the other threads have already finished stay
+     * committed. The default is one thread, which writes all the overlaps in a single
+     * transaction.
+     *
+     * @param overlapThreads the number of threads
+     */
+    public void setOverlapThreads(int overlapThreads) {
+        this.overlapThreads = overlapThreads;
+    }
+
+    /**
+     * Create OverlapRelation objects for the given chromosomes using several threads. The
+     * chromosomes are handed out longest first, so that a long chromosome is not left until the
+     * end. Each thread commits after every chromosome rather than holding one transaction open
+     * until all the threads have finished, because the BatchWriter of each ObjectStoreWriter
+     * ANALYSEs the overlap table inside its transaction, and the lock that takes would make the
+     * other threads wait for a commit that never comes.
+     */
+    private void createOverlapRelationsInParallel(Collection<Chromosome> chromosomes,
+            List<String> classNamesToIgnore, boolean ignoreSelfMatches,
+            Map<String, Integer> summary) throws Exception {
+        List<Chromosome> todo = new ArrayList<Chromosome>(chromosomes);
+        Collections.sort(todo, new Comparator<Chromosome>() {
+            @Override
+            public int compare(Chromosome chr1, Chromosome chr2) {
+                int length1 = (chr1.getLength() == null ? -1 : chr1.getLength().intValue());
+                int length2 = (chr2.getLength() == null ? -1 : chr2.getLength().intValue());
+                return (length1 > length2 ? -1 : (length1 == length2 ? 0 : 1));
+            }
+        });
+        Iterator<Chromosome> chromosomeIter = new SynchronisedIterator<Chromosome>(
+                todo.iterator());
+        List<Exception> exceptions = Collections.synchronizedList(new ArrayList<Exception>());
+        List<OverlapWorker> workers = new ArrayList<OverlapWorker>();
+        try {
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < overlapThreads; i++) {
+                OverlapWorker worker = new OverlapWorker(chromosomeIter, classNamesToIgnore,
+                        ignoreSelfMatches, exceptions);
+                Thread thread = new Thread(worker, "CalculateLocations overlap worker "
+                        + (i + 1));
+                workers.add(worker);
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (!exceptions.isEmpty()) {
+                throw new ObjectStoreException("Exception while creating overlaps in worker "
+                        + "thread", exceptions.get(0));
+            }
+        } finally {
+            for (OverlapWorker worker : workers) {
+                worker.close();
+            }
+        }
+        for (OverlapWorker worker : workers) {
+            for (Map.Entry<String, Integer> entry : worker.summary.entrySet()) {
+                Integer count = summary.get(entry.getKey());
+                summary.put(entry.getKey(), new Integer(entry.getValue().intValue()
+                            + (count == null ? 0 : count.intValue())));
+            }
+        }
+    }
+
+    /**
+     * Creates overlaps for chromosomes taken from a shared iterator, until it is empty or another
+     * worker has failed. The overlaps of each chromosome are committed in their own transaction.
+     */
+    private class OverlapWorker implements Runnable
+    {
+        private Iterator<Chromosome> chromosomeIter;
+        private List<String> classNamesToIgnore;
+        private boolean ignoreSelfMatches;
+        private List<Exception> exceptions;
+        private Map<String, Integer> summary = new HashMap<String, Integer>();
+        private volatile ObjectStoreWriter writer = null;
+
+        public OverlapWorker(Iterator<Chromosome> chromosomeIter, List<String> classNamesToIgnore,
+                boolean ignoreSelfMatches, List<Exception> exceptions) {
+            this.chromosomeIter = chromosomeIter;
+            this.classNamesToIgnore = classNamesToIgnore;
+            this.ignoreSelfMatches = ignoreSelfMatches;
+            this.exceptions = exceptions;
+        }
+
+        @Override
+        public void run() {
+            try {
+                writer = os.getNewWriter();
+                while (exceptions.isEmpty()) {
+                    Chromosome chr = chromosomeIter.next();
+                    writer.beginTransaction();
+                    createSubjectOverlapRelations(chr, classNamesToIgnore, ignoreSelfMatches,
+                            writer, summary);
+                    writer.commitTransaction();
+                }
+            } catch (NoSuchElementException e) {
+                // This is fine - there are no more chromosomes to do.
+            } catch (Exception e) {
+                LOG.error("Exception while creating overlaps", e);
+                exceptions.add(e);
+            }
+        }
+
+        /**
+         * Aborts the transaction of this worker if it failed part-way through a chromosome, and
+         * closes its ObjectStoreWriter.
+         */
+        public void close() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                if (writer.isInTransaction()) {
+                    writer.abortTransaction();
+                }
+            } catch (ObjectStoreException e) {
+                LOG.error("Could not abort transaction", e);
+            }
+            try {
+                writer.close();
+            } catch (ObjectStoreException e) {
+                LOG.error("Could not close ObjectStoreWriter", e);
+            }
+        }
+    }
+
     private class SortElement implements Comparable
     {
         String text;
@@ -151,14 +294,16 @@ public class CalculateLocations
      * be ignored. Hence an entry of the form class is equivalent to class=InterMineObject
      * @param ignoreSelfMatches if true, don't create OverlapRelations between two objects of the
      * same class
+     * @param writer the ObjectStoreWriter to write the overlaps to
      * @param summary a Map to which summary data will be added
      */
     private void createSubjectOverlapRelations(Chromosome subject, List<String> classNamesToIgnore,
-            boolean ignoreSelfMatches, Map<String, Integer> summary) throws Exception {
+            boolean ignoreSelfMatches, ObjectStoreWriter writer, Map<String, Integer> summary)
+        throws Exception {
         LOG.info("Creating overlaps for id " + subject.getId() + ", identifier: "
                  + subject.getPrimaryIdentifier());
 
-        OverlapUtil.createOverlaps(os, subject, classNamesToIgnore, ignoreSelfMatches, osw,
+        OverlapUtil.createOverlaps(os, subject, classNamesToIgnore, ignoreSelfMatches, writer,
                 summary);
     }
 
@@ -0,0 +1,109 @@
+package org.intermine.bio.postprocess;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.log4j.Logger;
+import org.intermine.bio.util.FeatureDensities;
+import org.intermine.metadata.TypeUtil;
+import org.intermine.modelproduction.MetadataManager;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.intermine.ObjectStoreWriterInterMineImpl;
+import org.intermine.sql.Database;
+
+/**
+ * Count the sequence features located on each chromosome into bins, by organism and class, and
+ * store the counts in the metadata table so that genome browsers can show feature densities
+ * without running a count query for every bin.
+ *
+ * @see FeatureDensities
+ */
+public class CreateFeatureDensities
+{
+    private static final Logger LOG = Logger.getLogger(CreateFeatureDensities.class);
+    protected ObjectStoreWriterInterMineImpl osw;
+
+    /**
+     * Construct a new CreateFeatureDensities.
+     *
+     * @param osw an ObjectStoreWriter to fetch the database from
+     */
+    public CreateFeatureDensities(ObjectStoreWriter osw) {
+        if (osw instanceof ObjectStoreWriterInterMineImpl) {
+            this.osw = (ObjectStoreWriterInterMineImpl) osw;
+        } else {
+            throw new RuntimeException("The ObjectStoreWriter is not an "
+                                       + "ObjectStoreWriterInterMineImpl");
+        }
+    }
+
+    /**
+     * Count the features on every chromosome and store the counts, replacing any stored before.
+     *
+     * @param binSize the number of bases in each bin
+     * @throws SQLException if the database cannot be read or written
+     * @throws IOException if the counts cannot be written
+     */
+    public void create(int binSize) throws SQLException, IOException {
+        Database db = osw.getDatabase();
+        long startTime = System.currentTimeMillis();
+        FeatureDensities densities = new FeatureDensities(binSize);
+        int featureCount = 0;
+        Connection con = db.getConnection();
+        try {
+            // a cursor is needed to avoid holding every location in memory
+            con.setAutoCommit(false);
+            Statement s = con.createStatement();
+            s.setFetchSize(10000);
+            ResultSet r = s.executeQuery("SELECT f.class, o.taxonid, c.primaryidentifier,"
+                    + " l.intermine_start, l.intermine_end"
+                    + " FROM sequencefeature f, location l, chromosome c, organism o"
+                    + " WHERE f.chromosomelocationid = l.id AND l.locatedonid = c.id"
+                    + " AND f.organismid = o.id");
+            while (r.next()) {
+                String taxonId = String.valueOf(r.getInt(2));
+                String chromosome = r.getString(3);
+                int start = r.getInt(4);
+                int end = r.getInt(5);
+                // objects of more than one class have all their class names listed
+                for (String className : r.getString(1).trim().split(" ")) {
+                    densities.add(taxonId, chromosome, TypeUtil.unqualifiedName(className), start,
+                            end);
+                }
+                featureCount++;
+            }
+            r.close();
+            s.close();
+            con.commit();
+        } finally {
+            con.setAutoCommit(true);
+            con.close();
+        }
+        LOG.info("Counted " + featureCount + " features in "
+                + (System.currentTimeMillis() - startTime) + "ms");
+
+        MetadataManager.deleteLargeBinary(db, MetadataManager.FEATURE_DENSITIES);
+        OutputStream out = new BufferedOutputStream(MetadataManager.storeLargeBinary(db,
+                MetadataManager.FEATURE_DENSITIES));
+        try {
+            densities.write(out);
+        } finally {
+            out.close();
+        }
+    }
+}
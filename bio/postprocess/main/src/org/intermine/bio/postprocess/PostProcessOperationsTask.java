@@ -10,11 +10,14 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -23,6 +26,7 @@ import org.apache.log4j.Logger;
 import org.apache.tools.ant.BuildException;
 import org.intermine.api.config.ClassKeyHelper;
 import org.intermine.api.lucene.KeywordSearch;
+import org.intermine.bio.util.FeatureDensities;
 import org.intermine.metadata.FieldDescriptor;
 import org.intermine.modelproduction.MetadataManager;
 import org.intermine.objectstore.ObjectStore;
@@ -123,7 +127,7 @@ public class PostProcessOperationsTask extends DynamicAttributeTask
                 cr.createUtrRefs();
             } else if ("transfer-sequences".equals(operation)) {
                 TransferSequences ts = new TransferSequences(getObjectStoreWriter());
-                ts = new TransferSequences(getObjectStoreWriter());
+                configureDynamicAttributes(ts);
                 LOGGER.info("Starting TransferSequences.transferToLocatedSequenceFeatures()");
                 ts.transferToLocatedSequenceFeatures();
                 ts = new TransferSequences(getObjectStoreWriter());
@@ -166,6 +170,7 @@ public class PostProcessOperationsTask extends DynamicAttributeTask
                 }
 
                 CalculateLocations cl = new CalculateLocations(getObjectStoreWriter());
+                configureDynamicAttributes(cl);
                 cl.createOverlapRelations(classNamesToIgnoreList, false);
             } else if ("create-attribute-indexes".equals(operation)) {
                 CreateIndexesTask cit = new CreateIndexesTask();
@@ -197,7 +202,7 @@ public class PostProcessOperationsTask extends DynamicAttributeTask
                         0);
             } else if ("create-lucene-index".equals(operation)
                        || "create-autocomplete-index".equals(operation)) {
-                System.out .println("create lucene index ...");
+                System.out .println("create autocomplete index ...");
                 ObjectStore os = getObjectStoreWriter().getObjectStore();
                 if (!(os instanceof ObjectStoreInterMineImpl)) {
                     throw new RuntimeException("cannot summarise ObjectStore - must be an "
@@ -217,12 +222,21 @@ public class PostProcessOperationsTask extends DynamicAttributeTask
                 Database db = ((ObjectStoreInterMineImpl) os).getDatabase();
 
                 AutoCompleter ac = new AutoCompleter(os, properties);
-                if (ac.getBinaryIndexMap() != null) {
-                    MetadataManager.storeBinary(db, MetadataManager.AUTOCOMPLETE_INDEX,
-                                        ac.getBinaryIndexMap());
+                MetadataManager.deleteLargeBinary(db, MetadataManager.AUTOCOMPLETE_INDEX);
+                OutputStream out = new BufferedOutputStream(MetadataManager.storeLargeBinary(db,
+                        MetadataManager.AUTOCOMPLETE_INDEX));
+                try {
+                    ac.write(out);
+                } finally {
+                    out.close();
+                }
+            } else if ("create-search-index".equals(operation)
+                    || "update-search-index".equals(operation)) {
+                if ("update-search-index".equals(operation)) {
+                    System .out.println("Updating lucene index for keyword search...");
+                } else {
+                    System .out.println("Creating lucene index for keyword search...");
                 }
-            } else if ("create-search-index".equals(operation)) {
-                System .out.println("Creating lucene index for keyword search...");
 
                 ObjectStore os = getObjectStoreWriter().getObjectStore();
                 if (!(os instanceof ObjectStoreInterMineImpl)) {
@@ -250,7 +264,12 @@ public class PostProcessOperationsTask extends DynamicAttributeTask
                     ClassKeyHelper.readKeys(os.getModel(), classKeyProperties);
 
                 //index and save
-                KeywordSearch.saveIndexToDatabase(os, classKeys);
+                if ("update-search-index".equals(operation)) {
+                    KeywordSearch.updateIndexInDatabase(os, classKeys,
+                            Collections.<String>emptyList());
+                } else {
+                    KeywordSearch.saveIndexToDatabase(os, classKeys);
+                }
                 KeywordSearch.deleteIndexDirectory();
             } else if ("create-overlap-view".equals(operation)) {
                 OverlapViewTask ovt = new OverlapViewTask(getObjectStoreWriter());
@@ -270,6 +289,9 @@ public class PostProcessOperationsTask extends DynamicAttributeTask
                 CreateLocationOverlapIndex cloi =
                         new CreateLocationOverlapIndex(getObjectStoreWriter());
                 cloi.create();
+            } else if ("create-feature-densities".equals(operation)) {
+                CreateFeatureDensities cfd = new CreateFeatureDensities(getObjectStoreWriter());
+                cfd.create(FeatureDensities.DEFAULT_BIN_SIZE);
             }
 
         } catch (BuildException e) {
@@ -10,9 +10,15 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -30,6 +36,7 @@ import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreWriter;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.objectstore.query.Clob;
 import org.intermine.objectstore.query.ClobAccess;
 import org.intermine.metadata.ConstraintOp;
 import org.intermine.objectstore.query.ConstraintSet;
@@ -47,6 +54,8 @@ import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.objectstore.query.SingletonResults;
 import org.intermine.util.DynamicUtil;
+import org.intermine.util.IntToIntMap;
+import org.intermine.util.SynchronisedIterator;
 
 /**
  * Transfer sequences from the Assembly objects to the other objects that are located on the
@@ -59,6 +68,11 @@ public class TransferSequences
 {
     protected ObjectStoreWriter osw;
     private Model model;
+    private static final int WHOLE_CLOB_CACHE_SIZE = 100;
+    private int sequenceThreads = 1;
+    // ids of the features given a sequence by transferToLocatedSequenceFeatures(), mapped to the
+    // id of the chromosome that the sequence came from
+    private IntToIntMap transferred = new IntToIntMap();
     private static final Logger LOG = Logger.getLogger(TransferSequences.class);
 
     /**
@@ -107,7 +121,7 @@ public class TransferSequences
         SingletonResults res = os.executeSingleton(q);
         Iterator<?> chrIter = res.iterator();
 
-        Set<Chromosome> chromosomes = new HashSet<Chromosome>();
+        List<Chromosome> chromosomes = new ArrayList<Chromosome>();
         while (chrIter.hasNext()) {
             Chromosome chr = (Chromosome) chrIter.next();
             chromosomes.add(chr);
@@ -116,22 +130,117 @@ public class TransferSequences
         LOG.info("Found " + chromosomes.size() + " chromosomes with sequence, took "
                 + (System.currentTimeMillis() - startTime) + " ms.");
 
-        for (Chromosome chr : chromosomes) {
-            String organism = "";
-            if (chr.getOrganism() != null) {
-                organism = chr.getOrganism().getShortName();
+        if (sequenceThreads > 1) {
+            transferInParallel(chromosomes);
+        } else {
+            for (Chromosome chr : chromosomes) {
+                transferForChromosome(chr, osw);
             }
-            LOG.info("Starting transfer for " + organism + " chromosome "
-                    + chr.getPrimaryIdentifier());
-            transferForChromosome(chr);
         }
     }
 
+    /**
+     * Set the number of threads that transferToLocatedSequenceFeatures() uses. With more than one
+     * thread, each thread takes one chromosome at a time and stores its sequences through its own
+     * ObjectStoreWriter. The default is one thread.
+     *
+     * @param sequenceThreads the number of threads
+     */
+    public void setSequenceThreads(int sequenceThreads) {
+        this.sequenceThreads = sequenceThreads;
+    }
+
+    /**
+     * Transfer sequences for the given chromosomes using several threads. The chromosomes are
+     * handed out longest first, so that a long chromosome is not left until the end.
+     */
+    private void transferInParallel(List<Chromosome> chromosomes) throws Exception {
+        Collections.sort(chromosomes, new Comparator<Chromosome>() {
+            @Override
+            public int compare(Chromosome chr1, Chromosome chr2) {
+                int length1 = (chr1.getLength() == null ? -1 : chr1.getLength().intValue());
+                int length2 = (chr2.getLength() == null ? -1 : chr2.getLength().intValue());
+                return (length1 > length2 ? -1 : (length1 == length2 ? 0 : 1));
+            }
+        });
+        Iterator<Chromosome> chromosomeIter = new SynchronisedIterator<Chromosome>(
+                chromosomes.iterator());
+        List<Exception> exceptions = Collections.synchronizedList(new ArrayList<Exception>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < sequenceThreads; i++) {
+            Thread thread = new Thread(new TransferWorker(chromosomeIter, exceptions),
+                    "TransferSequences worker " + (i + 1));
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!exceptions.isEmpty()) {
+            throw new ObjectStoreException("Exception while transferring sequences in worker "
+                    + "thread", exceptions.get(0));
+        }
+    }
+
+    /**
+     * Transfers sequences for chromosomes taken from a shared iterator, until it is empty or
+     * another worker has failed.
+     */
+    private class TransferWorker implements Runnable
+    {
+        private Iterator<Chromosome> chromosomeIter;
+        private List<Exception> exceptions;
+
+        public TransferWorker(Iterator<Chromosome> chromosomeIter, List<Exception> exceptions) {
+            this.chromosomeIter = chromosomeIter;
+            this.exceptions = exceptions;
+        }
 
-    private void transferForChromosome(Chromosome chr) throws Exception {
+        @Override
+        public void run() {
+            ObjectStoreWriter workerOsw = null;
+            try {
+                workerOsw = osw.getObjectStore().getNewWriter();
+                try {
+                    while (exceptions.isEmpty()) {
+                        transferForChromosome(chromosomeIter.next(), workerOsw);
+                    }
+                } catch (NoSuchElementException e) {
+                    // This is fine - there are no more chromosomes to do.
+                }
+            } catch (Exception e) {
+                LOG.error("Exception while transferring sequences", e);
+                exceptions.add(e);
+                try {
+                    if ((workerOsw != null) && workerOsw.isInTransaction()) {
+                        workerOsw.abortTransaction();
+                    }
+                } catch (ObjectStoreException e2) {
+                    LOG.error("Could not abort transaction", e2);
+                }
+            } finally {
+                if (workerOsw != null) {
+                    try {
+                        workerOsw.close();
+                    } catch (ObjectStoreException e) {
+                        LOG.error("Could not close ObjectStoreWriter", e);
+                    }
+                }
+            }
+        }
+    }
 
+    private void transferForChromosome(Chromosome chr, ObjectStoreWriter writer)
+        throws Exception {
         long startTime = System.currentTimeMillis();
 
+        String organism = "";
+        if (chr.getOrganism() != null) {
+            organism = chr.getOrganism().getShortName();
+        }
+        LOG.info("Starting transfer for " + organism + " chromosome "
+                + chr.getPrimaryIdentifier());
+
         ObjectStore os = osw.getObjectStore();
         Query q = new Query();
         q.setDistinct(false);
@@ -167,7 +276,7 @@ public class TransferSequences
 
         q.setConstraint(cs);
 
-        osw.beginTransaction();
+        writer.beginTransaction();
 
         Set<QueryNode> indexesToCreate = new HashSet<QueryNode>();
         indexesToCreate.add(qcLoc);
@@ -228,15 +337,26 @@ public class TransferSequences
                     continue;
                 }
 
+                // a feature located on two chromosomes only gets a sequence from the first one
+                // to reach it, as it would if the chromosomes were done one after the other, and
+                // a feature located twice on the same chromosome gets the last sequence, as before
+                synchronized (transferred) {
+                    int fromChr = transferred.get(feature.getId().intValue());
+                    if ((fromChr != -1) && (fromChr != chr.getId().intValue())) {
+                        continue;
+                    }
+                    transferred.put(feature.getId().intValue(), chr.getId().intValue());
+                }
+
                 Sequence sequence =
                     (Sequence) DynamicUtil.createObject(Collections.singleton(Sequence.class));
                 sequence.setResidues(featureSeq);
                 sequence.setLength(featureSeq.length());
-                osw.store(sequence);
+                writer.store(sequence);
                 SequenceFeature cloneLsf = PostProcessUtil.cloneInterMineObject(feature);
                 cloneLsf.setSequence(sequence);
                 cloneLsf.setLength(new Integer(featureSeq.length()));
-                osw.store(cloneLsf);
+                writer.store(cloneLsf);
                 i++;
                 if (i % 1000 == 0) {
                     long now = System.currentTimeMillis();
@@ -251,12 +371,8 @@ public class TransferSequences
             }
         }
 
-        osw.commitTransaction();
+        writer.commitTransaction();
 
-        String organism = "";
-        if (chr.getOrganism() != null) {
-            organism = chr.getOrganism().getShortName();
-        }
         LOG.info("Finished setting " + i + " feature sequences for " + organism + " chromosome "
                 + chr.getPrimaryIdentifier() + " - took "
                 + (System.currentTimeMillis() - startTime) + " ms.");
@@ -387,6 +503,12 @@ public class TransferSequences
 
         SequenceFeature currentTranscript = null;
         StringBuffer currentTranscriptBases = new StringBuffer();
+        Map<Clob, ClobAccess> wholeClobs = new LinkedHashMap<Clob, ClobAccess>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Clob, ClobAccess> eldest) {
+                return size() > WHOLE_CLOB_CACHE_SIZE;
+            }
+        };
 
         long start = System.currentTimeMillis();
         int i = 0;
@@ -411,10 +533,11 @@ public class TransferSequences
 
             Sequence exonSequence = (Sequence) rr.get(2);
             Location  location = (Location) rr.get(3);
+            String exonBases = readResidues(exonSequence.getResidues(), wholeClobs);
             if (location.getStrand() != null && "-1".equals(location.getStrand())) {
-                currentTranscriptBases.insert(0, exonSequence.getResidues().toString());
+                currentTranscriptBases.insert(0, exonBases);
             } else {
-                currentTranscriptBases.append(exonSequence.getResidues().toString());
+                currentTranscriptBases.append(exonBases);
             }
         }
         if (currentTranscript == null) {
@@ -428,4 +551,26 @@ public class TransferSequences
 
         osw.commitTransaction();
     }
+
+    /**
+     * Read the residues of a Sequence. The residues of most exons are slices of a chromosome
+     * sequence, so they are read through one ClobAccess per chromosome, so that neighbouring
+     * exons share the pages fetched from the database rather than each fetching their own.
+     */
+    private static String readResidues(ClobAccess residues, Map<Clob, ClobAccess> wholeClobs) {
+        if (!residues.getSubSequence()) {
+            return residues.toString();
+        }
+        ClobAccess whole = wholeClobs.get(residues.getClob());
+        if (whole == null) {
+            whole = new ClobAccess(residues.getOs(), residues.getClob());
+            wholeClobs.put(residues.getClob(), whole);
+        }
+        int offset = residues.getOffset();
+        ClobAccess slice = whole.subSequence(offset, offset + residues.getLengthWithoutInit());
+        if (residues instanceof ClobAccessReverseComplement) {
+            slice = new ClobAccessReverseComplement(slice);
+        }
+        return slice.toString();
+    }
 }
@@ -14,6 +14,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import junit.framework.Assert;
@@ -28,12 +29,17 @@ import org.intermine.model.bio.Exon;
 import org.intermine.model.bio.Gene;
 import org.intermine.model.bio.Location;
 import org.intermine.model.bio.ReversePrimer;
+import org.intermine.model.bio.SequenceFeature;
 import org.intermine.model.bio.Transcript;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreWriter;
 import org.intermine.objectstore.ObjectStoreWriterFactory;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.objectstore.query.ContainsConstraint;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryCollectionReference;
+import org.intermine.objectstore.query.QueryField;
 import org.intermine.objectstore.query.SingletonResults;
 import org.intermine.util.DynamicUtil;
 import org.intermine.xml.full.ItemFactory;
@@ -60,6 +66,12 @@ public class CalculateLocationsTest extends TestCase
         if (osw.isInTransaction()) {
             osw.abortTransaction();
         }
+        deleteAll();
+        osw.close();
+        LOG.info("closed objectstore");
+    }
+
+    private void deleteAll() throws Exception {
         Query q = new Query();
         QueryClass qc = new QueryClass(InterMineObject.class);
         q.addFrom(qc);
@@ -75,16 +87,18 @@ public class CalculateLocationsTest extends TestCase
         }
         osw.commitTransaction();
         LOG.info("committed transaction");
-        osw.close();
-        LOG.info("closed objectstore");
     }
 
     private void createOverlapTestData() throws Exception {
+        createOverlapTestData("X", 0);
+    }
+
+    private void createOverlapTestData(String identifier, int idOffset) throws Exception {
         Chromosome chr =
             (Chromosome) DynamicUtil.createObject(Collections.singleton(Chromosome.class));
-        chr.setPrimaryIdentifier("X");
+        chr.setPrimaryIdentifier(identifier);
         chr.setLength(new Integer(1000));
-        chr.setId(new Integer(101));
+        chr.setId(new Integer(101 + idOffset));
 
         Set<InterMineObject> toStore = new HashSet<InterMineObject>();
 
@@ -119,7 +133,7 @@ public class CalculateLocationsTest extends TestCase
 
         for (int i = 0; i < exons.length; i++) {
             exons[i] = (Exon) DynamicUtil.createObject(Collections.singleton(Exon.class));
-            int exonId = exonInfo[i][0];
+            int exonId = exonInfo[i][0] + idOffset;
             int start = exonInfo[i][1];
             int end = exonInfo[i][2];
             exons[i].setId(new Integer(exonId));
@@ -131,12 +145,12 @@ public class CalculateLocationsTest extends TestCase
 
         ReversePrimer rp =
             (ReversePrimer) DynamicUtil.createObject(Collections.singleton(ReversePrimer.class));
-        rp.setId(new Integer(3000));
+        rp.setId(new Integer(3000 + idOffset));
         rp.setLength(new Integer(100));
         rp.setChromosome(chr);
 
         Location rpLoc = createLocation(chr, rp, "1", 1, 100, Location.class);
-        rpLoc.setId(new Integer(3001));
+        rpLoc.setId(new Integer(3001 + idOffset));
 
         toStore.add(rp);
         toStore.add(rpLoc);
@@ -271,6 +285,49 @@ public class CalculateLocationsTest extends TestCase
 //    }
 
 
+    public void testCreateOverlapThreads() throws Exception {
+        String[] chromosomes = {"X", "2L", "2R", "3L"};
+        for (int i = 0; i < chromosomes.length; i++) {
+            createOverlapTestData(chromosomes[i], i * 10000);
+        }
+        CalculateLocations cl = new CalculateLocations(osw);
+        cl.createOverlapRelations(Collections.singletonList("Primer=Exon"), false);
+        Set<String> expected = getOverlaps(0);
+        assertFalse(expected.isEmpty());
+
+        // the overlaps of deleted objects are not returned by getOverlaps()
+        deleteAll();
+        osw.getObjectStore().flushObjectById();
+        for (int i = 0; i < chromosomes.length; i++) {
+            createOverlapTestData(chromosomes[i], 100000 + i * 10000);
+        }
+        cl = new CalculateLocations(osw);
+        cl.setOverlapThreads(3);
+        cl.createOverlapRelations(Collections.singletonList("Primer=Exon"), false);
+        assertFalse(osw.isInTransaction());
+        assertEquals(expected, getOverlaps(100000));
+    }
+
+    // returns the overlapping pairs of ids, less the given offset
+    private Set<String> getOverlaps(int idOffset) throws Exception {
+        Query q = new Query();
+        QueryClass qc1 = new QueryClass(SequenceFeature.class);
+        QueryClass qc2 = new QueryClass(SequenceFeature.class);
+        q.addFrom(qc1);
+        q.addFrom(qc2);
+        q.addToSelect(new QueryField(qc1, "id"));
+        q.addToSelect(new QueryField(qc2, "id"));
+        q.setConstraint(new ContainsConstraint(new QueryCollectionReference(qc1,
+                "overlappingFeatures"), ConstraintOp.CONTAINS, qc2));
+        Set<String> overlaps = new HashSet<String>();
+        for (Object row : osw.getObjectStore().execute(q)) {
+            List<?> ids = (List<?>) row;
+            overlaps.add((((Integer) ids.get(0)).intValue() - idOffset) + "-"
+                    + (((Integer) ids.get(1)).intValue() - idOffset));
+        }
+        return overlaps;
+    }
+
     public void testCreateSpanningLocations() throws Exception {
         Exon exon1 = (Exon) DynamicUtil.createObject(Collections.singleton(Exon.class));
         exon1.setId(new Integer(107));
@@ -198,6 +198,49 @@ public class TransferSequencesTest extends TestCase
         checkExonSequences();
     }
 
+    public void testTransferToLocatedSequenceFeaturesThreads() throws Exception {
+        // a second chromosome with the same sequence, with an exon of its own and one that is
+        // also located on the first chromosome
+        Chromosome chr2 =
+            (Chromosome) DynamicUtil.createObject(Collections.singleton(Chromosome.class));
+        chr2.setLength(new Integer(4000));
+        chr2.setId(new Integer(102));
+        chr2.setPrimaryIdentifier("store_chromosome_2");
+        Sequence chr2Sequence =
+            (Sequence) DynamicUtil.createObject(Collections.singleton(Sequence.class));
+        PendingClob clob = new PendingClob(storedChrSequence);
+        chr2Sequence.setResidues(clob.subSequence(0, storedChrSequence.length()));
+        chr2.setSequence(chr2Sequence);
+        Exon chr2Exon = (Exon) DynamicUtil.createObject(Collections.singleton(Exon.class));
+        chr2Exon.setPrimaryIdentifier("exon_chr2");
+        Location chr2ExonLoc = createLocation(chr2, chr2Exon, "1", 2273, 2314);
+        chr2Exon.setChromosomeLocation(chr2ExonLoc);
+        Location sharedLoc = createLocation(chr2, storedExons[4], "-1", 1954, 2105);
+
+        osw.beginTransaction();
+        osw.store(chr2Sequence);
+        osw.store(chr2);
+        osw.store(chr2Exon);
+        osw.store(chr2ExonLoc);
+        osw.store(sharedLoc);
+        osw.commitTransaction();
+
+        TransferSequences ts = new TransferSequences(osw);
+        ts.setSequenceThreads(3);
+        ts.transferToLocatedSequenceFeatures();
+        checkExonSequences();
+        Exon resExon = (Exon) osw.getObjectStore().getObjectById(chr2Exon.getId());
+        assertEquals(expectedExonSequence1, resExon.getSequence().getResidues().toString());
+
+        // the shared exon has one sequence, not one from each chromosome
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Sequence.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        // two chromosomes, exon 0, transcript 0 and nine transferred sequences
+        assertEquals(13, osw.getObjectStore().executeSingleton(q).size());
+    }
+
     public void testTranscriptSequence() throws Exception {
         TransferSequences ts = new TransferSequences(osw);
         ts.transferToLocatedSequenceFeatures();
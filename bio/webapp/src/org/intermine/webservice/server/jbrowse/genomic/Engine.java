@@ -15,6 +15,9 @@ import static java.lang.String.format;
 import static org.intermine.pathquery.Constraints.eq;
 import static org.intermine.webservice.server.jbrowse.Queries.pathQueryToOSQ;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -23,6 +26,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -33,12 +37,15 @@ import java.util.concurrent.Future;
 import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.log4j.Logger;
 import org.intermine.api.InterMineAPI;
+import org.intermine.bio.util.FeatureDensities;
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.ConstraintOp;
 import org.intermine.metadata.Model;
 import org.intermine.model.FastPathObject;
+import org.intermine.modelproduction.MetadataManager;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.ContainsConstraint;
 import org.intermine.objectstore.query.Query;
@@ -75,6 +82,10 @@ import org.intermine.webservice.server.jbrowse.Segment;
  *  field.</li>
  *  <li>SequenceFeatures have name, symbol, primaryIdentifer, and score fields.</li>
  * </ul>
+ * <p>
+ * If the create-feature-densities postprocess has been run, densities and statistics for regions
+ * covering enough bins are read from the stored FeatureDensities instead of being counted.
+ * </p>
  * @author Alex Kalderimis
  *
  */
@@ -86,6 +97,11 @@ public class Engine extends CommandRunner
     private final Model model;
     private static final Map<Command, Map<String, Object>> STATS_CACHE =
             new CacheMap<Command, Map<String, Object>>("jbrowse.genomic.engine.STATS_CACHE");
+    // The stored feature densities for each ObjectStore, or null if there are none.
+    private static final Map<ObjectStore, FeatureDensities> DENSITIES =
+            new WeakHashMap<ObjectStore, FeatureDensities>();
+    // Regions must cover this many density bins to be counted from them.
+    private static final int MIN_DENSITY_BINS = 10;
 
     /**
      * constructor
@@ -98,7 +114,11 @@ public class Engine extends CommandRunner
 
     @Override
     public void stats(Command command) {
-        Map<String, Object> stats;
+        Map<String, Object> stats = getStatsFromDensities(command);
+        if (stats != null) {
+            sendMap(stats);
+            return;
+        }
         Query q = getStatsQuery(command);
         // Stats can be expensive to calculate, so they are independently cached.
         synchronized (STATS_CACHE) {
@@ -198,24 +218,28 @@ public class Engine extends CommandRunner
     @Override
     public void densities(Command command) {
         final int nSlices = getNumberOfSlices(command);
-        List<PathQuery> segmentQueries = getSliceQueries(command, nSlices);
-        List<Future<Integer>> pending = countInParallel(segmentQueries);
-        List<Integer> results = new ArrayList<Integer>();
+        List<Integer> results = getSliceCountsFromDensities(command, nSlices);
+        if (results == null) {
+            List<PathQuery> segmentQueries = getSliceQueries(command, nSlices);
+            List<Future<Integer>> pending = countInParallel(segmentQueries);
+            results = new ArrayList<Integer>();
+            for (Future<Integer> future: pending) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
 
         int max = 0, sum = 0;
-        for (Future<Integer> future: pending) {
-            try {
-                Integer r = future.get();
-                if (r != null && r > max) {
-                    max = r;
-                }
-                sum += r;
-                results.add(r);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            } catch (ExecutionException e) {
-                throw new RuntimeException(e);
+        for (Integer r: results) {
+            if (r != null && r > max) {
+                max = r;
             }
+            sum += r;
         }
         double mean = Double.valueOf(sum) / results.size();
 
@@ -245,6 +269,103 @@ public class Engine extends CommandRunner
 
     //------------ PRIVATE METHODS --------------------//
 
+    // The feature densities for the current ObjectStore, or null if they have not been created.
+    private FeatureDensities getFeatureDensities() {
+        ObjectStore os = getAPI().getObjectStore();
+        synchronized (DENSITIES) {
+            if (!DENSITIES.containsKey(os)) {
+                FeatureDensities densities = null;
+                if (os instanceof ObjectStoreInterMineImpl) {
+                    try {
+                        InputStream is = MetadataManager.readLargeBinary(
+                                ((ObjectStoreInterMineImpl) os).getDatabase(),
+                                MetadataManager.FEATURE_DENSITIES);
+                        if (is != null) {
+                            try {
+                                densities = FeatureDensities.read(is);
+                            } finally {
+                                is.close();
+                            }
+                        }
+                    } catch (SQLException e) {
+                        LOG.warn("Could not read feature densities", e);
+                    } catch (IOException e) {
+                        LOG.warn("Could not read feature densities", e);
+                    }
+                }
+                DENSITIES.put(os, densities);
+            }
+            return DENSITIES.get(os);
+        }
+    }
+
+    // The densities that can count features in the given region, or null if there are none or
+    // the region is too small for them to be accurate.
+    private FeatureDensities getFeatureDensities(Command command, Segment segment, int width) {
+        if (segment == null || segment == Segment.NEGATIVE_SEGMENT
+                || segment == Segment.GLOBAL_SEGMENT || segment.getSection() == null
+                || segment.getWidth() == null) {
+            return null;
+        }
+        FeatureDensities densities = getFeatureDensities();
+        if (densities == null || !densities.hasOrganism(command.getDomain())
+                || width < MIN_DENSITY_BINS * densities.getBinSize()) {
+            return null;
+        }
+        return densities;
+    }
+
+    // The unqualified names of the feature type of a command and all its subclasses.
+    private Collection<String> getFeatureClassNames(Command command) {
+        ClassDescriptor cd = model.getClassDescriptorByName(command.getType("SequenceFeature"));
+        if (cd == null) {
+            return null;
+        }
+        List<String> classNames = new ArrayList<String>();
+        classNames.add(cd.getUnqualifiedName());
+        for (ClassDescriptor sub : model.getAllSubs(cd)) {
+            classNames.add(sub.getUnqualifiedName());
+        }
+        return classNames;
+    }
+
+    private List<Integer> getSliceCountsFromDensities(Command command, int nSlices) {
+        Segment segment = command.getSegment();
+        if (nSlices < 1 || segment == null || segment.getWidth() == null) {
+            return null;
+        }
+        FeatureDensities densities = getFeatureDensities(command, segment,
+                segment.getWidth() / nSlices);
+        Collection<String> classNames = getFeatureClassNames(command);
+        if (densities == null || classNames == null) {
+            return null;
+        }
+        List<Integer> results = new ArrayList<Integer>();
+        for (Segment s: sliceUp(nSlices, segment)) {
+            results.add(densities.count(command.getDomain(), s.getSection(), classNames,
+                    s.getStart(), s.getEnd()));
+        }
+        return results;
+    }
+
+    private Map<String, Object> getStatsFromDensities(Command command) {
+        Segment segment = command.getSegment();
+        if (segment == null || segment.getWidth() == null) {
+            return null;
+        }
+        FeatureDensities densities = getFeatureDensities(command, segment, segment.getWidth());
+        Collection<String> classNames = getFeatureClassNames(command);
+        if (densities == null || classNames == null) {
+            return null;
+        }
+        int count = densities.count(command.getDomain(), segment.getSection(), classNames,
+                segment.getStart(), segment.getEnd());
+        Map<String, Object> stats = new HashMap<String, Object>();
+        stats.put("featureDensity", Double.valueOf(count) / segment.getWidth());
+        stats.put("featureCount",   count);
+        return stats;
+    }
+
     private static int getNumberOfSlices(Command command) {
         int defaultNum = 10;
         String bpb = command.getParameter("basesPerBin");
@@ -185,6 +185,18 @@ public class BagQuery
         return q;
     }
 
+    /**
+     * Return a Query that fetches every object this bag query can find, with the fields that
+     * identifiers are matched against, for building an IdentifierIndex.
+     *
+     * @param extraFieldValue the value used if any extra constraint is configured
+     * @return the Query
+     * @throws ClassNotFoundException if class specified by type not found
+     */
+    public Query getQueryForIndex(String extraFieldValue) throws ClassNotFoundException {
+        return getQueryForWildcards(Collections.singleton("*"), extraFieldValue);
+    }
+
     /**
      * Finds all BagConstraints in a Constraint, and places the QueryEvaluable and the containing
      * ConstraintSet into the given Map.
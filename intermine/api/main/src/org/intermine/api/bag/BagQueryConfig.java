@@ -28,6 +28,7 @@ public class BagQueryConfig
     private final Map<String, List<BagQuery>> preDefaultBagQueries;
     private Map<String, Set<AdditionalConverter>> additionalConverters;
     private boolean matchOnFirst = true;
+    private boolean useIndex = false;
 
     /**
      * Create a new BagQueryConfig object.
@@ -152,4 +153,22 @@ public class BagQueryConfig
     public boolean getMatchOnFirst() {
         return matchOnFirst;
     }
+
+    /**
+     * If flag is true, bagqueryrunner resolves identifiers from in-memory IdentifierIndexes built
+     * from the bag queries, rather than running each query in the database for every search.
+     * @param useIndex the flag to set
+     */
+    public void setUseIndex(boolean useIndex) {
+        this.useIndex = useIndex;
+    }
+
+    /**
+     * If flag is true, bagqueryrunner resolves identifiers from in-memory IdentifierIndexes built
+     * from the bag queries, rather than running each query in the database for every search.
+     * @return the useIndex flag
+     */
+    public boolean getUseIndex() {
+        return useIndex;
+    }
 }
@@ -81,6 +81,9 @@ public class BagQueryHandler extends DefaultHandler
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attrs)
         throws SAXException {
+        if ("bag-queries".equals(qName)) {
+            bagQueryConfig.setUseIndex(Boolean.valueOf(attrs.getValue("useIndex")).booleanValue());
+        }
         if ("bag-type".equals(qName)) {
             type = attrs.getValue("type");
             if (!model.hasClassDescriptor(pkg + "." + type)) {
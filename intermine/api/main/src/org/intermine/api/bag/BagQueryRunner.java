@@ -12,6 +12,7 @@ package org.intermine.api.bag;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -158,26 +159,37 @@ public class BagQueryRunner
                 Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
                 try {
                     Set<String> toProcess = (matchOnFirst) ? unresolved : unresolvedOriginal;
-                    Query q = bq.getQuery(toProcess, extraFieldValue);
-                    Results res = os.execute(q, 10000, true, true, false);
-                    for (Object rowObj : res) {
-                        ResultsRow<?> row = (ResultsRow<?>) rowObj;
-                        Integer id = (Integer) row.get(0);
-                        for (int i = 1; i < row.size(); i++) {
-                            final Object fieldObject = row.get(i);
-                            if (fieldObject != null) {
-                                String field = String.valueOf(fieldObject);
-                                String lowerField = field.toLowerCase();
-                                if (caseSensitive) {
-                                    if (cleanInput.contains(field)) {
-                                        processMatch(resMap, unresolved, id, field);
+                    IdentifierIndex index = getIndex(bq, extraFieldValue);
+                    if (index != null) {
+                        for (String inputString : new ArrayList<String>(toProcess)) {
+                            Set<Integer> ids = new LinkedHashSet<Integer>();
+                            index.lookup(inputString, caseSensitive, ids);
+                            for (Integer id : ids) {
+                                processMatch(resMap, unresolved, id, inputString);
+                            }
+                        }
+                    } else {
+                        Query q = bq.getQuery(toProcess, extraFieldValue);
+                        Results res = os.execute(q, 10000, true, true, false);
+                        for (Object rowObj : res) {
+                            ResultsRow<?> row = (ResultsRow<?>) rowObj;
+                            Integer id = (Integer) row.get(0);
+                            for (int i = 1; i < row.size(); i++) {
+                                final Object fieldObject = row.get(i);
+                                if (fieldObject != null) {
+                                    String field = String.valueOf(fieldObject);
+                                    String lowerField = field.toLowerCase();
+                                    if (caseSensitive) {
+                                        if (cleanInput.contains(field)) {
+                                            processMatch(resMap, unresolved, id, field);
+                                        }
+                                    } else if (lowerCaseInput.containsKey(lowerField)) {
+                                        // because we are converting to lower case we need to match
+                                        // to original input so that 'h' matches 'H' and 'h' becomes
+                                        // a duplicate.
+                                        String originalInput = lowerCaseInput.get(lowerField);
+                                        processMatch(resMap, unresolved, id, originalInput);
                                     }
-                                } else if (lowerCaseInput.containsKey(lowerField)) {
-                                    // because we are converting to lower case we need to match
-                                    // to original input so that 'h' matches 'H' and 'h' becomes
-                                    // a duplicate.
-                                    String originalInput = lowerCaseInput.get(lowerField);
-                                    processMatch(resMap, unresolved, id, originalInput);
                                 }
                             }
                         }
@@ -188,7 +200,26 @@ public class BagQueryRunner
                 addResults(resMap, unresolved, bqr, bq.getMessage(), typeCls, false,
                             matchOnFirst, bq.matchesAreIssues());
             }
+            IdentifierIndex index = null;
             if (!wildcardInput.isEmpty()) {
+                try {
+                    index = getIndex(bq, extraFieldValue);
+                } catch (IllegalArgumentException e) {
+                    // Query couldn't handle extra value
+                }
+            }
+            if (!wildcardInput.isEmpty() && (index != null)) {
+                Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
+                for (String wildcard : wildcardInput) {
+                    Set<Integer> ids = new LinkedHashSet<Integer>();
+                    index.lookup(patterns.get(wildcard), getWildcardPrefix(wildcard), ids);
+                    for (Integer id : ids) {
+                        processMatch(resMap, wildcardUnresolved, id, wildcard);
+                    }
+                }
+                addWildcardResults(resMap, wildcardUnresolved, wildcardUnresolvedOriginal, bqr,
+                        bq, typeCls, matchOnFirst);
+            } else if (!wildcardInput.isEmpty()) {
                 Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
 
                 Query q = bq.getQueryForWildcards(wildcardInput, extraFieldValue);
@@ -208,20 +239,8 @@ public class BagQueryRunner
                         }
                     }
                 }
-                for (Map.Entry<String, Set<Integer>> entry : resMap.entrySet()) {
-                    // This is a dummy issue just to give a message when running queries
-                    bqr.addIssue(BagQueryResult.WILDCARD, bq.getMessage(),
-                            entry.getKey(), new ArrayList<Object>(entry.getValue()));
-                    if (matchOnFirst) {
-                        addResults(resMap, wildcardUnresolved, bqr, bq.getMessage(),
-                                typeCls, true, matchOnFirst, bq.matchesAreIssues());
-                    } else {
-                        addResults(resMap, wildcardUnresolvedOriginal, bqr, bq.getMessage(),
-                                typeCls, true, matchOnFirst, bq.matchesAreIssues());
-                    }
-
-                }
-
+                addWildcardResults(resMap, wildcardUnresolved, wildcardUnresolvedOriginal, bqr,
+                        bq, typeCls, matchOnFirst);
             }
         }
 
@@ -231,6 +250,48 @@ public class BagQueryRunner
         return bqr;
     }
 
+    private void addWildcardResults(Map<String, Set<Integer>> resMap,
+            Set<String> wildcardUnresolved, Set<String> wildcardUnresolvedOriginal,
+            BagQueryResult bqr, BagQuery bq, Class<?> typeCls, boolean matchOnFirst)
+        throws InterMineException {
+        for (Map.Entry<String, Set<Integer>> entry : resMap.entrySet()) {
+            // This is a dummy issue just to give a message when running queries
+            bqr.addIssue(BagQueryResult.WILDCARD, bq.getMessage(),
+                    entry.getKey(), new ArrayList<Object>(entry.getValue()));
+            if (matchOnFirst) {
+                addResults(resMap, wildcardUnresolved, bqr, bq.getMessage(),
+                        typeCls, true, matchOnFirst, bq.matchesAreIssues());
+            } else {
+                addResults(resMap, wildcardUnresolvedOriginal, bqr, bq.getMessage(),
+                        typeCls, true, matchOnFirst, bq.matchesAreIssues());
+            }
+        }
+    }
+
+    /**
+     * Returns the IdentifierIndex for a bag query, or null if indexes are not configured or the
+     * index is still being built.
+     */
+    private IdentifierIndex getIndex(BagQuery bq, String extraFieldValue)
+        throws ClassNotFoundException {
+        if (!bagQueryConfig.getUseIndex()) {
+            return null;
+        }
+        return IdentifierIndex.getInstance(os, bq.getQueryForIndex(extraFieldValue));
+    }
+
+    /**
+     * Returns the literal start of a wildcard, lower-cased, up to the first character that might
+     * mean something in a pattern.
+     */
+    static String getWildcardPrefix(String wildcard) {
+        int i = 0;
+        while ((i < wildcard.length()) && Character.isLetterOrDigit(wildcard.charAt(i))) {
+            i++;
+        }
+        return wildcard.substring(0, i).toLowerCase();
+    }
+
     private static void processMatch(Map<String, Set<Integer>> resMap, Set<String> unresolved,
         Integer id, String field) {
         Set<Integer> ids = resMap.get(field);
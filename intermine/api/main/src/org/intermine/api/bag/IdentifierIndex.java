@@ -0,0 +1,246 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.util.CacheMap;
+
+/**
+ * An in-memory sorted table of the identifiers that a bag query matches against, for resolving
+ * list input without running the query for every search. The table holds every field value
+ * returned by the query from BagQuery.getQueryForIndex, lower-cased and sorted, with the ids of
+ * the objects that have that value, so there is one index for each bag query, type and extra
+ * field value (such as organism).
+ * <p>
+ * Indexes are built in the background the first time they are asked for, one at a time so that
+ * the database is not swamped, and are rebuilt if the tables they were read from change. Until an
+ * index is ready, getInstance returns null and the caller should run the query instead.
+ */
+public final class IdentifierIndex
+{
+    private static final Logger LOG = Logger.getLogger(IdentifierIndex.class);
+    private static final int BATCH_SIZE = 20000;
+
+    private static Map<ObjectStore, Map<String, IdentifierIndex>> indexes
+        = new WeakHashMap<ObjectStore, Map<String, IdentifierIndex>>();
+    private static Set<String> building = new HashSet<String>();
+    private static ExecutorService builder = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "IdentifierIndex builder");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private final Set<Object> components;
+    private final Map<Object, Integer> sequence;
+    // the distinct lower-cased values, sorted
+    private final String[] keys;
+    // the matches for keys[i] are at offsets[i] to offsets[i + 1] in ids and values
+    private final int[] offsets;
+    private final int[] ids;
+    private final String[] values;
+
+    /**
+     * Construct an index from the rows of an index query, each of which holds an object id
+     * followed by the field values to match.
+     *
+     * @param rows the results of the query
+     * @param components the tables the query reads, from ObjectStore.getComponentsForQuery
+     * @param sequence the sequence of those tables before the query was run
+     */
+    IdentifierIndex(Iterable<?> rows, Set<Object> components, Map<Object, Integer> sequence) {
+        this.components = components;
+        this.sequence = sequence;
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Object o : rows) {
+            ResultsRow<?> row = (ResultsRow<?>) o;
+            int id = ((Integer) row.get(0)).intValue();
+            for (int i = 1; i < row.size(); i++) {
+                Object field = row.get(i);
+                if (field != null) {
+                    String value = String.valueOf(field);
+                    entries.add(new Entry(value.toLowerCase(), id, value));
+                }
+            }
+        }
+        Collections.sort(entries);
+        List<String> keyList = new ArrayList<String>();
+        int[] offsetList = new int[entries.size() + 1];
+        ids = new int[entries.size()];
+        values = new String[entries.size()];
+        int count = 0;
+        Entry previous = null;
+        for (Entry entry : entries) {
+            if ((previous != null) && (previous.compareTo(entry) == 0)) {
+                continue;
+            }
+            String key = entry.key;
+            if ((previous == null) || !previous.key.equals(key)) {
+                offsetList[keyList.size()] = count;
+                keyList.add(key);
+            } else {
+                key = previous.key;
+            }
+            ids[count] = entry.id;
+            // share the key string when the value is already lower case
+            values[count] = (entry.value.equals(key) ? key : entry.value);
+            count++;
+            previous = entry;
+        }
+        offsetList[keyList.size()] = count;
+        keys = keyList.toArray(new String[keyList.size()]);
+        offsets = Arrays.copyOf(offsetList, keys.length + 1);
+    }
+
+    /**
+     * Returns the index for a query, if it has been built and the database has not changed since.
+     * Otherwise, starts building the index in the background and returns null.
+     *
+     * @param os the ObjectStore to run the query in
+     * @param q a query from BagQuery.getQueryForIndex
+     * @return an IdentifierIndex, or null if it is not ready yet
+     */
+    public static IdentifierIndex getInstance(final ObjectStore os, final Query q) {
+        final String key = q.toString();
+        synchronized (indexes) {
+            Map<String, IdentifierIndex> osIndexes = indexes.get(os);
+            if (osIndexes == null) {
+                osIndexes = new CacheMap<String, IdentifierIndex>();
+                indexes.put(os, osIndexes);
+            }
+            IdentifierIndex retval = osIndexes.get(key);
+            if ((retval != null) && retval.sequence.equals(os.getSequence(retval.components))) {
+                return retval;
+            }
+            if (!building.add(key)) {
+                return null;
+            }
+        }
+        builder.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long start = System.currentTimeMillis();
+                    Set<Object> components = os.getComponentsForQuery(q);
+                    Map<Object, Integer> sequence = os.getSequence(components);
+                    IdentifierIndex index = new IdentifierIndex(
+                            os.execute(q, BATCH_SIZE, true, true, false), components, sequence);
+                    LOG.info("Built identifier index of " + index.keys.length + " values in "
+                            + (System.currentTimeMillis() - start) + " ms for " + key);
+                    synchronized (indexes) {
+                        Map<String, IdentifierIndex> osIndexes = indexes.get(os);
+                        if (osIndexes != null) {
+                            osIndexes.put(key, index);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    LOG.error("Failed to build identifier index for " + key, e);
+                } finally {
+                    synchronized (indexes) {
+                        building.remove(key);
+                    }
+                }
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Finds the objects with a field value that matches an identifier.
+     *
+     * @param identifier the identifier to look up
+     * @param caseSensitive true if the value has to match the case of the identifier too
+     * @param matches a Collection to add the ids of the matching objects to
+     */
+    public void lookup(String identifier, boolean caseSensitive, Collection<Integer> matches) {
+        int i = Arrays.binarySearch(keys, identifier.toLowerCase());
+        if (i >= 0) {
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                if (!caseSensitive || values[j].equals(identifier)) {
+                    matches.add(new Integer(ids[j]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the objects with a field value that matches a wildcard pattern. Only the values that
+     * start with the given prefix are tested against the pattern.
+     *
+     * @param pattern a Pattern to match against the lower-cased field values
+     * @param prefix a lower-case prefix of every value that the pattern can match
+     * @param matches a Collection to add the ids of the matching objects to
+     */
+    public void lookup(Pattern pattern, String prefix, Collection<Integer> matches) {
+        int i = Arrays.binarySearch(keys, prefix);
+        for (i = (i < 0 ? -i - 1 : i); (i < keys.length) && keys[i].startsWith(prefix); i++) {
+            if (pattern.matcher(keys[i]).matches()) {
+                for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                    matches.add(new Integer(ids[j]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of distinct values in the index.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    private static final class Entry implements Comparable<Entry>
+    {
+        private final String key;
+        private final int id;
+        private final String value;
+
+        Entry(String key, int id, String value) {
+            this.key = key;
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int retval = key.compareTo(o.key);
+            if (retval == 0) {
+                retval = (id < o.id ? -1 : (id == o.id ? 0 : 1));
+            }
+            if (retval == 0) {
+                retval = value.compareTo(o.value);
+            }
+            return retval;
+        }
+    }
+}
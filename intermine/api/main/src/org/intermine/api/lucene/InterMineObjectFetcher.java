@@ -45,8 +45,10 @@ import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryCollectionReference;
 import org.intermine.objectstore.query.QueryField;
 import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.QueryValue;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.pathquery.PathException;
 import org.intermine.util.DynamicUtil;
 import org.intermine.util.ObjectPipe;
@@ -76,6 +78,8 @@ public class InterMineObjectFetcher extends Thread
     final Map<Class<?>, Vector<ClassAttributes>> decomposedClassesCache =
             new HashMap<Class<?>, Vector<ClassAttributes>>();
     private Map<String, String> attributePrefixes = null;
+    private Integer aboveId = null;
+    private Collection<Integer> objectIds = null;
 
     Field idField = null;
     Field categoryField = null;
@@ -124,6 +128,17 @@ public class InterMineObjectFetcher extends Thread
         this.attributePrefixes = attributePrefixes;
     }
 
+    /**
+     * Fetch only some objects, for updating an existing index, rather than all of them. Must be
+     * called before the thread is started.
+     * @param aboveId fetch objects with an ID greater than this
+     * @param objectIds fetch objects with these IDs as well, or null for no others
+     */
+    public void restrictToObjects(Integer aboveId, Collection<Integer> objectIds) {
+        this.aboveId = aboveId;
+        this.objectIds = objectIds;
+    }
+
     /**
      * get list of fields contained in the fetched documents
      * @return fields
@@ -156,7 +171,22 @@ public class InterMineObjectFetcher extends Thread
                 q.addToSelect(qc);
 
                 QueryField qf = new QueryField(qc, "class");
-                q.setConstraint(new BagConstraint(qf, ConstraintOp.NOT_IN, ignoredClasses));
+                if (aboveId == null) {
+                    q.setConstraint(new BagConstraint(qf, ConstraintOp.NOT_IN, ignoredClasses));
+                } else {
+                    QueryField qfId = new QueryField(qc, "id");
+                    ConstraintSet objects = new ConstraintSet(ConstraintOp.OR);
+                    objects.addConstraint(new SimpleConstraint(qfId,
+                            ConstraintOp.GREATER_THAN, new QueryValue(aboveId)));
+                    if (objectIds != null && !objectIds.isEmpty()) {
+                        objects.addConstraint(new BagConstraint(qfId, ConstraintOp.IN,
+                                objectIds));
+                    }
+                    ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+                    cs.addConstraint(new BagConstraint(qf, ConstraintOp.NOT_IN, ignoredClasses));
+                    cs.addConstraint(objects);
+                    q.setConstraint(cs);
+                }
 
                 LOG.info("QUERY: " + q.toString());
 
@@ -20,6 +20,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Collection;
@@ -71,7 +78,12 @@ import org.intermine.modelproduction.MetadataManager.LargeObjectOutputStream;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryFunction;
 import org.intermine.sql.Database;
+import org.intermine.sql.DatabaseUtil;
 import org.intermine.util.ObjectPipe;
 
 import com.browseengine.bobo.api.BoboBrowser;
@@ -103,6 +115,7 @@ import com.browseengine.bobo.facets.impl.SimpleFacetHandler;
 public final class KeywordSearch
 {
     private static final String LUCENE_INDEX_DIR = "keyword_search_index";
+    private static final String TRACKER_TABLE = "tracker";
 
     /**
      * maximum number of hits returned
@@ -116,13 +129,13 @@ public final class KeywordSearch
 
     private static final Logger LOG = Logger.getLogger(KeywordSearch.class);
 
-    private static IndexReader reader = null;
-    private static BoboIndexReader boboIndexReader = null;
+    private static Readers readers = null;
     private static ObjectPipe<Document> indexingQueue = new ObjectPipe<Document>(100000);
-    private static LuceneIndexContainer index = null;
+    private static volatile LuceneIndexContainer index = null;
 
     private static Properties properties = null;
     private static String tempDirectory = null;
+    private static String mmapDirectory = null;
     private static Map<Class<? extends InterMineObject>, String[]> specialReferences;
     private static Set<Class<? extends InterMineObject>> ignoredClasses;
     private static Map<Class<? extends InterMineObject>, Set<String>> ignoredFields;
@@ -257,6 +270,8 @@ public final class KeywordSearch
                     }
 
                     tempDirectory = properties.getProperty("index.temp.directory", "");
+                    mmapDirectory = StringUtils.trimToNull(
+                            properties.getProperty("index.mmap.directory"));
                 }
             } catch (IOException e) {
                 LOG.error("keyword_search.properties: errow while loading file '" + configFileName
@@ -294,6 +309,7 @@ public final class KeywordSearch
 
         LOG.info("Search - Debug mode: " + debugOutput);
         LOG.info("Indexing - Temp Dir: " + tempDirectory);
+        LOG.info("Search - Memory mapped index directory: " + mmapDirectory);
     }
 
     private static void addAttributePrefix(String classAndAttribute, String prefix) {
@@ -316,6 +332,14 @@ public final class KeywordSearch
      */
     public static synchronized void initKeywordSearch(InterMineAPI im, String path) {
         try {
+            if (properties == null) {
+                parseProperties(im.getObjectStore());
+            }
+
+            if (index == null && mmapDirectory != null) {
+                // use a local copy of the index if there is an up to date one
+                index = loadMappedIndex(im.getObjectStore());
+            }
 
             if (index == null) {
                 // try to load index from database first
@@ -327,42 +351,257 @@ public final class KeywordSearch
                 return;
             }
 
-            if (properties == null) {
-                parseProperties(im.getObjectStore());
+            openReaders();
+        } catch (CorruptIndexException e) {
+            LOG.error(e);
+        } catch (IOException e) {
+            LOG.error(e);
+        }
+    }
+
+    private static synchronized void openReaders() throws IOException {
+        if (readers == null) {
+            IndexReader reader = IndexReader.open(index.getDirectory(), true);
+            // prepare faceting
+            HashSet<FacetHandler<?>> facetHandlers = new HashSet<FacetHandler<?>>();
+            facetHandlers.add(new SimpleFacetHandler("Category"));
+            for (KeywordSearchFacetData facet : facets) {
+                if (facet.getType().equals(KeywordSearchFacetType.MULTI)) {
+                    facetHandlers.add(new MultiValueFacetHandler(facet.getField()));
+                } else if (facet.getType().equals(KeywordSearchFacetType.PATH)) {
+                    facetHandlers.add(new PathFacetHandler("path_"
+                            + facet.getName().toLowerCase()));
+                } else {
+                    facetHandlers.add(new SimpleFacetHandler(facet.getField()));
+                }
             }
 
-            if (reader == null) {
-                reader = IndexReader.open(index.getDirectory(), true);
+            BoboIndexReader boboIndexReader = BoboIndexReader.getInstance(reader, facetHandlers);
+            readers = new Readers(reader, boboIndexReader);
+
+            LOG.debug("Fields:"
+                    + Arrays.toString(boboIndexReader.getFieldNames(FieldOption.ALL)
+                            .toArray()));
+            LOG.debug("Indexed fields:"
+                    + Arrays.toString(boboIndexReader.getFieldNames(FieldOption.INDEXED)
+                            .toArray()));
+        }
+    }
+
+    /**
+     * Loads the index from the local copy in index.mmap.directory that matches the version saved
+     * in the database, extracting it there first if there is no copy. If there is only an older
+     * copy, that is used while the current version is extracted in the background.
+     */
+    private static LuceneIndexContainer loadMappedIndex(ObjectStore os) {
+        if (!(os instanceof ObjectStoreInterMineImpl)) {
+            return null;
+        }
+        Database db = ((ObjectStoreInterMineImpl) os).getDatabase();
+        try {
+            String version = MetadataManager.retrieve(db, MetadataManager.SEARCH_INDEX_VERSION);
+            if (version == null) {
+                LOG.warn("No search index version saved, so index.mmap.directory can't be used"
+                        + " - the index needs to be built again");
+                return null;
             }
+            LuceneIndexContainer ret = restoreIndex(db);
+            if (ret == null || !"FSDirectory".equals(ret.getDirectoryType())) {
+                return null;
+            }
+            final VersionedIndexDirectory dirs =
+                    new VersionedIndexDirectory(new File(mmapDirectory));
+            if (!dirs.isExtracted(version)) {
+                File stale = dirs.findLatestExtracted();
+                if (stale != null) {
+                    // the field names may not match exactly until the new version is in use
+                    LOG.warn("Search index copy " + stale + " is stale, using it until version "
+                            + version + " has been extracted");
+                    ret.setDirectory(VersionedIndexDirectory.open(stale));
+                    new MappedIndexRefresher(db, dirs, version, ret).start();
+                    return ret;
+                }
+                extractIndex(db, dirs, version);
+            }
+            ret.setDirectory(VersionedIndexDirectory.open(dirs.getDirectory(version)));
+            dirs.removeOtherVersions(version);
+            LOG.info("Using search index copy " + dirs.getDirectory(version));
+            return ret;
+        } catch (ClassNotFoundException e) {
+            LOG.error("Could not load search index", e);
+        } catch (SQLException e) {
+            LOG.error("Could not load search index", e);
+        } catch (IOException e) {
+            LOG.error("Could not load search index", e);
+        }
+        return null;
+    }
 
-            if (boboIndexReader == null) {
-                // prepare faceting
-                HashSet<FacetHandler<?>> facetHandlers = new HashSet<FacetHandler<?>>();
-                facetHandlers.add(new SimpleFacetHandler("Category"));
-                for (KeywordSearchFacetData facet : facets) {
-                    if (facet.getType().equals(KeywordSearchFacetType.MULTI)) {
-                        facetHandlers.add(new MultiValueFacetHandler(facet.getField()));
-                    } else if (facet.getType().equals(KeywordSearchFacetType.PATH)) {
-                        facetHandlers.add(new PathFacetHandler("path_"
-                                + facet.getName().toLowerCase()));
-                    } else {
-                        facetHandlers.add(new SimpleFacetHandler(facet.getField()));
-                    }
+    private static void extractIndex(Database db, VersionedIndexDirectory dirs, String version)
+        throws SQLException, IOException {
+        InputStream is = MetadataManager.readLargeBinary(db,
+                MetadataManager.SEARCH_INDEX_DIRECTORY);
+        if (is == null) {
+            throw new IOException("Could not find search directory!");
+        }
+        try {
+            dirs.extract(version, is);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Switches searches over to a new copy of the index. The readers of the previous copy are
+     * closed as soon as the searches that are using them have finished.
+     */
+    private static synchronized void useIndex(LuceneIndexContainer newIndex) throws IOException {
+        Readers oldReaders = readers;
+        readers = null;
+        index = newIndex;
+        openReaders();
+        if (oldReaders != null) {
+            oldReaders.retire();
+        }
+    }
+
+    /**
+     * Returns the readers of the index in use, which must be released once the search using them
+     * has finished.
+     */
+    private static synchronized Readers acquireReaders() {
+        if (readers != null) {
+            readers.acquire();
+        }
+        return readers;
+    }
+
+    /**
+     * The readers of one copy of the index, with a count of the searches that are using them.
+     * Once the readers have been replaced by those of a newer copy, they are closed when the
+     * count drops to zero.
+     */
+    static final class Readers
+    {
+        private final IndexReader reader;
+        private final BoboIndexReader boboIndexReader;
+        private int users = 0;
+        private boolean retired = false;
+        private boolean closed = false;
+
+        /**
+         * Constructor.
+         * @param reader the reader of the index
+         * @param boboIndexReader the faceting reader that wraps it
+         */
+        Readers(IndexReader reader, BoboIndexReader boboIndexReader) {
+            this.reader = reader;
+            this.boboIndexReader = boboIndexReader;
+        }
+
+        /**
+         * @return the reader of the index
+         */
+        IndexReader getReader() {
+            return reader;
+        }
+
+        /**
+         * @return the faceting reader
+         */
+        BoboIndexReader getBoboIndexReader() {
+            return boboIndexReader;
+        }
+
+        /**
+         * Records that a search is using the readers.
+         */
+        synchronized void acquire() {
+            users++;
+        }
+
+        /**
+         * Records that a search has finished with the readers, closing them if they have been
+         * retired and no other search is using them.
+         */
+        synchronized void release() {
+            users--;
+            closeIfUnused();
+        }
+
+        /**
+         * Marks the readers as replaced, closing them now if no search is using them.
+         */
+        synchronized void retire() {
+            retired = true;
+            closeIfUnused();
+        }
+
+        /**
+         * @return true if the readers have been closed
+         */
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        private void closeIfUnused() {
+            if (!retired || users > 0 || closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (boboIndexReader != null) {
+                    boboIndexReader.close();
                 }
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                LOG.error("Not able to close Lucene index reader.", e);
+            }
+        }
+    }
 
-                boboIndexReader = BoboIndexReader.getInstance(reader, facetHandlers);
+    /**
+     * Extracts the current version of the index while a stale copy is in use, then switches
+     * searches over to it.
+     */
+    private static class MappedIndexRefresher extends Thread
+    {
+        private final Database db;
+        private final VersionedIndexDirectory dirs;
+        private final String version;
+        private final LuceneIndexContainer container;
+
+        MappedIndexRefresher(Database db, VersionedIndexDirectory dirs, String version,
+                LuceneIndexContainer container) {
+            super("KeywordSearch index refresh");
+            setDaemon(true);
+            this.db = db;
+            this.dirs = dirs;
+            this.version = version;
+            this.container = container;
+        }
 
-                LOG.debug("Fields:"
-                        + Arrays.toString(boboIndexReader.getFieldNames(FieldOption.ALL)
-                                .toArray()));
-                LOG.debug("Indexed fields:"
-                        + Arrays.toString(boboIndexReader.getFieldNames(FieldOption.INDEXED)
-                                .toArray()));
+        @Override
+        public void run() {
+            try {
+                long time = System.currentTimeMillis();
+                extractIndex(db, dirs, version);
+                LuceneIndexContainer newIndex = new LuceneIndexContainer();
+                newIndex.setDirectoryType(container.getDirectoryType());
+                newIndex.setFieldNames(container.getFieldNames());
+                newIndex.setFieldBoosts(container.getFieldBoosts());
+                newIndex.setDirectory(VersionedIndexDirectory.open(dirs.getDirectory(version)));
+                useIndex(newIndex);
+                dirs.removeOtherVersions(version);
+                LOG.info("Switched to search index version " + version + " after "
+                        + (System.currentTimeMillis() - time) + " ms");
+            } catch (SQLException e) {
+                LOG.error("Could not refresh search index copy", e);
+            } catch (IOException e) {
+                LOG.error("Could not refresh search index copy", e);
             }
-        } catch (CorruptIndexException e) {
-            LOG.error(e);
-        } catch (IOException e) {
-            LOG.error(e);
         }
     }
 
@@ -424,6 +663,9 @@ public final class KeywordSearch
                 LOG.debug("No previous search index blob found in db");
             }
 
+            // the saved version is out of date until the new directory has been saved
+            MetadataManager.store(db, MetadataManager.SEARCH_INDEX_VERSION, null);
+
             LOG.debug("Saving search index information to database...");
             writeObjectToDB(os, MetadataManager.SEARCH_INDEX, index);
             LOG.debug("Successfully saved search index information to database.");
@@ -431,6 +673,7 @@ public final class KeywordSearch
             // if we have a FSDirectory we need to zip and save that separately
             if ("FSDirectory".equals(index.getDirectoryType())) {
                 ZipOutputStream zipOut = null;
+                DigestOutputStream digestOut = null;
                 final int bufferSize = 2048;
 
                 try {
@@ -450,7 +693,9 @@ public final class KeywordSearch
                             MetadataManager.storeLargeBinary(db,
                                     MetadataManager.SEARCH_INDEX_DIRECTORY);
 
-                    zipOut = new ZipOutputStream(streamOut);
+                    digestOut = new DigestOutputStream(streamOut,
+                            MessageDigest.getInstance("MD5"));
+                    zipOut = new ZipOutputStream(digestOut);
 
                     byte[] data = new byte[bufferSize];
 
@@ -490,8 +735,16 @@ public final class KeywordSearch
                         }
                         LOG.debug("Finished storing file: " + file.getName());
                     }
+                    zipOut.close();
+                    zipOut = null;
+                    String version = String.format("%032x",
+                            new BigInteger(1, digestOut.getMessageDigest().digest()));
+                    MetadataManager.store(db, MetadataManager.SEARCH_INDEX_VERSION, version);
+                    LOG.debug("Saved search index version " + version);
                 } catch (IOException e) {
                     LOG.error("Error storing index", e);
+                } catch (NoSuchAlgorithmException e) {
+                    LOG.error("Error storing index", e);
                 } finally {
                     if (zipOut != null) {
                         zipOut.close();
@@ -511,6 +764,62 @@ public final class KeywordSearch
         }
     }
 
+    /**
+     * Brings the index saved in the database up to date and saves it again. Only objects that
+     * are new since the index was built, and objects that the data tracker records as written by
+     * a data source that was not in the tracker when the index was built, are re-indexed. A
+     * source that has been loaded again under the same name must be named in reindexSources.
+     * Changes to referenced objects that are indexed with another object (index.references) are
+     * not picked up unless that object is re-indexed too. If there is no saved index, or it was
+     * saved without the information needed to update it, the whole index is built instead.
+     *
+     * @param os intermine objectstore
+     * @param classKeys map of classname to key field descriptors (from InterMineAPI)
+     * @param reindexSources names of data sources whose objects should be re-indexed in any case
+     */
+    public static void updateIndexInDatabase(ObjectStore os,
+            Map<String, List<FieldDescriptor>> classKeys, Collection<String> reindexSources) {
+        parseProperties(os);
+        Database db = ((ObjectStoreInterMineImpl) os).getDatabase();
+        LuceneIndexContainer saved = null;
+        try {
+            saved = restoreIndex(db);
+        } catch (Exception e) {
+            LOG.warn("Could not read the saved search index", e);
+        }
+        if (saved == null || saved.getMaxObjectId() == null || saved.getTrackedSources() == null
+                || !"FSDirectory".equals(saved.getDirectoryType())) {
+            LOG.info("No updatable search index saved - building the whole index");
+            saveIndexToDatabase(os, classKeys);
+            return;
+        }
+        try {
+            index = saved;
+            File tempFile = makeTempFile();
+            InputStream is = MetadataManager.readLargeBinary(db,
+                    MetadataManager.SEARCH_INDEX_DIRECTORY);
+            if (is == null) {
+                LOG.warn("Could not find search directory - building the whole index");
+                deleteIndexDirectory();
+                saveIndexToDatabase(os, classKeys);
+                return;
+            }
+            try {
+                index.setDirectory(readFSDirectory(tempFile, is));
+            } finally {
+                is.close();
+            }
+            updateIndex(os, classKeys, reindexSources);
+        } catch (IOException e) {
+            LOG.error(null, e);
+            throw new RuntimeException("Index update failed: ", e);
+        } catch (SQLException e) {
+            LOG.error(null, e);
+            throw new RuntimeException("Index update failed: ", e);
+        }
+        saveIndexToDatabase(os, classKeys);
+    }
+
     /**
      * perform a keyword search over all document metadata fields with lucene
      * @param searchString
@@ -526,6 +835,11 @@ public final class KeywordSearch
 
         long time = System.currentTimeMillis();
 
+        Readers searchReaders = acquireReaders();
+        if (searchReaders == null) {
+            return matches;
+        }
+        IndexReader reader = searchReaders.getReader();
         IndexSearcher searcher = null;
         try {
             searcher = new IndexSearcher(reader);
@@ -573,6 +887,7 @@ public final class KeywordSearch
             } catch (IOException e) {
                 LOG.warn("Error closing searcher", e);
             }
+            searchReaders.release();
         }
 
         LOG.info("Lucene search finished in " + (System.currentTimeMillis() - time) + " ms");
@@ -719,6 +1034,10 @@ public final class KeywordSearch
         if (index == null) {
             return result;
         }
+        Readers searchReaders = acquireReaders();
+        if (searchReaders == null) {
+            return result;
+        }
         long time = System.currentTimeMillis();
         String queryString = parseQueryString(searchString);
 
@@ -737,7 +1056,7 @@ public final class KeywordSearch
             org.apache.lucene.search.Query query = queryParser.parse(queryString);
 
             // required to expand search terms
-            query = query.rewrite(reader);
+            query = query.rewrite(searchReaders.getReader());
 
             if (debugOutput) {
                 LOG.debug("Rewritten query: " + query);
@@ -798,7 +1117,7 @@ public final class KeywordSearch
             // execute query and return result
             Browsable browser = null;
             try {
-                browser = new BoboBrowser(boboIndexReader);
+                browser = new BoboBrowser(searchReaders.getBoboIndexReader());
                 result = browser.browse(browseRequest);
             } finally {
                 if (browser != null) {
@@ -824,6 +1143,8 @@ public final class KeywordSearch
         } catch (BrowseException e) {
             // just return an empty list
             LOG.info("Exception caught, returning no results", e);
+        } finally {
+            searchReaders.release();
         }
 
         LOG.debug("Bobo browse finished in " + (System.currentTimeMillis() - time) + " ms");
@@ -924,10 +1245,17 @@ public final class KeywordSearch
     }
 
     private static FSDirectory readFSDirectory(String path, InputStream is)
+        throws IOException, FileNotFoundException {
+        return readFSDirectory(new File(path + File.separator + LUCENE_INDEX_DIR), is);
+    }
+
+    /**
+     * Extract a zipped FSDirectory, as saved in the database.
+     */
+    static FSDirectory readFSDirectory(File directoryPath, InputStream is)
         throws IOException, FileNotFoundException {
         long time = System.currentTimeMillis();
         final int bufferSize = 2048;
-        File directoryPath = new File(path + File.separator + LUCENE_INDEX_DIR);
         LOG.debug("Directory path: " + directoryPath);
 
         // make sure we start with a new index
@@ -1047,6 +1375,8 @@ public final class KeywordSearch
         parseProperties(os);
 
         LOG.info("Starting fetcher thread...");
+        Integer maxObjectId = getMaxObjectId(os);
+        HashSet<String> trackedSources = getTrackedSources(os);
         InterMineObjectFetcher fetchThread =
                 new InterMineObjectFetcher(os, classKeys, indexingQueue, ignoredClasses,
                         ignoredFields, specialReferences, classBoost, facets, attributePrefixes);
@@ -1055,19 +1385,7 @@ public final class KeywordSearch
         // index the docs queued by the fetchers
         LOG.info("Preparing indexer...");
         index = new LuceneIndexContainer();
-        try {
-            tempFile = makeTempFile(tempDirectory);
-        } catch (IOException e) {
-            String tmpDir = System.getProperty("java.io.tmpdir");
-            LOG.warn("Failed to create temp directory " + tempDirectory + " trying " + tmpDir
-                    + " instead", e);
-            try {
-                tempFile = makeTempFile(tmpDir);
-            } catch (IOException ee) {
-                LOG.warn("Failed to create temp directory in " + tmpDir, ee);
-                throw ee;
-            }
-        }
+        tempFile = makeTempFile();
 
         LOG.info("Index directory: " + tempFile.getAbsolutePath());
 
@@ -1077,6 +1395,73 @@ public final class KeywordSearch
         writer.setMergeFactor(10); //10 default, higher values = more parts
         writer.setRAMBufferSizeMB(64); //flush to disk when docs take up X MB
 
+        int indexed = indexDocuments(writer, fetchThread, time);
+        index.getFieldNames().addAll(fetchThread.getFieldNames());
+        index.setMaxObjectId(maxObjectId);
+        index.setTrackedSources(trackedSources);
+        LOG.debug("Indexing done, optimizing index files...");
+        try {
+            writer.optimize();
+            writer.close();
+        } catch (IOException e) {
+            LOG.error("IOException while optimizing and closing IndexWriter", e);
+        }
+
+        time = System.currentTimeMillis() - time;
+        int seconds = (int) Math.floor(time / 1000);
+        LOG.info("Indexing of " + indexed + " documents finished in "
+                + String.format("%02d:%02d.%03d", (int) Math.floor(seconds / 60), seconds % 60,
+                        time % 1000) + " minutes");
+        return tempFile;
+    }
+
+    /**
+     * Updates the index held in the index field, which must be a copy of a saved index in an
+     * FSDirectory, re-indexing the objects that are new or that have been written by a new data
+     * source since the index was built. New segments are added to the existing ones, and Lucene
+     * merges them as usual.
+     */
+    private static void updateIndex(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys,
+            Collection<String> reindexSources) throws IOException, SQLException {
+        long time = System.currentTimeMillis();
+        Integer maxObjectId = getMaxObjectId(os);
+        HashSet<String> trackedSources = getTrackedSources(os);
+
+        Set<String> sources = new HashSet<String>(trackedSources);
+        sources.removeAll(index.getTrackedSources());
+        sources.addAll(reindexSources);
+        Set<Integer> changedIds = getObjectIdsFromSources(os, sources, index.getMaxObjectId());
+        LOG.info("Updating keyword search index: objects with ID above " + index.getMaxObjectId()
+                + " and " + changedIds.size() + " objects from the sources " + sources);
+
+        IndexWriter writer = new IndexWriter(index.getDirectory(), new WhitespaceAnalyzer(),
+                false, IndexWriter.MaxFieldLength.UNLIMITED);
+        writer.setMergeFactor(10);
+        writer.setRAMBufferSizeMB(64);
+        for (Integer id : changedIds) {
+            writer.deleteDocuments(new Term("id", id.toString()));
+        }
+
+        InterMineObjectFetcher fetchThread =
+                new InterMineObjectFetcher(os, classKeys, indexingQueue, ignoredClasses,
+                        ignoredFields, specialReferences, classBoost, facets, attributePrefixes);
+        fetchThread.restrictToObjects(index.getMaxObjectId(), changedIds);
+        fetchThread.start();
+        int indexed = indexDocuments(writer, fetchThread, time);
+        index.getFieldNames().addAll(fetchThread.getFieldNames());
+        index.setMaxObjectId(maxObjectId);
+        index.setTrackedSources(trackedSources);
+        writer.close();
+
+        LOG.info("Updating the index with " + indexed + " documents finished in "
+                + (System.currentTimeMillis() - time) + " ms");
+    }
+
+    /**
+     * Adds the documents made by a fetcher to the index, until the fetcher has finished.
+     */
+    private static int indexDocuments(IndexWriter writer, InterMineObjectFetcher fetchThread,
+            long time) {
         int indexed = 0;
 
         // loop and index while we still have fetchers running
@@ -1104,21 +1489,117 @@ public final class KeywordSearch
                 }
             }
         }
-        index.getFieldNames().addAll(fetchThread.getFieldNames());
-        LOG.debug("Indexing done, optimizing index files...");
+        return indexed;
+    }
+
+    /**
+     * Returns the highest object ID in the objectstore, or null if it can't be found, in which
+     * case the index will not be updatable.
+     */
+    private static Integer getMaxObjectId(ObjectStore os) {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(InterMineObject.class);
+        q.addFrom(qc);
+        q.addToSelect(new QueryFunction(new QueryField(qc, "id"), QueryFunction.MAX));
         try {
-            writer.optimize();
-            writer.close();
-        } catch (IOException e) {
-            LOG.error("IOException while optimizing and closing IndexWriter", e);
+            Object max = os.executeSingleton(q).get(0);
+            return new Integer(max == null ? 0 : ((Number) max).intValue());
+        } catch (RuntimeException e) {
+            LOG.warn("Could not find the highest object ID - the index will not be updatable", e);
+            return null;
         }
+    }
 
-        time = System.currentTimeMillis() - time;
-        int seconds = (int) Math.floor(time / 1000);
-        LOG.info("Indexing of " + indexed + " documents finished in "
-                + String.format("%02d:%02d.%03d", (int) Math.floor(seconds / 60), seconds % 60,
-                        time % 1000) + " minutes");
-        return tempFile;
+    /**
+     * Returns the names of the data sources that the data tracker has recorded, which is empty
+     * if there is no tracker table.
+     */
+    private static HashSet<String> getTrackedSources(ObjectStore os) {
+        HashSet<String> sources = new HashSet<String>();
+        Connection c = null;
+        try {
+            c = ((ObjectStoreInterMineImpl) os).getDatabase().getConnection();
+            if (DatabaseUtil.tableExists(c, TRACKER_TABLE)) {
+                ResultSet r = c.createStatement().executeQuery("SELECT DISTINCT sourcename FROM "
+                        + TRACKER_TABLE);
+                while (r.next()) {
+                    sources.add(r.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            LOG.warn("Could not read data sources from the tracker table", e);
+        } finally {
+            closeConnection(c);
+        }
+        return sources;
+    }
+
+    /**
+     * Returns the IDs of the objects no higher than maxObjectId that the data tracker records as
+     * having a field from one of the given sources.
+     */
+    private static Set<Integer> getObjectIdsFromSources(ObjectStore os, Collection<String> sources,
+            Integer maxObjectId) throws SQLException {
+        Set<Integer> ids = new HashSet<Integer>();
+        if (sources.isEmpty()) {
+            return ids;
+        }
+        Connection c = null;
+        try {
+            c = ((ObjectStoreInterMineImpl) os).getDatabase().getConnection();
+            if (!DatabaseUtil.tableExists(c, TRACKER_TABLE)) {
+                return ids;
+            }
+            StringBuilder sql = new StringBuilder("SELECT DISTINCT objectid FROM "
+                    + TRACKER_TABLE + " WHERE objectid <= ? AND sourcename IN (");
+            for (int i = 0; i < sources.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            PreparedStatement ps = c.prepareStatement(sql.toString());
+            ps.setInt(1, maxObjectId.intValue());
+            int param = 2;
+            for (String source : sources) {
+                ps.setString(param++, source);
+            }
+            ResultSet r = ps.executeQuery();
+            while (r.next()) {
+                ids.add(new Integer(r.getInt(1)));
+            }
+        } finally {
+            closeConnection(c);
+        }
+        return ids;
+    }
+
+    private static void closeConnection(Connection c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (SQLException e) {
+                LOG.warn("Error closing connection", e);
+            }
+        }
+    }
+
+    /**
+     * Creates a new temporary directory for the index, trying the configured temp directory and
+     * then the system one.
+     */
+    private static File makeTempFile() throws IOException {
+        try {
+            return makeTempFile(tempDirectory);
+        } catch (IOException e) {
+            String tmpDir = System.getProperty("java.io.tmpdir");
+            LOG.warn("Failed to create temp directory " + tempDirectory + " trying " + tmpDir
+                    + " instead", e);
+            try {
+                return makeTempFile(tmpDir);
+            } catch (IOException ee) {
+                LOG.warn("Failed to create temp directory in " + tmpDir, ee);
+                throw ee;
+            }
+        }
     }
 
     private static File makeTempFile(String tempDir) throws IOException {
@@ -1230,29 +1711,17 @@ public final class KeywordSearch
     /**
      * set all the variables to NULL
      */
-    public static void close() {
-        if (reader != null) {
-            try {
-                reader.close();
-            } catch (IOException e) {
-                LOG.error("Not able to free Lucene index file.");
-                e.printStackTrace();
-            }
-        }
-        reader = null;
-        if (boboIndexReader != null) {
-            try {
-                boboIndexReader.close();
-            } catch (IOException e) {
-                LOG.error("Not able to close bobo Index Reader (Lucene).");
-                e.printStackTrace();
-            }
+    public static synchronized void close() {
+        if (readers != null) {
+            // closed once any searches that are still running have finished
+            readers.retire();
         }
-        boboIndexReader = null;
+        readers = null;
         indexingQueue = null;
         index = null;
         properties = null;
         tempDirectory = null;
+        mmapDirectory = null;
         specialReferences = null;
         ignoredClasses = null;
         ignoredFields = null;
@@ -29,6 +29,10 @@ class LuceneIndexContainer implements Serializable
     private String directoryType;
     private HashSet<String> fieldNames = new HashSet<String>();
     private HashMap<String, Float> fieldBoosts = new HashMap<String, Float>();
+    // What had been loaded when the index was built, for updating it later. These are null for
+    // indexes saved before this was recorded.
+    private Integer maxObjectId;
+    private HashSet<String> trackedSources;
 
     /**
      * get lucene directory for this index
@@ -98,9 +102,43 @@ class LuceneIndexContainer implements Serializable
         this.fieldBoosts = fieldBoosts;
     }
 
+    /**
+     * get the highest object ID in the objectstore when the index was built
+     * @return an ID, or null if not known
+     */
+    public Integer getMaxObjectId() {
+        return maxObjectId;
+    }
+
+    /**
+     * set the highest object ID in the objectstore when the index was built
+     * @param maxObjectId
+     *            an ID
+     */
+    public void setMaxObjectId(Integer maxObjectId) {
+        this.maxObjectId = maxObjectId;
+    }
+
+    /**
+     * get the names of the data sources in the data tracker when the index was built
+     * @return source names, or null if not known
+     */
+    public HashSet<String> getTrackedSources() {
+        return trackedSources;
+    }
+
+    /**
+     * set the names of the data sources in the data tracker when the index was built
+     * @param trackedSources
+     *            source names
+     */
+    public void setTrackedSources(HashSet<String> trackedSources) {
+        this.trackedSources = trackedSources;
+    }
+
     @Override
     public String toString() {
         return "INDEX [[" + directory + "" + ", fields = " + fieldNames + "" + ", boosts = "
-                + fieldBoosts + "" + "]]";
+                + fieldBoosts + "" + ", maxObjectId = " + maxObjectId + "]]";
     }
 }
@@ -0,0 +1,151 @@
+package org.intermine.api.lucene;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.store.MMapDirectory;
+
+/**
+ * A local directory holding extracted copies of the search index, one sub-directory per index
+ * version, named after the checksum that was stored in the database with the index. A copy is
+ * extracted under a temporary name and renamed when it is complete, so any sub-directory with a
+ * version name is a whole index, and a copy whose name does not match the version in the database
+ * is stale.
+ */
+final class VersionedIndexDirectory
+{
+    private static final Logger LOG = Logger.getLogger(VersionedIndexDirectory.class);
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final long PARTIAL_MAX_AGE = 24L * 60 * 60 * 1000;
+
+    private final File baseDir;
+
+    /**
+     * Constructor.
+     * @param baseDir the directory to keep the index copies in
+     */
+    VersionedIndexDirectory(File baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    /**
+     * @param version an index version
+     * @return the directory that holds, or would hold, that version of the index
+     */
+    File getDirectory(String version) {
+        return new File(baseDir, version);
+    }
+
+    /**
+     * @param version an index version
+     * @return true if that version of the index has been extracted
+     */
+    boolean isExtracted(String version) {
+        return getDirectory(version).isDirectory();
+    }
+
+    /**
+     * Find the most recently extracted copy of the index, whatever its version.
+     * @return a directory, or null if there are none
+     */
+    File findLatestExtracted() {
+        File latest = null;
+        File[] dirs = baseDir.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (dir.isDirectory() && !dir.getName().contains(PARTIAL_SUFFIX)
+                        && (latest == null || dir.lastModified() > latest.lastModified())) {
+                    latest = dir;
+                }
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Extract a zipped index, as saved in the database, as the given version.
+     * @param version the version of the index
+     * @param zipped the zipped index files
+     * @return the directory holding the index
+     * @throws IOException if the index can't be written
+     */
+    File extract(String version, InputStream zipped) throws IOException {
+        if (!baseDir.isDirectory() && !baseDir.mkdirs()) {
+            throw new IOException("Could not create index directory " + baseDir);
+        }
+        File partial = File.createTempFile("index_" + version, PARTIAL_SUFFIX, baseDir);
+        if (!partial.delete()) {
+            throw new IOException("Could not delete temp file " + partial);
+        }
+        File dir = getDirectory(version);
+        try {
+            KeywordSearch.readFSDirectory(partial, zipped);
+            if (!partial.renameTo(dir) && !isExtracted(version)) {
+                throw new IOException("Could not rename " + partial + " to " + dir);
+            }
+        } finally {
+            // left behind if another process extracted the same version first
+            delete(partial);
+        }
+        return dir;
+    }
+
+    /**
+     * Delete every copy of the index except the given version. Copies that are still open may
+     * not be deletable on some platforms, and are left for next time.
+     * @param version the version to keep
+     */
+    void removeOtherVersions(String version) {
+        File[] dirs = baseDir.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        for (File dir : dirs) {
+            if (dir.getName().contains(PARTIAL_SUFFIX)
+                    && System.currentTimeMillis() - dir.lastModified() < PARTIAL_MAX_AGE) {
+                // may be being extracted by another process sharing this directory
+                continue;
+            }
+            if (dir.isDirectory() && !dir.getName().equals(version)) {
+                LOG.info("Deleting stale search index copy: " + dir);
+                delete(dir);
+            }
+        }
+    }
+
+    /**
+     * Open an extracted copy of the index.
+     * @param dir the directory of the copy
+     * @return a memory mapped directory
+     * @throws IOException if the directory can't be opened
+     */
+    static MMapDirectory open(File dir) throws IOException {
+        return new MMapDirectory(dir);
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    LOG.warn("Could not delete " + file);
+                }
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            LOG.warn("Could not delete " + dir);
+        }
+    }
+}
@@ -78,10 +78,8 @@ public abstract class AbstractTracker implements Tracker
     public void storeTrack(Track track) {
         if (trackTableName != null) {
             if (track.validate()) {
-                try {
-                    trackQueue.add(track);
-                } catch (IllegalStateException ise) {
-                    LOG.error("Problem adding the track to the queue", ise);
+                if (!trackQueue.offer(track)) {
+                    LOG.debug("The track queue is full, dropping the track");
                 }
             } else {
                 LOG.error("Failed to write to track table: input non valid");
@@ -0,0 +1,70 @@
+package org.intermine.api.tracker;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.intermine.api.tracker.track.Track;
+
+/**
+ * The bounded queue of tracks waiting to be written by the TrackerLogger. When the queue is full,
+ * offering a track waits for up to maxWait milliseconds for space, so that the threads serving
+ * requests are held back rather than tracks being lost, and then drops the track. With a maxWait
+ * of 0, tracks are dropped straight away. Dropped tracks are counted.
+ */
+public class TrackQueue extends LinkedBlockingQueue<Track>
+{
+    private static final long serialVersionUID = 1L;
+
+    private final long maxWait;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Construct a TrackQueue.
+     * @param capacity the maximum number of tracks to hold
+     * @param maxWait the number of milliseconds to wait for space when the queue is full
+     */
+    public TrackQueue(int capacity, long maxWait) {
+        super(capacity);
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Add a track to the queue, waiting for space if the queue is full and dropping the track if
+     * none is made in time.
+     * @param track the track to add
+     * @return true if the track was added, false if it was dropped
+     */
+    @Override
+    public boolean offer(Track track) {
+        boolean added = super.offer(track);
+        if (!added && maxWait > 0) {
+            try {
+                added = super.offer(track, maxWait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!added) {
+            dropped.incrementAndGet();
+        }
+        return added;
+    }
+
+    /**
+     * Return the number of tracks dropped because the queue was full
+     * @return the number of dropped tracks
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
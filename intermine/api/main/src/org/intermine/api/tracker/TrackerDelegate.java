@@ -13,17 +13,14 @@ import java.lang.ref.WeakReference;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 
 import org.apache.log4j.Logger;
 import org.intermine.api.profile.Profile;
 import org.intermine.api.template.TemplateManager;
 import org.intermine.api.tracker.factory.TrackerFactory;
 import org.intermine.api.tracker.track.ListTrack;
-import org.intermine.api.tracker.track.Track;
 import org.intermine.api.tracker.util.ListBuildMode;
 import org.intermine.api.tracker.util.ListTrackerEvent;
 import org.intermine.api.tracker.util.TrackerUtil;
@@ -44,15 +41,35 @@ public class TrackerDelegate implements Shutdownable
     protected ObjectStoreWriter osw;
     protected final Connection connection;
     protected Thread trackerLoggerThread;
+    protected TrackQueue trackQueue;
+    protected TrackerLogger trackerLogger;
     private boolean isClosed = false;
 
+    /** The default maximum number of tracks waiting to be written. */
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
     /**
      * Create the tracker manager managing the trackers specified in input
      * @param trackerClassNames the tracker names
      * @param osw the object store witer used to retrieve the connections
      */
     public TrackerDelegate(String[] trackerClassNames, ObjectStoreWriter osw) {
-        Queue<Track> trackQueue = new LinkedList<Track>();
+        this(trackerClassNames, osw, DEFAULT_QUEUE_SIZE, 0, TrackerLogger.DEFAULT_BATCH_SIZE, 0);
+    }
+
+    /**
+     * Create the tracker manager managing the trackers specified in input
+     * @param trackerClassNames the tracker names
+     * @param osw the object store witer used to retrieve the connections
+     * @param queueSize the maximum number of tracks waiting to be written
+     * @param maxWait the number of milliseconds to hold back a request when the queue is full,
+     * before dropping its track
+     * @param batchSize the maximum number of tracks to write at once
+     * @param flushInterval the number of milliseconds to wait for a batch to fill before writing
+     */
+    public TrackerDelegate(String[] trackerClassNames, ObjectStoreWriter osw, int queueSize,
+            long maxWait, int batchSize, long flushInterval) {
+        trackQueue = new TrackQueue(queueSize, maxWait);
         this.osw = osw;
         ShutdownHook.registerObject(new WeakReference<Object>(this));
         try {
@@ -74,12 +91,36 @@ public class TrackerDelegate implements Shutdownable
             throw new RuntimeException(sqle);
         }
 
-        TrackerLogger trackerLogger = new TrackerLogger(connection, trackQueue);
-        trackerLoggerThread = new Thread(trackerLogger);
+        trackerLogger = new TrackerLogger(connection, trackQueue, batchSize, flushInterval);
+        trackerLoggerThread = new Thread(trackerLogger, "TrackerLogger");
         trackerLoggerThread.setDaemon(true);
         trackerLoggerThread.start();
     }
 
+    /**
+     * Return the number of tracks written to the database
+     * @return the number of tracks written
+     */
+    public long getWrittenCount() {
+        return trackerLogger.getWrittenCount();
+    }
+
+    /**
+     * Return the number of tracks dropped because too many were waiting to be written
+     * @return the number of tracks dropped
+     */
+    public long getDroppedCount() {
+        return trackQueue.getDroppedCount();
+    }
+
+    /**
+     * Return the number of tracks that could not be written to the database
+     * @return the number of tracks that failed
+     */
+    public long getFailedCount() {
+        return trackerLogger.getFailedCount();
+    }
+
     /**
      * Return the trackers saved in the TrackerManager
      * @return map containing names and trackers
@@ -354,6 +395,8 @@ public class TrackerDelegate implements Shutdownable
             LOG.error(ie);
         }
         releaseConnection(connection);
+        LOG.info("Tracker closed: " + getWrittenCount() + " tracks written, " + getDroppedCount()
+                + " dropped, " + getFailedCount() + " failed");
         isClosed = true;
     }
 
@@ -10,21 +10,43 @@ package org.intermine.api.tracker;
  *
  */
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.log4j.Logger;
 import org.intermine.api.tracker.track.Track;
 
 /**
  * Runnable object providing insertion into the database. TrackerLogger is created
  * for a specific connection and table.
+ * Tracks are taken from the queue in batches of up to batchSize, waiting up to flushInterval
+ * milliseconds for a batch to fill, and each batch is inserted with one JDBC batch per table.
  * @author dbutano
  *
  */
 public class TrackerLogger implements Runnable
 {
+    private static final Logger LOG = Logger.getLogger(TrackerLogger.class);
+    /** The default maximum number of tracks written at once. */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    // how long to wait for a track before checking whether to stop
+    private static final long IDLE_WAIT = 1000;
 
     private Connection connection;
     private Queue<Track> trackQueue;
+    private final int batchSize;
+    private final long flushInterval;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
 
     /**
      * Construct a TrackerLogger for a specific connection and table
@@ -32,11 +54,45 @@ public class TrackerLogger implements Runnable
      * @param trackQueue track queue
      */
     public TrackerLogger(Connection connection, Queue<Track> trackQueue) {
+        this(connection, trackQueue, DEFAULT_BATCH_SIZE, 0);
+    }
+
+    /**
+     * Construct a TrackerLogger for a specific connection and table
+     * @param connection the connection to the database
+     * @param trackQueue track queue
+     * @param batchSize the maximum number of tracks to write at once
+     * @param flushInterval the number of milliseconds to wait for more tracks before writing a
+     * batch that is not full, or 0 to write whatever is in the queue straight away
+     */
+    public TrackerLogger(Connection connection, Queue<Track> trackQueue, int batchSize,
+            long flushInterval) {
         this.connection = connection;
         this.trackQueue = trackQueue;
         if (connection == null || trackQueue == null) {
             throw new IllegalArgumentException("neither connection or track queue may be null");
         }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Return the number of tracks written to the database
+     * @return the number of tracks written
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * Return the number of tracks that could not be written to the database
+     * @return the number of tracks that failed
+     */
+    public long getFailedCount() {
+        return failed.get();
     }
 
     /**
@@ -44,21 +100,135 @@ public class TrackerLogger implements Runnable
      */
     @Override
     public void run() {
+        List<Track> batch = new ArrayList<Track>();
         for (;;) {
+            try {
+                Track track = poll(IDLE_WAIT);
+                if (track != null) {
+                    batch.add(track);
+                    fillBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             if (Thread.interrupted()) {
+                // write out everything still queued before stopping
+                for (Track track = trackQueue.poll(); track != null; track = trackQueue.poll()) {
+                    batch.add(track);
+                }
+                write(batch);
                 return;
             }
+            write(batch);
+            batch.clear();
+        }
+    }
 
+    private void fillBatch(List<Track> batch) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + flushInterval;
+        while (batch.size() < batchSize) {
             Track track = trackQueue.poll();
-            if (track != null) {
-                track.store(connection);
+            if (track == null) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return;
+                }
+                track = poll(wait);
+                if (track == null) {
+                    return;
+                }
             }
+            batch.add(track);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Track poll(long timeout) throws InterruptedException {
+        if (trackQueue instanceof BlockingQueue<?>) {
+            return ((BlockingQueue<Track>) trackQueue).poll(timeout, TimeUnit.MILLISECONDS);
+        }
+        Track track = trackQueue.poll();
+        if (track == null) {
+            Thread.sleep(Math.min(timeout, 10));
+        }
+        return track;
+    }
+
+    /**
+     * Write a batch of tracks, grouped by table.
+     * @param batch the tracks to write
+     */
+    protected void write(List<Track> batch) {
+        Map<String, List<Track>> tables = new LinkedHashMap<String, List<Track>>();
+        for (Track track : batch) {
+            List<Track> tracks = tables.get(track.getTableName());
+            if (tracks == null) {
+                tracks = new ArrayList<Track>();
+                tables.put(track.getTableName(), tracks);
+            }
+            tracks.add(track);
+        }
+        for (Map.Entry<String, List<Track>> entry : tables.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void write(String tableName, List<Track> tracks) {
+        int columns = tracks.get(0).getFormattedTrack().length;
+        StringBuffer sql = new StringBuffer("INSERT INTO " + tableName + " VALUES (?");
+        for (int i = 1; i < columns; i++) {
+            sql.append(", ?");
+        }
+        sql.append(")");
+        PreparedStatement stm = null;
+        try {
+            stm = connection.prepareStatement(sql.toString());
             try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                return;
+                connection.setAutoCommit(false);
+                for (Track track : tracks) {
+                    setValues(stm, track);
+                    stm.addBatch();
+                }
+                stm.executeBatch();
+                connection.commit();
+                written.addAndGet(tracks.size());
+            } catch (SQLException e) {
+                LOG.warn("Problem writing a batch of " + tracks.size() + " tracks to "
+                        + tableName + ", writing them one at a time", e);
+                connection.rollback();
+                connection.setAutoCommit(true);
+                stm.clearBatch();
+                for (Track track : tracks) {
+                    try {
+                        setValues(stm, track);
+                        stm.executeUpdate();
+                        written.incrementAndGet();
+                    } catch (SQLException e2) {
+                        LOG.error("Problem executing the statement: " + sql, e2);
+                        failed.incrementAndGet();
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            LOG.error("Problem writing " + tracks.size() + " tracks to " + tableName, e);
+            failed.addAndGet(tracks.size());
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+                if (stm != null) {
+                    stm.close();
+                }
+            } catch (SQLException e) {
+                LOG.error("Problem closing resources in TrackerLogger", e);
             }
+        }
+    }
 
+    // Values are passed untyped, as they were when written as quoted literals.
+    private static void setValues(PreparedStatement stm, Track track) throws SQLException {
+        Object[] values = track.getFormattedTrack();
+        for (int i = 0; i < values.length; i++) {
+            stm.setObject(i + 1, String.valueOf(values[i]), Types.OTHER);
         }
     }
 }
@@ -0,0 +1,85 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.query.ResultsRow;
+
+public class IdentifierIndexTest extends TestCase
+{
+    private IdentifierIndex index;
+
+    public IdentifierIndexTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        List<ResultsRow<Object>> rows = new ArrayList<ResultsRow<Object>>();
+        rows.add(row(1, "FBgn0001", "zen", null));
+        rows.add(row(2, "FBgn0002", "Zen", "eve"));
+        rows.add(row(3, "FBgn0003", "eve", "eve"));
+        rows.add(row(4, "CG1234", new Integer(42), "ZEN"));
+        index = new IdentifierIndex(rows, Collections.emptySet(), Collections.<Object, Integer>emptyMap());
+    }
+
+    public void testLookup() throws Exception {
+        assertEquals(Arrays.asList(1, 2, 4), lookup("zen", false));
+        assertEquals(Arrays.asList(1, 2, 4), lookup("ZeN", false));
+        assertEquals(Arrays.asList(1), lookup("zen", true));
+        assertEquals(Arrays.asList(4), lookup("ZEN", true));
+        assertEquals(Arrays.asList(2, 3), lookup("EVE", false));
+        assertEquals(Arrays.asList(4), lookup("42", true));
+        assertEquals(Collections.emptyList(), lookup("FBgn", false));
+        assertEquals(Collections.emptyList(), lookup("null", false));
+        assertEquals(7, index.size());
+    }
+
+    public void testWildcards() throws Exception {
+        assertEquals(Arrays.asList(1, 2, 3), lookup(Pattern.compile("fbgn.*"), "fbgn"));
+        assertEquals(Arrays.asList(4, 2, 3), lookup(Pattern.compile(".*2|e.*"), ""));
+        assertEquals(Arrays.asList(4), lookup(Pattern.compile("cg.*4"), "cg"));
+        assertEquals(Collections.emptyList(), lookup(Pattern.compile("x.*"), "x"));
+    }
+
+    public void testWildcardPrefix() throws Exception {
+        assertEquals("fbgn", BagQueryRunner.getWildcardPrefix("FBgn*"));
+        assertEquals("cg", BagQueryRunner.getWildcardPrefix("CG.1*"));
+        assertEquals("", BagQueryRunner.getWildcardPrefix("*zen"));
+    }
+
+    private List<Integer> lookup(String identifier, boolean caseSensitive) {
+        Set<Integer> ids = new LinkedHashSet<Integer>();
+        index.lookup(identifier, caseSensitive, ids);
+        return new ArrayList<Integer>(ids);
+    }
+
+    private List<Integer> lookup(Pattern pattern, String prefix) {
+        Set<Integer> ids = new LinkedHashSet<Integer>();
+        index.lookup(pattern, prefix, ids);
+        return new ArrayList<Integer>(ids);
+    }
+
+    private static ResultsRow<Object> row(int id, Object... fields) {
+        ResultsRow<Object> row = new ResultsRow<Object>();
+        row.add(new Integer(id));
+        row.addAll(Arrays.asList(fields));
+        return row;
+    }
+}
@@ -0,0 +1,162 @@
+package org.intermine.api.lucene;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.intermine.api.config.ClassKeyHelper;
+import org.intermine.metadata.FieldDescriptor;
+import org.intermine.model.testmodel.Department;
+import org.intermine.modelproduction.MetadataManager;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.ObjectStoreWriterFactory;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.sql.Database;
+
+public class KeywordSearchUpdateTest extends TestCase
+{
+    private ObjectStoreWriter osw;
+    private Database db;
+    private Map<String, List<FieldDescriptor>> classKeys;
+    private Department changed, unchanged, added;
+    private File directory;
+
+    public KeywordSearchUpdateTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        osw = ObjectStoreWriterFactory.getObjectStoreWriter("osw.unittest");
+        db = ((ObjectStoreInterMineImpl) osw.getObjectStore()).getDatabase();
+        Properties props = new Properties();
+        props.load(getClass().getClassLoader().getResourceAsStream("class_keys.properties"));
+        classKeys = ClassKeyHelper.readKeys(osw.getModel(), props);
+        directory = File.createTempFile("KeywordSearchUpdateTest", "");
+        directory.delete();
+        executeSql("DROP TABLE IF EXISTS tracker");
+        executeSql("CREATE TABLE tracker (objectid int, fieldname text, sourcename text,"
+                + " version int)");
+    }
+
+    public void tearDown() throws Exception {
+        KeywordSearch.deleteIndexDirectory();
+        osw.beginTransaction();
+        for (Department d : new Department[] {changed, unchanged, added}) {
+            if (d != null) {
+                osw.delete(d);
+            }
+        }
+        osw.commitTransaction();
+        osw.close();
+        MetadataManager.deleteLargeBinary(db, MetadataManager.SEARCH_INDEX);
+        MetadataManager.deleteLargeBinary(db, MetadataManager.SEARCH_INDEX_DIRECTORY);
+        MetadataManager.store(db, MetadataManager.SEARCH_INDEX_VERSION, null);
+        executeSql("DROP TABLE IF EXISTS tracker");
+        if (directory.exists()) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    public void testUpdateIndex() throws Exception {
+        changed = storeDepartment(null, "KeywordSearchUpdateTestAlpha");
+        unchanged = storeDepartment(null, "KeywordSearchUpdateTestBeta");
+        track(changed, "source1");
+        track(unchanged, "source1");
+        KeywordSearch.saveIndexToDatabase(osw.getObjectStore(), classKeys);
+        KeywordSearch.deleteIndexDirectory();
+
+        // a new source changes one existing object, and another object is added
+        storeDepartment(changed, "KeywordSearchUpdateTestGamma");
+        track(changed, "source2");
+        added = storeDepartment(null, "KeywordSearchUpdateTestDelta");
+        KeywordSearch.updateIndexInDatabase(osw.getObjectStore(), classKeys,
+                Collections.<String>emptyList());
+        KeywordSearch.deleteIndexDirectory();
+
+        InputStream is = MetadataManager.readLargeBinary(db,
+                MetadataManager.SEARCH_INDEX_DIRECTORY);
+        FSDirectory saved;
+        try {
+            saved = KeywordSearch.readFSDirectory(directory, is);
+        } finally {
+            is.close();
+        }
+        IndexReader reader = IndexReader.open(saved, true);
+        try {
+            // the document of the changed object has been replaced, not added to
+            assertEquals(1, countDocuments(reader, "id", changed.getId().toString()));
+            assertEquals(1, countDocuments(reader, "id", unchanged.getId().toString()));
+            assertEquals(1, countDocuments(reader, "id", added.getId().toString()));
+            assertEquals(0, countDocuments(reader, "department_name",
+                        "keywordsearchupdatetestalpha"));
+            assertEquals(1, countDocuments(reader, "department_name",
+                        "keywordsearchupdatetestgamma"));
+            assertEquals(1, countDocuments(reader, "department_name",
+                        "keywordsearchupdatetestbeta"));
+            assertEquals(1, countDocuments(reader, "department_name",
+                        "keywordsearchupdatetestdelta"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private Department storeDepartment(Department d, String name) throws Exception {
+        Department retval = (d == null ? new Department() : d);
+        retval.setName(name);
+        osw.store(retval);
+        return retval;
+    }
+
+    private void track(Department d, String source) throws SQLException {
+        executeSql("INSERT INTO tracker VALUES (" + d.getId() + ", 'name', '" + source + "', 1)");
+    }
+
+    // counts the documents that have not been deleted
+    private int countDocuments(IndexReader reader, String field, String value) throws Exception {
+        TermDocs docs = reader.termDocs(new Term(field, value));
+        int count = 0;
+        try {
+            while (docs.next()) {
+                count++;
+            }
+        } finally {
+            docs.close();
+        }
+        return count;
+    }
+
+    private void executeSql(String sql) throws SQLException {
+        Connection c = db.getConnection();
+        try {
+            Statement s = c.createStatement();
+            s.execute(sql);
+        } finally {
+            c.close();
+        }
+    }
+}
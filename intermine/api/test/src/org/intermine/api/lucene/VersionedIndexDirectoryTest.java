@@ -0,0 +1,178 @@
+package org.intermine.api.lucene;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.FSDirectory;
+
+import com.browseengine.bobo.api.BoboIndexReader;
+import com.browseengine.bobo.facets.FacetHandler;
+
+public class VersionedIndexDirectoryTest extends TestCase
+{
+    private File baseDir;
+    private File sourceDir;
+    private byte[] zippedIndex;
+
+    public VersionedIndexDirectoryTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        baseDir = createTempDir("VersionedIndexDirectoryTest");
+        sourceDir = createTempDir("VersionedIndexDirectoryTestSource");
+        IndexWriter writer = new IndexWriter(FSDirectory.open(sourceDir), new WhitespaceAnalyzer(),
+                true, IndexWriter.MaxFieldLength.UNLIMITED);
+        Document doc = new Document();
+        doc.add(new Field("id", "1", Field.Store.YES, Field.Index.NOT_ANALYZED));
+        writer.addDocument(doc);
+        writer.close();
+
+        // zipped in the same way as KeywordSearch saves the index to the database
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zipOut = new ZipOutputStream(bytes);
+        for (File file : sourceDir.listFiles()) {
+            zipOut.putNextEntry(new ZipEntry(file.getName()));
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[2048];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    zipOut.write(buffer, 0, count);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        zipOut.close();
+        zippedIndex = bytes.toByteArray();
+    }
+
+    public void tearDown() throws Exception {
+        delete(baseDir);
+        delete(sourceDir);
+    }
+
+    public void testExtractAndReuse() throws Exception {
+        VersionedIndexDirectory dirs = new VersionedIndexDirectory(baseDir);
+        assertFalse(dirs.isExtracted("v1"));
+        assertNull(dirs.findLatestExtracted());
+
+        File dir = dirs.extract("v1", new ByteArrayInputStream(zippedIndex));
+        assertEquals(dirs.getDirectory("v1"), dir);
+        assertTrue(dirs.isExtracted("v1"));
+        assertEquals(1, countDocuments(dir));
+
+        // another webapp sharing the directory finds the copy already there
+        VersionedIndexDirectory otherDirs = new VersionedIndexDirectory(baseDir);
+        assertTrue(otherDirs.isExtracted("v1"));
+        assertEquals(dir, otherDirs.findLatestExtracted());
+
+        // and extracting the same version again leaves the copy as it is
+        assertEquals(dir, otherDirs.extract("v1", new ByteArrayInputStream(zippedIndex)));
+        assertEquals(1, baseDir.listFiles().length);
+        assertEquals(1, countDocuments(dir));
+    }
+
+    public void testRemoveOtherVersions() throws Exception {
+        VersionedIndexDirectory dirs = new VersionedIndexDirectory(baseDir);
+        File v1 = dirs.extract("v1", new ByteArrayInputStream(zippedIndex));
+        File v2 = dirs.extract("v2", new ByteArrayInputStream(zippedIndex));
+        v1.setLastModified(System.currentTimeMillis() - 60000);
+        assertEquals(v2, dirs.findLatestExtracted());
+
+        // a recent partial copy may be being extracted by another process, an old one is junk
+        File newPartial = new File(baseDir, "index_v3123.partial");
+        File oldPartial = new File(baseDir, "index_v0123.partial");
+        newPartial.mkdir();
+        oldPartial.mkdir();
+        oldPartial.setLastModified(System.currentTimeMillis() - 48L * 60 * 60 * 1000);
+        assertEquals(v2, dirs.findLatestExtracted());
+
+        dirs.removeOtherVersions("v2");
+        assertFalse(v1.exists());
+        assertTrue(v2.exists());
+        assertTrue(newPartial.exists());
+        assertFalse(oldPartial.exists());
+        assertEquals(1, countDocuments(v2));
+    }
+
+    public void testRetiredReadersClosed() throws Exception {
+        VersionedIndexDirectory dirs = new VersionedIndexDirectory(baseDir);
+        File dir = dirs.extract("v1", new ByteArrayInputStream(zippedIndex));
+
+        KeywordSearch.Readers inUse = openReaders(dir);
+        inUse.acquire();
+        inUse.retire();
+        // still open for the search using it
+        assertFalse(inUse.isClosed());
+        assertEquals(1, inUse.getReader().numDocs());
+        inUse.release();
+        assertTrue(inUse.isClosed());
+        assertEquals(0, inUse.getReader().getRefCount());
+
+        KeywordSearch.Readers unused = openReaders(dir);
+        unused.acquire();
+        unused.release();
+        assertFalse(unused.isClosed());
+        unused.retire();
+        assertTrue(unused.isClosed());
+        assertEquals(0, unused.getReader().getRefCount());
+    }
+
+    private KeywordSearch.Readers openReaders(File dir) throws Exception {
+        IndexReader reader = IndexReader.open(VersionedIndexDirectory.open(dir), true);
+        BoboIndexReader bobo = BoboIndexReader.getInstance(reader,
+                Collections.<FacetHandler<?>>emptyList());
+        return new KeywordSearch.Readers(reader, bobo);
+    }
+
+    private int countDocuments(File dir) throws Exception {
+        IndexReader reader = IndexReader.open(VersionedIndexDirectory.open(dir), true);
+        try {
+            return reader.numDocs();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private File createTempDir(String prefix) throws Exception {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+
+    private void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                delete(file);
+            }
+        }
+        dir.delete();
+    }
+}
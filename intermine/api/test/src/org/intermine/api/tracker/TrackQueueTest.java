@@ -0,0 +1,59 @@
+package org.intermine.api.tracker;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+import java.sql.Timestamp;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.tracker.track.LoginTrack;
+import org.intermine.api.tracker.track.Track;
+
+public class TrackQueueTest extends TestCase
+{
+    public void testDrop() throws Exception {
+        TrackQueue queue = new TrackQueue(2, 0);
+        assertTrue(queue.offer(track()));
+        assertTrue(queue.offer(track()));
+        assertFalse(queue.offer(track()));
+        assertFalse(queue.offer(track()));
+        assertEquals(2, queue.size());
+        assertEquals(2, queue.getDroppedCount());
+    }
+
+    public void testWait() throws Exception {
+        final TrackQueue queue = new TrackQueue(1, 5000);
+        assertTrue(queue.offer(track()));
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                    queue.take();
+                } catch (InterruptedException e) {
+                    // finish
+                }
+            }
+        };
+        consumer.start();
+        assertTrue(queue.offer(track()));
+        consumer.join();
+        assertEquals(0, queue.getDroppedCount());
+
+        TrackQueue shortWait = new TrackQueue(1, 10);
+        assertTrue(shortWait.offer(track()));
+        assertFalse(shortWait.offer(track()));
+        assertEquals(1, shortWait.getDroppedCount());
+    }
+
+    private static Track track() {
+        return new LoginTrack("user", new Timestamp(System.currentTimeMillis()));
+    }
+}
@@ -73,6 +73,29 @@ public class TrackerLoggerTest extends TestCase {
         stm.close();
     }
 
+    public void testRunBatches() throws SQLException, InterruptedException {
+        TrackQueue queue = new TrackQueue(count, 0);
+        for (int index = 0; index < count; index++) {
+            queue.add(new LoginTrack("user" + index,
+                          new Timestamp(System.currentTimeMillis())));
+        }
+        trackerLogger = new TrackerLogger(con, queue, 7, 50);
+        Thread thread = new Thread(trackerLogger);
+        thread.start();
+        // stopping the logger writes everything still queued
+        thread.interrupt();
+        thread.join();
+        assertEquals(count, trackerLogger.getWrittenCount());
+        assertEquals(0, trackerLogger.getFailedCount());
+        String sql = "SELECT COUNT(*) FROM logintrack";
+        Statement stm = con.createStatement();
+        ResultSet rs = stm.executeQuery(sql);
+        rs.next();
+        assertEquals(count, rs.getInt(1));
+        rs.close();
+        stm.close();
+    }
+
     private void removeTracks() throws SQLException {
         String sql = "DELETE FROM logintrack";
         Statement stm = con.createStatement();
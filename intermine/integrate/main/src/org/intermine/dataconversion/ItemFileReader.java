@@ -0,0 +1,299 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads an item file written by ItemFileWriter. Records can be read in file order with a Cursor,
+ * or by object id through the index, which is memory-mapped.
+ */
+public class ItemFileReader
+{
+    private static final int INDEX_ENTRY_SIZE = 12;
+    private static final int INDEX_HEADER_SIZE = ItemFileWriter.INDEX_MAGIC.length() + 4;
+    // entries per mapped chunk of the index, so that a chunk stays below 2GB
+    private static final int CHUNK_BITS = 27;
+    private static final int BLOCK_CACHE_SIZE = 64;
+
+    private final File file;
+    private final RandomAccessFile data;
+    private final FileChannel channel;
+    private final int size;
+    private final MappedByteBuffer[] index;
+    private final Map<String, Integer> namespaceToId = new HashMap<String, Integer>();
+    private final SortedMap<Integer, String> idToNamespace = new TreeMap<Integer, String>();
+    private final Map<Long, byte[]> blockCache = new LinkedHashMap<Long, byte[]>(16, 0.75F,
+            true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > BLOCK_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param file the item file
+     * @throws IOException if the file or its index can't be read
+     */
+    public ItemFileReader(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile indexFile = new RandomAccessFile(file.getPath()
+                + ItemFileWriter.INDEX_SUFFIX, "r");
+        try {
+            checkMagic(indexFile, ItemFileWriter.INDEX_MAGIC);
+            size = indexFile.readInt();
+            FileChannel indexChannel = indexFile.getChannel();
+            index = new MappedByteBuffer[(size >> CHUNK_BITS) + 1];
+            for (int i = 0; i < index.length; i++) {
+                long start = INDEX_HEADER_SIZE + ((long) i << CHUNK_BITS) * INDEX_ENTRY_SIZE;
+                long entries = Math.min(1L << CHUNK_BITS, size - ((long) i << CHUNK_BITS));
+                index[i] = indexChannel.map(FileChannel.MapMode.READ_ONLY, start,
+                        entries * INDEX_ENTRY_SIZE);
+            }
+            indexFile.seek(INDEX_HEADER_SIZE + ((long) size) * INDEX_ENTRY_SIZE);
+            int namespaces = indexFile.readInt();
+            for (int i = 0; i < namespaces; i++) {
+                String namespace = ItemFileRecord.readString(indexFile);
+                Integer offset = new Integer(indexFile.readInt());
+                namespaceToId.put(namespace, offset);
+                idToNamespace.put(offset, namespace);
+            }
+        } finally {
+            // the mapped buffers stay valid after the file is closed
+            indexFile.close();
+        }
+        data = new RandomAccessFile(file, "r");
+        checkMagic(data, ItemFileWriter.DATA_MAGIC);
+        channel = data.getChannel();
+    }
+
+    private void checkMagic(RandomAccessFile raf, String magic) throws IOException {
+        byte[] bytes = new byte[magic.length()];
+        raf.readFully(bytes);
+        if (!magic.equals(new String(bytes, "US-ASCII"))) {
+            raf.close();
+            throw new IOException("File " + file + " is not a valid item file");
+        }
+    }
+
+    /**
+     * @return the item file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of Items in the file
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Turn an item identifier into an object id.
+     *
+     * @param identifier an item identifier
+     * @return the corresponding object id
+     */
+    public Integer identifierToId(String identifier) {
+        return ItemFileWriter.identifierToId(identifier, namespaceToId);
+    }
+
+    /**
+     * Turn an object id into an item identifier.
+     *
+     * @param id an object id
+     * @return the corresponding item identifier
+     */
+    public String idToIdentifier(Integer id) {
+        if (id == null) {
+            return null;
+        }
+        SortedMap<Integer, String> head = idToNamespace.headMap(new Integer(id.intValue() + 1));
+        if (head.isEmpty()) {
+            return null;
+        }
+        Integer base = head.lastKey();
+        return head.get(base) + "_" + (id.intValue() - base.intValue());
+    }
+
+    /**
+     * Read the record for the Item with the given object id.
+     *
+     * @param id an object id
+     * @return the record, or null if there is no such Item
+     * @throws IOException if the file can't be read
+     */
+    public ItemFileRecord read(int id) throws IOException {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            ByteBuffer chunk = index[mid >> CHUNK_BITS];
+            int entry = (mid & ((1 << CHUNK_BITS) - 1)) * INDEX_ENTRY_SIZE;
+            int midId = chunk.getInt(entry);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return readAt(chunk.getLong(entry + 4));
+            }
+        }
+        return null;
+    }
+
+    private ItemFileRecord readAt(long position) throws IOException {
+        byte[] block = getBlock(position >>> ItemFileWriter.BLOCK_BITS);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+        in.skipBytes((int) (position & (ItemFileWriter.BLOCK_SIZE - 1)));
+        in.readInt();
+        return ItemFileRecord.read(in);
+    }
+
+    private byte[] getBlock(long blockPosition) throws IOException {
+        Long key = new Long(blockPosition);
+        synchronized (blockCache) {
+            byte[] block = blockCache.get(key);
+            if (block != null) {
+                return block;
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(8);
+        readFully(header, blockPosition);
+        ByteBuffer compressed = ByteBuffer.allocate(header.getInt(0));
+        readFully(compressed, blockPosition + 8);
+        byte[] block = inflate(compressed.array(), compressed.capacity(), header.getInt(4));
+        synchronized (blockCache) {
+            blockCache.put(key, block);
+        }
+        return block;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of item file " + file);
+            }
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int length, int uncompressedLength)
+        throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, 0, length);
+            byte[] retval = new byte[uncompressedLength];
+            int done = 0;
+            while (done < uncompressedLength) {
+                int inflated = inflater.inflate(retval, done, uncompressedLength - done);
+                if ((inflated == 0) && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Truncated block in item file");
+                }
+                done += inflated;
+            }
+            return retval;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block in item file", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Open a Cursor that reads every record in the file, in file order.
+     *
+     * @return a new Cursor
+     * @throws IOException if the file can't be opened
+     */
+    public Cursor openCursor() throws IOException {
+        return new Cursor();
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws IOException if the file can't be closed
+     */
+    public void close() throws IOException {
+        data.close();
+    }
+
+    /**
+     * Reads the records of the file in order, one block at a time.
+     */
+    public class Cursor
+    {
+        private final DataInputStream in;
+        private DataInputStream block = null;
+
+        private Cursor() throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                        ItemFileWriter.BLOCK_SIZE));
+            in.skipBytes(ItemFileWriter.DATA_MAGIC.length());
+        }
+
+        /**
+         * Read the next record.
+         *
+         * @return the next record, or null at the end of the file
+         * @throws IOException if the file can't be read
+         */
+        public ItemFileRecord next() throws IOException {
+            while ((block == null) || (block.available() == 0)) {
+                int compressedLength;
+                try {
+                    compressedLength = in.readInt();
+                } catch (EOFException e) {
+                    return null;
+                }
+                int uncompressedLength = in.readInt();
+                byte[] compressed = new byte[compressedLength];
+                in.readFully(compressed);
+                block = new DataInputStream(new ByteArrayInputStream(inflate(compressed,
+                                compressedLength, uncompressedLength)));
+            }
+            block.readInt();
+            return ItemFileRecord.read(block);
+        }
+
+        /**
+         * Close this Cursor.
+         *
+         * @throws IOException if the file can't be closed
+         */
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+
+/**
+ * One Item as held in an item file. Attributes, references and collections are each a list of
+ * name and value pairs, where the value of a reference is the identifier of the referenced Item,
+ * and the value of a collection is a space separated list of identifiers, as in an Item.
+ */
+public class ItemFileRecord
+{
+    /** Kind of field for an attribute **/
+    static final byte ATTRIBUTE = 1;
+    /** Kind of field for a reference **/
+    static final byte REFERENCE = 2;
+    /** Kind of field for a collection **/
+    static final byte COLLECTION = 3;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String identifier;
+    private final String className;
+    private final String implementations;
+    private final List<String[]> attributes = new ArrayList<String[]>();
+    private final List<String[]> references = new ArrayList<String[]>();
+    private final List<String[]> collections = new ArrayList<String[]>();
+
+    /**
+     * Constructor.
+     *
+     * @param identifier the identifier of the Item
+     * @param className the class name of the Item
+     * @param implementations the implementations of the Item
+     */
+    public ItemFileRecord(String identifier, String className, String implementations) {
+        this.identifier = identifier;
+        this.className = className;
+        this.implementations = implementations;
+    }
+
+    /**
+     * Make a record from an Item.
+     *
+     * @param item the Item
+     * @return a new ItemFileRecord
+     */
+    public static ItemFileRecord fromItem(Item item) {
+        ItemFileRecord retval = new ItemFileRecord(item.getIdentifier(), item.getClassName(),
+                item.getImplementations());
+        for (Attribute att : item.getAttributes()) {
+            retval.addField(ATTRIBUTE, att.getName(), att.getValue());
+        }
+        for (Reference ref : item.getReferences()) {
+            retval.addField(REFERENCE, ref.getName(), ref.getRefId());
+        }
+        for (ReferenceList refList : item.getCollections()) {
+            retval.addField(COLLECTION, refList.getName(), refList.getRefIds());
+        }
+        return retval;
+    }
+
+    /**
+     * @return the identifier of the Item
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return the class name of the Item
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return the implementations of the Item
+     */
+    public String getImplementations() {
+        return implementations;
+    }
+
+    /**
+     * @return the attribute names and values
+     */
+    public List<String[]> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return the reference names and the identifiers they refer to
+     */
+    public List<String[]> getReferences() {
+        return references;
+    }
+
+    /**
+     * @return the collection names and the identifiers in them
+     */
+    public List<String[]> getCollections() {
+        return collections;
+    }
+
+    /**
+     * Add a field to this record.
+     *
+     * @param kind ATTRIBUTE, REFERENCE or COLLECTION
+     * @param name the name of the field
+     * @param value the value of the field
+     */
+    void addField(byte kind, String name, String value) {
+        String[] field = new String[] {name, value};
+        switch (kind) {
+            case ATTRIBUTE:
+                attributes.add(field);
+                break;
+            case REFERENCE:
+                references.add(field);
+                break;
+            case COLLECTION:
+                collections.add(field);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind of field " + kind);
+        }
+    }
+
+    /**
+     * Write this record.
+     *
+     * @param out the output to write to
+     * @throws IOException if the output can't be written
+     */
+    void write(DataOutput out) throws IOException {
+        writeString(out, identifier);
+        writeString(out, className);
+        writeString(out, implementations);
+        writeFields(out, attributes);
+        writeFields(out, references);
+        writeFields(out, collections);
+    }
+
+    /**
+     * Read a record written by write().
+     *
+     * @param in the input to read from
+     * @return a new ItemFileRecord
+     * @throws IOException if the input can't be read
+     */
+    static ItemFileRecord read(DataInput in) throws IOException {
+        ItemFileRecord retval = new ItemFileRecord(readString(in), readString(in),
+                readString(in));
+        readFields(in, retval.attributes);
+        readFields(in, retval.references);
+        readFields(in, retval.collections);
+        return retval;
+    }
+
+    private static void writeFields(DataOutput out, List<String[]> fields) throws IOException {
+        out.writeInt(fields.size());
+        for (String[] field : fields) {
+            writeString(out, field[0]);
+            writeString(out, field[1]);
+        }
+    }
+
+    private static void readFields(DataInput in, List<String[]> fields) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            fields.add(new String[] {readString(in), readString(in)});
+        }
+    }
+
+    /**
+     * Write a String of any length, or null.
+     *
+     * @param out the output to write to
+     * @param s the String
+     * @throws IOException if the output can't be written
+     */
+    static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Read a String written by writeString().
+     *
+     * @param in the input to read from
+     * @return the String
+     * @throws IOException if the input can't be read
+     */
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
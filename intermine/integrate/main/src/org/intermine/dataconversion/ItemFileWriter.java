@@ -0,0 +1,442 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * An ItemWriter that writes Items to a file, to be loaded with an ObjectStoreItemFileImpl instead
+ * of going through an items database.
+ *
+ * While converting, each Item is appended to a temporary file for its class, and changes to Items
+ * that have already been stored are appended to another temporary file. Closing the writer merges
+ * these into the item file, sorted by class, as deflated blocks of length-prefixed records, and
+ * writes an index from object id to record position beside it. Each Item should only be stored
+ * once.
+ */
+public class ItemFileWriter implements ItemWriter
+{
+    private static final Logger LOG = Logger.getLogger(ItemFileWriter.class);
+
+    /** The first bytes of an item file **/
+    static final String DATA_MAGIC = "IMITEMS1";
+    /** The first bytes of an item file index **/
+    static final String INDEX_MAGIC = "IMINDEX1";
+    /** The suffix added to the name of an item file to name its index **/
+    static final String INDEX_SUFFIX = ".index";
+    /** The number of bits of a record position that hold the offset within its block **/
+    static final int BLOCK_BITS = 16;
+    /** The size at which a block is finished and a new one started **/
+    static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int SPILL_BUFFER_SIZE = 65536;
+
+    private final File file;
+    private final File spillDir;
+    private final Map<String, Spill> spills = new HashMap<String, Spill>();
+    private final Spill patches;
+    private final Map<String, Integer> namespaceMax = new HashMap<String, Integer>();
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(recordBytes);
+    private int nextId = 1;
+    private int itemCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param file the item file to write
+     * @throws ObjectStoreException if the temporary files can't be created
+     */
+    public ItemFileWriter(File file) throws ObjectStoreException {
+        this.file = file;
+        spillDir = new File(file.getPath() + ".tmp");
+        try {
+            if (!spillDir.isDirectory() && !spillDir.mkdirs()) {
+                throw new IOException("Could not create directory " + spillDir);
+            }
+            patches = new Spill(new File(spillDir, "patches"));
+        } catch (IOException e) {
+            throw new ObjectStoreException("Could not create item file " + file, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Integer store(Item item) throws ObjectStoreException {
+        if (StringUtils.isEmpty(item.getClassName())
+            && StringUtils.isEmpty(item.getImplementations())) {
+            throw new RuntimeException("className not set for item: " + item.getIdentifier());
+        }
+        if (item.getId() == null) {
+            item.setId(new Integer(nextId++));
+        } else {
+            nextId = Math.max(nextId, item.getId().intValue() + 1);
+        }
+        noteIdentifier(item.getIdentifier());
+        String key = StringUtils.defaultString(item.getClassName()) + " "
+            + StringUtils.defaultString(item.getImplementations());
+        try {
+            Spill spill = spills.get(key);
+            if (spill == null) {
+                spill = new Spill(new File(spillDir, "class" + spills.size()));
+                spills.put(key, spill);
+            }
+            recordBytes.reset();
+            ItemFileRecord.fromItem(item).write(recordOut);
+            spill.out.writeInt(item.getId().intValue());
+            spill.out.writeInt(recordBytes.size());
+            recordBytes.writeTo(spill.out);
+        } catch (IOException e) {
+            throw new ObjectStoreException("Could not write to " + spillDir, e);
+        }
+        itemCount++;
+        return item.getId();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void store(ReferenceList refList, Integer itemId) throws ObjectStoreException {
+        storePatch(itemId, ItemFileRecord.COLLECTION, refList.getName(), refList.getRefIds());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void store(Reference ref, Integer itemId) throws ObjectStoreException {
+        storePatch(itemId, ItemFileRecord.REFERENCE, ref.getName(), ref.getRefId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void store(Attribute att, Integer itemId) throws ObjectStoreException {
+        storePatch(itemId, ItemFileRecord.ATTRIBUTE, att.getName(), att.getValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void storeAll(Collection<Item> items) throws ObjectStoreException {
+        for (Item item : items) {
+            store(item);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void close() throws ObjectStoreException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            merge();
+        } catch (IOException e) {
+            throw new ObjectStoreException("Could not write item file " + file, e);
+        }
+    }
+
+    private synchronized void storePatch(Integer itemId, byte kind, String name, String value)
+        throws ObjectStoreException {
+        try {
+            patches.out.writeInt(itemId.intValue());
+            patches.out.writeByte(kind);
+            ItemFileRecord.writeString(patches.out, name);
+            ItemFileRecord.writeString(patches.out, value);
+        } catch (IOException e) {
+            throw new ObjectStoreException("Could not write to " + spillDir, e);
+        }
+    }
+
+    private void noteIdentifier(String identifier) {
+        int index = identifier.indexOf("_");
+        if (index == -1) {
+            throw new RuntimeException("illegal identifier (\"" + identifier + "\") for item");
+        }
+        String namespace = identifier.substring(0, index);
+        int number = Integer.parseInt(identifier.substring(index + 1));
+        Integer max = namespaceMax.get(namespace);
+        if ((max == null) || (max.intValue() < number)) {
+            namespaceMax.put(namespace, new Integer(number));
+        }
+    }
+
+    /**
+     * Writes the item file and its index from the temporary files, and deletes them.
+     */
+    private void merge() throws IOException {
+        for (Spill spill : spills.values()) {
+            spill.out.close();
+        }
+        patches.out.close();
+        Map<Integer, List<Object[]>> patchMap = readPatches();
+
+        // Object ids are allocated the same way as by ItemToObjectTranslator
+        SortedMap<String, Integer> namespaceOffsets = new TreeMap<String, Integer>();
+        int offset = 0;
+        for (Map.Entry<String, Integer> entry : new TreeMap<String, Integer>(namespaceMax)
+                .entrySet()) {
+            namespaceOffsets.put(entry.getKey(), new Integer(offset));
+            offset += entry.getValue().intValue() + 1;
+        }
+
+        long[] sortKeys = new long[itemCount];
+        long[] positions = new long[itemCount];
+        int count = 0;
+        BlockWriter out = new BlockWriter(file);
+        try {
+            List<String> keys = new ArrayList<String>(spills.keySet());
+            Collections.sort(keys);
+            for (String key : keys) {
+                DataInputStream in = spills.get(key).openInput();
+                try {
+                    byte[] bytes = new byte[1024];
+                    while (true) {
+                        int itemId;
+                        try {
+                            itemId = in.readInt();
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        int length = in.readInt();
+                        if (bytes.length < length) {
+                            bytes = new byte[Math.max(length, bytes.length * 2)];
+                        }
+                        in.readFully(bytes, 0, length);
+                        ItemFileRecord record = null;
+                        List<Object[]> itemPatches = patchMap.remove(new Integer(itemId));
+                        if (itemPatches != null) {
+                            record = ItemFileRecord.read(new DataInputStream(
+                                        new ByteArrayInputStream(bytes, 0, length)));
+                            for (Object[] patch : itemPatches) {
+                                record.addField(((Byte) patch[0]).byteValue(), (String) patch[1],
+                                        (String) patch[2]);
+                            }
+                            recordBytes.reset();
+                            record.write(recordOut);
+                            bytes = recordBytes.toByteArray();
+                            length = bytes.length;
+                        }
+                        String identifier = ItemFileRecord.readString(new DataInputStream(
+                                    new ByteArrayInputStream(bytes, 0, length)));
+                        int id = identifierToId(identifier, namespaceOffsets).intValue();
+                        sortKeys[count] = (((long) id) << 32) | count;
+                        positions[count] = out.append(bytes, length);
+                        count++;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!patchMap.isEmpty()) {
+            LOG.warn("Ignoring changes to " + patchMap.size() + " Items that were never stored,"
+                    + " with ids " + patchMap.keySet());
+        }
+
+        Arrays.sort(sortKeys, 0, count);
+        DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file.getPath() + INDEX_SUFFIX), SPILL_BUFFER_SIZE));
+        try {
+            indexOut.writeBytes(INDEX_MAGIC);
+            indexOut.writeInt(count);
+            int lastId = -1;
+            for (int i = 0; i < count; i++) {
+                int id = (int) (sortKeys[i] >>> 32);
+                if ((i > 0) && (id == lastId)) {
+                    LOG.warn("More than one Item in " + file + " has object id " + id);
+                }
+                lastId = id;
+                indexOut.writeInt(id);
+                indexOut.writeLong(positions[(int) sortKeys[i]]);
+            }
+            indexOut.writeInt(namespaceOffsets.size());
+            for (Map.Entry<String, Integer> entry : namespaceOffsets.entrySet()) {
+                ItemFileRecord.writeString(indexOut, entry.getKey());
+                indexOut.writeInt(entry.getValue().intValue());
+            }
+        } finally {
+            indexOut.close();
+        }
+
+        for (Spill spill : spills.values()) {
+            spill.file.delete();
+        }
+        patches.file.delete();
+        spillDir.delete();
+        LOG.info("Wrote " + count + " Items in " + spills.size() + " classes to " + file);
+    }
+
+    private Map<Integer, List<Object[]>> readPatches() throws IOException {
+        Map<Integer, List<Object[]>> retval = new HashMap<Integer, List<Object[]>>();
+        DataInputStream in = patches.openInput();
+        try {
+            while (true) {
+                Integer itemId;
+                try {
+                    itemId = new Integer(in.readInt());
+                } catch (EOFException e) {
+                    break;
+                }
+                Object[] patch = new Object[] {new Byte(in.readByte()),
+                    ItemFileRecord.readString(in), ItemFileRecord.readString(in)};
+                List<Object[]> itemPatches = retval.get(itemId);
+                if (itemPatches == null) {
+                    itemPatches = new ArrayList<Object[]>();
+                    retval.put(itemId, itemPatches);
+                }
+                itemPatches.add(patch);
+            }
+        } finally {
+            in.close();
+        }
+        return retval;
+    }
+
+    /**
+     * Turn an item identifier into an object id, using the given namespace offsets.
+     *
+     * @param identifier an item identifier
+     * @param namespaceOffsets a Map from namespace to the object id of identifier 0 in it
+     * @return the corresponding object id
+     */
+    static Integer identifierToId(String identifier, Map<String, Integer> namespaceOffsets) {
+        if (identifier == null) {
+            return null;
+        }
+        int index = identifier.indexOf("_");
+        if (index == -1) {
+            throw new RuntimeException("illegal identifier (\"" + identifier + "\") for item");
+        }
+        String namespace = identifier.substring(0, index);
+        Integer base = namespaceOffsets.get(namespace);
+        if (base == null) {
+            throw new RuntimeException("namespace \"" + namespace + "\" not found");
+        }
+        return new Integer(base.intValue() + Integer.parseInt(identifier.substring(index + 1)));
+    }
+
+    /**
+     * A temporary file being appended to.
+     */
+    private static class Spill
+    {
+        final File file;
+        final DataOutputStream out;
+
+        Spill(File file) throws IOException {
+            this.file = file;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                        SPILL_BUFFER_SIZE));
+        }
+
+        DataInputStream openInput() throws IOException {
+            return new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                        SPILL_BUFFER_SIZE));
+        }
+    }
+
+    /**
+     * Writes records into deflated blocks of an item file.
+     */
+    private static class BlockWriter
+    {
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+        private final DataOutputStream blockOut = new DataOutputStream(block);
+        private final Deflater deflater = new Deflater();
+        private byte[] compressed = new byte[BLOCK_SIZE];
+        private long position;
+
+        BlockWriter(File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                        SPILL_BUFFER_SIZE));
+            out.writeBytes(DATA_MAGIC);
+            position = DATA_MAGIC.length();
+        }
+
+        /**
+         * Appends a record, and returns its position - the file offset of its block, shifted
+         * left by BLOCK_BITS, plus its offset within the uncompressed block.
+         */
+        long append(byte[] bytes, int length) throws IOException {
+            if (block.size() >= BLOCK_SIZE) {
+                flushBlock();
+            }
+            long retval = (position << BLOCK_BITS) | block.size();
+            blockOut.writeInt(length);
+            blockOut.write(bytes, 0, length);
+            return retval;
+        }
+
+        private void flushBlock() throws IOException {
+            if (block.size() == 0) {
+                return;
+            }
+            byte[] uncompressed = block.toByteArray();
+            deflater.reset();
+            deflater.setInput(uncompressed);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength,
+                        compressed.length - compressedLength);
+            }
+            out.writeInt(compressedLength);
+            out.writeInt(uncompressed.length);
+            out.write(compressed, 0, compressedLength);
+            position += 8 + compressedLength;
+            block.reset();
+        }
+
+        void close() throws IOException {
+            flushBlock();
+            deflater.end();
+            out.close();
+        }
+    }
+}
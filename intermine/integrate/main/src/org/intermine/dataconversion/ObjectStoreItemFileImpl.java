@@ -0,0 +1,434 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.intermine.metadata.MetaDataException;
+import org.intermine.metadata.Model;
+import org.intermine.metadata.StringUtil;
+import org.intermine.metadata.TypeUtil;
+import org.intermine.metadata.TypeUtil.FieldInfo;
+import org.intermine.metadata.Util;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStoreAbstractImpl;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.objectstore.query.ClobAccess;
+import org.intermine.objectstore.query.PendingClob;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QuerySelectable;
+import org.intermine.objectstore.query.ResultsInfo;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.util.DynamicUtil;
+import org.intermine.xml.full.ItemHelper;
+
+/**
+ * A read-only ObjectStore of the business objects in an item file written by ItemFileWriter, so
+ * that a source can be loaded by the ObjectStoreDataLoader without an items database. Objects are
+ * translated from Items in the same way as by ItemToObjectTranslator, with references and
+ * collection elements as ProxyReferences that are fetched through the index of the file.
+ *
+ * The only queries supported are those the ObjectStoreDataLoader uses - a single class, selected
+ * without constraints. Such queries are answered by reading the file from start to end, keeping
+ * a few scans open at the rows they have reached, so rows should be fetched roughly in order.
+ */
+public class ObjectStoreItemFileImpl extends ObjectStoreAbstractImpl
+{
+    private static final Logger LOG = Logger.getLogger(ObjectStoreItemFileImpl.class);
+
+    // the number of scans kept open for each class
+    private static final int MAX_SCANS = 4;
+
+    private final ItemFileReader reader;
+    private final Map<Class<?>, TreeMap<Integer, Scan>> scans =
+        new HashMap<Class<?>, TreeMap<Integer, Scan>>();
+
+    /**
+     * Constructor.
+     *
+     * @param model the Model of the objects in the file
+     * @param file the item file
+     * @throws ObjectStoreException if the file can't be opened
+     */
+    public ObjectStoreItemFileImpl(Model model, File file) throws ObjectStoreException {
+        super(model);
+        try {
+            reader = new ItemFileReader(file);
+        } catch (IOException e) {
+            throw new ObjectStoreException("Could not open item file " + file, e);
+        }
+        LOG.info("Opened item file " + file + " containing " + reader.size() + " Items");
+    }
+
+    /**
+     * Gets an ObjectStore for the given properties. The "file" property names the item file.
+     *
+     * @param osAlias the alias of this objectstore
+     * @param props the properties used to configure the objectstore
+     * @return the ObjectStore
+     * @throws ObjectStoreException if there is any problem with the instance
+     */
+    public static ObjectStoreItemFileImpl getInstance(String osAlias, Properties props)
+        throws ObjectStoreException {
+        String fileName = props.getProperty("file");
+        if (fileName == null) {
+            throw new IllegalArgumentException("No 'file' property specified for ItemFile"
+                    + " ObjectStore (check properties file)");
+        }
+        Model classpathModel;
+        try {
+            classpathModel = getModelFromClasspath(osAlias, props);
+        } catch (MetaDataException metaDataException) {
+            throw new ObjectStoreException("Cannot load model", metaDataException);
+        }
+        return new ObjectStoreItemFileImpl(classpathModel, new File(fileName));
+    }
+
+    /**
+     * Turn an object id into the identifier of the Item it was translated from.
+     *
+     * @param id an object id
+     * @return the item identifier
+     */
+    public String idToIdentifier(Integer id) {
+        return reader.idToIdentifier(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ResultsRow<Object>> execute(Query q, int start, int limit, boolean optimise,
+            boolean explain, Map<Object, Integer> sequence) throws ObjectStoreException {
+        Class<?> type = getType(q);
+        List<ResultsRow<Object>> retval = new ArrayList<ResultsRow<Object>>();
+        try {
+            synchronized (scans) {
+                Scan scan = takeScan(type, start);
+                boolean kept = false;
+                try {
+                    while (retval.size() < limit) {
+                        ItemFileRecord record = scan.cursor.next();
+                        if (record == null) {
+                            break;
+                        }
+                        FastPathObject obj = translate(record);
+                        if (type.isInstance(obj)) {
+                            if (scan.row >= start) {
+                                ResultsRow<Object> row = new ResultsRow<Object>();
+                                row.add(obj);
+                                retval.add(row);
+                            }
+                            scan.row++;
+                        }
+                    }
+                    kept = true;
+                    putScan(type, scan);
+                } finally {
+                    if (!kept) {
+                        scan.cursor.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new ObjectStoreException("Could not read item file " + reader.getFile(), e);
+        } catch (MetaDataException e) {
+            throw new ObjectStoreException(e);
+        }
+        return retval;
+    }
+
+    /**
+     * Find the open scan of the given class that is furthest on without passing the given row,
+     * or open a new one from the start of the file if there is none. Batches fetched out of
+     * order by the prefetching of Results then only re-read the rows between them, rather than
+     * the file up to the row wanted.
+     */
+    private Scan takeScan(Class<?> type, int start) throws IOException {
+        TreeMap<Integer, Scan> typeScans = scans.get(type);
+        if (typeScans == null) {
+            typeScans = new TreeMap<Integer, Scan>();
+            scans.put(type, typeScans);
+        }
+        Map.Entry<Integer, Scan> entry = typeScans.floorEntry(new Integer(start));
+        if (entry != null) {
+            return typeScans.remove(entry.getKey());
+        }
+        if (start > 0) {
+            LOG.warn("Starting another scan of " + reader.getFile() + " for "
+                    + Util.getFriendlyName(type) + " to fetch row " + start);
+        }
+        return new Scan(reader.openCursor());
+    }
+
+    private void putScan(Class<?> type, Scan scan) throws IOException {
+        TreeMap<Integer, Scan> typeScans = scans.get(type);
+        Scan replaced = typeScans.put(new Integer(scan.row), scan);
+        if (replaced != null) {
+            replaced.cursor.close();
+        }
+        if (typeScans.size() > MAX_SCANS) {
+            // the scan furthest behind is the least likely to be wanted again
+            typeScans.remove(typeScans.firstKey()).cursor.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultsInfo estimate(Query q) throws ObjectStoreException {
+        getType(q);
+        return new ResultsInfo(0, 0, reader.size());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int count(Query q, Map<Object, Integer> sequence) throws ObjectStoreException {
+        Class<?> type = getType(q);
+        if (InterMineObject.class.equals(type)) {
+            return reader.size();
+        }
+        int retval = 0;
+        try {
+            ItemFileReader.Cursor cursor = reader.openCursor();
+            try {
+                ItemFileRecord record;
+                while ((record = cursor.next()) != null) {
+                    if (type.isInstance(translate(record))) {
+                        retval++;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (IOException e) {
+            throw new ObjectStoreException("Could not read item file " + reader.getFile(), e);
+        } catch (MetaDataException e) {
+            throw new ObjectStoreException(e);
+        }
+        return retval;
+    }
+
+    private Class<?> getType(Query q) throws ObjectStoreException {
+        List<QuerySelectable> select = q.getSelect();
+        if ((select.size() == 1) && (q.getFrom().size() == 1)
+                && (select.get(0) == q.getFrom().iterator().next())
+                && (select.get(0) instanceof QueryClass) && (q.getConstraint() == null)
+                && q.getOrderBy().isEmpty() && q.getGroupBy().isEmpty()) {
+            return ((QueryClass) select.get(0)).getType();
+        }
+        throw new ObjectStoreException("Query cannot be run on an item file: " + q);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected InterMineObject internalGetObjectById(Integer id,
+            Class<? extends InterMineObject> clazz) throws ObjectStoreException {
+        try {
+            ItemFileRecord record = reader.read(id.intValue());
+            if (record == null) {
+                return null;
+            }
+            FastPathObject obj = translate(record);
+            return (clazz.isInstance(obj) ? (InterMineObject) obj : null);
+        } catch (IOException e) {
+            throw new ObjectStoreException("Could not read item file " + reader.getFile(), e);
+        } catch (MetaDataException e) {
+            throw new ObjectStoreException(e);
+        }
+    }
+
+    /**
+     * Translate a record into a business object.
+     *
+     * @param record the record
+     * @return a new object
+     * @throws MetaDataException if a field of the record is not in the model
+     */
+    protected FastPathObject translate(ItemFileRecord record) throws MetaDataException {
+        String identifier = record.getIdentifier();
+        FastPathObject obj;
+        try {
+            obj = DynamicUtil.instantiateObject(
+                    ItemHelper.generateClassNames(record.getClassName(), model),
+                    ItemHelper.generateClassNames(record.getImplementations(), model));
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("class \"" + record.getClassName() + "\" does not exist\n"
+                    + "Problem found while loading Item with identifier " + identifier, e);
+        }
+        try {
+            obj.setFieldValue("id", reader.identifierToId(identifier));
+        } catch (IllegalArgumentException e) {
+            // a SimpleObject has no id
+        }
+        for (String[] attr : record.getAttributes()) {
+            FieldInfo info = TypeUtil.getFieldInfo(obj.getClass(), attr[0]);
+            if (info == null) {
+                throw new MetaDataException("Attribute not found in class: "
+                        + Util.getFriendlyName(obj.getClass()) + "." + attr[0]
+                        + "\nProblem found while loading Item with identifier " + identifier
+                        + " and attribute name " + attr[0]);
+            }
+            if (!"id".equalsIgnoreCase(attr[0])) {
+                Object value = null;
+                if (ClobAccess.class.equals(info.getType())) {
+                    if (attr[1] != null) {
+                        value = new PendingClob(attr[1]);
+                    }
+                } else {
+                    value = TypeUtil.stringToObject(info.getType(), attr[1]);
+                }
+                if (value == null) {
+                    throw new IllegalArgumentException("An attribute (name " + attr[0]
+                            + ") for item with id " + identifier + " was null");
+                }
+                obj.setFieldValue(attr[0], value);
+            }
+        }
+        for (String[] ref : record.getReferences()) {
+            String refName = fieldName(obj, ref[0], "Reference", identifier);
+            Integer id;
+            try {
+                id = reader.identifierToId(ref[1]);
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Failed to find referenced Item with identifier "
+                        + ref[1] + " from Item with identifier " + identifier
+                        + " and reference name " + ref[0], e);
+            }
+            obj.setFieldValue(refName, new ProxyReference(this, id, InterMineObject.class));
+        }
+        for (String[] refs : record.getCollections()) {
+            String refsName = fieldName(obj, refs[0], "Collection", identifier);
+            Set<InterMineObject> elements = new HashSet<InterMineObject>();
+            for (String refId : new LinkedHashSet<String>(StringUtil.tokenize(refs[1]))) {
+                elements.add(new ProxyReference(this, reader.identifierToId(refId),
+                            InterMineObject.class));
+            }
+            obj.setFieldValue(refsName, elements);
+        }
+        return obj;
+    }
+
+    private static String fieldName(FastPathObject obj, String name, String kind,
+            String identifier) throws MetaDataException {
+        if ((name == null) || "".equals(name)) {
+            throw new RuntimeException("Item with identifier " + identifier + " has a "
+                    + kind.toLowerCase() + " with no name");
+        }
+        String retval = name;
+        if ((name.length() > 1) && Character.isLowerCase(name.charAt(1))) {
+            retval = StringUtil.decapitalise(name);
+        }
+        if (TypeUtil.getFieldInfo(obj.getClass(), retval) == null) {
+            throw new MetaDataException(kind + " not found in class: "
+                    + Util.getFriendlyName(obj.getClass()) + "." + name
+                    + " while translating Item with identifier " + identifier);
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends InterMineObject> T getObjectByExample(T o, Set<String> fieldNames) {
+        throw new UnsupportedOperationException("getObjectByExample not supported by"
+                + " ObjectStoreItemFileImpl");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends InterMineObject> Collection<T> getObjectsByExample(T o, Set<String> fs) {
+        throw new UnsupportedOperationException("getObjectsByExample not supported by"
+                + " ObjectStoreItemFileImpl");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isMultiConnection() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Object> getComponentsForQuery(Query q) {
+        return Collections.emptySet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getSerial() throws ObjectStoreException {
+        throw new ObjectStoreException("ObjectStoreItemFileImpl has no serial number");
+    }
+
+    /**
+     * Close the item file.
+     *
+     * @throws ObjectStoreException if the file can't be closed
+     */
+    public void close() throws ObjectStoreException {
+        try {
+            synchronized (scans) {
+                for (TreeMap<Integer, Scan> typeScans : scans.values()) {
+                    for (Scan scan : typeScans.values()) {
+                        scan.cursor.close();
+                    }
+                }
+                scans.clear();
+            }
+            reader.close();
+        } catch (IOException e) {
+            throw new ObjectStoreException("Could not close item file " + reader.getFile(), e);
+        }
+    }
+
+    /**
+     * A read through the file for one class, and the number of rows of that class read so far.
+     */
+    private static class Scan
+    {
+        final ItemFileReader.Cursor cursor;
+        int row = 0;
+
+        Scan(ItemFileReader.Cursor cursor) {
+            this.cursor = cursor;
+        }
+    }
+}
@@ -109,6 +109,13 @@ public class DataTracker
         cacheStorerThread.start();
     }
 
+    /**
+     * Constructor for subclasses that keep their own entries, and so override every public method
+     * of this class. No database connections are opened and no CacheStorer is started.
+     */
+    protected DataTracker() {
+    }
+
     /**
      * Clears the data tracker of all entries. This method may only be called immediately after
      * construction.
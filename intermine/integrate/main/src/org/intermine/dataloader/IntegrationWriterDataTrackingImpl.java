@@ -16,6 +16,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -66,9 +67,16 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
     protected IntPresentSet duplicateObjects = new IntPresentSet();
     protected boolean isDuplicates = false;
     protected PriorityConfig priorityConfig;
+    /** Set when this writer loads one partition of a source alongside other writers */
+    protected LoadPartitioner partitioner = null;
+    protected int partition = LoadPartitioner.ALL_PARTITIONS;
+    /** True if the data tracker belongs to another writer, which will close it */
+    protected boolean sharedTracker = false;
 
     /**
-     * Creates a new instance of this class, given the properties defining it.
+     * Creates a new instance of this class, given the properties defining it. The optional
+     * datatrackerClass property names the DataTracker class to use, and the optional
+     * datatrackerMaxMemory property is passed to a DataTracker that takes a memory limit.
      *
      * @param osAlias the alias of this objectstore
      * @param props the Properties
@@ -77,8 +85,19 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
      */
     public static IntegrationWriterDataTrackingImpl getInstance(String osAlias, Properties props)
         throws ObjectStoreException {
+        Class<? extends DataTracker> trackerClass = DataTracker.class;
+        String trackerClassName = props.getProperty("datatrackerClass");
+        if (trackerClassName != null) {
+            try {
+                trackerClass = Class.forName(trackerClassName.trim())
+                    .asSubclass(DataTracker.class);
+            } catch (Exception e) {
+                throw new ObjectStoreException(props.getProperty("alias") + " has an invalid"
+                        + " datatrackerClass " + trackerClassName + " (check properties file)", e);
+            }
+        }
         return getInstance(osAlias, props, IntegrationWriterDataTrackingImpl.class,
-                           DataTracker.class);
+                           trackerClass);
     }
 
 
@@ -132,10 +151,19 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
                     trackerMissingClasses.add(c);
                 }
             }
-            Constructor<? extends DataTracker> con = trackerClass.getConstructor(
-                    new Class[] {Database.class, Integer.TYPE, Integer.TYPE});
-            DataTracker newDataTracker = con.newInstance(new Object[] {db,
-                new Integer(maxSize), new Integer(commitSize)});
+            DataTracker newDataTracker;
+            String trackerMaxMemoryString = props.getProperty("datatrackerMaxMemory");
+            if (trackerMaxMemoryString == null) {
+                Constructor<? extends DataTracker> con = trackerClass.getConstructor(
+                        new Class<?>[] {Database.class, Integer.TYPE, Integer.TYPE});
+                newDataTracker = con.newInstance(new Object[] {db,
+                    new Integer(maxSize), new Integer(commitSize)});
+            } else {
+                Constructor<? extends DataTracker> con = trackerClass.getConstructor(
+                        new Class<?>[] {Database.class, Integer.TYPE, Integer.TYPE, Long.TYPE});
+                newDataTracker = con.newInstance(new Object[] {db, new Integer(maxSize),
+                    new Integer(commitSize), new Long(Long.parseLong(trackerMaxMemoryString))});
+            }
 
             Constructor<? extends IntegrationWriterDataTrackingImpl> con2 =
                 iwClass.getConstructor(new Class[] {ObjectStoreWriter.class, DataTracker.class,
@@ -215,6 +243,55 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
         return dataTracker;
     }
 
+    /**
+     * Makes this writer load one partition of a source alongside other writers, sharing the ID
+     * map held by the given LoadPartitioner. References to objects in other partitions are
+     * reserved rather than stored as skeletons.
+     *
+     * @param partitioner the LoadPartitioner shared by all the writers
+     * @param partition the partition that this writer stores, or LoadPartitioner.ALL_PARTITIONS
+     */
+    public void setPartitioner(LoadPartitioner partitioner, int partition) {
+        this.partitioner = partitioner;
+        this.partition = partition;
+        if (idMap != partitioner.getIdMap()) {
+            idMap = partitioner.getIdMap();
+            beof = new BaseEquivalentObjectFetcher(getModel(), idMap, osw);
+            eof = new HintingFetcher(beof);
+        }
+    }
+
+    /**
+     * Creates another writer of the same class, with its own ObjectStoreWriter and so its own
+     * transaction, but sharing this writer's data tracker. The new writer will not close the
+     * data tracker.
+     *
+     * @param newPartitioner the LoadPartitioner shared by all the writers
+     * @param newPartition the partition that the new writer will store
+     * @return a new IntegrationWriterDataTrackingImpl
+     * @throws ObjectStoreException if the new writer cannot be created
+     */
+    public IntegrationWriterDataTrackingImpl createPartitionWriter(LoadPartitioner newPartitioner,
+            int newPartition) throws ObjectStoreException {
+        IntegrationWriterDataTrackingImpl retval;
+        try {
+            Constructor<? extends IntegrationWriterDataTrackingImpl> con = getClass()
+                .getConstructor(new Class<?>[] {ObjectStoreWriter.class, DataTracker.class,
+                    Set.class});
+            retval = con.newInstance(new Object[] {osw.getObjectStore().getNewWriter(),
+                dataTracker, trackerMissingClasses});
+        } catch (ObjectStoreException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ObjectStoreException("Problem creating a partition writer of class "
+                    + getClass().getName(), e);
+        }
+        retval.sharedTracker = true;
+        retval.setIgnoreDuplicates(ignoreDuplicates);
+        retval.setPartitioner(newPartitioner, newPartition);
+        return retval;
+    }
+
     /**
      * Returns true if the given class is NOT a subclass of any of the classes in
      * trackerMissingClasses.
@@ -254,13 +331,43 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
             }
             InterMineObject o = (InterMineObject) nimo;
             long time1 = System.currentTimeMillis();
-            Set<InterMineObject> equivObjects = getEquivalentObjects(o, source);
+            Integer reservedId = null;
+            Set<InterMineObject> equivObjects;
+            if ((partitioner != null) && (type != FROM_DB) && (o.getId() != null)) {
+                reservedId = partitioner.takeReservation(o.getId());
+                if (reservedId != null) {
+                    equivObjects = orderEquivalents(beof.queryEquivalentObjects(o, source),
+                            reservedId, o);
+                } else if (idMap.get(o.getId()) != null) {
+                    equivObjects = getEquivalentObjects(o, source);
+                } else if (!partitioner.isOwner(o, partition)) {
+                    return reserve(o, source);
+                } else {
+                    equivObjects = getEquivalentObjects(o, source);
+                    Integer candidate = (equivObjects.isEmpty() ? getSerial()
+                            : equivObjects.iterator().next().getId());
+                    Integer destId = partitioner.claim(o.getId(), candidate);
+                    if (!destId.equals(candidate)) {
+                        // Another partition reserved this object while we were looking for it
+                        reservedId = partitioner.takeReservation(o.getId());
+                        if (reservedId == null) {
+                            throw new ObjectStoreException("Object " + o.getId() + " was mapped"
+                                    + " to " + destId + " by another partition");
+                        }
+                        equivObjects = orderEquivalents(equivObjects, reservedId, o);
+                    } else if (equivObjects.isEmpty()) {
+                        reservedId = candidate;
+                    }
+                }
+            } else {
+                equivObjects = getEquivalentObjects(o, source);
+            }
             long time2 = System.currentTimeMillis();
             timeSpentEquiv += time2 - time1;
             if ((type != FROM_DB) && ((equivObjects.size() == 0) || ((equivObjects.size() == 1)
                     && (o.getId() != null) && (pureObjects.contains(o.getId()))
                     && (type == SOURCE)))) {
-                return shortcut(o, equivObjects, type, time2, source, skelSource);
+                return shortcut(o, equivObjects, type, time2, source, skelSource, reservedId);
             }
             if ((equivObjects.size() == 1) && (type == SKELETON)) {
                 InterMineObject onlyEquivalent = equivObjects.iterator().next();
@@ -288,7 +395,7 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
                 newId = equivalentIter.next().getId();
                 newObj.setId(newId);
             } else {
-                newObj.setId(getSerial());
+                newObj.setId(reservedId == null ? getSerial() : reservedId);
             }
             if (type == SOURCE) {
                 if (writtenObjects.contains(newObj.getId())) {
@@ -530,14 +637,60 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
         }
     }
 
+    /**
+     * Reserves a destination ID for an object that another partition owns, and returns a
+     * reference to it. If the object is equivalent to objects already in the database, the
+     * lowest of their IDs is reserved, otherwise a new ID.
+     */
+    private InterMineObject reserve(InterMineObject o, Source source)
+        throws ObjectStoreException {
+        Integer candidate = null;
+        for (InterMineObject obj : getEquivalentObjects(o, source)) {
+            if ((candidate == null) || (obj.getId().intValue() < candidate.intValue())) {
+                candidate = obj.getId();
+            }
+        }
+        if (candidate == null) {
+            candidate = getSerial();
+        }
+        Integer destId = partitioner.reserve(o.getId(), candidate);
+        return new ProxyReference(osw, destId, InterMineObject.class);
+    }
+
+    /**
+     * Orders a Set of equivalent objects so that the one with the reserved ID comes first, so
+     * that it is the one kept when they are merged.
+     */
+    private Set<InterMineObject> orderEquivalents(Set<InterMineObject> equivObjects,
+            Integer reservedId, InterMineObject o) throws ObjectStoreException {
+        if (equivObjects.isEmpty()) {
+            return equivObjects;
+        }
+        Set<InterMineObject> retval = new LinkedHashSet<InterMineObject>();
+        for (InterMineObject obj : equivObjects) {
+            if (reservedId.equals(obj.getId())) {
+                retval.add(obj);
+            }
+        }
+        if (retval.isEmpty()) {
+            throw new ObjectStoreException("Object " + o.getId() + " from the source was given"
+                    + " ID " + reservedId + " by another partition, but is equivalent to other"
+                    + " objects " + equivObjects + " - the source may contain duplicates that"
+                    + " cannot be loaded in parallel. Set the property \"dataLoader.threads\" to"
+                    + " 1 to load it with a single writer");
+        }
+        retval.addAll(equivObjects);
+        return retval;
+    }
+
     private InterMineObject shortcut(InterMineObject o, Set<InterMineObject> equivObjects, int type,
-            long time2, Source source, Source skelSource) throws ObjectStoreException,
-            IllegalAccessException {
+            long time2, Source source, Source skelSource, Integer reservedId)
+        throws ObjectStoreException, IllegalAccessException {
         // Take a shortcut!
         InterMineObject newObj = DynamicUtil.createObject(o.getClass());
         Integer newId;
         if (equivObjects.size() == 0) {
-            newId = getSerial();
+            newId = (reservedId == null ? getSerial() : reservedId);
             assignMapping(o.getId(), newId);
         } else {
             newId = equivObjects.iterator().next().getId();
@@ -610,7 +763,9 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
     @Override
     public void close() throws ObjectStoreException {
         super.close();
-        dataTracker.close();
+        if (!sharedTracker) {
+            dataTracker.close();
+        }
 
         // There is a bug somewhere in this code that sometimes allows skeletons to
         // be stored without matching up with the real object object.  The problem
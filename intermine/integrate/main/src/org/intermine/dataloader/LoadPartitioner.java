@@ -0,0 +1,219 @@
+package org.intermine.dataloader;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.metadata.AttributeDescriptor;
+import org.intermine.metadata.ClassDescriptor;
+import org.intermine.metadata.FieldDescriptor;
+import org.intermine.metadata.Model;
+import org.intermine.metadata.PrimaryKey;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.util.IntToIntMap;
+
+/**
+ * Splits the objects of a data source between a number of IntegrationWriters that load in
+ * parallel, and holds the state that they share.
+ * <p>
+ * Objects are assigned to a partition by a hash of the values of their first usable primary key,
+ * so objects that merge with each other by that key are always stored by the same writer. The
+ * writers share one ID map from source IDs to destination IDs. When a writer needs a reference
+ * to an object that belongs to another partition, it does not store a skeleton as the
+ * single-threaded loader would, because the owning writer could not see it in the other
+ * transaction. Instead it reserves the destination ID in the shared ID map, and the owning writer
+ * uses that ID when it stores the object. Reservations that are never taken up by the owning
+ * writer are stored as skeletons by the merge step at the end of the load.
+ */
+public class LoadPartitioner
+{
+    /** The partition number of a writer that owns every object, used for the merge step. */
+    public static final int ALL_PARTITIONS = -1;
+
+    private final int partitions;
+    private final Model model;
+    private final Source source;
+    private final IntToIntMap idMap;
+    // Destination ID to source ID, for reservations not yet taken up by the owning writer
+    private final Map<Integer, Integer> reservations = new HashMap<Integer, Integer>();
+
+    /**
+     * Constructor.
+     *
+     * @param partitions the number of partitions
+     * @param model the Model of the data being loaded
+     * @param source the Source being loaded, for looking up primary keys
+     * @param idMap the ID map to share between the writers
+     */
+    public LoadPartitioner(int partitions, Model model, Source source, IntToIntMap idMap) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Number of partitions must be at least 1: "
+                    + partitions);
+        }
+        this.partitions = partitions;
+        this.model = model;
+        this.source = source;
+        this.idMap = idMap;
+    }
+
+    /**
+     * Returns the number of partitions.
+     *
+     * @return an int
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Returns the ID map shared between the writers.
+     *
+     * @return an IntToIntMap from source IDs to destination IDs
+     */
+    public IntToIntMap getIdMap() {
+        return idMap;
+    }
+
+    /**
+     * Returns the partition that an object belongs to. Objects that are not InterMineObjects
+     * cannot be equivalent to anything, so they are spread by their identity.
+     *
+     * @param o an object from the source
+     * @return a partition number, from zero to one less than the number of partitions
+     */
+    public int getPartition(FastPathObject o) {
+        int hash;
+        if (o instanceof InterMineObject) {
+            hash = primaryKeyHash((InterMineObject) o);
+        } else {
+            hash = System.identityHashCode(o);
+        }
+        // Spread the bits, so that similar keys do not all fall in one partition
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return (hash & Integer.MAX_VALUE) % partitions;
+    }
+
+    /**
+     * Returns true if the given partition owns the given object.
+     *
+     * @param o an object from the source
+     * @param partition a partition number, or ALL_PARTITIONS
+     * @return a boolean
+     */
+    public boolean isOwner(InterMineObject o, int partition) {
+        return (partition == ALL_PARTITIONS) || (partitions == 1)
+            || (getPartition(o) == partition);
+    }
+
+    /**
+     * Atomically maps a source ID to a destination ID, unless the source ID has already been
+     * mapped, and returns the destination ID that the source ID maps to afterwards.
+     *
+     * @param sourceId the ID of an object in the source
+     * @param destId the proposed destination ID
+     * @return the destination ID now mapped from sourceId
+     */
+    public Integer claim(Integer sourceId, Integer destId) {
+        synchronized (idMap) {
+            Integer existing = idMap.get(sourceId);
+            if (existing != null) {
+                return existing;
+            }
+            idMap.put(sourceId, destId);
+            return destId;
+        }
+    }
+
+    /**
+     * Reserves a destination ID for an object on behalf of the writer that owns it, unless the
+     * source ID has already been mapped. The owning writer must store the object with the
+     * returned destination ID.
+     *
+     * @param sourceId the ID of an object in the source
+     * @param destId the proposed destination ID
+     * @return the destination ID now mapped from sourceId
+     */
+    public Integer reserve(Integer sourceId, Integer destId) {
+        synchronized (idMap) {
+            Integer existing = idMap.get(sourceId);
+            if (existing != null) {
+                return existing;
+            }
+            idMap.put(sourceId, destId);
+            reservations.put(destId, sourceId);
+            return destId;
+        }
+    }
+
+    /**
+     * Takes up the reservation for an object, if there is one.
+     *
+     * @param sourceId the ID of an object in the source
+     * @return the reserved destination ID, or null if the object has no reservation
+     */
+    public Integer takeReservation(Integer sourceId) {
+        synchronized (idMap) {
+            Integer destId = idMap.get(sourceId);
+            if ((destId != null) && (reservations.remove(destId) != null)) {
+                return destId;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the source IDs of the objects that have been reserved but not yet stored. This
+     * should only be called once all the writers have finished.
+     *
+     * @return a List of source IDs
+     */
+    public List<Integer> getUnclaimedReservations() {
+        synchronized (idMap) {
+            return new ArrayList<Integer>(reservations.values());
+        }
+    }
+
+    private int primaryKeyHash(InterMineObject o) {
+        for (ClassDescriptor cld : model.getClassDescriptorsForClass(o.getClass())) {
+            for (PrimaryKey pk : DataLoaderHelper.getPrimaryKeys(cld, source, null)) {
+                int hash = 0;
+                boolean usable = false;
+                for (String fieldName : pk.getFieldNames()) {
+                    FieldDescriptor fd = cld.getFieldDescriptorByName(fieldName);
+                    if (fd instanceof AttributeDescriptor) {
+                        Object value;
+                        try {
+                            value = o.getFieldValue(fieldName);
+                        } catch (IllegalAccessException e) {
+                            throw new IllegalArgumentException("Failed to get field " + fieldName
+                                    + " for key " + pk + " from " + o, e);
+                        }
+                        if (value == null) {
+                            usable = false;
+                            break;
+                        }
+                        hash = 31 * hash + value.hashCode();
+                        usable = true;
+                    }
+                }
+                if (usable) {
+                    return hash;
+                }
+            }
+        }
+        return o.getId() == null ? System.identityHashCode(o) : o.getId().intValue();
+    }
+}
@@ -10,11 +10,14 @@ package org.intermine.dataloader;
  *
  */
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.log4j.Logger;
 import org.intermine.dataconversion.ItemToObjectTranslator;
+import org.intermine.dataconversion.ObjectStoreItemFileImpl;
 import org.intermine.metadata.Util;
 import org.intermine.model.FastPathObject;
 import org.intermine.model.InterMineObject;
@@ -25,6 +28,8 @@ import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.SingletonResults;
 import org.intermine.util.IntPresentSet;
+import org.intermine.util.IntToIntMap;
+import org.intermine.util.ObjectPipe;
 import org.intermine.util.PropertiesUtil;
 
 /**
@@ -36,6 +41,7 @@ public class ObjectStoreDataLoader extends DataLoader
 {
     private static final Logger LOG = Logger.getLogger(ObjectStoreDataLoader.class);
     private static final int ITEM_READ_BATCH_SIZE = 5000;
+    private static final int PARTITION_QUEUE_SIZE = 1000;
 
     /**
      * Construct an ObjectStoreDataLoader
@@ -74,6 +80,13 @@ public class ObjectStoreDataLoader extends DataLoader
      */
     public void process(ObjectStore os, Source source, Source skelSource,
             Class<? extends FastPathObject> queryClass) throws ObjectStoreException {
+        int threads = Integer.parseInt(PropertiesUtil.getProperties().getProperty(
+                    "dataLoader.threads", "1"));
+        if ((threads > 1)
+                && (getIntegrationWriter() instanceof IntegrationWriterDataTrackingImpl)) {
+            processPartitioned(os, source, skelSource, queryClass, threads);
+            return;
+        }
         int errorCount = 0;
         ObjectStore origOs = os;
         try {
@@ -146,28 +159,8 @@ public class ObjectStoreDataLoader extends DataLoader
                 try {
                     getIntegrationWriter().store(obj, source, skelSource);
                 } catch (RuntimeException e) {
-                    String identifier = null;
-                    if ((origOs instanceof ObjectStoreFastCollectionsForTranslatorImpl)
-                           && (obj instanceof InterMineObject)) {
-                        ItemToObjectTranslator trans = (ItemToObjectTranslator)
-                            ((ObjectStoreFastCollectionsForTranslatorImpl) origOs).getTranslator();
-                        identifier = trans.idToIdentifier(((InterMineObject) obj).getId());
-                    }
-                    LOG.error("Exception while dataloading" + (identifier == null ? ""
-                                : " item with identifier " + identifier), e);
                     errorCount++;
-                    if (errorCount >= 100) {
-                        throw new RuntimeException("Too many data loading exceptions - to stop on"
-                                + " the first error, set the property"
-                                + " \"dataLoader.allowMultipleErrors\" to false", e);
-                    }
-                    if (!allowMultipleErrors) {
-                        throw new RuntimeException("Exception while dataloading - to allow multiple"
-                                + " errors, set the property \"dataLoader.allowMultipleErrors\" to"
-                                + " true\n" + (identifier == null ? ""
-                                    : "Problem while loading item identifier " + identifier
-                                    + " because\n") + e.getMessage(), e);
-                    }
+                    storeFailed(e, obj, origOs, errorCount, allowMultipleErrors);
                 }
                 time3 = System.currentTimeMillis();
                 timeSpentWrite += time3 - time2;
@@ -221,6 +214,212 @@ public class ObjectStoreDataLoader extends DataLoader
             }
             throw e;
         }
+        finished(errorCount);
+    }
+
+    /**
+     * Loads data from the given ObjectStore using several IntegrationWriters in parallel, each in
+     * its own transaction. Objects are split between the writers by a hash of their primary key,
+     * by a LoadPartitioner, and a single reader thread passes each object to the writer that owns
+     * it. Once every writer has finished, objects that were referenced from another partition but
+     * never stored by their owner are stored as skeletons by the original IntegrationWriter, which
+     * then commits last. The writers are committed one after another, not atomically, and if
+     * anything fails the writers that have not been committed are aborted and closed.
+     * <p>
+     * The source ObjectStore is shared by the reader and all the writers, as the objects it
+     * returns hold proxies back to it. ObjectStoreFastCollectionsForTranslatorImpl and the
+     * ObjectStoreTranslatingImpl beneath it serialize their queries, so their caches and the
+     * Translator are only used by one thread at a time.
+     *
+     * @param os the ObjectStore from which to read data
+     * @param source the main Source
+     * @param skelSource the skeleton Source
+     * @param queryClass the class to load data for
+     * @param threads the number of writers to use
+     * @throws ObjectStoreException if an error occurs on either the source or the destination
+     */
+    protected void processPartitioned(ObjectStore os, Source source, Source skelSource,
+            Class<? extends FastPathObject> queryClass, int threads)
+        throws ObjectStoreException {
+        if (os instanceof ObjectStoreFastCollectionsForTranslatorImpl) {
+            ((ObjectStoreFastCollectionsForTranslatorImpl) os).setSource(source);
+        }
+        Properties props = PropertiesUtil.getPropertiesStartingWith("dataLoader");
+        boolean allowMultipleErrors = "true".equals(props.getProperty(
+                        "dataLoader.allowMultipleErrors"));
+        IntegrationWriterDataTrackingImpl mainIw =
+            (IntegrationWriterDataTrackingImpl) getIntegrationWriter();
+        LoadPartitioner partitioner = new LoadPartitioner(threads, mainIw.getModel(), source,
+                new IntToIntMap());
+        LOG.info("Loading source " + source.getName() + " with " + threads + " writers - set the"
+                + " property \"dataLoader.threads\" to 1 to use a single writer");
+        mainIw.setPartitioner(partitioner, 0);
+        List<PartitionWorker> workers = new ArrayList<PartitionWorker>();
+        try {
+            loadPartitions(os, source, skelSource, queryClass, threads, allowMultipleErrors,
+                    partitioner, workers);
+        } finally {
+            for (PartitionWorker worker : workers) {
+                if (!worker.committed) {
+                    worker.abort();
+                }
+            }
+        }
+    }
+
+    private void loadPartitions(ObjectStore os, Source source, Source skelSource,
+            Class<? extends FastPathObject> queryClass, int threads, boolean allowMultipleErrors,
+            LoadPartitioner partitioner, List<PartitionWorker> workers)
+        throws ObjectStoreException {
+        IntegrationWriterDataTrackingImpl mainIw =
+            (IntegrationWriterDataTrackingImpl) getIntegrationWriter();
+        for (int i = 0; i < threads; i++) {
+            IntegrationWriterDataTrackingImpl iw = (i == 0 ? mainIw
+                    : mainIw.createPartitionWriter(partitioner, i));
+            workers.add(new PartitionWorker(iw, os, source, skelSource, allowMultipleErrors));
+            iw.beginTransaction();
+        }
+        List<Thread> workerThreads = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(workers.get(i), "ObjectStoreDataLoader Worker " + (i + 1));
+            t.start();
+            workerThreads.add(t);
+        }
+
+        long startTime = System.currentTimeMillis();
+        long time = startTime;
+        long opCount = 0;
+        Exception failure = null;
+        try {
+            Query q = new Query();
+            QueryClass qc = new QueryClass(queryClass);
+            q.addFrom(qc);
+            q.addToSelect(qc);
+            q.setDistinct(false);
+            SingletonResults res = os.executeSingleton(q, ITEM_READ_BATCH_SIZE, false, false,
+                    true);
+            @SuppressWarnings({ "unchecked", "rawtypes" })
+            Collection<FastPathObject> tmpRes = (Collection) res;
+            for (FastPathObject obj : tmpRes) {
+                workers.get(partitioner.getPartition(obj)).put(obj);
+                opCount++;
+                if (opCount % 10000 == 0) {
+                    long now = System.currentTimeMillis();
+                    LOG.info("Read " + opCount + " objects - running at "
+                            + (600000000L / (now - time)) + " (avg "
+                            + ((60000L * opCount) / (now - startTime))
+                            + ") objects per minute -- now on "
+                            + Util.getFriendlyName(obj.getClass()));
+                    time = now;
+                    failure = getFailure(workers);
+                    if (failure != null) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            for (PartitionWorker worker : workers) {
+                worker.finish();
+            }
+            for (Thread t : workerThreads) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    // Carry on waiting for the other threads
+                }
+            }
+        }
+        if (failure == null) {
+            failure = getFailure(workers);
+        }
+        if (failure instanceof ObjectStoreException) {
+            throw (ObjectStoreException) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+
+        // Merge step - store skeletons for objects that other partitions reserved IDs for
+        mainIw.setPartitioner(partitioner, LoadPartitioner.ALL_PARTITIONS);
+        List<Integer> unclaimed = partitioner.getUnclaimedReservations();
+        LOG.info("Storing " + unclaimed.size() + " objects referenced across partitions but not"
+                + " loaded by their own partition");
+        for (Integer sourceId : unclaimed) {
+            InterMineObject obj = os.getObjectById(sourceId);
+            if (obj == null) {
+                throw new ObjectStoreException("Object " + sourceId + " is referenced from the"
+                        + " source but is not in it");
+            }
+            mainIw.store(obj, source, skelSource, IntegrationWriterAbstractImpl.SKELETON);
+        }
+
+        // The partitions are committed one after another, with the main writer last, as they
+        // use separate connections. If a commit fails, the partitions committed before it stay
+        // committed and the rest are aborted, so the source must be loaded into a fresh database
+        // again, as it would after a failure part way through a load with a single writer.
+        int errorCount = 0;
+        for (int i = workers.size() - 1; i >= 0; i--) {
+            PartitionWorker worker = workers.get(i);
+            worker.iw.commitTransaction();
+            worker.committed = true;
+            worker.iw.close();
+            errorCount += worker.errorCount;
+        }
+        long now = System.currentTimeMillis();
+        LOG.info("Finished dataloading " + opCount + " objects at " + ((60000L * opCount)
+                    / (now - startTime + 1)) + " objects per minute (" + (now - startTime)
+                + " ms total) for source " + source.getName() + " with " + threads + " writers");
+        finished(errorCount);
+    }
+
+    private static Exception getFailure(List<PartitionWorker> workers) {
+        for (PartitionWorker worker : workers) {
+            if (worker.failure != null) {
+                return worker.failure;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Logs an exception thrown while storing an object, and throws an exception to stop the load
+     * if there have been too many errors or multiple errors are not allowed.
+     *
+     * @param e the exception
+     * @param obj the object that failed to store
+     * @param origOs the ObjectStore that the object was read from
+     * @param errorCount the number of errors so far, including this one
+     * @param allowMultipleErrors true if loading should carry on after an error
+     */
+    private static void storeFailed(RuntimeException e, FastPathObject obj, ObjectStore origOs,
+            int errorCount, boolean allowMultipleErrors) {
+        String identifier = null;
+        if ((origOs instanceof ObjectStoreFastCollectionsForTranslatorImpl)
+               && (obj instanceof InterMineObject)) {
+            ItemToObjectTranslator trans = (ItemToObjectTranslator)
+                ((ObjectStoreFastCollectionsForTranslatorImpl) origOs).getTranslator();
+            identifier = trans.idToIdentifier(((InterMineObject) obj).getId());
+        } else if ((origOs instanceof ObjectStoreItemFileImpl)
+                && (obj instanceof InterMineObject)) {
+            identifier = ((ObjectStoreItemFileImpl) origOs).idToIdentifier(((InterMineObject) obj)
+                    .getId());
+        }
+        LOG.error("Exception while dataloading" + (identifier == null ? ""
+                    : " item with identifier " + identifier), e);
+        if (errorCount >= 100) {
+            throw new RuntimeException("Too many data loading exceptions - to stop on"
+                    + " the first error, set the property"
+                    + " \"dataLoader.allowMultipleErrors\" to false", e);
+        }
+        if (!allowMultipleErrors) {
+            throw new RuntimeException("Exception while dataloading - to allow multiple"
+                    + " errors, set the property \"dataLoader.allowMultipleErrors\" to"
+                    + " true\n" + (identifier == null ? ""
+                        : "Problem while loading item identifier " + identifier
+                        + " because\n") + e.getMessage(), e);
+        }
+    }
+
+    private static void finished(int errorCount) {
         LOG.warn("errorCount: " + errorCount);
         if (errorCount > 0) {
             throw new RuntimeException("Dataloading finished. There were errors while loading "
@@ -229,4 +428,84 @@ public class ObjectStoreDataLoader extends DataLoader
                     + ".allowMultipleErrors\" to false");
         }
     }
+
+    /**
+     * Stores the objects of one partition with its own IntegrationWriter.
+     */
+    private static class PartitionWorker implements Runnable
+    {
+        private final ObjectPipe<FastPathObject> pipe
+            = new ObjectPipe<FastPathObject>(PARTITION_QUEUE_SIZE);
+        private final IntegrationWriterDataTrackingImpl iw;
+        private final ObjectStore origOs;
+        private final Source source;
+        private final Source skelSource;
+        private final boolean allowMultipleErrors;
+        private int errorCount = 0;
+        private volatile Exception failure = null;
+        private boolean committed = false;
+
+        PartitionWorker(IntegrationWriterDataTrackingImpl iw, ObjectStore origOs, Source source,
+                Source skelSource, boolean allowMultipleErrors) {
+            this.iw = iw;
+            this.origOs = origOs;
+            this.source = source;
+            this.skelSource = skelSource;
+            this.allowMultipleErrors = allowMultipleErrors;
+        }
+
+        void put(FastPathObject obj) {
+            pipe.put(obj);
+        }
+
+        void finish() {
+            pipe.finish();
+        }
+
+        /**
+         * Aborts the transaction of the IntegrationWriter, and closes it.
+         */
+        void abort() {
+            try {
+                if (iw.isInTransaction()) {
+                    iw.abortTransaction();
+                }
+            } catch (ObjectStoreException e) {
+                LOG.error("Could not abort transaction", e);
+            }
+            try {
+                iw.close();
+            } catch (ObjectStoreException e) {
+                LOG.error("Could not close IntegrationWriter", e);
+            }
+        }
+
+        public void run() {
+            long opCount = 0;
+            while (pipe.hasNext()) {
+                FastPathObject obj = pipe.next();
+                if (failure != null) {
+                    // Keep draining the pipe, so the reader does not block
+                    continue;
+                }
+                try {
+                    iw.store(obj, source, skelSource);
+                    opCount++;
+                    if (opCount % 500000 == 0) {
+                        iw.batchCommitTransaction();
+                    }
+                } catch (RuntimeException e) {
+                    errorCount++;
+                    try {
+                        storeFailed(e, obj, origOs, errorCount, allowMultipleErrors);
+                    } catch (RuntimeException e2) {
+                        failure = e2;
+                    }
+                } catch (ObjectStoreException e) {
+                    LOG.error("Exception while dataloading", e);
+                    failure = e;
+                }
+            }
+        }
+    }
 }
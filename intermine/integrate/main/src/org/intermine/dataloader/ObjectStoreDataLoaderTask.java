@@ -10,10 +10,14 @@ package org.intermine.dataloader;
  *
  */
 
+import java.io.File;
+
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Task;
 
+import org.intermine.dataconversion.ObjectStoreItemFileImpl;
 import org.intermine.model.FastPathObject;
+import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreFactory;
 
 /**
@@ -31,6 +35,7 @@ public class ObjectStoreDataLoaderTask extends Task
     protected boolean ignoreDuplicates;
     protected String queryClass = null;
     protected String allSources;
+    protected String itemFile = null;
 
     /**
      * Set the IntegrationWriter.
@@ -96,6 +101,16 @@ public class ObjectStoreDataLoaderTask extends Task
         this.allSources = allSources;
     }
 
+    /**
+     * Set the name of an item file written by an ItemFileWriter to load from, instead of the
+     * source ObjectStore. An empty name means that the source ObjectStore is used.
+     *
+     * @param itemFile the name of the item file
+     */
+    public void setItemFile(String itemFile) {
+        this.itemFile = itemFile;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -112,22 +127,36 @@ public class ObjectStoreDataLoaderTask extends Task
             IntegrationWriter iw = IntegrationWriterFactory.getIntegrationWriter(integrationWriter);
             PriorityConfig.verify(iw.getModel(), allSources);
             iw.setIgnoreDuplicates(ignoreDuplicates);
-            if (queryClass != null) {
-                Class<?> tmpQueryClass = Class.forName(queryClass);
-                if (!FastPathObject.class.isAssignableFrom(tmpQueryClass)) {
-                    throw new ClassCastException("Class " + queryClass + " is not a subclass of "
-                            + "FastPathObject");
-                }
-                @SuppressWarnings("unchecked") Class<? extends FastPathObject> tmp2QueryClass =
-                    (Class) tmpQueryClass;
-                new ObjectStoreDataLoader(iw).process(ObjectStoreFactory.getObjectStore(source),
-                        iw.getMainSource(sourceName, sourceType), iw.getSkeletonSource(sourceName,
-                                sourceType), tmp2QueryClass);
-
+            ObjectStore os;
+            ObjectStoreItemFileImpl itemFileOs = null;
+            if ((itemFile == null) || "".equals(itemFile)) {
+                os = ObjectStoreFactory.getObjectStore(source);
             } else {
-                new ObjectStoreDataLoader(iw).process(ObjectStoreFactory.getObjectStore(source),
-                                                      iw.getMainSource(sourceName, sourceType),
-                                                      iw.getSkeletonSource(sourceName, sourceType));
+                itemFileOs = new ObjectStoreItemFileImpl(iw.getModel(), new File(itemFile));
+                os = itemFileOs;
+            }
+            try {
+                if (queryClass != null) {
+                    Class<?> tmpQueryClass = Class.forName(queryClass);
+                    if (!FastPathObject.class.isAssignableFrom(tmpQueryClass)) {
+                        throw new ClassCastException("Class " + queryClass + " is not a subclass"
+                                + " of FastPathObject");
+                    }
+                    @SuppressWarnings("unchecked") Class<? extends FastPathObject>
+                        tmp2QueryClass = (Class) tmpQueryClass;
+                    new ObjectStoreDataLoader(iw).process(os, iw.getMainSource(sourceName,
+                                sourceType), iw.getSkeletonSource(sourceName,
+                                    sourceType), tmp2QueryClass);
+
+                } else {
+                    new ObjectStoreDataLoader(iw).process(os,
+                            iw.getMainSource(sourceName, sourceType),
+                            iw.getSkeletonSource(sourceName, sourceType));
+                }
+            } finally {
+                if (itemFileOs != null) {
+                    itemFileOs.close();
+                }
             }
         } catch (Exception e) {
             throw new BuildException(e);
@@ -0,0 +1,907 @@
+package org.intermine.dataloader;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.intermine.sql.Database;
+
+/**
+ * A DataTracker that scales to very large numbers of objects and to several loading threads.
+ * <p>
+ * Instead of an ObjectDescription with two HashMaps per object, the tracking data for an object is
+ * held as an int array, with one int per field packing a number for the field name, a number for
+ * the Source and a dirty flag. The entries are spread over a number of segments by object ID, each
+ * an open-addressing hash table keyed by primitive int and guarded by its own lock, so that
+ * threads working on different objects rarely wait for each other. Each segment has an estimated
+ * memory limit. When a segment goes over it, entries that have not been used recently are evicted
+ * by a CLOCK sweep, and the dirty ones are handed to a background thread that writes them to the
+ * tracker table. Evicted entries stay readable until they have been written.
+ * <p>
+ * The tracker table and its contents are the same as for DataTracker, so the two can be used on
+ * the same database.
+ */
+public class StripedDataTracker extends DataTracker
+{
+    private static final Logger LOG = Logger.getLogger(StripedDataTracker.class);
+
+    /** The default number of segments. */
+    public static final int DEFAULT_SEGMENTS = 64;
+    /** Estimated memory used by an entry, apart from its fields. */
+    private static final int ENTRY_OVERHEAD = 56;
+    /** Estimated number of fields of an entry, to convert a maximum size to memory. */
+    private static final int TYPICAL_FIELDS = 10;
+    private static final int READ_CONNECTIONS = 4;
+    private static final int MAX_PENDING_BATCHES = 4;
+    private static final int DIRTY = 1 << 16;
+    private static final int FIELD_SHIFT = 17;
+    private static final int MAX_FIELDS = 1 << 15;
+    private static final int MAX_SOURCES = 1 << 16;
+    private static final int[] EMPTY = new int[0];
+
+    private final Database db;
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final long segmentMaxWeight;
+    private final Connection[] readConns = new Connection[READ_CONNECTIONS];
+    private Connection storeConn;
+
+    // Entries that have been evicted, but not yet written to the database
+    private final ConcurrentHashMap<Integer, int[]> writeBack
+        = new ConcurrentHashMap<Integer, int[]>();
+    // Batches waiting to be written, in order. A batch is removed once it has been written.
+    private final LinkedList<Map<Integer, int[]>> pending = new LinkedList<Map<Integer, int[]>>();
+    private boolean closing = false;
+    private final Thread writerThread;
+    private final AtomicInteger version = new AtomicInteger(0);
+
+    private final Map<String, Integer> fieldCodes = new ConcurrentHashMap<String, Integer>();
+    private final List<String> fieldNames = new CopyOnWriteArrayList<String>();
+    private final Map<String, Source> nameToSource = new ConcurrentHashMap<String, Source>();
+    private final Map<Source, Integer> sourceCodes = new ConcurrentHashMap<Source, Integer>();
+    private final List<Source> sources = new CopyOnWriteArrayList<Source>();
+    private final List<String> sourceNames = new CopyOnWriteArrayList<String>();
+
+    private final AtomicLong ops = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong batched = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+    private final AtomicLong timeSpentReading = new AtomicLong(0);
+    private final AtomicLong timeSpentWriting = new AtomicLong(0);
+
+    /**
+     * Constructor, with the memory limit estimated from a maximum number of entries.
+     *
+     * @param db a Database to back the tracker
+     * @param maxSize maximum number of cache entries
+     * @param commitSize not used - entries are written as they are evicted
+     */
+    public StripedDataTracker(Database db, int maxSize, int commitSize) {
+        this(db, maxSize, commitSize, ((long) maxSize) * (ENTRY_OVERHEAD + 4 * TYPICAL_FIELDS));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param db a Database to back the tracker
+     * @param maxSize maximum number of cache entries, used only to size the segments initially
+     * @param commitSize not used - entries are written as they are evicted
+     * @param maxMemory the estimated number of bytes of memory that the entries may use
+     */
+    public StripedDataTracker(Database db, int maxSize, int commitSize, long maxMemory) {
+        this.db = db;
+        segments = new Segment[DEFAULT_SEGMENTS];
+        segmentShift = 32 - Integer.numberOfTrailingZeros(DEFAULT_SEGMENTS);
+        segmentMaxWeight = Math.max(maxMemory / DEFAULT_SEGMENTS, 1024L);
+        int initialCapacity = Math.min(Math.max(maxSize / DEFAULT_SEGMENTS, 16), 1 << 20);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(initialCapacity);
+        }
+        try {
+            for (int i = 0; i < readConns.length; i++) {
+                readConns[i] = db.getConnection();
+                readConns[i].setAutoCommit(true);
+            }
+            storeConn = db.getConnection();
+            storeConn.setAutoCommit(false);
+            Statement s = readConns[0].createStatement();
+            try {
+                s.executeQuery("SELECT * FROM tracker LIMIT 1");
+            } catch (SQLException e2) {
+                clear();
+            }
+        } catch (SQLException e) {
+            IllegalArgumentException e2 = new IllegalArgumentException(
+                    "Could not access SQL database");
+            e2.initCause(e);
+            throw e2;
+        }
+        LOG.info("Created StripedDataTracker with " + segments.length + " segments and a limit of "
+                + (segmentMaxWeight * segments.length / 1048576) + " MB");
+        writerThread = new Thread(new BatchWriter(), "StripedDataTracker BatchWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() throws SQLException {
+        Statement s = readConns[0].createStatement();
+        try {
+            s.executeQuery("drop table tracker");
+        } catch (SQLException e) {
+        }
+        s = readConns[0].createStatement();
+        s.execute("create table tracker (objectid int, fieldname text, sourcename text,"
+                + " version int)");
+        s.execute("create index tracker_objectid on tracker (objectid)");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prefetchIds(Set<Integer> ids) {
+        checkBroken();
+        long startTime = System.currentTimeMillis();
+        // the number of batches each segment had evicted when its ids were chosen for fetching
+        Map<Integer, Integer> toFetch = new HashMap<Integer, Integer>();
+        for (Integer id : ids) {
+            Segment seg = segmentFor(id);
+            synchronized (seg) {
+                if (seg.get(id.intValue()) == null) {
+                    int[] evicted = writeBack.get(id);
+                    if (evicted != null) {
+                        seg.put(id.intValue(), cleanCopy(evicted));
+                    } else {
+                        toFetch.put(id, new Integer(seg.evictedBatches));
+                    }
+                }
+            }
+        }
+        if (toFetch.isEmpty()) {
+            return;
+        }
+        Map<Integer, int[]> idsFetched = new HashMap<Integer, int[]>();
+        Connection prefetchConn = null;
+        try {
+            prefetchConn = db.getConnection();
+            prefetchConn.setAutoCommit(true);
+            prefetchConn.createStatement().execute("SET enable_seqscan = off;");
+            int count = 0;
+            StringBuilder sql = new StringBuilder();
+            Iterator<Integer> idIter = toFetch.keySet().iterator();
+            while (idIter.hasNext()) {
+                Integer id = idIter.next();
+                if (sql.length() == 0) {
+                    sql.append("SELECT objectid, fieldname, sourcename, version"
+                            + " FROM tracker WHERE objectid IN (");
+                } else {
+                    sql.append(", ");
+                }
+                sql.append(id);
+                idsFetched.put(id, EMPTY);
+                count++;
+                if ((count % 500 == 0) || (!idIter.hasNext())) {
+                    sql.append(") ORDER BY version");
+                    ResultSet r = prefetchConn.createStatement().executeQuery(sql.toString());
+                    while (r.next()) {
+                        Integer id2 = new Integer(r.getInt(1));
+                        idsFetched.put(id2, withPair(idsFetched.get(id2), fieldCode(r
+                                        .getString(2)), sourceCode(r.getString(3)), false));
+                        bumpVersion(r.getInt(4));
+                    }
+                    sql.setLength(0);
+                }
+            }
+        } catch (SQLException e) {
+            broken = e;
+            IllegalArgumentException e2 = new IllegalArgumentException();
+            e2.initCause(broken);
+            throw e2;
+        } finally {
+            if (prefetchConn != null) {
+                try {
+                    prefetchConn.close();
+                } catch (SQLException e) {
+                    LOG.warn("Error while closing prefetch connection", e);
+                }
+            }
+        }
+        for (Map.Entry<Integer, int[]> entry : idsFetched.entrySet()) {
+            Segment seg = segmentFor(entry.getKey());
+            boolean mustWait;
+            synchronized (seg) {
+                // Another thread may have loaded, changed and evicted the object while it was
+                // being fetched, in which case the rows fetched may be out of date
+                if (seg.get(entry.getKey().intValue()) == null) {
+                    int[] evicted = writeBack.get(entry.getKey());
+                    if (evicted != null) {
+                        seg.put(entry.getKey().intValue(), cleanCopy(evicted));
+                    } else if (seg.evictedBatches == toFetch.get(entry.getKey()).intValue()) {
+                        seg.put(entry.getKey().intValue(), entry.getValue());
+                    }
+                    // Otherwise the object may have been written since, so it is left to be
+                    // read again when it is used
+                }
+                mustWait = seg.evictIfFull();
+            }
+            if (mustWait) {
+                waitForWriter(MAX_PENDING_BATCHES);
+            }
+        }
+        batched.addAndGet(idsFetched.size());
+        timeSpentReading.addAndGet(System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Source getSource(Integer id, String field) {
+        if (id == null) {
+            throw new NullPointerException("id cannot be null");
+        }
+        checkBroken();
+        Integer code = fieldCodes.get(field);
+        Segment seg = segmentFor(id);
+        int sourceCode = -1;
+        boolean mustWait;
+        synchronized (seg) {
+            int[] pairs = load(seg, id);
+            if (code != null) {
+                int index = indexOf(pairs, code.intValue());
+                if (index != -1) {
+                    sourceCode = pairs[index] & (DIRTY - 1);
+                }
+            }
+            mustWait = seg.evictIfFull();
+        }
+        if (mustWait) {
+            waitForWriter(MAX_PENDING_BATCHES);
+        }
+        return sourceCode == -1 ? null : sources.get(sourceCode);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSource(Integer id, String field, Source source) {
+        if (id == null) {
+            throw new NullPointerException("id cannot be null");
+        }
+        Integer sourceCode = (source == null ? null : sourceCodes.get(source));
+        if (sourceCode == null) {
+            throw new NullPointerException("Could not find given source (" + source
+                    + ") in tracker. Sources = " + sources);
+        }
+        checkBroken();
+        int code = fieldCode(field);
+        Segment seg = segmentFor(id);
+        boolean mustWait;
+        synchronized (seg) {
+            int[] pairs = load(seg, id);
+            int[] updated = withPair(pairs, code, sourceCode.intValue(), true);
+            if (updated != pairs) {
+                seg.put(id.intValue(), updated);
+            }
+            mustWait = seg.evictIfFull();
+        }
+        if (mustWait) {
+            waitForWriter(MAX_PENDING_BATCHES);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearObj(Integer id) {
+        checkBroken();
+        Segment seg = segmentFor(id);
+        boolean mustWait;
+        synchronized (seg) {
+            seg.put(id.intValue(), EMPTY);
+            mustWait = seg.evictIfFull();
+        }
+        if (mustWait) {
+            waitForWriter(MAX_PENDING_BATCHES);
+        }
+    }
+
+    /**
+     * Evicts entries from any segment that is over its memory limit.
+     *
+     * @return true if some action was performed
+     */
+    @Override
+    public boolean doWrite() {
+        checkBroken();
+        boolean retval = false;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                retval = seg.evictIfFull() || retval;
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+        checkBroken();
+        int count = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                count += seg.flush();
+            }
+        }
+        LOG.info("Flushing StripedDataTracker - " + count + " dirty entries");
+        waitForWriter(0);
+        checkBroken();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        LOG.info("Closing StripedDataTracker. Operations: " + ops + ", cache misses: " + misses
+                + ", prefetched: " + batched + ", evicted: " + evictions + ", time spent reading: "
+                + timeSpentReading + ", time spent writing: " + timeSpentWriting);
+        try {
+            flush();
+        } finally {
+            synchronized (pending) {
+                closing = true;
+                pending.notifyAll();
+            }
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while waiting for the BatchWriter to finish");
+            }
+            try {
+                for (Connection c : readConns) {
+                    c.close();
+                }
+                storeConn.close();
+            } catch (SQLException e) {
+                IllegalArgumentException e2 = new IllegalArgumentException();
+                e2.initCause(e);
+                throw e2;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Source stringToSource(String name) {
+        return stringToSource(name, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Source stringToSource(String name, String type) {
+        Source retval = nameToSource.get(name);
+        if (retval == null) {
+            synchronized (nameToSource) {
+                retval = nameToSource.get(name);
+                if (retval == null) {
+                    if (sources.size() >= MAX_SOURCES) {
+                        throw new IllegalStateException("Too many sources in the tracker");
+                    }
+                    if (name.startsWith("skel_")) {
+                        retval = new Source(name.substring(5), type, true);
+                    } else {
+                        retval = new Source(name, type, false);
+                    }
+                    sourceNames.add(name);
+                    sources.add(retval);
+                    sourceCodes.put(retval, new Integer(sources.size() - 1));
+                    nameToSource.put(name, retval);
+                }
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String sourceToString(Source source) {
+        Integer code = sourceCodes.get(source);
+        if (code == null) {
+            throw new NullPointerException("Could not find given source in tracker");
+        }
+        return sourceNames.get(code.intValue());
+    }
+
+    private void checkBroken() {
+        if (broken != null) {
+            IllegalArgumentException e = new IllegalArgumentException();
+            e.initCause(broken);
+            throw e;
+        }
+    }
+
+    private Segment segmentFor(Integer id) {
+        return segments[spread(id.intValue()) >>> segmentShift];
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int fieldCode(String field) {
+        Integer retval = fieldCodes.get(field);
+        if (retval == null) {
+            synchronized (fieldCodes) {
+                retval = fieldCodes.get(field);
+                if (retval == null) {
+                    if (fieldNames.size() >= MAX_FIELDS) {
+                        throw new IllegalStateException("Too many field names in the tracker");
+                    }
+                    fieldNames.add(field.intern());
+                    retval = new Integer(fieldNames.size() - 1);
+                    fieldCodes.put(field, retval);
+                }
+            }
+        }
+        return retval.intValue();
+    }
+
+    private int sourceCode(String name) {
+        return sourceCodes.get(stringToSource(name)).intValue();
+    }
+
+    private void bumpVersion(int rowVersion) {
+        int current = version.get();
+        while ((current <= rowVersion) && !version.compareAndSet(current, rowVersion + 1)) {
+            current = version.get();
+        }
+    }
+
+    private static int indexOf(int[] pairs, int fieldCode) {
+        for (int i = 0; i < pairs.length; i++) {
+            if ((pairs[i] >>> FIELD_SHIFT) == fieldCode) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the Source of a field in an entry, returning the same array if it could be changed in
+     * place, or a new longer array.
+     */
+    private static int[] withPair(int[] pairs, int fieldCode, int sourceCode, boolean dirty) {
+        int pair = (fieldCode << FIELD_SHIFT) | (dirty ? DIRTY : 0) | sourceCode;
+        int index = indexOf(pairs, fieldCode);
+        if (index == -1) {
+            int[] retval = new int[pairs.length + 1];
+            System.arraycopy(pairs, 0, retval, 0, pairs.length);
+            retval[pairs.length] = pair;
+            return retval;
+        }
+        if ((pairs[index] & ~DIRTY) != (pair & ~DIRTY)) {
+            pairs[index] = pair;
+        }
+        return pairs;
+    }
+
+    private static boolean isDirty(int[] pairs) {
+        for (int pair : pairs) {
+            if ((pair & DIRTY) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] cleanCopy(int[] pairs) {
+        int[] retval = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            retval[i] = pairs[i] & ~DIRTY;
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the entry for an object, fetching it from the write-back map or the database if it
+     * is not in the segment. Must be called while holding the lock on the segment.
+     */
+    private int[] load(Segment seg, Integer id) {
+        long count = ops.incrementAndGet();
+        if (count % 1000000 == 0) {
+            LOG.info("Operations: " + count + ", cache misses: " + misses + ", evicted: "
+                    + evictions + ", time spent reading: " + timeSpentReading);
+        }
+        int[] pairs = seg.get(id.intValue());
+        if (pairs == null) {
+            int[] evicted = writeBack.get(id);
+            if (evicted != null) {
+                // The pending write will store the dirty fields
+                pairs = cleanCopy(evicted);
+            } else {
+                pairs = read(id);
+                misses.incrementAndGet();
+            }
+            seg.put(id.intValue(), pairs);
+        }
+        return pairs;
+    }
+
+    private int[] read(Integer id) {
+        long start = System.currentTimeMillis();
+        Connection c = readConns[(spread(id.intValue()) & 0x7fffffff) % readConns.length];
+        int[] retval = EMPTY;
+        synchronized (c) {
+            try {
+                ResultSet r = c.createStatement().executeQuery("select fieldname, sourcename,"
+                        + " version from tracker where objectid = " + id + " ORDER BY version");
+                while (r.next()) {
+                    retval = withPair(retval, fieldCode(r.getString(1)), sourceCode(r
+                                .getString(2)), false);
+                    bumpVersion(r.getInt(3));
+                }
+                long now = System.currentTimeMillis();
+                if (now - start > 2000) {
+                    LOG.warn("Query on tracker table took too long (" + (now - start) + " ms) "
+                            + "- switching off sequential scans. You should analyse the database");
+                    c.createStatement().execute("SET enable_seqscan = off;");
+                }
+            } catch (SQLException e) {
+                broken = e;
+                IllegalArgumentException e2 = new IllegalArgumentException();
+                e2.initCause(broken);
+                throw e2;
+            }
+        }
+        timeSpentReading.addAndGet(System.currentTimeMillis() - start);
+        return retval;
+    }
+
+    /**
+     * Queues a batch of evicted or flushed entries for writing. Must be called while holding the
+     * lock on the segment that the entries came from, so that batches holding the same object are
+     * written in the order that they were made.
+     */
+    private void enqueue(Map<Integer, int[]> batch) {
+        for (Map.Entry<Integer, int[]> entry : batch.entrySet()) {
+            writeBack.put(entry.getKey(), entry.getValue());
+        }
+        synchronized (pending) {
+            pending.add(batch);
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until no more than the given number of batches are waiting to be written.
+     */
+    private void waitForWriter(int maxPending) {
+        synchronized (pending) {
+            while ((pending.size() > maxPending) && (broken == null)) {
+                try {
+                    pending.wait(1000L);
+                } catch (InterruptedException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the dirty fields of a batch of entries to the tracker table.
+     */
+    private void writeBatch(Map<Integer, int[]> batch) throws SQLException {
+        long start = System.currentTimeMillis();
+        int batchVersion = version.getAndIncrement();
+        try {
+            org.postgresql.copy.CopyManager copyManager = null;
+            ByteArrayOutputStream baos = null;
+            DataOutputStream dos = null;
+            Statement s = null;
+            if (storeConn.isWrapperFor(org.postgresql.PGConnection.class)) {
+                copyManager = (storeConn.unwrap(org.postgresql.PGConnection.class)).getCopyAPI();
+                baos = new ByteArrayOutputStream();
+                dos = new DataOutputStream(baos);
+                dos.writeBytes("PGCOPY\n");
+                dos.writeByte(255);
+                dos.writeBytes("\r\n");
+                dos.writeByte(0); // Signature done
+                dos.writeInt(0); // Flags - we aren't supplying OIDS
+                dos.writeInt(0); // Length of header extension
+            } else {
+                s = storeConn.createStatement();
+                LOG.warn("Using slow portable writing method");
+            }
+            for (Map.Entry<Integer, int[]> entry : batch.entrySet()) {
+                int id = entry.getKey().intValue();
+                for (int pair : entry.getValue()) {
+                    if ((pair & DIRTY) == 0) {
+                        continue;
+                    }
+                    String field = fieldNames.get(pair >>> FIELD_SHIFT);
+                    String sourceName = sourceNames.get(pair & (DIRTY - 1));
+                    if (s == null) {
+                        dos.writeShort(4); // Number of fields
+                        dos.writeInt(4); // Length of an integer
+                        dos.writeInt(id); // objectid
+                        dos.writeInt(field.length()); // Length of fieldname
+                        dos.writeBytes(field); // Field name
+                        dos.writeInt(sourceName.length()); // Length of source name
+                        dos.writeBytes(sourceName); // Source name
+                        dos.writeInt(4); // Length of an integer
+                        dos.writeInt(batchVersion); // version
+                    } else {
+                        s.addBatch("INSERT INTO tracker (objectid, fieldname, sourcename,"
+                                + " version) VALUES (" + id + ", '" + field + "', '"
+                                + sourceName + "', " + batchVersion + ")");
+                    }
+                }
+            }
+            if (s == null) {
+                dos.writeShort(-1); // No more tuples
+                dos.flush();
+                copyManager.copyIn("COPY tracker FROM STDIN BINARY",
+                        new ByteArrayInputStream(baos.toByteArray()));
+            } else {
+                s.executeBatch();
+            }
+            storeConn.commit();
+        } catch (IOException e) {
+            throw new SQLException(e.toString());
+        }
+        timeSpentWriting.addAndGet(System.currentTimeMillis() - start);
+    }
+
+    /**
+     * One stripe of the tracker - an open-addressing hash table from object ID to entry, with
+     * linear probing and a CLOCK bit per slot. All access must hold the lock on the segment.
+     */
+    private class Segment
+    {
+        private int[] keys;
+        private int[][] values;
+        private boolean[] referenced;
+        private int size = 0;
+        private long weight = 0;
+        private int hand = 0;
+        // the number of batches of evicted entries queued for writing
+        int evictedBatches = 0;
+
+        Segment(int initialCapacity) {
+            int capacity = Integer.highestOneBit(Math.max(initialCapacity, 16) * 2 - 1);
+            keys = new int[capacity];
+            values = new int[capacity][];
+            referenced = new boolean[capacity];
+        }
+
+        private int indexOf(int id) {
+            int mask = keys.length - 1;
+            int i = spread(id) & mask;
+            while (values[i] != null) {
+                if (keys[i] == id) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        int[] get(int id) {
+            int i = indexOf(id);
+            if (i == -1) {
+                return null;
+            }
+            referenced[i] = true;
+            return values[i];
+        }
+
+        void put(int id, int[] pairs) {
+            int i = indexOf(id);
+            if (i != -1) {
+                weight += 4L * (pairs.length - values[i].length);
+                values[i] = pairs;
+                referenced[i] = true;
+                return;
+            }
+            if ((size + 1) * 10 > keys.length * 7) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            i = spread(id) & mask;
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = id;
+            values[i] = pairs;
+            referenced[i] = true;
+            size++;
+            weight += ENTRY_OVERHEAD + 4L * pairs.length;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[][] oldValues = values;
+            boolean[] oldReferenced = referenced;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2][];
+            referenced = new boolean[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldValues[j] != null) {
+                    int i = spread(oldKeys[j]) & mask;
+                    while (values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                    referenced[i] = oldReferenced[j];
+                }
+            }
+            hand = 0;
+        }
+
+        /**
+         * Removes the entry in a slot, shifting back any later entries in the same probe
+         * sequence.
+         */
+        private void removeAt(int i) {
+            weight -= ENTRY_OVERHEAD + 4L * values[i].length;
+            size--;
+            int mask = keys.length - 1;
+            int gap = i;
+            int j = (i + 1) & mask;
+            while (values[j] != null) {
+                int home = spread(keys[j]) & mask;
+                // Move the entry at j into the gap if its home slot is not between the gap and j
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    referenced[gap] = referenced[j];
+                    gap = j;
+                }
+                j = (j + 1) & mask;
+            }
+            values[gap] = null;
+            referenced[gap] = false;
+        }
+
+        /**
+         * Evicts entries that have not been used recently until the segment is comfortably under
+         * its memory limit, queueing the dirty ones for writing.
+         *
+         * @return true if entries were queued for writing
+         */
+        boolean evictIfFull() {
+            if (weight <= segmentMaxWeight) {
+                return false;
+            }
+            long target = segmentMaxWeight - segmentMaxWeight / 8;
+            Map<Integer, int[]> batch = new HashMap<Integer, int[]>();
+            int mask = keys.length - 1;
+            while ((weight > target) && (size > 0)) {
+                if (values[hand] == null) {
+                    hand = (hand + 1) & mask;
+                } else if (referenced[hand]) {
+                    referenced[hand] = false;
+                    hand = (hand + 1) & mask;
+                } else {
+                    if (isDirty(values[hand])) {
+                        batch.put(new Integer(keys[hand]), values[hand]);
+                    }
+                    // Another entry may be shifted into this slot, so look at it again
+                    removeAt(hand);
+                    evictions.incrementAndGet();
+                }
+            }
+            if (batch.isEmpty()) {
+                return false;
+            }
+            enqueue(batch);
+            evictedBatches++;
+            return true;
+        }
+
+        /**
+         * Queues copies of all the dirty entries for writing, and marks them clean.
+         *
+         * @return the number of entries queued
+         */
+        int flush() {
+            Map<Integer, int[]> batch = new HashMap<Integer, int[]>();
+            for (int i = 0; i < keys.length; i++) {
+                int[] pairs = values[i];
+                if ((pairs != null) && isDirty(pairs)) {
+                    batch.put(new Integer(keys[i]), pairs.clone());
+                    for (int j = 0; j < pairs.length; j++) {
+                        pairs[j] &= ~DIRTY;
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                enqueue(batch);
+            }
+            return batch.size();
+        }
+    }
+
+    /**
+     * Writes queued batches to the database, in order.
+     */
+    private class BatchWriter implements Runnable
+    {
+        public void run() {
+            while (true) {
+                Map<Integer, int[]> batch;
+                synchronized (pending) {
+                    while (pending.isEmpty() && !closing) {
+                        try {
+                            pending.wait(100000L);
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    batch = pending.getFirst();
+                }
+                try {
+                    if (broken == null) {
+                        writeBatch(batch);
+                    }
+                } catch (Exception e) {
+                    LOG.error("BatchWriter received exception", e);
+                    broken = e;
+                }
+                for (Map.Entry<Integer, int[]> entry : batch.entrySet()) {
+                    // Leave the entry if it has been evicted again into a later batch
+                    writeBack.remove(entry.getKey(), entry.getValue());
+                }
+                synchronized (pending) {
+                    pending.removeFirst();
+                    pending.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -190,9 +190,11 @@ public class ObjectStoreFastCollectionsForTranslatorImpl extends ObjectStorePass
     public List<ResultsRow<Object>> execute(Query q, int start, int limit, boolean optimise,
             boolean explain, Map<Object, Integer> sequence) throws ObjectStoreException {
         try {
-            List<ResultsRow<Object>> retval = os.execute(q, start, limit, optimise, explain,
-                    sequence);
+            // The partitioned dataloader shares this ObjectStore between its reader and writer
+            // threads, so the whole fetch is done under the lock, not just the bookkeeping
             synchronized (doneAlready) {
+                List<ResultsRow<Object>> retval = os.execute(q, start, limit, optimise, explain,
+                        sequence);
                 if (retval.size() > 1) {
                     // The ItemToObjectTranslator creates collections by creating a query with a
                     // BagConstraint with all the IDs of all the objects that are in the collection.
@@ -11,6 +11,7 @@ package org.intermine.task;
  */
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -18,7 +19,13 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import org.intermine.dataconversion.ItemFileWriter;
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.dataconversion.ObjectStoreItemWriter;
 import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.ObjectStoreWriterFactory;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 
 /**
@@ -31,6 +38,7 @@ public class ConverterTask extends DynamicAttributeTask
     private String modelName = null;
     private String osName;
     private String excludeList;
+    private String itemFile = null;
 
     /**
      * Set the objectstore name
@@ -81,6 +89,49 @@ public class ConverterTask extends DynamicAttributeTask
         return osName;
     }
 
+    /**
+     * Set the name of an item file to write Items to, instead of the objectstore. An empty name
+     * means that Items are written to the objectstore.
+     *
+     * @param itemFile the name of the item file
+     */
+    public void setItemFile(String itemFile) {
+        this.itemFile = itemFile;
+    }
+
+    /**
+     * Return the item file set by setItemFile().
+     * @return the name of the item file, or null if Items are written to the objectstore
+     */
+    public String getItemFile() {
+        return ((itemFile == null) || "".equals(itemFile)) ? null : itemFile;
+    }
+
+    /**
+     * Return the ObjectStoreWriter for the objectstore set by setOsName(), or null if Items are
+     * written to an item file.
+     *
+     * @return an ObjectStoreWriter, or null
+     * @throws ObjectStoreException if the ObjectStoreWriter can't be created
+     */
+    protected ObjectStoreWriter getObjectStoreWriter() throws ObjectStoreException {
+        return (getItemFile() == null) ? ObjectStoreWriterFactory.getObjectStoreWriter(osName)
+            : null;
+    }
+
+    /**
+     * Create the ItemWriter to give to the converter - an ItemFileWriter if an item file has
+     * been set, otherwise an ObjectStoreItemWriter.
+     *
+     * @param osw the ObjectStoreWriter returned by getObjectStoreWriter()
+     * @return a new ItemWriter
+     * @throws ObjectStoreException if the ItemWriter can't be created
+     */
+    protected ItemWriter createItemWriter(ObjectStoreWriter osw) throws ObjectStoreException {
+        return (osw == null) ? new ItemFileWriter(new File(getItemFile()))
+            : new ObjectStoreItemWriter(osw);
+    }
+
     /**
      * Runs various performance-enhancing SQL statements.
      *
@@ -12,10 +12,8 @@ package org.intermine.task;
 
 import org.intermine.dataconversion.DBConverter;
 import org.intermine.dataconversion.ItemWriter;
-import org.intermine.dataconversion.ObjectStoreItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreWriter;
-import org.intermine.objectstore.ObjectStoreWriterFactory;
 import org.intermine.sql.Database;
 import org.intermine.sql.DatabaseFactory;
 
@@ -67,8 +65,8 @@ public class DBConverterTask extends ConverterTask
             throw new BuildException("dbAlias attribute is not set");
         }
         try {
-            ObjectStoreWriter osw = ObjectStoreWriterFactory.getObjectStoreWriter(getOsName());
-            ObjectStoreItemWriter writer = new ObjectStoreItemWriter(osw);
+            ObjectStoreWriter osw = getObjectStoreWriter();
+            ItemWriter writer = createItemWriter(osw);
             Database database = DatabaseFactory.getDatabase(dbAlias);
 
             Class<?> c = Class.forName(clsName);
@@ -86,7 +84,9 @@ public class DBConverterTask extends ConverterTask
             converter.process();
             converter.close();
             converter.getItemWriter().close();
-            osw.close();
+            if (osw != null) {
+                osw.close();
+            }
         } catch (Exception e) {
             throw new BuildException("problem while running converter reading from db: "
                                      + dbAlias, e);
@@ -24,10 +24,8 @@ import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.types.FileSet;
 import org.intermine.dataconversion.FullXmlConverter;
 import org.intermine.dataconversion.ItemWriter;
-import org.intermine.dataconversion.ObjectStoreItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreWriter;
-import org.intermine.objectstore.ObjectStoreWriterFactory;
 
 /**
  * Load InterMine Items XML file(s) into a target items database.
@@ -91,8 +89,8 @@ public class FullXmlConverterTask extends ConverterTask
 
         try {
             Model model = Model.getInstanceByName(getModelName());
-            osw = ObjectStoreWriterFactory.getObjectStoreWriter(getOsName());
-            writer = new ObjectStoreItemWriter(osw);
+            osw = getObjectStoreWriter();
+            writer = createItemWriter(osw);
             FullXmlConverter converter = new FullXmlConverter(writer, model);
 
             List<File> files = new ArrayList<File>();
@@ -148,7 +146,9 @@ public class FullXmlConverterTask extends ConverterTask
         }
 
         try {
-            doSQL(osw.getObjectStore());
+            if (osw != null) {
+                doSQL(osw.getObjectStore());
+            }
         } catch (Exception e) {
             throw new BuildException(e);
         }
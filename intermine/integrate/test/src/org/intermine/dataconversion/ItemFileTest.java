@@ -0,0 +1,193 @@
+package org.intermine.dataconversion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.metadata.Model;
+import org.intermine.model.InterMineObject;
+import org.intermine.model.fulldata.Attribute;
+import org.intermine.model.fulldata.Item;
+import org.intermine.model.fulldata.Reference;
+import org.intermine.model.fulldata.ReferenceList;
+import org.intermine.model.testmodel.Company;
+import org.intermine.model.testmodel.Department;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.objectstore.query.SimpleConstraint;
+
+public class ItemFileTest extends TestCase
+{
+    private File file;
+    private ObjectStoreItemFileImpl os;
+
+    public ItemFileTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("ItemFileTest", ".items");
+        ItemFileWriter writer = new ItemFileWriter(file);
+        Item company = item("fish_1", "Company", "");
+        attribute(company, "name", "CompanyA");
+        attribute(company, "vatNumber", "1234");
+        Integer companyId = writer.store(company);
+        for (int i = 0; i < 2000; i++) {
+            Item department = item("fish_" + (i + 2), "Department", "");
+            attribute(department, "name", "Department" + i);
+            Reference ref = new Reference();
+            ref.setName("company");
+            ref.setRefId("fish_1");
+            department.addReferences(ref);
+            writer.store(department);
+        }
+        Item address = item("bird_0", "Address", "");
+        attribute(address, "address", "1 Some Street");
+        writer.store(address);
+
+        // changes made after storing, as done by converters that use the Item ids
+        Reference addressRef = new Reference();
+        addressRef.setName("address");
+        addressRef.setRefId("bird_0");
+        writer.store(addressRef, companyId);
+        ReferenceList departments = new ReferenceList();
+        departments.setName("departments");
+        departments.setRefIds("fish_2 fish_3 fish_2");
+        writer.store(departments, companyId);
+        writer.close();
+
+        os = new ObjectStoreItemFileImpl(Model.getInstanceByName("testmodel"), file);
+    }
+
+    public void tearDown() throws Exception {
+        os.close();
+        file.delete();
+        new File(file.getPath() + ItemFileWriter.INDEX_SUFFIX).delete();
+    }
+
+    private static Item item(String identifier, String className, String implementations) {
+        Item item = new Item();
+        item.setIdentifier(identifier);
+        item.setClassName(className);
+        item.setImplementations(implementations);
+        return item;
+    }
+
+    private static void attribute(Item item, String name, String value) {
+        Attribute att = new Attribute();
+        att.setName(name);
+        att.setValue(value);
+        item.addAttributes(att);
+    }
+
+    private static Query queryFor(Class<?> type) {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(type);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        return q;
+    }
+
+    public void testIdsAllocatedByNamespace() throws Exception {
+        // namespaces are given ranges of ids in alphabetical order, as by ItemToObjectTranslator
+        assertEquals("bird_0", os.idToIdentifier(new Integer(0)));
+        assertEquals("fish_0", os.idToIdentifier(new Integer(1)));
+        assertEquals("fish_1", os.idToIdentifier(new Integer(2)));
+    }
+
+    public void testGetObjectById() throws Exception {
+        Company company = (Company) os.getObjectById(new Integer(2));
+        assertEquals("CompanyA", company.getName());
+        assertEquals(1234, company.getVatNumber());
+        assertEquals(new Integer(2), company.getId());
+        assertEquals("1 Some Street", company.getAddress().getAddress());
+        Set<Integer> departmentIds = new HashSet<Integer>();
+        for (Object department : company.getDepartments()) {
+            assertTrue(department instanceof ProxyReference);
+            departmentIds.add(((InterMineObject) department).getId());
+        }
+        Set<Integer> expected = new HashSet<Integer>();
+        expected.add(new Integer(3));
+        expected.add(new Integer(4));
+        assertEquals(expected, departmentIds);
+
+        Department department = (Department) os.getObjectById(new Integer(1502));
+        assertEquals("Department1499", department.getName());
+        assertEquals(new Integer(2), ((ProxyReference) department.proxGetCompany()).getId());
+
+        assertNull(os.getObjectById(new Integer(5000)));
+    }
+
+    public void testExecute() throws Exception {
+        Query q = queryFor(Department.class);
+        assertEquals(2000, os.count(q, ObjectStore.SEQUENCE_IGNORE));
+        Set<String> names = new HashSet<String>();
+        for (int start = 0; start < 2000; start += 300) {
+            List<ResultsRow<Object>> rows = os.execute(q, start, 300, false, false,
+                    ObjectStore.SEQUENCE_IGNORE);
+            assertEquals(Math.min(300, 2000 - start), rows.size());
+            for (ResultsRow<Object> row : rows) {
+                names.add(((Department) row.get(0)).getName());
+            }
+        }
+        assertEquals(2000, names.size());
+        assertTrue(os.execute(q, 2000, 300, false, false, ObjectStore.SEQUENCE_IGNORE).isEmpty());
+
+        // going back starts another scan
+        List<ResultsRow<Object>> rows = os.execute(q, 10, 1, false, false,
+                ObjectStore.SEQUENCE_IGNORE);
+        assertEquals("Department10", ((Department) rows.get(0).get(0)).getName());
+
+        assertEquals(2002, os.count(queryFor(InterMineObject.class),
+                    ObjectStore.SEQUENCE_IGNORE));
+        assertEquals(2002, os.execute(queryFor(InterMineObject.class), 0, 5000, false, false,
+                    ObjectStore.SEQUENCE_IGNORE).size());
+    }
+
+    public void testExecuteOutOfOrder() throws Exception {
+        // batches as fetched by Results when prefetching, where a later batch may come first
+        Query q = queryFor(Department.class);
+        int[] starts = new int[] {300, 0, 600, 900, 1200, 1500, 1800, 1000, 1100};
+        for (int start : starts) {
+            List<ResultsRow<Object>> rows = os.execute(q, start, 100, false, false,
+                    ObjectStore.SEQUENCE_IGNORE);
+            assertEquals(100, rows.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals("Department" + (start + i),
+                        ((Department) rows.get(i).get(0)).getName());
+            }
+        }
+    }
+
+    public void testUnsupportedQuery() throws Exception {
+        Query q = queryFor(Company.class);
+        QueryClass qc = (QueryClass) q.getSelect().get(0);
+        q.setConstraint(new SimpleConstraint(new QueryField(qc, "name"), ConstraintOp.EQUALS,
+                    new QueryValue("CompanyA")));
+        try {
+            os.execute(q, 0, 10, false, false, ObjectStore.SEQUENCE_IGNORE);
+            fail("Expected ObjectStoreException");
+        } catch (ObjectStoreException e) {
+        }
+    }
+}
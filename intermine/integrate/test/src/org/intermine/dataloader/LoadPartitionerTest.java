@@ -0,0 +1,123 @@
+package org.intermine.dataloader;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.intermine.metadata.Model;
+import org.intermine.model.testmodel.Address;
+import org.intermine.model.testmodel.Company;
+import org.intermine.model.testmodel.SimpleObject;
+import org.intermine.util.DynamicUtil;
+import org.intermine.util.IntToIntMap;
+
+public class LoadPartitionerTest extends TestCase
+{
+    private Model model;
+    private Source source;
+
+    public LoadPartitionerTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        model = Model.getInstanceByName("testmodel");
+        source = new Source("testsource");
+    }
+
+    public void testConstructor() throws Exception {
+        try {
+            new LoadPartitioner(0, model, source, new IntToIntMap());
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testGetPartition() throws Exception {
+        LoadPartitioner partitioner = new LoadPartitioner(4, model, source, new IntToIntMap());
+        assertEquals(4, partitioner.getPartitions());
+        boolean[] used = new boolean[4];
+        for (int i = 0; i < 100; i++) {
+            Company c1 = createCompany(new Integer(i), "Company" + i, "Address" + i);
+            Company c2 = createCompany(new Integer(1000 + i), "Company" + i, "Other address");
+            // Companies with the same name merge by key1, so must be stored by the same writer
+            int partition = partitioner.getPartition(c1);
+            assertEquals(partition, partitioner.getPartition(c2));
+            assertTrue(partition >= 0 && partition < 4);
+            assertTrue(partitioner.isOwner(c1, partition));
+            assertFalse(partitioner.isOwner(c1, (partition + 1) % 4));
+            assertTrue(partitioner.isOwner(c1, LoadPartitioner.ALL_PARTITIONS));
+            used[partition] = true;
+        }
+        for (int i = 0; i < 4; i++) {
+            assertTrue("No companies in partition " + i, used[i]);
+        }
+
+        // Without a usable key, objects are partitioned by ID
+        Company noName1 = createCompany(new Integer(5), null, null);
+        Company noName2 = createCompany(new Integer(5), null, null);
+        assertEquals(partitioner.getPartition(noName1), partitioner.getPartition(noName2));
+
+        SimpleObject simple = new SimpleObject();
+        int partition = partitioner.getPartition(simple);
+        assertTrue(partition >= 0 && partition < 4);
+        assertEquals(partition, partitioner.getPartition(simple));
+    }
+
+    public void testSinglePartition() throws Exception {
+        LoadPartitioner partitioner = new LoadPartitioner(1, model, source, new IntToIntMap());
+        Company c = createCompany(new Integer(1), "Company", null);
+        assertEquals(0, partitioner.getPartition(c));
+        assertTrue(partitioner.isOwner(c, 0));
+        assertTrue(partitioner.isOwner(c, 3));
+    }
+
+    public void testReservations() throws Exception {
+        IntToIntMap idMap = new IntToIntMap();
+        LoadPartitioner partitioner = new LoadPartitioner(2, model, source, idMap);
+        assertSame(idMap, partitioner.getIdMap());
+
+        // A reservation fixes the destination ID that the owner must use
+        assertEquals(new Integer(100), partitioner.reserve(new Integer(1), new Integer(100)));
+        assertEquals(new Integer(100), partitioner.reserve(new Integer(1), new Integer(200)));
+        assertEquals(new Integer(100), partitioner.claim(new Integer(1), new Integer(300)));
+        assertEquals(new Integer(100), idMap.get(new Integer(1)));
+
+        // An object that its owner has already stored is not reserved
+        assertEquals(new Integer(400), partitioner.claim(new Integer(2), new Integer(400)));
+        assertEquals(new Integer(400), partitioner.reserve(new Integer(2), new Integer(500)));
+        assertNull(partitioner.takeReservation(new Integer(2)));
+
+        assertEquals(new Integer(600), partitioner.reserve(new Integer(3), new Integer(600)));
+        assertNull(partitioner.takeReservation(new Integer(4)));
+        assertEquals(2, partitioner.getUnclaimedReservations().size());
+
+        // Once the owner takes up a reservation, it is not left for the merge step
+        assertEquals(new Integer(100), partitioner.takeReservation(new Integer(1)));
+        assertNull(partitioner.takeReservation(new Integer(1)));
+        assertEquals(Collections.singletonList(new Integer(3)),
+                partitioner.getUnclaimedReservations());
+    }
+
+    private Company createCompany(Integer id, String name, String address) {
+        Company c = (Company) DynamicUtil.createObject(Collections.singleton(Company.class));
+        c.setId(id);
+        c.setName(name);
+        if (address != null) {
+            Address a = (Address) DynamicUtil.createObject(Collections.singleton(Address.class));
+            a.setAddress(address);
+            c.setAddress(a);
+        }
+        return c;
+    }
+}
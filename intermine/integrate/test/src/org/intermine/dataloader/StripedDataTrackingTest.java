@@ -0,0 +1,43 @@
+package org.intermine.dataloader;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.intermine.sql.DatabaseFactory;
+
+public class StripedDataTrackingTest extends DataTrackingTest
+{
+    public void setUp() throws Exception {
+        dt = new StripedDataTracker(DatabaseFactory.getDatabase("db.unittest"), 30, 10);
+        source1 = dt.stringToSource("Source1");
+        source2 = dt.stringToSource("Source2");
+    }
+
+    public void testEviction() throws Exception {
+        DataTracker small = new StripedDataTracker(DatabaseFactory.getDatabase("db.unittest"),
+                30, 10, 1L);
+        Source s1 = small.stringToSource("Source1");
+        Source s2 = small.stringToSource("Source2");
+        for (int i = 1000; i < 11000; i++) {
+            small.setSource(new Integer(i), "name", (i % 2 == 0) ? s1 : s2);
+            small.setSource(new Integer(i), "identifier", s1);
+        }
+        for (int i = 1000; i < 11000; i++) {
+            assertSame((i % 2 == 0) ? s1 : s2, small.getSource(new Integer(i), "name"));
+            assertSame(s1, small.getSource(new Integer(i), "identifier"));
+        }
+        small.close();
+
+        small = new StripedDataTracker(DatabaseFactory.getDatabase("db.unittest"), 30, 10);
+        assertEquals("Source2", small.getSource(new Integer(1001), "name").getName());
+        assertNull(small.getSource(new Integer(1001), "shortName"));
+        small.close();
+    }
+}
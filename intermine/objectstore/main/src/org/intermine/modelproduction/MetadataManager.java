@@ -66,6 +66,11 @@ public final class MetadataManager
      */
     public static final String OS_SUMMARY = "objectStoreSummary";
 
+    /**
+     * The name of the key used to store the results of an unfinished ObjectStoreSummary.
+     */
+    public static final String OS_SUMMARY_CHECKPOINT = "objectStoreSummaryCheckpoint";
+
     /**
      * The name of the key to use to store the autocomplete RAMIndexes.
      */
@@ -80,6 +85,11 @@ public final class MetadataManager
      * The name of the key to use to store the search Directory.
      */
     public static final String SEARCH_INDEX_DIRECTORY = "search_directory";
+
+    /**
+     * The name of the key used to store the checksum of the saved search Directory.
+     */
+    public static final String SEARCH_INDEX_VERSION = "search_version";
     /**
      * Name of the key under which to store the serialized version of the class descriptions
      */
@@ -124,6 +134,11 @@ public final class MetadataManager
      */
     public static final String RANGE_DEFINITIONS = "rangeDefinitions";
 
+    /**
+     * The name of the key used to store the binned feature counts for genome browsers.
+     */
+    public static final String FEATURE_DENSITIES = "featureDensities";
+
     /**
      * Store a (key, value) pair in the metadata table of the database
      * @param database the database
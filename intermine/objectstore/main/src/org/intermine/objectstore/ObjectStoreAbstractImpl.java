@@ -27,6 +27,10 @@ import org.apache.log4j.Logger;
 import org.intermine.metadata.MetaDataException;
 import org.intermine.metadata.Model;
 import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.cache.BoundedObjectCache;
+import org.intermine.objectstore.cache.InterMineObjectWeigher;
+import org.intermine.objectstore.cache.ObjectCache;
+import org.intermine.objectstore.cache.SoftObjectCache;
 import org.intermine.objectstore.query.Clob;
 import org.intermine.objectstore.query.ObjectStoreBag;
 import org.intermine.objectstore.query.Query;
@@ -34,7 +38,6 @@ import org.intermine.objectstore.query.QueryCreator;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SingletonResults;
-import org.intermine.util.CacheMap;
 import org.intermine.util.PropertiesUtil;
 
 /**
@@ -48,6 +51,11 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
 {
     private static final Logger LOG = Logger.getLogger(ObjectStoreAbstractImpl.class);
 
+    /** Default maximum size of a bounded getObjectById cache, in bytes. */
+    public static final long DEFAULT_OBJECT_CACHE_SIZE = 64L * 1024L * 1024L;
+    /** Default number of independently-locked segments in a bounded getObjectById cache. */
+    public static final int DEFAULT_OBJECT_CACHE_SEGMENTS = 16;
+
     protected static Random rand = new Random();
 
     protected Model model;
@@ -56,7 +64,9 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
     protected long maxTime = Long.MAX_VALUE;
     // Optimiser will use a default query parse time if none is provided from properties
     protected Long maxQueryParseTime = null;
-    protected CacheMap<Integer, InterMineObject> cache;
+    protected int prefetchDepth = 1;
+    protected boolean adaptiveFetch = false;
+    protected ObjectCache<Integer, InterMineObject> cache;
 
     protected int getObjectOps = 0;
     protected int getObjectHits = 0;
@@ -97,10 +107,52 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
             maxQueryParseTime = Long.parseLong((String) props.get("max-query-parse-time"));
         }
 
+        if (props.get("prefetch-depth") != null) {
+            prefetchDepth = Integer.parseInt((String) props.get("prefetch-depth"));
+        }
+
+        if (props.get("adaptive-fetch") != null) {
+            adaptiveFetch = Boolean.parseBoolean((String) props.get("adaptive-fetch"));
+        }
+
         LOG.info("Creating new " + getClass().getName() + " with sequence = " + sequenceNumber
                 + ", model = \"" + model.getName() + "\"");
-        cache = new CacheMap<Integer, InterMineObject>(getClass().getName() + " with sequence = "
-                + sequenceNumber + ", model = \"" + model.getName() + "\" getObjectById cache");
+        cache = createObjectCache(getClass().getName() + " with sequence = " + sequenceNumber
+                + ", model = \"" + model.getName() + "\" getObjectById cache", props);
+    }
+
+    /**
+     * Creates the getObjectById cache. The type of cache is chosen by the os.query.object-cache
+     * property - "soft" (the default) for a cache that the garbage collector may empty at any
+     * time, or "bounded" for a cache limited to os.query.object-cache-size bytes (default 64MB)
+     * and split into os.query.object-cache-segments independently-locked segments. Subclasses
+     * may override this method to provide a different ObjectCache.
+     *
+     * @param name the name of the cache, for log messages
+     * @param props the os.query properties, with the prefix removed
+     * @return a new ObjectCache
+     */
+    protected ObjectCache<Integer, InterMineObject> createObjectCache(String name,
+            Properties props) {
+        String type = props.getProperty("object-cache", "soft");
+        if ("bounded".equals(type)) {
+            long size = DEFAULT_OBJECT_CACHE_SIZE;
+            if (props.get("object-cache-size") != null) {
+                size = Long.parseLong(props.getProperty("object-cache-size"));
+            }
+            int segments = DEFAULT_OBJECT_CACHE_SEGMENTS;
+            if (props.get("object-cache-segments") != null) {
+                segments = Integer.parseInt(props.getProperty("object-cache-segments"));
+            }
+            LOG.info("Using bounded cache of " + size + " bytes in " + segments
+                    + " segments for " + name);
+            return new BoundedObjectCache<Integer, InterMineObject>(size, segments,
+                    new InterMineObjectWeigher());
+        } else if ("soft".equals(type)) {
+            return new SoftObjectCache<Integer, InterMineObject>(name);
+        }
+        throw new IllegalArgumentException("Unknown value for os.query.object-cache: " + type
+                + " - should be \"soft\" or \"bounded\"");
     }
 
     /**
@@ -190,31 +242,21 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
         getObjectOps++;
         if (getObjectOps % 10000 == 0) {
             LOG.info("getObjectById called " + getObjectOps + " times. Cache hits: "
-                    + getObjectHits + ". Prefetches: " + getObjectPrefetches);
+                    + getObjectHits + ". Prefetches: " + getObjectPrefetches + ". Cache: "
+                    + cache.size() + " entries, " + cache.getHitCount() + " hits, "
+                    + cache.getMissCount() + " misses, " + cache.getEvictionCount()
+                    + " evictions");
         }
-        boolean contains = true;
-        InterMineObject cached = null;
-        synchronized (cache) {
-            cached = cache.get(id);
-            if (cached == null) {
-                contains = cache.containsKey(id);
-            }
-        }
-        if (contains) {
+        Map.Entry<Integer, InterMineObject> cached = cache.getEntry(id);
+        if (cached != null) {
             getObjectHits++;
-            return cached;
+            return cached.getValue();
         }
         InterMineObject fromDb = internalGetObjectById(id, clazz);
-        synchronized (cache) {
-            cached = cache.get(id);
-            if (cached == null) {
-                contains = cache.containsKey(id);
-            }
-            if (contains) {
-                fromDb = cached;
-            } else {
-                cacheObjectById(id, fromDb);
-            }
+        // Another thread may have cached the object while we fetched it - if so, use that one
+        cached = cache.putIfAbsent(id, fromDb);
+        if (cached != null) {
+            fromDb = cached.getValue();
         }
         return fromDb;
     }
@@ -297,18 +339,29 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
      * {@inheritDoc}
      */
     public void invalidateObjectById(Integer id) {
-        synchronized (cache) {
-            cache.remove(id);
-        }
+        cache.remove(id);
     }
 
     /**
      * {@inheritDoc}
      */
     public Object cacheObjectById(Integer id, InterMineObject obj) {
-        synchronized (cache) {
-            cache.put(id, obj);
-        }
+        cache.put(id, obj);
+        return obj;
+    }
+
+    /**
+     * Places an entry into the getObjectById cache, with a hint about how large the object is.
+     * This is used when the object has just been parsed from a serialised form, whose length is
+     * a cheap estimate of the size of the object.
+     *
+     * @param id the ID of the object
+     * @param obj a fully populated object, as loaded from the database
+     * @param size the approximate size of the object in bytes, or zero if not known
+     * @return an object which is softly-held part of the cache entry
+     */
+    public Object cacheObjectById(Integer id, InterMineObject obj, int size) {
+        cache.put(id, obj, size);
         return obj;
     }
 
@@ -316,18 +369,23 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
      * {@inheritDoc}
      */
     public void flushObjectById() {
-        synchronized (cache) {
-            cache.clear();
-        }
+        cache.clear();
     }
 
     /**
      * {@inheritDoc}
      */
     public InterMineObject pilferObjectById(Integer id) {
-        synchronized (cache) {
-            return cache.get(id);
-        }
+        return cache.get(id);
+    }
+
+    /**
+     * Returns the getObjectById cache, for monitoring purposes.
+     *
+     * @return an ObjectCache
+     */
+    public ObjectCache<Integer, InterMineObject> getObjectCache() {
+        return cache;
     }
 
     /**
@@ -472,6 +530,26 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
         return maxLimit;
     }
 
+    /**
+     * Returns the number of batches ahead that Results objects from this ObjectStore prefetch
+     * when they are read sequentially, set by the os.query.prefetch-depth property.
+     *
+     * @return a number of batches
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * Returns true if Results objects from this ObjectStore should fetch several batches in one
+     * query when their batches are quick to fetch, set by the os.query.adaptive-fetch property.
+     *
+     * @return a boolean
+     */
+    public boolean isAdaptiveFetch() {
+        return adaptiveFetch;
+    }
+
     /**
      * {@inheritDoc}
      */
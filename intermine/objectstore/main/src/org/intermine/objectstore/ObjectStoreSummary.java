@@ -10,6 +10,10 @@ package org.intermine.objectstore;
  *
  */
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -17,11 +21,13 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import org.apache.log4j.Logger;
 import org.intermine.metadata.AttributeDescriptor;
@@ -33,6 +39,7 @@ import org.intermine.metadata.ReferenceDescriptor;
 import org.intermine.metadata.StringUtil;
 import org.intermine.model.FastPathObject;
 import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.ContainsConstraint;
 import org.intermine.objectstore.query.Query;
@@ -45,6 +52,8 @@ import org.intermine.objectstore.query.QueryValue;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SubqueryExistsConstraint;
+import org.intermine.sql.Database;
+import org.intermine.sql.DatabaseUtil;
 
 /**
  * A summary of the data in an ObjectStore
@@ -73,6 +82,9 @@ public class ObjectStoreSummary
     static final String NULL_MARKER = "___NULL___";
     static final String FIELD_DELIM = "$_^";
     static final String MAX_FIELD_VALUES = "max.field.values";
+    static final String THREADS = "summary.threads";
+    static final String APPROXIMATE = "summary.approximate";
+    static final String TOO_MANY_MARKER = "___TOO_MANY___";
 
     /**
      * The default number of values to make available for UI dropdowns - attributes with more values
@@ -82,6 +94,14 @@ public class ObjectStoreSummary
 
     /**
      * Construct a summary from by running queries in the ObjectStore.
+     * <p>
+     * The summary is made up of a query for each class and field, which are run on
+     * summary.threads threads (default 1). In an InterMine ObjectStore, the results are saved as
+     * they come in and a summary that is interrupted carries on from where it stopped when it is
+     * run again on the same build of the database, if nothing else has been written to it in the
+     * meantime. If summary.approximate is true, class counts are read from the Postgres
+     * statistics instead of counting the rows, and fields that the statistics say have many more
+     * than max.field.values values are not queried.
      *
      * @param os the objectstore
      * @param configuration the configuration for summarization
@@ -97,39 +117,139 @@ public class ObjectStoreSummary
         // 3. for fields with fewer unique values than cutoff, create dropdowns
         // 4. Always empty refs/cols per class
         // 5. Always empty attributes per class
+        // Each step runs the queries for the classes at one depth of the inheritance hierarchy
+        // at a time, so that the results for subclasses or superclasses can save queries.
 
-        Model model = os.getModel();
-
-        // classCounts - number of objects of each type in the database
-        LOG.info("Collecting class counts...");
-        for (ClassDescriptor cld : model.getTopDownLevelTraversal()) {
-            nonEmptyFieldsMap.put(cld.getName(), new HashSet<String>());
-            countAndStore(os, model, cld);
-        }
-
-        // fieldValues - find all attributes with few unique values for populating dropdowns,
-        // also look for any attributes that are empty.
-        LOG.info("Summarising field values...");
         String maxValuesString = (String) configuration.get(MAX_FIELD_VALUES);
         maxValues =
             (maxValuesString == null ? DEFAULT_MAX_VALUES : Integer.parseInt(maxValuesString));
+        String threadsString = (String) configuration.get(THREADS);
+        int threads = (threadsString == null ? 1 : Integer.parseInt(threadsString.trim()));
+        boolean approximate = "true".equals(configuration.get(APPROXIMATE));
+        Database db = null;
+        if (os instanceof ObjectStoreInterMineImpl) {
+            db = ((ObjectStoreInterMineImpl) os).getDatabase();
+        }
+        if (approximate && (db == null)) {
+            LOG.warn("Cannot read statistics from " + os + " - counting exactly");
+            approximate = false;
+        }
 
-        // always empty references and collections
-        LOG.info("Looking for empty collections and references...");
         Set<String> ignoreFields = getIgnoreFields((String) configuration.get("ignore.counts"));
-        if (ignoreFields.size() > 0) {
-            LOG.warn("Not counting ignored fields: " + ignoreFields);
+        SummaryJobRunner runner = new SummaryJobRunner(threads, db, maxValues + "/" + approximate
+                + "/" + new TreeSet<String>(ignoreFields));
+        try {
+            Model model = os.getModel();
+            List<List<ClassDescriptor>> levels = getLevels(model);
+
+            // classCounts - number of objects of each type in the database
+            LOG.info("Collecting class counts...");
+            for (List<ClassDescriptor> level : levels) {
+                countAndStore(os, model, level, runner, approximate);
+            }
+
+            // fieldValues - find all attributes with few unique values for populating dropdowns,
+            // also look for any attributes that are empty.
+            LOG.info("Summarising field values...");
+            if (ignoreFields.size() > 0) {
+                LOG.warn("Not counting ignored fields: " + ignoreFields);
+            }
+
+            Set<String> doneFields = new HashSet<String>();
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                summariseFields(os, levels.get(i), ignoreFields, doneFields, runner,
+                        approximate);
+            }
+
+            // always empty references and collections
+            // This is faster as a bottom up traversal, though this may save fewer queres the
+            // saved queries would take longer. If a ref/col is not empty it must not be empty in
+            // all parents.
+            LOG.info("Looking for empty collections and references...");
+            Set<String> notEmptyFields = new HashSet<String>();
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                findEmptyReferences(os, levels.get(i), ignoreFields, notEmptyFields, runner);
+            }
+            if (runner.getResumedCount() > 0) {
+                LOG.info("Used " + runner.getResumedCount() + " results from an earlier run");
+            }
+            runner.finish();
+        } finally {
+            runner.close();
+        }
+    }
+
+    // the classes of the model grouped by their depth in the inheritance hierarchy, so that all
+    // the superclasses of a class are in earlier groups
+    private static List<List<ClassDescriptor>> getLevels(Model model) {
+        Map<ClassDescriptor, Integer> depths = new HashMap<ClassDescriptor, Integer>();
+        List<List<ClassDescriptor>> levels = new ArrayList<List<ClassDescriptor>>();
+        for (ClassDescriptor cld : model.getTopDownLevelTraversal()) {
+            int depth = 0;
+            for (ClassDescriptor superCld : cld.getSuperDescriptors()) {
+                Integer superDepth = depths.get(superCld);
+                if (superDepth != null) {
+                    depth = Math.max(depth, superDepth.intValue() + 1);
+                }
+            }
+            depths.put(cld, new Integer(depth));
+            while (levels.size() <= depth) {
+                levels.add(new ArrayList<ClassDescriptor>());
+            }
+            levels.get(depth).add(cld);
+        }
+        return levels;
+    }
+
+    private void countAndStore(final ObjectStore os, Model model, List<ClassDescriptor> level,
+            SummaryJobRunner runner, final boolean approximate) throws ObjectStoreException {
+        Map<String, Callable<String>> jobs = new LinkedHashMap<String, Callable<String>>();
+        for (final ClassDescriptor cld : level) {
+            nonEmptyFieldsMap.put(cld.getName(), new HashSet<String>());
+            // classes with an empty superclass are already known to be empty
+            if (!classCountsMap.containsKey(cld.getName())) {
+                jobs.put("count." + cld.getName(), new Callable<String>() {
+                    @Override
+                    public String call() throws ObjectStoreException {
+                        int classCount = (approximate ? estimateCount(os, cld) : -1);
+                        if (classCount < 0) {
+                            classCount = countClass(os, cld.getType());
+                        }
+                        return Integer.toString(classCount);
+                    }
+                });
+            }
         }
+        for (Map.Entry<String, String> result : runner.run(jobs).entrySet()) {
+            String className = result.getKey().substring("count.".length());
+            ClassDescriptor cld = model.getClassDescriptorByName(className);
+            int classCount = Integer.parseInt(result.getValue());
+            LOG.info("Adding class count: " + cld.getUnqualifiedName() + " = " + classCount);
+            classCountsMap.put(className, new Integer(classCount));
 
-        Set<String> doneFields = new HashSet<String>();
-        for (ClassDescriptor cld : model.getBottomUpLevelTraversal()) {
+            // if this class is empty all subclasses MUST be empty as well
+            if (classCount == 0) {
+                for (ClassDescriptor subCld : model.getAllSubs(cld)) {
+                    if (!classCountsMap.containsKey(subCld.getName())) {
+                        classCountsMap.put(subCld.getName(), new Integer(classCount));
+                    }
+                }
+            }
+        }
+    }
 
+    private void summariseFields(final ObjectStore os, List<ClassDescriptor> level,
+            Set<String> ignoreFields, Set<String> doneFields, SummaryJobRunner runner,
+            final boolean approximate) throws ObjectStoreException {
+        Map<String, Callable<String>> jobs = new LinkedHashMap<String, Callable<String>>();
+        Map<String, ClassDescriptor> jobClasses = new HashMap<String, ClassDescriptor>();
+        for (final ClassDescriptor cld : level) {
             int classCount = classCountsMap.get(cld.getName()).intValue();
             if (classCount == 0) {
                 continue;
             }
 
-            for (AttributeDescriptor att : cld.getAllAttributeDescriptors()) {
+            for (final AttributeDescriptor att : cld.getAllAttributeDescriptors()) {
                 String fieldName = att.getName();
                 if ("id".equals(fieldName)) {
                     continue;
@@ -139,65 +259,121 @@ public class ObjectStoreSummary
                 if (doneFields.contains(clsFieldName) || ignoreFields.contains(clsFieldName)) {
                     continue;
                 }
-
-                Results results = getFieldSummary(cld, fieldName, os);
-                if (results.size() <= maxValues) {
-                    List<Object> fieldValues = new ArrayList<Object>();
-                    for (Object resRow: results) {
-                        Object fieldValue = ((ResultsRow<?>) resRow).get(0);
-                        fieldValues.add(fieldValue == null ? null : fieldValue.toString());
-                    }
-                    if (fieldValues.size() == 1 && fieldValues.get(0) == null) {
-                        Set<String> emptyAttributes = emptyAttributesMap.get(cld.getName());
-                        if (emptyAttributes == null) {
-                            emptyAttributes = new HashSet<String>();
-                            emptyAttributesMap.put(cld.getName(), emptyAttributes);
+                jobs.put(clsFieldName, new Callable<String>() {
+                    @Override
+                    public String call() throws ObjectStoreException {
+                        if (approximate && (estimateDistinct(os, cld, att) > 2 * maxValues)) {
+                            return TOO_MANY_MARKER;
                         }
-                        emptyAttributes.add(fieldName);
-                    }
-                    Collections.sort(fieldValues, new Comparator<Object>() {
-                        @Override
-                        public int compare(Object arg0, Object arg1) {
-                            if (arg0 == null) {
-                                return arg1 == null ? 0 : 1;
-                            }
-                            if (arg1 == null) {
-                                return arg0 == null ? 0 : -1;
-                            }
-                            return arg0.toString().compareTo(arg1.toString());
+                        Results results = getFieldSummary(cld, att.getName(), os);
+                        if (results.size() > maxValues) {
+                            return TOO_MANY_MARKER;
                         }
-                    });
-                    fieldValuesMap.put(clsFieldName, fieldValues);
-                    LOG.info("Adding " + fieldValues.size() + " values for "
-                            + cld.getUnqualifiedName() + "." + fieldName);
-
-                } else {
-                    LOG.info("Too many values for " + cld.getUnqualifiedName() + "." + fieldName);
-                    // all superclasses must also have too many values for this field
-                    for (ClassDescriptor superCld : cld.getAllSuperDescriptors()) {
-                        if (cld.equals(superCld)
-                                || superCld.getType().equals(InterMineObject.class)) {
-                            continue;
+                        List<Object> fieldValues = new ArrayList<Object>();
+                        for (Object resRow: results) {
+                            fieldValues.add(((ResultsRow<?>) resRow).get(0));
                         }
-                        String superClsField = superCld.getName() + "." + fieldName;
-                        if (!doneFields.contains(superClsField)
-                                && (superCld.getAttributeDescriptorByName(fieldName,
-                                        true) != null)) {
-                            LOG.info("Pushing too many values from " + cld.getUnqualifiedName()
-                                    + "." + fieldName + " to " + superCld.getUnqualifiedName());
-                            doneFields.add(superClsField);
+                        return encodeFieldValues(fieldValues);
+                    }
+                });
+                jobClasses.put(clsFieldName, cld);
+            }
+        }
+        for (Map.Entry<String, String> result : runner.run(jobs).entrySet()) {
+            String clsFieldName = result.getKey();
+            ClassDescriptor cld = jobClasses.get(clsFieldName);
+            String fieldName = clsFieldName.substring(cld.getName().length() + 1);
+            if (!TOO_MANY_MARKER.equals(result.getValue())) {
+                List<Object> fieldValues = decodeFieldValues(result.getValue());
+                if (fieldValues.size() == 1 && fieldValues.get(0) == null) {
+                    Set<String> emptyAttributes = emptyAttributesMap.get(cld.getName());
+                    if (emptyAttributes == null) {
+                        emptyAttributes = new HashSet<String>();
+                        emptyAttributesMap.put(cld.getName(), emptyAttributes);
+                    }
+                    emptyAttributes.add(fieldName);
+                }
+                Collections.sort(fieldValues, new Comparator<Object>() {
+                    @Override
+                    public int compare(Object arg0, Object arg1) {
+                        if (arg0 == null) {
+                            return arg1 == null ? 0 : 1;
+                        }
+                        if (arg1 == null) {
+                            return arg0 == null ? 0 : -1;
                         }
+                        return arg0.toString().compareTo(arg1.toString());
+                    }
+                });
+                fieldValuesMap.put(clsFieldName, fieldValues);
+                LOG.info("Adding " + fieldValues.size() + " values for "
+                        + cld.getUnqualifiedName() + "." + fieldName);
+
+            } else {
+                LOG.info("Too many values for " + cld.getUnqualifiedName() + "." + fieldName);
+                // all superclasses must also have too many values for this field
+                for (ClassDescriptor superCld : cld.getAllSuperDescriptors()) {
+                    if (cld.equals(superCld)
+                            || superCld.getType().equals(InterMineObject.class)) {
+                        continue;
+                    }
+                    String superClsField = superCld.getName() + "." + fieldName;
+                    if (!doneFields.contains(superClsField)
+                            && (superCld.getAttributeDescriptorByName(fieldName,
+                                    true) != null)) {
+                        LOG.info("Pushing too many values from " + cld.getUnqualifiedName()
+                                + "." + fieldName + " to " + superCld.getUnqualifiedName());
+                        doneFields.add(superClsField);
                     }
                 }
             }
         }
+    }
 
+    /**
+     * Encode the values of a field as the result of a summary job. The number of values comes
+     * first, so that a field whose only value is the empty string can be told apart from one with
+     * no values.
+     *
+     * @param fieldValues the values, which may include null
+     * @return the encoded values
+     */
+    static String encodeFieldValues(List<Object> fieldValues) {
+        StringBuffer sb = new StringBuffer();
+        sb.append(fieldValues.size());
+        for (Object fieldValue : fieldValues) {
+            sb.append(FIELD_DELIM);
+            sb.append(fieldValue == null ? NULL_MARKER : fieldValue.toString());
+        }
+        return sb.toString();
+    }
 
+    /**
+     * Decode the values of a field encoded by encodeFieldValues().
+     *
+     * @param encoded the encoded values
+     * @return the values, with null for NULL_MARKER
+     */
+    static List<Object> decodeFieldValues(String encoded) {
+        String[] parts = StringUtil.split(encoded, FIELD_DELIM);
+        int count = Integer.parseInt(parts[0]);
+        if (parts.length != count + 1) {
+            throw new IllegalArgumentException("Expected " + count + " field values in \""
+                    + encoded + "\"");
+        }
+        List<Object> fieldValues = new ArrayList<Object>();
+        for (int i = 1; i < parts.length; i++) {
+            fieldValues.add(NULL_MARKER.equals(parts[i]) ? null : parts[i]);
+        }
+        return fieldValues;
+    }
 
-        // This is faster as a bottom up traversal, though this may save fewer queres the saved
-        // queries would take longer. If a ref/col is not empty it must not be empty in all parents.
-        Set<String> notEmptyFields = new HashSet<String>();
-        for (ClassDescriptor cld: model.getBottomUpLevelTraversal()) {
+    private void findEmptyReferences(final ObjectStore os, List<ClassDescriptor> level,
+            Set<String> ignoreFields, Set<String> notEmptyFields, SummaryJobRunner runner)
+        throws ObjectStoreException {
+        Map<String, Callable<String>> jobs = new LinkedHashMap<String, Callable<String>>();
+        Map<String, ClassDescriptor> jobClasses = new HashMap<String, ClassDescriptor>();
+        for (final ClassDescriptor cld : level) {
             int classCount = classCountsMap.get(cld.getName()).intValue();
             if (classCount == 0) {
                 continue;
@@ -206,7 +382,7 @@ public class ObjectStoreSummary
             Set<ReferenceDescriptor> refsAndCols = new HashSet<ReferenceDescriptor>();
             refsAndCols.addAll(cld.getAllReferenceDescriptors());
             refsAndCols.addAll(cld.getAllCollectionDescriptors());
-            for (ReferenceDescriptor ref : refsAndCols) {
+            for (final ReferenceDescriptor ref : refsAndCols) {
                 String fieldName = ref.getName();
                 String clsFieldName = cld.getName() + "." + fieldName;
 
@@ -219,28 +395,39 @@ public class ObjectStoreSummary
                     continue;
                 }
 
-                boolean refIsEmpty = isReferenceEmpty(cld, ref, os);
-                if (refIsEmpty) {
-                    addToEmptyFields(cld.getName(), ref.getName());
-                    LOG.info("Adding empty field " + cld.getUnqualifiedName() + "." + fieldName);
-                } else {
-                    // this isn't empty, so CAN'T be empty for any super classes
-                    for (ClassDescriptor superCld : cld.getAllSuperDescriptors()) {
-                        if (cld.equals(superCld)
-                                || superCld.getType().equals(InterMineObject.class)) {
-                            continue;
-                        }
-                        String superClsField = superCld.getName() + "." + fieldName;
-
-                        if (!notEmptyFields.contains(superClsField)) {
-                            if ((superCld.getReferenceDescriptorByName(fieldName, true) != null)
-                                    || (superCld.getCollectionDescriptorByName(fieldName,
-                                            true) != null)) {
-                                LOG.info("Pushing not empty ref/col from "
-                                        + cld.getUnqualifiedName() + "." + fieldName + " to "
-                                        + superCld.getUnqualifiedName());
-                                notEmptyFields.add(superClsField);
-                            }
+                jobs.put("empty." + clsFieldName, new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return Boolean.toString(isReferenceEmpty(cld, ref, os));
+                    }
+                });
+                jobClasses.put("empty." + clsFieldName, cld);
+            }
+        }
+        for (Map.Entry<String, String> result : runner.run(jobs).entrySet()) {
+            ClassDescriptor cld = jobClasses.get(result.getKey());
+            String fieldName = result.getKey().substring(("empty." + cld.getName()).length() + 1);
+            boolean refIsEmpty = Boolean.parseBoolean(result.getValue());
+            if (refIsEmpty) {
+                addToEmptyFields(cld.getName(), fieldName);
+                LOG.info("Adding empty field " + cld.getUnqualifiedName() + "." + fieldName);
+            } else {
+                // this isn't empty, so CAN'T be empty for any super classes
+                for (ClassDescriptor superCld : cld.getAllSuperDescriptors()) {
+                    if (cld.equals(superCld)
+                            || superCld.getType().equals(InterMineObject.class)) {
+                        continue;
+                    }
+                    String superClsField = superCld.getName() + "." + fieldName;
+
+                    if (!notEmptyFields.contains(superClsField)) {
+                        if ((superCld.getReferenceDescriptorByName(fieldName, true) != null)
+                                || (superCld.getCollectionDescriptorByName(fieldName,
+                                        true) != null)) {
+                            LOG.info("Pushing not empty ref/col from "
+                                    + cld.getUnqualifiedName() + "." + fieldName + " to "
+                                    + superCld.getUnqualifiedName());
+                            notEmptyFields.add(superClsField);
                         }
                     }
                 }
@@ -248,26 +435,65 @@ public class ObjectStoreSummary
         }
     }
 
-
-    private void countAndStore(ObjectStore os, Model model, ClassDescriptor cld)
+    // the number of rows in the table of a class according to the Postgres statistics, or -1 if
+    // the table holds other classes too or has not been analysed
+    private static int estimateCount(ObjectStore os, ClassDescriptor cld)
         throws ObjectStoreException {
-        if (!classCountsMap.containsKey(cld.getName())) {
-            int classCount = countClass(os, cld.getType());
-            LOG.info("Adding class count: " + cld.getUnqualifiedName() + " = " + classCount);
-            classCountsMap.put(cld.getName(), new Integer(classCount));
+        ObjectStoreInterMineImpl osimi = (ObjectStoreInterMineImpl) os;
+        if (!cld.equals(osimi.getSchema().getTableMaster(cld))
+                || osimi.getSchema().isTruncated(cld)) {
+            return -1;
+        }
+        double reltuples = queryStatistic(osimi.getDatabase(),
+                "SELECT reltuples FROM pg_class WHERE relname = ? AND relkind = 'r'",
+                DatabaseUtil.getTableName(cld).toLowerCase(), null);
+        return (reltuples > 0 ? (int) Math.round(reltuples) : -1);
+    }
 
-            // if this class is empty all subclasses MUST be empty as well
-            if (classCount == 0) {
-                for (ClassDescriptor subCld : model.getAllSubs(cld)) {
-                    if (!classCountsMap.containsKey(subCld.getName())) {
-                        classCountsMap.put(subCld.getName(), new Integer(classCount));
-                    }
+    // the number of distinct values of an attribute according to the Postgres statistics, or -1
+    private static int estimateDistinct(ObjectStore os, ClassDescriptor cld,
+            AttributeDescriptor att) throws ObjectStoreException {
+        ObjectStoreInterMineImpl osimi = (ObjectStoreInterMineImpl) os;
+        if (!cld.equals(osimi.getSchema().getTableMaster(cld))
+                || osimi.getSchema().isTruncated(cld)) {
+            return -1;
+        }
+        String tableName = DatabaseUtil.getTableName(cld).toLowerCase();
+        double distinct = queryStatistic(osimi.getDatabase(),
+                "SELECT n_distinct FROM pg_stats WHERE tablename = ? AND attname = ?",
+                tableName, DatabaseUtil.getColumnName(att).toLowerCase());
+        if (Double.isNaN(distinct)) {
+            return -1;
+        } else if (distinct < 0) {
+            // a negative n_distinct is minus the fraction of the rows that are distinct
+            int rows = estimateCount(os, cld);
+            return (rows < 0 ? -1 : (int) (-distinct * rows));
+        }
+        return (int) distinct;
+    }
+
+    private static double queryStatistic(Database db, String sql, String table, String column)
+        throws ObjectStoreException {
+        try {
+            Connection con = db.getConnection();
+            try {
+                PreparedStatement s = con.prepareStatement(sql);
+                s.setString(1, table);
+                if (column != null) {
+                    s.setString(2, column);
                 }
+                ResultSet r = s.executeQuery();
+                double retval = (r.next() ? r.getDouble(1) : Double.NaN);
+                s.close();
+                return retval;
+            } finally {
+                con.close();
             }
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Could not read statistics for " + table, e);
         }
     }
 
-
     /**
      * Construct a summary from a properties object.
      *
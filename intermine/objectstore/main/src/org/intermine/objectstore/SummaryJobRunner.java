@@ -0,0 +1,232 @@
+package org.intermine.objectstore;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+import org.intermine.modelproduction.MetadataManager;
+import org.intermine.sql.Database;
+import org.intermine.util.PropertiesUtil;
+
+/**
+ * Runs the jobs that make up an ObjectStoreSummary on a pool of threads, each of which uses its
+ * own database connection. Every job has a key and a String result, and when a database is given
+ * the results are saved in the metadata table as they come in, so that a summary that is
+ * interrupted can carry on from where it stopped. Saved results are only used if they were
+ * saved for the same build of the database, as given by its serial number, with no rows written
+ * to it since, and with the same settings.
+ */
+class SummaryJobRunner
+{
+    private static final Logger LOG = Logger.getLogger(SummaryJobRunner.class);
+    private static final String CHECKPOINT_KEY = "checkpoint.key";
+    private static final long CHECKPOINT_INTERVAL = 60000;
+    private static final String WRITE_COUNT_SQL = "SELECT sum(n_tup_ins + n_tup_upd + n_tup_del)"
+        + " FROM pg_stat_user_tables WHERE relname <> '" + MetadataManager.METADATA_TABLE + "'"
+        + " AND schemaname NOT LIKE 'pg_temp%'";
+
+    private final ExecutorService pool;
+    private final Database db;
+    private final Properties checkpoint = new Properties();
+    private volatile long lastSaved = System.currentTimeMillis();
+    private int resumed = 0;
+
+    /**
+     * Construct a runner.
+     *
+     * @param threads the number of jobs to run at once
+     * @param db the database to save results in, or null to not save them
+     * @param settings a description of the settings that the results depend on
+     * @throws ObjectStoreException if saved results cannot be read
+     */
+    SummaryJobRunner(int threads, Database db, String settings) throws ObjectStoreException {
+        this.db = db;
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ObjectStoreSummary " + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        if (db != null) {
+            try {
+                String key = getCheckpointKey(db, settings);
+                String saved = MetadataManager.retrieve(db,
+                        MetadataManager.OS_SUMMARY_CHECKPOINT);
+                if (saved != null) {
+                    Properties savedResults = new Properties();
+                    savedResults.load(new StringReader(saved));
+                    if (key.equals(savedResults.getProperty(CHECKPOINT_KEY))) {
+                        checkpoint.putAll(savedResults);
+                        LOG.info("Resuming summary with " + (checkpoint.size() - 1)
+                                + " saved results");
+                    } else {
+                        LOG.info("Ignoring saved summary results from another build or settings");
+                    }
+                }
+                checkpoint.setProperty(CHECKPOINT_KEY, key);
+            } catch (SQLException e) {
+                throw new ObjectStoreException("Could not read saved summary results", e);
+            } catch (IOException e) {
+                throw new ObjectStoreException("Could not read saved summary results", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the key that saved results must have been saved with to be used. The serial number
+     * only changes when the database is rebuilt, so the key also includes the number of rows
+     * that the Postgres statistics say have been inserted, updated or deleted, which changes
+     * whenever a later integrate or postprocess step writes to the database. The metadata table,
+     * where the results themselves are saved, is not counted.
+     *
+     * @param db the database
+     * @param settings a description of the settings that the results depend on
+     * @return a String
+     * @throws SQLException if the database cannot be read
+     */
+    static String getCheckpointKey(Database db, String settings) throws SQLException {
+        long writeCount;
+        Connection con = db.getConnection();
+        try {
+            Statement s = con.createStatement();
+            ResultSet r = s.executeQuery(WRITE_COUNT_SQL);
+            writeCount = (r.next() ? r.getLong(1) : 0);
+            s.close();
+        } finally {
+            con.close();
+        }
+        return MetadataManager.retrieve(db, MetadataManager.SERIAL_NUMBER) + "/" + writeCount
+            + "/" + settings;
+    }
+
+    /**
+     * Runs a set of independent jobs, apart from any that have saved results, and waits for them.
+     *
+     * @param jobs a Map from key to job
+     * @return a Map from key to result, in the same order as the jobs
+     * @throws ObjectStoreException if a job fails
+     */
+    Map<String, String> run(Map<String, Callable<String>> jobs) throws ObjectStoreException {
+        Map<String, String> retval = new LinkedHashMap<String, String>();
+        Map<String, Future<String>> futures = new LinkedHashMap<String, Future<String>>();
+        for (final Map.Entry<String, Callable<String>> job : jobs.entrySet()) {
+            String saved = checkpoint.getProperty(job.getKey());
+            if (saved != null) {
+                retval.put(job.getKey(), saved);
+                resumed++;
+            } else {
+                retval.put(job.getKey(), null);
+                futures.put(job.getKey(), pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        String result = job.getValue().call();
+                        checkpoint.setProperty(job.getKey(), result);
+                        if (System.currentTimeMillis() - lastSaved > CHECKPOINT_INTERVAL) {
+                            save();
+                        }
+                        return result;
+                    }
+                }));
+            }
+        }
+        try {
+            for (Map.Entry<String, Future<String>> future : futures.entrySet()) {
+                retval.put(future.getKey(), future.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ObjectStoreException("Interrupted while summarising", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ObjectStoreException) {
+                throw (ObjectStoreException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ObjectStoreException("Summary job failed", cause);
+        } finally {
+            for (Future<String> future : futures.values()) {
+                future.cancel(true);
+            }
+            if (!futures.isEmpty()) {
+                save();
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the number of jobs so far whose results were read from an earlier run.
+     *
+     * @return the number of resumed jobs
+     */
+    int getResumedCount() {
+        return resumed;
+    }
+
+    /**
+     * Deletes the saved results, once the summary is complete.
+     *
+     * @throws ObjectStoreException if the results cannot be deleted
+     */
+    void finish() throws ObjectStoreException {
+        if (db != null) {
+            try {
+                MetadataManager.store(db, MetadataManager.OS_SUMMARY_CHECKPOINT, null);
+            } catch (SQLException e) {
+                throw new ObjectStoreException("Could not delete saved summary results", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the threads.
+     */
+    void close() {
+        pool.shutdownNow();
+    }
+
+    private synchronized void save() {
+        if (db == null) {
+            return;
+        }
+        // Properties is synchronized, so this is a consistent copy
+        Properties copy = (Properties) checkpoint.clone();
+        try {
+            MetadataManager.store(db, MetadataManager.OS_SUMMARY_CHECKPOINT,
+                    PropertiesUtil.serialize(copy));
+            lastSaved = System.currentTimeMillis();
+        } catch (SQLException e) {
+            LOG.warn("Could not save summary results", e);
+        } catch (IOException e) {
+            LOG.warn("Could not save summary results", e);
+        }
+    }
+}
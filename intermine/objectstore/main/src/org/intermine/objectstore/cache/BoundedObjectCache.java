@@ -0,0 +1,475 @@
+package org.intermine.objectstore.cache;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An ObjectCache bounded by the estimated size of its contents in bytes. Entries are held
+ * strongly, so the cache does not empty itself whenever the garbage collector runs, and the
+ * heap it uses stays within the configured bound.
+ * <p>
+ * The cache is split into a number of independently-locked segments by key hash, so that
+ * concurrent threads rarely contend. Each segment uses the W-TinyLFU policy: new entries go
+ * into a small LRU window, and when they leave the window they are only admitted into the main
+ * area if a frequency sketch says they have been used more often recently than the entry that
+ * would be evicted to make room. The main area is a segmented LRU, split into a probation
+ * queue and a protected queue for entries that have been accessed more than once. This keeps
+ * the hit rate stable when a large scan (such as an export) passes through the cache.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of cached values
+ */
+public class BoundedObjectCache<K, V> implements ObjectCache<K, V>
+{
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    /** The assumed average entry size, used only to size the frequency sketches. */
+    private static final int AVERAGE_ENTRY_WEIGHT = 512;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentShift;
+    private final Weigher<? super K, ? super V> weigher;
+    private final long maxWeight;
+
+    /**
+     * Constructs a new empty BoundedObjectCache.
+     *
+     * @param maxWeight the maximum total weight of the entries, in bytes
+     * @param concurrencyLevel the number of segments to divide the cache into, which will be
+     * rounded up to a power of two
+     * @param weigher a Weigher to estimate the size of entries
+     */
+    public BoundedObjectCache(long maxWeight, int concurrencyLevel,
+            Weigher<? super K, ? super V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Illegal value for maxWeight: " + maxWeight);
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Illegal value for concurrencyLevel: "
+                    + concurrencyLevel);
+        }
+        int shift = 0;
+        while ((1 << shift) < concurrencyLevel) {
+            shift++;
+        }
+        segmentShift = 32 - shift;
+        segments = newSegments(1 << shift);
+        long segmentWeight = Math.max(1, maxWeight / segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment<K, V>(segmentWeight);
+        }
+        this.maxWeight = segmentWeight * segments.length;
+        this.weigher = weigher;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public V get(K key) {
+        Map.Entry<K, V> entry = getEntry(key);
+        return (entry == null ? null : entry.getValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map.Entry<K, V> getEntry(K key) {
+        int hash = spread(key.hashCode());
+        return segmentFor(hash).getEntry(key, hash);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKey(K key) {
+        int hash = spread(key.hashCode());
+        return segmentFor(hash).containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void put(K key, V value) {
+        put(key, value, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void put(K key, V value, int weight) {
+        if (weight <= 0) {
+            weight = Math.max(1, weigher.weigh(key, value));
+        }
+        int hash = spread(key.hashCode());
+        segmentFor(hash).put(key, value, hash, weight);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map.Entry<K, V> putIfAbsent(K key, V value) {
+        int weight = Math.max(1, weigher.weigh(key, value));
+        int hash = spread(key.hashCode());
+        return segmentFor(hash).putIfAbsent(key, value, hash, weight);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void remove(K key) {
+        int hash = spread(key.hashCode());
+        segmentFor(hash).remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int size() {
+        int retval = 0;
+        for (Segment<K, V> segment : segments) {
+            retval += segment.size();
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the estimated total size of the entries in the cache.
+     *
+     * @return a number of bytes
+     */
+    public long getWeight() {
+        long retval = 0;
+        for (Segment<K, V> segment : segments) {
+            retval += segment.getWeight();
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the maximum total size of the entries in the cache.
+     *
+     * @return a number of bytes
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getHitCount() {
+        long retval = 0;
+        for (Segment<K, V> segment : segments) {
+            retval += segment.getHits();
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMissCount() {
+        long retval = 0;
+        for (Segment<K, V> segment : segments) {
+            retval += segment.getMisses();
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getEvictionCount() {
+        long retval = 0;
+        for (Segment<K, V> segment : segments) {
+            retval += segment.getEvictions();
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "BoundedObjectCache(size = " + size() + ", weight = " + getWeight() + "/"
+            + maxWeight + ", hits = " + getHitCount() + ", misses = " + getMissCount()
+            + ", evictions = " + getEvictionCount() + ")";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Segment<K, V>[] newSegments(int count) {
+        return (Segment<K, V>[]) new Segment<?, ?>[count];
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return (segmentShift == 32) ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * A cache entry, which is a member of exactly one of the three access queues.
+     */
+    private static class Node<K, V>
+    {
+        final K key;
+        V value;
+        int hash;
+        int weight;
+        int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, int hash, int weight) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A doubly-linked list of Nodes in access order, least recently used first.
+     */
+    private static class AccessQueue<K, V>
+    {
+        Node<K, V> head;
+        Node<K, V> tail;
+        long weight = 0;
+
+        void addLast(Node<K, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void unlink(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            weight = 0;
+        }
+    }
+
+    /**
+     * An independently-locked part of the cache, with its own share of the maximum weight.
+     */
+    private static class Segment<K, V>
+    {
+        private final Map<K, Node<K, V>> map = new HashMap<K, Node<K, V>>();
+        private final FrequencySketch sketch;
+        private final long maxWeight;
+        private final long maxWindow;
+        private final long maxProtected;
+        @SuppressWarnings("unchecked")
+        private final AccessQueue<K, V>[] queues = (AccessQueue<K, V>[]) new AccessQueue<?, ?>[] {
+            new AccessQueue<K, V>(), new AccessQueue<K, V>(), new AccessQueue<K, V>()};
+        private long weight = 0;
+        private long hits = 0;
+        private long misses = 0;
+        private long evictions = 0;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+            maxWindow = Math.max(1, maxWeight / 100);
+            maxProtected = (maxWeight - maxWindow) * 4 / 5;
+            sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE,
+                        maxWeight / AVERAGE_ENTRY_WEIGHT));
+        }
+
+        synchronized Map.Entry<K, V> getEntry(K key, int hash) {
+            sketch.increment(hash);
+            Node<K, V> node = map.get(key);
+            if (node == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            onAccess(node);
+            return new AbstractMap.SimpleImmutableEntry<K, V>(node.key, node.value);
+        }
+
+        synchronized boolean containsKey(K key) {
+            return map.containsKey(key);
+        }
+
+        synchronized void put(K key, V value, int hash, int nodeWeight) {
+            Node<K, V> node = map.get(key);
+            if (nodeWeight > maxWeight) {
+                // Too large to ever fit - don't let it flush everything else out
+                if (node != null) {
+                    removeNode(node);
+                }
+                return;
+            }
+            if (node == null) {
+                sketch.increment(hash);
+                node = new Node<K, V>(key, value, hash, nodeWeight);
+                map.put(key, node);
+                node.queue = WINDOW;
+                queues[WINDOW].addLast(node);
+                weight += nodeWeight;
+            } else {
+                AccessQueue<K, V> queue = queues[node.queue];
+                queue.unlink(node);
+                weight += nodeWeight - node.weight;
+                node.value = value;
+                node.weight = nodeWeight;
+                queue.addLast(node);
+            }
+            evict();
+        }
+
+        synchronized Map.Entry<K, V> putIfAbsent(K key, V value, int hash, int nodeWeight) {
+            Node<K, V> node = map.get(key);
+            if (node != null) {
+                return new AbstractMap.SimpleImmutableEntry<K, V>(node.key, node.value);
+            }
+            put(key, value, hash, nodeWeight);
+            return null;
+        }
+
+        synchronized void remove(K key) {
+            Node<K, V> node = map.get(key);
+            if (node != null) {
+                removeNode(node);
+            }
+        }
+
+        synchronized void clear() {
+            map.clear();
+            for (AccessQueue<K, V> queue : queues) {
+                queue.clear();
+            }
+            weight = 0;
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        synchronized long getWeight() {
+            return weight;
+        }
+
+        synchronized long getHits() {
+            return hits;
+        }
+
+        synchronized long getMisses() {
+            return misses;
+        }
+
+        synchronized long getEvictions() {
+            return evictions;
+        }
+
+        private void onAccess(Node<K, V> node) {
+            if (node.queue == PROBATION) {
+                // Promote to protected, demoting the least recently used protected entries
+                queues[PROBATION].unlink(node);
+                node.queue = PROTECTED;
+                queues[PROTECTED].addLast(node);
+                while (queues[PROTECTED].weight > maxProtected) {
+                    Node<K, V> demoted = queues[PROTECTED].head;
+                    queues[PROTECTED].unlink(demoted);
+                    demoted.queue = PROBATION;
+                    queues[PROBATION].addLast(demoted);
+                }
+            } else {
+                AccessQueue<K, V> queue = queues[node.queue];
+                queue.unlink(node);
+                queue.addLast(node);
+            }
+        }
+
+        private void evict() {
+            // Entries leaving the window become candidates at the end of the probation queue
+            Node<K, V> candidate = null;
+            while ((queues[WINDOW].weight > maxWindow) && (queues[WINDOW].head != null)) {
+                Node<K, V> node = queues[WINDOW].head;
+                queues[WINDOW].unlink(node);
+                node.queue = PROBATION;
+                queues[PROBATION].addLast(node);
+                if (candidate == null) {
+                    candidate = node;
+                }
+            }
+            while (weight > maxWeight) {
+                Node<K, V> victim = queues[PROBATION].head;
+                if (victim == null) {
+                    victim = queues[PROTECTED].head;
+                    if (victim == null) {
+                        victim = queues[WINDOW].head;
+                    }
+                } else if ((candidate != null) && (candidate != victim)) {
+                    if (sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)) {
+                        victim = candidate;
+                    }
+                }
+                if (victim == candidate) {
+                    // The next window entry to leave becomes the candidate
+                    candidate = candidate.next;
+                }
+                removeNode(victim);
+                evictions++;
+            }
+        }
+
+        private void removeNode(Node<K, V> node) {
+            map.remove(node.key);
+            queues[node.queue].unlink(node);
+            weight -= node.weight;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.intermine.objectstore.cache;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * A count-min sketch of 4-bit counters, used to estimate how often a key has been accessed
+ * recently. All counters are halved once enough increments have happened, so that the
+ * estimates age and reflect recent history. This class is not thread-safe - the caller must
+ * provide synchronisation.
+ */
+class FrequencySketch
+{
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = new int[] {0x97cb3127, 0xb9f0d9fb, 0x2d3c5e7d, 0xc1a9f2b3};
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    /**
+     * Creates a sketch sized for a given number of distinct keys.
+     *
+     * @param expectedEntries the approximate number of entries in the cache
+     */
+    FrequencySketch(int expectedEntries) {
+        int size = 64;
+        while ((size < expectedEntries) && (size < (1 << 24))) {
+            size <<= 1;
+        }
+        table = new long[size];
+        tableMask = size - 1;
+        sampleSize = 10 * size;
+    }
+
+    /**
+     * Returns the estimated number of recent accesses to a key, between 0 and 15.
+     *
+     * @param hash the spread hash code of the key
+     * @return an int
+     */
+    int frequency(int hash) {
+        int retval = 15;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int offset = counterOffset(hash, i);
+            int count = (int) ((table[index] >>> offset) & 0xfL);
+            retval = Math.min(retval, count);
+        }
+        return retval;
+    }
+
+    /**
+     * Records an access to a key.
+     *
+     * @param hash the spread hash code of the key
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int offset = counterOffset(hash, i);
+            if (((table[index] >>> offset) & 0xfL) != 0xfL) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && (++additions >= sampleSize)) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = additions >>> 1;
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+        h ^= h >>> 16;
+        return h & tableMask;
+    }
+
+    private static int counterOffset(int hash, int row) {
+        // Each long holds sixteen counters - each row uses its own group of four
+        return ((row << 2) + ((hash >>> (row << 3)) & 3)) << 2;
+    }
+}
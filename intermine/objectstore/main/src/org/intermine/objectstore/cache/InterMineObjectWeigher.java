@@ -0,0 +1,61 @@
+package org.intermine.objectstore.cache;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.intermine.metadata.TypeUtil;
+import org.intermine.model.InterMineObject;
+
+/**
+ * A Weigher that estimates the heap used by an InterMineObject from its attribute values.
+ * References and collections are counted as a fixed overhead, because they are normally lazy
+ * proxies rather than loaded objects.
+ */
+public class InterMineObjectWeigher implements Weigher<Integer, InterMineObject>
+{
+    /** Size charged for an entry with no value, covering the key and the cache's own nodes. */
+    public static final int ENTRY_OVERHEAD = 64;
+    private static final int FIELD_OVERHEAD = 16;
+    private static final int STRING_OVERHEAD = 40;
+
+    private final ConcurrentMap<Class<?>, String[]> fieldNames
+        = new ConcurrentHashMap<Class<?>, String[]>();
+
+    /**
+     * {@inheritDoc}
+     */
+    public int weigh(Integer key, InterMineObject value) {
+        if (value == null) {
+            return ENTRY_OVERHEAD;
+        }
+        Class<?> c = value.getClass();
+        String[] names = fieldNames.get(c);
+        if (names == null) {
+            names = TypeUtil.getFieldInfos(c).keySet().toArray(new String[0]);
+            fieldNames.put(c, names);
+        }
+        long weight = ENTRY_OVERHEAD;
+        for (String name : names) {
+            weight += FIELD_OVERHEAD;
+            try {
+                Object fieldValue = value.getFieldProxy(name);
+                if (fieldValue instanceof String) {
+                    weight += STRING_OVERHEAD + 2L * ((String) fieldValue).length();
+                }
+            } catch (IllegalAccessException e) {
+                // Count the field overhead only
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+}
@@ -0,0 +1,122 @@
+package org.intermine.objectstore.cache;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Map;
+
+/**
+ * A cache used by an ObjectStore to hold objects by ID, for example the getObjectById cache.
+ * Implementations must be safe for use by multiple threads without any external
+ * synchronisation. A null value may be stored, which records that the key is known not to
+ * exist - get() will return null for such an entry, but containsKey() will return true.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of cached values
+ */
+public interface ObjectCache<K, V>
+{
+    /**
+     * Returns the value held in the cache for the given key.
+     *
+     * @param key the key
+     * @return the value, or null if there is no entry or the entry is a null value
+     */
+    V get(K key);
+
+    /**
+     * Returns the entry held in the cache for the given key. Unlike get(), this tells a null
+     * entry apart from a missing one in a single lookup.
+     *
+     * @param key the key
+     * @return the entry, whose value may be null, or null if there is no entry
+     */
+    Map.Entry<K, V> getEntry(K key);
+
+    /**
+     * Returns whether there is an entry in the cache for the given key, including a null entry.
+     * This does not count as an access to the entry.
+     *
+     * @param key the key
+     * @return true if the key is present
+     */
+    boolean containsKey(K key);
+
+    /**
+     * Places an entry into the cache. The cache may decline to keep the entry, or evict it at
+     * any time.
+     *
+     * @param key the key
+     * @param value the value, or null to negatively cache the key
+     */
+    void put(K key, V value);
+
+    /**
+     * Places an entry into the cache, with a hint from the caller about how large the value is.
+     * This is useful where the caller already has a cheap measure of the size of the object,
+     * such as the length of the serialised form it was parsed from.
+     *
+     * @param key the key
+     * @param value the value, or null to negatively cache the key
+     * @param weight the approximate size of the value in bytes, or zero if not known
+     */
+    void put(K key, V value, int weight);
+
+    /**
+     * Places an entry into the cache, unless there is already an entry for the key, in which
+     * case that entry is left in place and returned. This does not count as a lookup.
+     *
+     * @param key the key
+     * @param value the value, or null to negatively cache the key
+     * @return the existing entry, or null if the new value was placed in the cache
+     */
+    Map.Entry<K, V> putIfAbsent(K key, V value);
+
+    /**
+     * Removes the entry for a key, if present.
+     *
+     * @param key the key
+     */
+    void remove(K key);
+
+    /**
+     * Removes all entries from the cache.
+     */
+    void clear();
+
+    /**
+     * Returns the number of entries in the cache.
+     *
+     * @return an int
+     */
+    int size();
+
+    /**
+     * Returns the number of lookups with get() that found an entry.
+     *
+     * @return a long
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of lookups with get() that did not find an entry.
+     *
+     * @return a long
+     */
+    long getMissCount();
+
+    /**
+     * Returns the number of entries that the cache has removed in order to stay within its
+     * bounds. Caches that are not bounded return zero.
+     *
+     * @return a long
+     */
+    long getEvictionCount();
+}
@@ -0,0 +1,136 @@
+package org.intermine.objectstore.cache;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractMap;
+import java.util.Map;
+
+import org.intermine.util.CacheMap;
+
+/**
+ * An ObjectCache backed by a CacheMap, so values are held softly and are released by the
+ * garbage collector when memory is short. All access is synchronised on a single monitor. This
+ * is the traditional behaviour of the getObjectById cache.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of cached values
+ */
+public class SoftObjectCache<K, V> implements ObjectCache<K, V>
+{
+    private final CacheMap<K, V> map;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Constructs a new empty SoftObjectCache.
+     *
+     * @param name the name of the cache - printed out in log messages
+     */
+    public SoftObjectCache(String name) {
+        map = new CacheMap<K, V>(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public V get(K key) {
+        Map.Entry<K, V> entry = getEntry(key);
+        return (entry == null ? null : entry.getValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Map.Entry<K, V> getEntry(K key) {
+        V value = map.get(key);
+        if ((value != null) || map.containsKey(key)) {
+            hits++;
+            return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void put(K key, V value, int weight) {
+        put(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Map.Entry<K, V> putIfAbsent(K key, V value) {
+        V existing = map.get(key);
+        if ((existing != null) || map.containsKey(key)) {
+            return new AbstractMap.SimpleImmutableEntry<K, V>(key, existing);
+        }
+        map.put(key, value);
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getEvictionCount() {
+        return 0;
+    }
+}
@@ -0,0 +1,30 @@
+package org.intermine.objectstore.cache;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * Estimates the memory used by a cache entry, so that a cache can be bounded by size rather
+ * than by number of entries.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public interface Weigher<K, V>
+{
+    /**
+     * Returns the approximate size of an entry in bytes.
+     *
+     * @param key the key
+     * @param value the value, which may be null
+     * @return a positive number of bytes
+     */
+    int weigh(K key, V value);
+}
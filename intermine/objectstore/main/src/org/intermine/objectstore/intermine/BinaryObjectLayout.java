@@ -0,0 +1,382 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.intermine.metadata.AttributeDescriptor;
+import org.intermine.metadata.ClassDescriptor;
+import org.intermine.metadata.FieldDescriptor;
+import org.intermine.metadata.Model;
+import org.intermine.metadata.ReferenceDescriptor;
+import org.intermine.metadata.TypeUtil;
+import org.intermine.model.FastPathObject;
+import org.intermine.objectstore.query.ClobAccess;
+
+/**
+ * The model-derived tables shared by BinaryObjectRenderer and BinaryObjectParser. Classes are
+ * numbered by their position in the model's classes sorted by name, and fields of a class are
+ * numbered by their position in the class's fields sorted by name, so both ends agree on the
+ * numbering as long as they use the same model. Each encoded object starts with a fingerprint of
+ * the model, so that objects written with a different model are refused rather than decoded into
+ * the wrong classes or fields.
+ * <p>
+ * The encoded form is carried in the existing text OBJECT column. Each byte of the binary form
+ * is held in one char - a zero byte is held as the char 0x100, because the database cannot store
+ * a zero char in a text column. String values are held as their own chars, after a length.
+ */
+final class BinaryObjectLayout
+{
+    private BinaryObjectLayout() {
+    }
+
+    static final int KIND_INT = 1;
+    static final int KIND_LONG = 2;
+    static final int KIND_SHORT = 3;
+    static final int KIND_BOOLEAN = 4;
+    static final int KIND_FLOAT = 5;
+    static final int KIND_DOUBLE = 6;
+    static final int KIND_DATE = 7;
+    static final int KIND_STRING = 8;
+    static final int KIND_CLOB = 9;
+    static final int KIND_REFERENCE = 10;
+    static final int KIND_OTHER = 11;
+    static final int KIND_COLLECTION = 12;
+
+    private static final char ZERO_BYTE = '\u0100';
+
+    private static Map<Model, ModelClasses> modelClasses = new WeakHashMap<Model, ModelClasses>();
+    private static Map<Class<?>, FieldLayout> fieldLayouts
+        = new ConcurrentHashMap<Class<?>, FieldLayout>();
+
+    /**
+     * Returns the class numbering for a model.
+     *
+     * @param model a Model
+     * @return a ModelClasses object
+     */
+    static ModelClasses getModelClasses(Model model) {
+        synchronized (modelClasses) {
+            ModelClasses retval = modelClasses.get(model);
+            if (retval == null) {
+                retval = new ModelClasses(model);
+                modelClasses.put(model, retval);
+            }
+            return retval;
+        }
+    }
+
+    /**
+     * Returns the field numbering for a class.
+     *
+     * @param clazz the class of an object
+     * @return a FieldLayout object
+     */
+    static FieldLayout getFieldLayout(Class<?> clazz) {
+        FieldLayout retval = fieldLayouts.get(clazz);
+        if (retval == null) {
+            retval = new FieldLayout(clazz);
+            fieldLayouts.put(clazz, retval);
+        }
+        return retval;
+    }
+
+    /**
+     * Appends a byte to the encoded form.
+     *
+     * @param sb the StringBuilder to append to
+     * @param b a byte, in the range 0 to 255
+     */
+    static void writeByte(StringBuilder sb, int b) {
+        sb.append(b == 0 ? ZERO_BYTE : (char) b);
+    }
+
+    /**
+     * Reads a byte from the encoded form.
+     *
+     * @param s the encoded form
+     * @param pos the position to read from
+     * @return a byte, in the range 0 to 255
+     */
+    static int readByte(String s, int pos) {
+        char c = s.charAt(pos);
+        return c == ZERO_BYTE ? 0 : (c & 0xff);
+    }
+
+    /**
+     * Appends an unsigned variable-length integer, seven bits per byte, least significant first.
+     *
+     * @param sb the StringBuilder to append to
+     * @param value the value, treated as unsigned
+     */
+    static void writeVarLong(StringBuilder sb, long value) {
+        while ((value & ~0x7fL) != 0) {
+            writeByte(sb, (int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        writeByte(sb, (int) value);
+    }
+
+    /**
+     * Appends a signed variable-length integer, zigzag-encoded so small negative numbers are
+     * short too.
+     *
+     * @param sb the StringBuilder to append to
+     * @param value the value
+     */
+    static void writeSignedVarLong(StringBuilder sb, long value) {
+        writeVarLong(sb, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Appends a fixed-length eight-byte value.
+     *
+     * @param sb the StringBuilder to append to
+     * @param value the value
+     */
+    static void writeFixedLong(StringBuilder sb, long value) {
+        for (int i = 56; i >= 0; i -= 8) {
+            writeByte(sb, (int) ((value >>> i) & 0xff));
+        }
+    }
+
+    /**
+     * Cursor over an encoded form, for reading.
+     */
+    static class Reader
+    {
+        private final String s;
+        private int pos;
+
+        Reader(String s, int pos) {
+            this.s = s;
+            this.pos = pos;
+        }
+
+        int getPosition() {
+            return pos;
+        }
+
+        boolean hasMore() {
+            return pos < s.length();
+        }
+
+        int readByte() {
+            return BinaryObjectLayout.readByte(s, pos++);
+        }
+
+        long readVarLong() {
+            long retval = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                retval |= ((long) (b & 0x7f)) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return retval;
+        }
+
+        int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        long readSignedVarLong() {
+            long raw = readVarLong();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        long readFixedLong() {
+            long retval = 0;
+            for (int i = 0; i < 8; i++) {
+                retval = (retval << 8) | readByte();
+            }
+            return retval;
+        }
+
+        String readString() {
+            int length = readVarInt();
+            String retval = s.substring(pos, pos + length);
+            pos += length;
+            return retval;
+        }
+    }
+
+    /**
+     * The numbering of the classes in a model.
+     */
+    static class ModelClasses
+    {
+        private final List<Class<?>> classes = new ArrayList<Class<?>>();
+        private final Map<Class<?>, Integer> ordinals = new HashMap<Class<?>, Integer>();
+        private final long fingerprint;
+
+        ModelClasses(Model model) {
+            List<ClassDescriptor> clds = new ArrayList<ClassDescriptor>(model
+                    .getClassDescriptors());
+            Collections.sort(clds, new Comparator<ClassDescriptor>() {
+                public int compare(ClassDescriptor a, ClassDescriptor b) {
+                    return a.getName().compareTo(b.getName());
+                }
+            });
+            fingerprint = fingerprint(clds);
+            for (ClassDescriptor cld : clds) {
+                Class<?> type = null;
+                try {
+                    type = cld.getType();
+                } catch (RuntimeException e) {
+                    // The class is not available, but keep the numbering consistent
+                }
+                if (type != null) {
+                    ordinals.put(type, new Integer(classes.size()));
+                }
+                classes.add(type);
+            }
+        }
+
+        /**
+         * Returns a fingerprint of everything in the model that the numbering of classes and
+         * fields depends on - the classes, and the names and types of their fields.
+         *
+         * @return a 32-bit fingerprint
+         */
+        long getFingerprint() {
+            return fingerprint;
+        }
+
+        private static long fingerprint(List<ClassDescriptor> clds) {
+            StringBuilder sb = new StringBuilder();
+            for (ClassDescriptor cld : clds) {
+                sb.append(cld.getName()).append('(');
+                List<FieldDescriptor> fields = new ArrayList<FieldDescriptor>(cld
+                        .getAllFieldDescriptors());
+                Collections.sort(fields, new Comparator<FieldDescriptor>() {
+                    public int compare(FieldDescriptor a, FieldDescriptor b) {
+                        return a.getName().compareTo(b.getName());
+                    }
+                });
+                for (FieldDescriptor field : fields) {
+                    sb.append(field.getName()).append(':');
+                    if (field instanceof AttributeDescriptor) {
+                        sb.append(((AttributeDescriptor) field).getType());
+                    } else {
+                        sb.append(field.isCollection() ? "collection " : "reference ")
+                            .append(((ReferenceDescriptor) field).getReferencedClassName());
+                    }
+                    sb.append(' ');
+                }
+                sb.append(')');
+            }
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(sb.toString()
+                        .getBytes("UTF-8"));
+                return ((digest[0] & 0xffL) << 24) | ((digest[1] & 0xffL) << 16)
+                    | ((digest[2] & 0xffL) << 8) | (digest[3] & 0xffL);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Returns the number of a class, or -1 if it is not in the model.
+         *
+         * @param clazz a Class
+         * @return an int
+         */
+        int getOrdinal(Class<?> clazz) {
+            Integer retval = ordinals.get(clazz);
+            return retval == null ? -1 : retval.intValue();
+        }
+
+        /**
+         * Returns the class with a given number.
+         *
+         * @param ordinal the number of the class
+         * @return a Class
+         * @throws ClassNotFoundException if the number is out of range or the class is missing
+         */
+        Class<?> getClass(int ordinal) throws ClassNotFoundException {
+            Class<?> retval = null;
+            if ((ordinal >= 0) && (ordinal < classes.size())) {
+                retval = classes.get(ordinal);
+            }
+            if (retval == null) {
+                throw new ClassNotFoundException("No class number " + ordinal + " in model");
+            }
+            return retval;
+        }
+    }
+
+    /**
+     * The numbering and encoding kind of each field of a class.
+     */
+    static class FieldLayout
+    {
+        final String[] names;
+        final Class<?>[] types;
+        final int[] kinds;
+
+        FieldLayout(Class<?> clazz) {
+            Map<String, TypeUtil.FieldInfo> infos = TypeUtil.getFieldInfos(clazz);
+            names = new String[infos.size()];
+            types = new Class<?>[infos.size()];
+            kinds = new int[infos.size()];
+            int i = 0;
+            for (Map.Entry<String, TypeUtil.FieldInfo> entry : infos.entrySet()) {
+                names[i] = entry.getKey();
+                types[i] = entry.getValue().getType();
+                kinds[i] = kindOf(types[i]);
+                i++;
+            }
+        }
+
+        private static int kindOf(Class<?> type) {
+            if ((type == Integer.class) || (type == Integer.TYPE)) {
+                return KIND_INT;
+            } else if ((type == Long.class) || (type == Long.TYPE)) {
+                return KIND_LONG;
+            } else if ((type == Short.class) || (type == Short.TYPE)) {
+                return KIND_SHORT;
+            } else if ((type == Boolean.class) || (type == Boolean.TYPE)) {
+                return KIND_BOOLEAN;
+            } else if ((type == Float.class) || (type == Float.TYPE)) {
+                return KIND_FLOAT;
+            } else if ((type == Double.class) || (type == Double.TYPE)) {
+                return KIND_DOUBLE;
+            } else if (type == Date.class) {
+                return KIND_DATE;
+            } else if (type == String.class) {
+                return KIND_STRING;
+            } else if (ClobAccess.class.equals(type)) {
+                return KIND_CLOB;
+            } else if (Collection.class.isAssignableFrom(type)) {
+                return KIND_COLLECTION;
+            } else if (FastPathObject.class.isAssignableFrom(type)) {
+                return KIND_REFERENCE;
+            }
+            return KIND_OTHER;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_BOOLEAN;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_CLOB;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_DATE;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_DOUBLE;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_FLOAT;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_INT;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_LONG;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_REFERENCE;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_SHORT;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_STRING;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.intermine.metadata.Model;
+import org.intermine.metadata.ReferenceDescriptor;
+import org.intermine.metadata.TypeUtil;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.proxy.ProxyCollection;
+import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.objectstore.query.ClobAccess;
+import org.intermine.util.DynamicUtil;
+
+/**
+ * Parses a String in the binary object format, as produced by BinaryObjectRenderer, into an
+ * Object. NotXmlParser.parse() passes Strings in this format here, so readers handle either
+ * format in the same database.
+ *
+ * @see BinaryObjectLayout
+ */
+public final class BinaryObjectParser
+{
+    private BinaryObjectParser() {
+    }
+
+    /**
+     * The first char of a String in version 1 of the binary object format. NotXml always starts
+     * with NotXmlParser.DELIM, so this distinguishes the formats.
+     */
+    public static final char FORMAT_VERSION_1 = '\u0001';
+
+    private static Map<String, Class<? extends FastPathObject>> classCache
+        = new ConcurrentHashMap<String, Class<? extends FastPathObject>>();
+
+    /**
+     * Returns true if the given String is in the binary object format.
+     *
+     * @param encoded the contents of an OBJECT field
+     * @return a boolean
+     */
+    public static boolean isBinary(String encoded) {
+        return (encoded != null) && (encoded.length() > 0)
+            && (encoded.charAt(0) == FORMAT_VERSION_1);
+    }
+
+    /**
+     * Parse the given String into an Object.
+     *
+     * @param encoded the String in the binary object format
+     * @param os the ObjectStore from which to create lazy objects
+     * @return an InterMineObject
+     * @throws ClassNotFoundException if a class cannot be found
+     */
+    public static InterMineObject parse(String encoded, ObjectStoreInterMineImpl os)
+        throws ClassNotFoundException {
+        Model model = os.getModel();
+        BinaryObjectLayout.Reader in = new BinaryObjectLayout.Reader(encoded, 1);
+        long fingerprint = in.readVarLong();
+        int classCount = in.readVarInt();
+        int[] ordinals = new int[classCount];
+        String[] names = new String[classCount];
+        for (int i = 0; i < classCount; i++) {
+            ordinals[i] = in.readVarInt() - 1;
+            if (ordinals[i] == -1) {
+                names[i] = in.readString();
+            }
+        }
+        // The encoded class header is itself a good cache key, and includes the fingerprint of
+        // the model, so the fingerprint only needs to be checked when a header is first seen
+        String classKey = encoded.substring(1, in.getPosition());
+        Class<? extends FastPathObject> clazz = classCache.get(classKey);
+        if (clazz == null) {
+            BinaryObjectLayout.ModelClasses modelClasses = BinaryObjectLayout
+                .getModelClasses(model);
+            if (fingerprint != modelClasses.getFingerprint()) {
+                throw new IllegalArgumentException("Object was stored in the binary object format"
+                        + " with a different model (fingerprint " + fingerprint + " rather than "
+                        + modelClasses.getFingerprint() + ") - it cannot be read with this model:"
+                        + " " + encoded);
+            }
+            Set<Class<?>> classes = new HashSet<Class<?>>();
+            for (int i = 0; i < classCount; i++) {
+                if (ordinals[i] == -1) {
+                    classes.add(Class.forName(names[i]));
+                } else {
+                    classes.add(modelClasses.getClass(ordinals[i]));
+                }
+            }
+            clazz = DynamicUtil.composeClass(classes);
+            classCache.put(classKey, clazz);
+        }
+        InterMineObject retval = (InterMineObject) DynamicUtil.createObject(clazz);
+
+        BinaryObjectLayout.FieldLayout layout = BinaryObjectLayout.getFieldLayout(retval
+                .getClass());
+        boolean fetchFromInterMineObject = os.getSchema().isFetchFromInterMineObject();
+        Map<String, Class<?>> collections = model.getCollectionsForClass(retval.getClass());
+        while (in.hasMore()) {
+            int field = in.readVarInt() - 1;
+            String fieldName = layout.names[field];
+            Object value;
+            switch (layout.kinds[field]) {
+                case KIND_INT:
+                    value = new Integer((int) in.readSignedVarLong());
+                    break;
+                case KIND_LONG:
+                    value = new Long(in.readSignedVarLong());
+                    break;
+                case KIND_SHORT:
+                    value = new Short((short) in.readSignedVarLong());
+                    break;
+                case KIND_BOOLEAN:
+                    value = Boolean.valueOf(in.readByte() != 0);
+                    break;
+                case KIND_FLOAT:
+                    value = new Float(Float.intBitsToFloat((int) in.readFixedLong()));
+                    break;
+                case KIND_DOUBLE:
+                    value = new Double(Double.longBitsToDouble(in.readFixedLong()));
+                    break;
+                case KIND_DATE:
+                    value = new Date(in.readSignedVarLong());
+                    break;
+                case KIND_STRING:
+                    value = in.readString();
+                    break;
+                case KIND_CLOB:
+                    value = ClobAccess.decodeDbDescription(os, in.readString());
+                    break;
+                case KIND_REFERENCE:
+                    Integer id = new Integer((int) in.readSignedVarLong());
+                    if (fetchFromInterMineObject) {
+                        value = new ProxyReference(os, id, InterMineObject.class);
+                    } else {
+                        ReferenceDescriptor ref = (ReferenceDescriptor) model
+                            .getFieldDescriptorsForClass(retval.getClass()).get(fieldName);
+                        @SuppressWarnings("unchecked")
+                        Class<? extends InterMineObject> tmpType =
+                            (Class<? extends InterMineObject>) ref.getReferencedClassDescriptor()
+                                                                   .getType();
+                        value = new ProxyReference(os, id, tmpType);
+                    }
+                    break;
+                default:
+                    value = TypeUtil.stringToObject(layout.types[field], in.readString());
+            }
+            retval.setFieldValue(fieldName, value);
+        }
+
+        for (Map.Entry<String, Class<?>> collEntry : collections.entrySet()) {
+            Collection<Object> lazyColl = new ProxyCollection<Object>(os, retval,
+                    collEntry.getKey(), collEntry.getValue());
+            retval.setFieldValue(collEntry.getKey(), lazyColl);
+        }
+        return retval;
+    }
+}
@@ -0,0 +1,151 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_BOOLEAN;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_CLOB;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_COLLECTION;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_DATE;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_DOUBLE;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_FLOAT;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_INT;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_LONG;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_REFERENCE;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_SHORT;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.KIND_STRING;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.writeByte;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.writeFixedLong;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.writeSignedVarLong;
+import static org.intermine.objectstore.intermine.BinaryObjectLayout.writeVarLong;
+
+import java.util.Date;
+import java.util.Set;
+
+import org.intermine.metadata.Model;
+import org.intermine.metadata.TypeUtil;
+import org.intermine.metadata.Util;
+import org.intermine.model.InterMineObject;
+import org.intermine.model.StringConstructor;
+import org.intermine.objectstore.query.ClobAccess;
+
+/**
+ * Render an object into the binary object format, for storing in the OBJECT field of database
+ * tables. This is an alternative to NotXml that is smaller and much faster to parse - see
+ * BinaryObjectParser.
+ *
+ * @see BinaryObjectLayout
+ */
+public final class BinaryObjectRenderer
+{
+    private BinaryObjectRenderer() {
+    }
+
+    /** Strings longer than this are added to the result without copying. */
+    private static final int LARGE_STRING = 4096;
+
+    /**
+     * Render the given object in the binary object format.
+     *
+     * @param obj the object to render
+     * @param model the Model that the object belongs to
+     * @return the encoded object, as a StringConstructor
+     */
+    public static StringConstructor render(Object obj, Model model) {
+        try {
+            StringConstructor retval = new StringConstructor();
+            StringBuilder sb = new StringBuilder();
+            sb.append(BinaryObjectParser.FORMAT_VERSION_1);
+            BinaryObjectLayout.ModelClasses modelClasses = BinaryObjectLayout
+                .getModelClasses(model);
+            writeVarLong(sb, modelClasses.getFingerprint());
+            Set<Class<?>> classes = Util.decomposeClass(obj.getClass());
+            writeVarLong(sb, classes.size());
+            for (Class<?> clazz : classes) {
+                int ordinal = modelClasses.getOrdinal(clazz);
+                writeVarLong(sb, ordinal + 1);
+                if (ordinal == -1) {
+                    writeString(sb, clazz.getName());
+                }
+            }
+
+            BinaryObjectLayout.FieldLayout layout = BinaryObjectLayout.getFieldLayout(obj
+                    .getClass());
+            for (int i = 0; i < layout.names.length; i++) {
+                int kind = layout.kinds[i];
+                if (kind == KIND_COLLECTION) {
+                    continue;
+                }
+                Object value = TypeUtil.getFieldProxy(obj, layout.names[i]);
+                if (value == null) {
+                    continue;
+                }
+                if (kind == KIND_REFERENCE) {
+                    if (!(value instanceof InterMineObject)) {
+                        continue;
+                    }
+                    writeVarLong(sb, i + 1);
+                    writeSignedVarLong(sb, ((InterMineObject) value).getId().intValue());
+                    continue;
+                }
+                writeVarLong(sb, i + 1);
+                switch (kind) {
+                    case KIND_INT:
+                    case KIND_LONG:
+                    case KIND_SHORT:
+                        writeSignedVarLong(sb, ((Number) value).longValue());
+                        break;
+                    case KIND_BOOLEAN:
+                        writeByte(sb, ((Boolean) value).booleanValue() ? 1 : 0);
+                        break;
+                    case KIND_FLOAT:
+                        writeFixedLong(sb, Float.floatToIntBits(((Float) value).floatValue()));
+                        break;
+                    case KIND_DOUBLE:
+                        writeFixedLong(sb, Double.doubleToLongBits(((Double) value)
+                                    .doubleValue()));
+                        break;
+                    case KIND_DATE:
+                        writeSignedVarLong(sb, ((Date) value).getTime());
+                        break;
+                    case KIND_STRING:
+                        String string = (String) value;
+                        if (string.length() > LARGE_STRING) {
+                            writeVarLong(sb, string.length());
+                            retval.append(sb.toString());
+                            retval.append(string);
+                            sb.setLength(0);
+                        } else {
+                            writeString(sb, string);
+                        }
+                        break;
+                    case KIND_CLOB:
+                        writeString(sb, ((ClobAccess) value).getDbDescription());
+                        break;
+                    default:
+                        writeString(sb, value.toString());
+                }
+            }
+            if (sb.length() > 0) {
+                retval.append(sb.toString());
+            }
+            return retval;
+        } catch (IllegalAccessException e) {
+            IllegalArgumentException e2 = new IllegalArgumentException();
+            e2.initCause(e);
+            throw e2;
+        }
+    }
+
+    private static void writeString(StringBuilder sb, String string) {
+        writeVarLong(sb, string.length());
+        sb.append(string);
+    }
+}
@@ -59,6 +59,8 @@ import org.intermine.objectstore.query.ConstraintTraverseAction;
 import org.intermine.objectstore.query.ConstraintWithBag;
 import org.intermine.objectstore.query.FromElement;
 import org.intermine.objectstore.query.MultipleInBagConstraint;
+import org.intermine.objectstore.query.ObjectStoreBag;
+import org.intermine.objectstore.query.ObjectStoreBagCombination;
 import org.intermine.objectstore.query.OrderDescending;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
@@ -90,6 +92,7 @@ import org.intermine.sql.query.PostgresExplainResult;
 import org.intermine.sql.writebatch.Batch;
 import org.intermine.sql.writebatch.BatchWriterPostgresCopyImpl;
 import org.intermine.util.CacheMap;
+import org.intermine.util.IntBitmap;
 import org.intermine.util.ShutdownHook;
 import org.intermine.util.Shutdownable;
 
@@ -130,8 +133,12 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
     protected int sequenceBase = 0;
     protected int sequenceOffset = SEQUENCE_MULTIPLE;
     protected static final int SEQUENCE_MULTIPLE = 1000000;
+    // Pages that start before this are cheap enough to fetch with a plain OFFSET
+    protected static final int KEYSET_MIN_OFFSET = 1000;
     protected boolean logExplains = false;
     protected boolean disableResultsCache = false;
+    protected boolean binaryObjectFormat = false;
+    protected PrecomputeAdvisor precomputeAdvisor = null;
 
     // don't use a table to represent bags if the bag is smaller than this value
     protected int minBagTableSize = -1;
@@ -151,6 +158,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         = new CacheMap<String, SingletonResults>();
     protected Map<String, Map<Integer, ResultsBatches>> batchesCache
         = new CacheMap<String, Map<Integer, ResultsBatches>>();
+    protected Map<ObjectStoreBag, IntBitmap> bagBitmaps = new CacheMap<ObjectStoreBag, IntBitmap>();
 
     private static final String[] LOG_TABLE_COLUMNS = new String[] {"timestamp", "optimise",
         "estimated", "execute", "permitted", "convert", "iql", "sql"};
@@ -346,6 +354,12 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         String logExplainsString = props.getProperty("logExplains");
         String logBeforeExecuteString = props.getProperty("logBeforeExecute");
         String disableResultsCacheString = props.getProperty("disableResultsCache");
+        String objectFormatString = props.getProperty("objectFormat");
+        String advisorSampleString = props.getProperty("precomputeAdvisor.sampleInterval");
+        String advisorBudgetString = props.getProperty("precomputeAdvisor.diskBudget");
+        String advisorIntervalString = props.getProperty("precomputeAdvisor.interval");
+        String advisorApplyString = props.getProperty("precomputeAdvisor.autoApply");
+        String refreshDelayString = props.getProperty("precomputeRefreshDelay");
 
         synchronized (instances) {
             ObjectStoreInterMineImpl os = instances.get(osAlias);
@@ -513,6 +527,38 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                 if ("true".equals(disableResultsCacheString)) {
                     os.setDisableResultsCache(true);
                 }
+                if ("binary".equals(objectFormatString)) {
+                    os.setBinaryObjectFormat(true);
+                } else if ((objectFormatString != null) && (!"notxml".equals(objectFormatString))) {
+                    throw new ObjectStoreException("Invalid value for property objectFormat: "
+                            + objectFormatString + " - should be \"notxml\" or \"binary\"");
+                }
+                if (advisorSampleString != null) {
+                    try {
+                        PrecomputeAdvisor advisor = new PrecomputeAdvisor(os,
+                                Integer.parseInt(advisorSampleString),
+                                (advisorBudgetString == null ? 0
+                                 : Long.parseLong(advisorBudgetString)));
+                        advisor.setAutoApply("true".equals(advisorApplyString));
+                        os.setPrecomputeAdvisor(advisor);
+                        if (advisorIntervalString != null) {
+                            advisor.start(Long.parseLong(advisorIntervalString));
+                        }
+                    } catch (NumberFormatException e) {
+                        LOG.warn("Error setting up precompute advisor: " + e);
+                    }
+                }
+                if (refreshDelayString != null) {
+                    try {
+                        PrecomputedTableManager.getInstance(database)
+                            .startRefresher(Long.parseLong(refreshDelayString));
+                    } catch (NumberFormatException e) {
+                        LOG.warn("Error parsing precomputeRefreshDelay: " + e);
+                    } catch (SQLException e) {
+                        throw new ObjectStoreException("Error starting precomputed table"
+                                + " refresher", e);
+                    }
+                }
                 instances.put(osAlias, os);
             }
             return os;
@@ -661,6 +707,43 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         return disableResultsCache;
     }
 
+    /**
+     * Sets whether objects are written to the OBJECT column in the binary object format rather
+     * than as NotXml. Objects in either format can always be read.
+     *
+     * @param binaryObjectFormat true to write the binary object format
+     */
+    public void setBinaryObjectFormat(boolean binaryObjectFormat) {
+        this.binaryObjectFormat = binaryObjectFormat;
+    }
+
+    /**
+     * Returns true if objects are written in the binary object format.
+     *
+     * @return a boolean
+     */
+    public boolean isBinaryObjectFormat() {
+        return binaryObjectFormat;
+    }
+
+    /**
+     * Sets the PrecomputeAdvisor that is told about every query executed by this objectstore.
+     *
+     * @param precomputeAdvisor a PrecomputeAdvisor, or null for none
+     */
+    public void setPrecomputeAdvisor(PrecomputeAdvisor precomputeAdvisor) {
+        this.precomputeAdvisor = precomputeAdvisor;
+    }
+
+    /**
+     * Returns the PrecomputeAdvisor of this objectstore.
+     *
+     * @return a PrecomputeAdvisor, or null if there is none
+     */
+    public PrecomputeAdvisor getPrecomputeAdvisor() {
+        return precomputeAdvisor;
+    }
+
     /**
      * Allows the log table to be flushed, guaranteeing that all log entries are committed to the
      * database.
@@ -999,6 +1082,17 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
      */
     public List<ResultsRow<Object>> execute(Query q, int start, int limit, boolean optimise,
             boolean explain, Map<Object, Integer> sequence) throws ObjectStoreException {
+        IntBitmap bitmap = getBagBitmap(q);
+        if (bitmap != null) {
+            checkSequence(sequence, q, "Execute (START " + start + " LIMIT " + limit + ") ");
+            List<ResultsRow<Object>> retval = new ArrayList<ResultsRow<Object>>();
+            for (int value : bitmap.toArray(start, limit)) {
+                ResultsRow<Object> row = new ResultsRow<Object>();
+                row.add(new Integer(value));
+                retval.add(row);
+            }
+            return retval;
+        }
         Constraint where = q.getConstraint();
         // we know there will be no results if we ORing or NANDing over an empty constraint set
         if (where instanceof ConstraintSet) {
@@ -1165,6 +1259,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             long estimatedTime = 0;
             long startOptimiseTime = System.currentTimeMillis();
             ExplainResult explainResult = null;
+            String optimiseCacheStatus = null;
             if (optimise && everOptimise()) {
                 if (goFasterTables == null) {
                     goFasterTables = goFasterMap.get(q);
@@ -1183,6 +1278,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                             (explain ? limitedContext : QueryOptimiserContext.DEFAULT));
                 }
                 sql = bestQuery.getBestQueryString();
+                optimiseCacheStatus = bestQuery.getCacheStatus();
                 if (bestQuery instanceof BestQueryExplainer) {
                     explainResult = ((BestQueryExplainer) bestQuery).getBestExplainResult();
                 }
@@ -1273,6 +1369,9 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             statsEstTime += estTime;
             long exeTime = postExecute - preExecute;
             statsExeTime += exeTime;
+            if ((precomputeAdvisor != null) && optimise && (goFasterTables == null)) {
+                precomputeAdvisor.record(q, exeTime);
+            }
             long conTime = postConvert - postExecute - extra.getQueryTime();
             statsConTime += conTime;
             if (getVerboseQueryLog()) {
@@ -1281,8 +1380,9 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                         + "generated sql: " + generatedSql + "\n"
                         + "optimised sql: " + sql + "\n"
                         + "bag tables: " + bagTableTime + " ms, generate: " + genTime
-                        + " ms, optimise: " + optTime + " ms, "
-                        + " ms,  estimate: " + estTime + " ms, " + "execute: " + exeTime
+                        + " ms, optimise: " + optTime + " ms"
+                        + (optimiseCacheStatus == null ? "" : " (" + optimiseCacheStatus + ")")
+                        + ", estimate: " + estTime + " ms, " + "execute: " + exeTime
                         + " ms, convert results: " + conTime + " ms, extra queries: "
                         + extra.getQueryTime() + " ms, total: "
                         + (postConvert - preBagTableTime) + " ms" + ", rows: "
@@ -1297,8 +1397,14 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                     }
                 }
             }
+            boolean keysetRegistered = false;
+            if ((objResults.size() == limit) && (start + limit >= KEYSET_MIN_OFFSET)) {
+                // There are probably more rows - register where the next page starts
+                keysetRegistered = SqlGenerator.registerKeyset(q, start + limit, schema, db,
+                        objResults.get(limit - 1), bagConstraintTables);
+            }
             Object firstOrderByObject = q.getEffectiveOrderBy().iterator().next();
-            if ((firstOrderByObject instanceof QueryOrderable)
+            if ((!keysetRegistered) && (firstOrderByObject instanceof QueryOrderable)
                     && (!(firstOrderByObject instanceof QueryObjectReference))) {
                 QueryOrderable firstOrderBy = (QueryOrderable) firstOrderByObject;
                 if (firstOrderBy instanceof OrderDescending) {
@@ -1626,6 +1732,11 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
      * {@inheritDoc}
      */
     public int count(Query q, Map<Object, Integer> sequence) throws ObjectStoreException {
+        IntBitmap bitmap = getBagBitmap(q);
+        if (bitmap != null) {
+            checkSequence(sequence, q, "COUNT ");
+            return bitmap.size();
+        }
         Connection c = null;
         try {
             c = getConnection();
@@ -1688,6 +1799,113 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         }
     }
 
+    /**
+     * Returns the contents of the results of a query as a bitmap, if the query just fetches the
+     * contents of an ObjectStoreBag or an ObjectStoreBagCombination, which can be worked out from
+     * the cached bitmaps of the bags without running any SQL.
+     *
+     * @param q a Query
+     * @return an IntBitmap, or null if the query is of any other kind
+     * @throws ObjectStoreException if there is an error in the underlying database
+     */
+    protected IntBitmap getBagBitmap(Query q) throws ObjectStoreException {
+        if (q.getSelect().size() == 1) {
+            QuerySelectable selectable = q.getSelect().get(0);
+            if (selectable instanceof ObjectStoreBag) {
+                return getBagBitmap((ObjectStoreBag) selectable);
+            } else if (selectable instanceof ObjectStoreBagCombination) {
+                return getBagBitmap((ObjectStoreBagCombination) selectable);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the contents of an ObjectStoreBagCombination as a bitmap, combining the bitmaps of
+     * its bags in memory in the same way as the SQL generated by the SqlGenerator.
+     *
+     * @param osbc an ObjectStoreBagCombination
+     * @return a new IntBitmap
+     * @throws ObjectStoreException if there is an error in the underlying database
+     */
+    public IntBitmap getBagBitmap(ObjectStoreBagCombination osbc) throws ObjectStoreException {
+        IntBitmap union = new IntBitmap();
+        IntBitmap intersection = null;
+        IntBitmap except = null;
+        for (QuerySelectable qs : osbc.getBags()) {
+            IntBitmap bitmap;
+            if (qs instanceof ObjectStoreBag) {
+                bitmap = getBagBitmap((ObjectStoreBag) qs);
+            } else {
+                bitmap = getBagBitmap((ObjectStoreBagCombination) qs);
+            }
+            union = union.or(bitmap);
+            intersection = (intersection == null ? bitmap : intersection.and(bitmap));
+            except = (except == null ? bitmap : except.andNot(bitmap));
+        }
+        switch (osbc.getOp()) {
+            case ObjectStoreBagCombination.UNION:
+                return union;
+            case ObjectStoreBagCombination.INTERSECT:
+                return (intersection == null ? union : intersection);
+            case ObjectStoreBagCombination.EXCEPT:
+                return (except == null ? union : except);
+            default:
+                // ALLBUTINTERSECT
+                return (intersection == null ? union : union.andNot(intersection));
+        }
+    }
+
+    /**
+     * Returns the contents of an ObjectStoreBag as a bitmap. Bitmaps are cached until the bag is
+     * altered, or memory runs short. The returned bitmap must not be altered.
+     *
+     * @param osb an ObjectStoreBag
+     * @return an IntBitmap
+     * @throws ObjectStoreException if there is an error in the underlying database
+     */
+    public IntBitmap getBagBitmap(ObjectStoreBag osb) throws ObjectStoreException {
+        Map<Object, Integer> sequence;
+        synchronized (this) {
+            IntBitmap retval = bagBitmaps.get(osb);
+            if (retval != null) {
+                return retval;
+            }
+            sequence = getSequence(Collections.<Object>singleton(osb));
+        }
+        IntBitmap retval = new IntBitmap();
+        Connection c = null;
+        try {
+            c = getConnection();
+            Statement s = c.createStatement();
+            registerStatement(s);
+            try {
+                ResultSet r = s.executeQuery("SELECT " + BAGVAL_COLUMN + " FROM "
+                        + INT_BAG_TABLE_NAME + " WHERE " + BAGID_COLUMN + " = " + osb.getBagId()
+                        + " ORDER BY " + BAGVAL_COLUMN);
+                while (r.next()) {
+                    retval.add(r.getInt(1));
+                }
+            } finally {
+                deregisterStatement(s);
+            }
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Error fetching contents of bag " + osb.getBagId(), e);
+        } finally {
+            releaseConnection(c);
+        }
+        synchronized (this) {
+            try {
+                // Only cache the bitmap if the bag did not change while we were reading it
+                checkSequence(sequence, null, "Fetch bag bitmap ");
+                bagBitmaps.put(osb, retval);
+            } catch (DataChangedException e) {
+                // The next caller will fetch it again
+            }
+        }
+        return retval;
+    }
+
     /**
      * Internal method called by the ObjectStoreWriter, to notify the ObjectStore that some of the
      * data in the database has changed.
@@ -1701,18 +1919,23 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             for (Object o : tablesAltered) {
                 if (o instanceof String) {
                     tableNames.add((String) o);
+                } else if (o instanceof ObjectStoreBag) {
+                    synchronized (this) {
+                        bagBitmaps.remove(o);
+                    }
                 }
             }
             // We have just removed the ObjectStoreBags from the Set of altered things. This means
             // that although the DataChangedException stuff is ObjectStoreBag-specific, the dropping
             // precomputed tables bit is not. Changing any ObjectStoreBag will result in all
-            // Precomputed tables that have an ObjectStoreBag being dropped.
+            // Precomputed tables that have an ObjectStoreBag being dropped, or refreshed if the
+            // precomputeRefreshDelay property is set.
             if ((tablesAltered.size() > 1) || (!tablesAltered.contains(INT_BAG_TABLE_NAME))) {
                 flushObjectById();
             }
             try {
                 PrecomputedTableManager ptm = PrecomputedTableManager.getInstance(db);
-                ptm.dropAffected(tableNames);
+                ptm.tablesAltered(tableNames);
             } catch (SQLException e) {
                 throw new Error("Problem with precomputed tables", e);
             }
@@ -1792,7 +2015,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                 }
                 InterMineObject retval = NotXmlParser.parse(currentColumn, this);
                 //if (currentColumn.length() < CACHE_LARGEST_OBJECT) {
-                cacheObjectById(retval.getId(), retval);
+                cacheObjectById(retval.getId(), retval, 2 * currentColumn.length());
                 //} else {
                 //    LOG.debug("Not cacheing large object " + retval.getId() + " on getObjectById"
                 //            + " (size = " + (currentColumn.length() / 512) + " kB)");
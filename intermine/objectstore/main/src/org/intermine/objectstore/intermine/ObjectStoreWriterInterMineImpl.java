@@ -49,6 +49,7 @@ import org.intermine.objectstore.query.Clob;
 import org.intermine.objectstore.query.ClobAccess;
 import org.intermine.objectstore.query.Constraint;
 import org.intermine.objectstore.query.ObjectStoreBag;
+import org.intermine.objectstore.query.ObjectStoreBagCombination;
 import org.intermine.objectstore.query.PendingClob;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
@@ -66,6 +67,7 @@ import org.intermine.sql.writebatch.Batch;
 import org.intermine.sql.writebatch.BatchWriter;
 import org.intermine.sql.writebatch.BatchWriterPostgresCopyImpl;
 import org.intermine.util.DynamicUtil;
+import org.intermine.util.IntBitmap;
 import org.intermine.util.PropertiesUtil;
 import org.intermine.util.ShutdownHook;
 
@@ -676,7 +678,9 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
                             value = objectClass;
                         } else if ("OBJECT".equals(tableInfo.colNames[colNo])) {
                             if (xml == null) {
-                                if (o instanceof InterMineObject) {
+                                if (os.isBinaryObjectFormat()) {
+                                    xml = BinaryObjectRenderer.render(o, model);
+                                } else if (o instanceof InterMineObject) {
                                     xml = ((InterMineObject) o).getoBJECT();
                                 } else {
                                     xml = NotXmlRenderer.render(o);
@@ -1122,6 +1126,54 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
         }
     }
 
+    /**
+     * Adds the contents of an ObjectStoreBagCombination to a bag by combining the cached bitmaps
+     * of the bags in memory, rather than with SQL. This is only possible if none of the bags
+     * involved have been altered in the current transaction, because the bitmaps are those of the
+     * committed bags.
+     *
+     * @param c a Connection
+     * @param osb the ObjectStoreBag to add to
+     * @param osbc the ObjectStoreBagCombination to add
+     * @return true if the elements were added, false if this method could not be used
+     * @throws ObjectStoreException if there is an error in the underlying database
+     */
+    protected boolean addToBagFromBitmaps(Connection c, ObjectStoreBag osb,
+            ObjectStoreBagCombination osbc) throws ObjectStoreException {
+        Set<ObjectStoreBag> bags = new HashSet<ObjectStoreBag>();
+        addBags(osbc, bags);
+        bags.add(osb);
+        for (ObjectStoreBag bag : bags) {
+            if (tablesAltered.contains(bag)) {
+                return false;
+            }
+        }
+        IntBitmap toAdd = os.getBagBitmap(osbc).andNot(os.getBagBitmap(osb));
+        try {
+            for (Integer element : toAdd) {
+                batch.addRow(c, INT_BAG_TABLE_NAME, BAGID_COLUMN, BAGVAL_COLUMN, osb.getBagId(),
+                        element.intValue());
+            }
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Error adding to bag", e);
+        }
+        if (!toAdd.isEmpty()) {
+            tablesAltered.add(osb);
+            tablesAltered.add(INT_BAG_TABLE_NAME);
+        }
+        return true;
+    }
+
+    private static void addBags(ObjectStoreBagCombination osbc, Set<ObjectStoreBag> bags) {
+        for (QuerySelectable qs : osbc.getBags()) {
+            if (qs instanceof ObjectStoreBag) {
+                bags.add((ObjectStoreBag) qs);
+            } else {
+                addBags((ObjectStoreBagCombination) qs, bags);
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1230,6 +1282,20 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
             beginTransactionWithConnection(c);
         }
 
+        if ((query.getSelect().get(0) instanceof ObjectStoreBagCombination)
+                && addToBagFromBitmaps(c, osb, (ObjectStoreBagCombination) query.getSelect()
+                    .get(0))) {
+            if (!wasInTransaction) {
+                try {
+                    commitTransactionWithConnection(c);
+                } catch (ObjectStoreException e) {
+                    abortTransactionWithConnection(c);
+                    throw e;
+                }
+            }
+            return;
+        }
+
         if (getMinBagTableSize() != -1) {
             createTempBagTables(c, query);
             flushOldTempBagTables(c);
@@ -0,0 +1,634 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.ClassConstraint;
+import org.intermine.objectstore.query.Constraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.FromElement;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryCloner;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.SimpleConstraint;
+import org.intermine.sql.precompute.OptimiserCache;
+import org.intermine.sql.precompute.PrecomputedTable;
+import org.intermine.sql.precompute.PrecomputedTableManager;
+import org.intermine.sql.query.ExplainResult;
+
+/**
+ * Watches the queries executed by an ObjectStoreInterMineImpl and proposes precomputed tables for
+ * the joins that are used most, within a disk budget. Every sampleInterval-th query is reduced to
+ * its join skeleton - the same classes joined in the same way, with every constraint that
+ * compares to a value removed and every class selected - and counted. Queries that differ only in
+ * their constraint values therefore have the same skeleton, and a precomputed table of the
+ * skeleton can be used by the QueryOptimiser for all of them.
+ * <p>
+ * Each call to advise() estimates the cost of every frequent skeleton with an EXPLAIN of its SQL
+ * (without precomputed tables, so that the cost saved is measured even for skeletons that are
+ * already precomputed), and keeps those with the most benefit per byte that fit in the budget.
+ * It returns proposals to create the tables for new skeletons and to drop advisor tables that are
+ * no longer worth their space, and carries them out if autoApply is set. Counts decay by half at
+ * each call, so tables for queries that are no longer used are eventually dropped.
+ */
+public class PrecomputeAdvisor
+{
+    private static final Logger LOG = Logger.getLogger(PrecomputeAdvisor.class);
+    /** The category of the precomputed tables managed by the advisor. */
+    public static final String CATEGORY = "advisor";
+    /** The maximum number of skeletons to keep counts for. */
+    public static final int MAX_SKELETONS = 1000;
+    /** Estimated size of a precomputed table with its indexes, as a multiple of its data. */
+    public static final int INDEX_OVERHEAD = 3;
+    private static final double DECAY = 0.5;
+    private static final double FORGET_COUNT = 0.1;
+
+    private final ObjectStoreInterMineImpl os;
+    private final int sampleInterval;
+    private long diskBudget;
+    private double minCount = 2.0;
+    private long minTime = 100;
+    private boolean autoApply = false;
+    private long queryCount = 0;
+    private final Map<String, Skeleton> skeletons = new HashMap<String, Skeleton>();
+    private Thread thread = null;
+
+    /**
+     * Constructor.
+     *
+     * @param os the ObjectStoreInterMineImpl to advise on
+     * @param sampleInterval the advisor looks at one in every sampleInterval executed queries
+     * @param diskBudget the number of bytes that the advisor's precomputed tables may take up
+     */
+    public PrecomputeAdvisor(ObjectStoreInterMineImpl os, int sampleInterval, long diskBudget) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sampleInterval must be at least 1");
+        }
+        this.os = os;
+        this.sampleInterval = sampleInterval;
+        this.diskBudget = diskBudget;
+    }
+
+    /**
+     * Sets the number of bytes that the advisor's precomputed tables may take up.
+     *
+     * @param diskBudget a number of bytes
+     */
+    public synchronized void setDiskBudget(long diskBudget) {
+        this.diskBudget = diskBudget;
+    }
+
+    /**
+     * Sets the number of sampled queries (decayed over time) a skeleton must have before it is
+     * considered for precomputing. The default is 2.
+     *
+     * @param minCount a count
+     */
+    public synchronized void setMinCount(double minCount) {
+        this.minCount = minCount;
+    }
+
+    /**
+     * Sets the minimum execution time of a query for it to be counted. Queries that are already
+     * fast enough are not worth precomputing. The default is 100 milliseconds.
+     *
+     * @param minTime a time in milliseconds
+     */
+    public synchronized void setMinTime(long minTime) {
+        this.minTime = minTime;
+    }
+
+    /**
+     * Sets whether advise() should create and drop tables itself, rather than just propose it.
+     *
+     * @param autoApply true to create and drop tables
+     */
+    public synchronized void setAutoApply(boolean autoApply) {
+        this.autoApply = autoApply;
+    }
+
+    /**
+     * Records that a query has been executed. This is cheap for queries that are not sampled.
+     *
+     * @param q the Query that was executed
+     * @param time the time taken to execute the query in milliseconds
+     */
+    public void record(Query q, long time) {
+        synchronized (this) {
+            queryCount++;
+            if ((queryCount % sampleInterval != 0) || (time < minTime)) {
+                return;
+            }
+        }
+        Query skeleton;
+        try {
+            skeleton = getSkeleton(q);
+        } catch (RuntimeException e) {
+            LOG.debug("Could not find join skeleton of query " + q, e);
+            return;
+        }
+        if (skeleton == null) {
+            return;
+        }
+        String key = skeleton.toString();
+        synchronized (this) {
+            Skeleton s = skeletons.get(key);
+            if (s == null) {
+                if (skeletons.size() >= MAX_SKELETONS) {
+                    forgetLeastUsed();
+                }
+                s = new Skeleton(key, skeleton);
+                skeletons.put(key, s);
+            }
+            s.count += 1.0;
+        }
+    }
+
+    private void forgetLeastUsed() {
+        Skeleton least = null;
+        for (Skeleton s : skeletons.values()) {
+            if ((least == null) || (s.count < least.count)) {
+                least = s;
+            }
+        }
+        skeletons.remove(least.key);
+    }
+
+    /**
+     * Returns the join skeleton of a query - a Query with the same FROM list that selects every
+     * class and keeps only the constraints that join classes together and are ANDed into the
+     * WHERE clause. Removing a constraint can only make a precomputed table bigger, so the
+     * QueryOptimiser can still fit the skeleton into the original query by adding the missing
+     * constraints on top.
+     *
+     * @param q a Query
+     * @return a new Query, or null if the query has no useful skeleton - if it has a GROUP BY,
+     * anything other than classes in the FROM list, or fewer than two joined classes
+     */
+    public static Query getSkeleton(Query q) {
+        if (!q.getGroupBy().isEmpty()) {
+            return null;
+        }
+        for (FromElement fe : q.getFrom()) {
+            if (!(fe instanceof QueryClass)) {
+                return null;
+            }
+        }
+        if (q.getFrom().size() < 2) {
+            return null;
+        }
+        Query clone = QueryCloner.cloneQuery(q);
+        Query skeleton = new Query();
+        // A DISTINCT precomputed table would only fit DISTINCT queries
+        skeleton.setDistinct(false);
+        for (FromElement fe : clone.getFrom()) {
+            String alias = clone.getAliases().get(fe);
+            skeleton.addFrom(fe, alias);
+            skeleton.addToSelect((QueryClass) fe, alias);
+        }
+        ConstraintSet joins = new ConstraintSet(ConstraintOp.AND);
+        addJoins(clone.getConstraint(), joins);
+        if (joins.getConstraints().isEmpty()) {
+            return null;
+        }
+        skeleton.setConstraint(joins);
+        return skeleton;
+    }
+
+    private static void addJoins(Constraint c, ConstraintSet joins) {
+        if (c instanceof ConstraintSet) {
+            if (ConstraintOp.AND.equals(c.getOp())) {
+                for (Constraint child : ((ConstraintSet) c).getConstraints()) {
+                    addJoins(child, joins);
+                }
+            }
+        } else if (c instanceof ContainsConstraint) {
+            if ((((ContainsConstraint) c).getQueryClass() != null)
+                    && ConstraintOp.CONTAINS.equals(c.getOp())) {
+                joins.addConstraint(c);
+            }
+        } else if (c instanceof ClassConstraint) {
+            if ((((ClassConstraint) c).getArg2QueryClass() != null)
+                    && ConstraintOp.EQUALS.equals(c.getOp())) {
+                joins.addConstraint(c);
+            }
+        } else if (c instanceof SimpleConstraint) {
+            SimpleConstraint sc = (SimpleConstraint) c;
+            if ((sc.getArg1() instanceof QueryField) && (sc.getArg2() instanceof QueryField)
+                    && ConstraintOp.EQUALS.equals(sc.getOp())) {
+                joins.addConstraint(c);
+            }
+        }
+    }
+
+    /**
+     * Estimates the benefit and size of precomputing every skeleton that has been seen often
+     * enough, chooses the ones to keep within the disk budget, and returns the changes needed to
+     * get there. If autoApply is set, the changes are also made.
+     *
+     * @return a List of Proposals, drops first
+     * @throws ObjectStoreException if something goes wrong
+     */
+    public List<Proposal> advise() throws ObjectStoreException {
+        List<Skeleton> seen = new ArrayList<Skeleton>();
+        boolean apply;
+        long budget;
+        double min;
+        synchronized (this) {
+            Iterator<Skeleton> iter = skeletons.values().iterator();
+            while (iter.hasNext()) {
+                Skeleton s = iter.next();
+                seen.add(new Skeleton(s));
+                s.count *= DECAY;
+                if (s.count < FORGET_COUNT) {
+                    iter.remove();
+                }
+            }
+            apply = autoApply;
+            budget = diskBudget;
+            min = minCount;
+        }
+        PrecomputedTableManager ptm;
+        Map<String, PrecomputedTable> existing = new HashMap<String, PrecomputedTable>();
+        // Skeletons with different aliases can have the same SQL, so candidates are merged by SQL
+        Map<String, Candidate> candidates = new LinkedHashMap<String, Candidate>();
+        Connection c = null;
+        try {
+            c = os.getConnection();
+            ptm = PrecomputedTableManager.getInstance(os.getDatabase());
+            Map<String, PrecomputedTable> category = ptm.lookupCategory(CATEGORY);
+            if (category != null) {
+                for (PrecomputedTable pt : category.values()) {
+                    existing.put(pt.getName(), pt);
+                }
+            }
+            Map<Object, String> empty = Collections.emptyMap();
+            for (Skeleton s : seen) {
+                String sql = SqlGenerator.generate(s.query, os.getSchema(), os.getDatabase(), null,
+                        SqlGenerator.QUERY_FOR_PRECOMP, empty);
+                PrecomputedTable pt = ptm.lookupSql(CATEGORY, sql);
+                // Skeletons that are already precomputed are kept while they are still used at
+                // all, so that tables are not dropped as soon as the count falls below minCount
+                if ((pt == null) && (s.count < min)) {
+                    continue;
+                }
+                Candidate candidate = candidates.get(sql);
+                if (candidate == null) {
+                    // EXPLAIN the skeleton itself, not the optimised query, to get the cost that
+                    // a precomputed table saves even when the table already exists
+                    ExplainResult explain = ExplainResult.getInstance(sql, c);
+                    long size;
+                    if (pt == null) {
+                        size = explain.getRows() * Math.max(explain.getWidth(), 1)
+                            * INDEX_OVERHEAD;
+                    } else {
+                        size = getTableSize(c, pt.getName());
+                    }
+                    candidate = new Candidate(s.key, s.query, pt == null ? null : pt.getName(),
+                            explain.getComplete(), 0.0, size);
+                }
+                candidates.put(sql, candidate.addCount(s.count));
+            }
+            Set<String> known = new HashSet<String>();
+            for (Candidate candidate : candidates.values()) {
+                known.add(candidate.getTableName());
+            }
+            for (String name : existing.keySet()) {
+                if (!known.contains(name)) {
+                    candidates.put(name, new Candidate(null, null, name, 0, 0.0,
+                                getTableSize(c, name)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Error estimating precomputed tables", e);
+        } finally {
+            os.releaseConnection(c);
+        }
+        List<Proposal> proposals = choose(new ArrayList<Candidate>(candidates.values()), budget);
+        for (Proposal proposal : proposals) {
+            LOG.info((apply ? "Applying" : "Proposing") + " precompute advice: " + proposal);
+        }
+        if (apply && (!proposals.isEmpty())) {
+            applyProposals(proposals, ptm, existing);
+        }
+        return proposals;
+    }
+
+    private static long getTableSize(Connection c, String name) throws SQLException {
+        Statement s = c.createStatement();
+        try {
+            ResultSet r = s.executeQuery("SELECT pg_total_relation_size('" + name + "')");
+            r.next();
+            return r.getLong(1);
+        } finally {
+            s.close();
+        }
+    }
+
+    private void applyProposals(List<Proposal> proposals, PrecomputedTableManager ptm,
+            Map<String, PrecomputedTable> existing) throws ObjectStoreException {
+        try {
+            for (Proposal proposal : proposals) {
+                if (proposal.isCreate()) {
+                    os.precompute(proposal.getQuery(), null, true, CATEGORY);
+                } else if (existing.containsKey(proposal.getTableName())) {
+                    try {
+                        ptm.delete(existing.get(proposal.getTableName()));
+                    } catch (IllegalArgumentException e) {
+                        // The table has gone stale or been dropped since the advice was made
+                        LOG.info("Not dropping precomputed table " + proposal.getTableName()
+                                + " as it is no longer valid");
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Error dropping precomputed table", e);
+        } finally {
+            // Cached optimised queries may refer to dropped tables, or miss new ones
+            OptimiserCache.getInstance(os.getDatabase()).flush();
+        }
+    }
+
+    /**
+     * Chooses the candidates to keep, in decreasing order of benefit per byte, until the budget
+     * is used up, and returns the changes needed to get from the current tables to the chosen
+     * ones.
+     *
+     * @param candidates a List of Candidates, including those already precomputed
+     * @param budget the number of bytes available
+     * @return a List of Proposals, drops first so that space is freed before it is used
+     */
+    public static List<Proposal> choose(List<Candidate> candidates, long budget) {
+        List<Candidate> sorted = new ArrayList<Candidate>(candidates);
+        Collections.sort(sorted, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                return Double.compare(b.getBenefitPerByte(), a.getBenefitPerByte());
+            }
+        });
+        Set<Candidate> keep = new HashSet<Candidate>();
+        long used = 0;
+        for (Candidate candidate : sorted) {
+            if ((candidate.getBenefit() > 0.0) && (used + candidate.getSize() <= budget)) {
+                keep.add(candidate);
+                used += candidate.getSize();
+            }
+        }
+        List<Proposal> drops = new ArrayList<Proposal>();
+        List<Proposal> creates = new ArrayList<Proposal>();
+        for (Candidate candidate : sorted) {
+            if (candidate.getTableName() != null) {
+                if (!keep.contains(candidate)) {
+                    drops.add(new Proposal(false, candidate));
+                }
+            } else if (keep.contains(candidate)) {
+                creates.add(new Proposal(true, candidate));
+            }
+        }
+        drops.addAll(creates);
+        return drops;
+    }
+
+    /**
+     * Starts a background thread that calls advise() at regular intervals.
+     *
+     * @param interval the time between calls in milliseconds
+     */
+    public synchronized void start(final long interval) {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(interval);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    try {
+                        advise();
+                    } catch (Exception e) {
+                        LOG.warn("Precompute advisor failed", e);
+                    }
+                }
+            }
+        });
+        thread.setName("PrecomputeAdvisor for " + os);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the background thread, if it is running.
+     */
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Returns the sampled counts of the skeletons seen so far, for monitoring.
+     *
+     * @return a Map from skeleton IQL to decayed count, most used first
+     */
+    public synchronized Map<String, Double> getCounts() {
+        List<Skeleton> sorted = new ArrayList<Skeleton>(skeletons.values());
+        Collections.sort(sorted, new Comparator<Skeleton>() {
+            @Override
+            public int compare(Skeleton a, Skeleton b) {
+                return Double.compare(b.count, a.count);
+            }
+        });
+        Map<String, Double> retval = new LinkedHashMap<String, Double>();
+        for (Skeleton s : sorted) {
+            retval.put(s.key, new Double(s.count));
+        }
+        return retval;
+    }
+
+    private static class Skeleton
+    {
+        private final String key;
+        private final Query query;
+        private double count = 0.0;
+
+        Skeleton(String key, Query query) {
+            this.key = key;
+            this.query = query;
+        }
+
+        Skeleton(Skeleton s) {
+            this(s.key, s.query);
+            count = s.count;
+        }
+    }
+
+    /**
+     * A join skeleton or existing advisor table, with its estimated benefit and size.
+     */
+    public static class Candidate
+    {
+        private final String key;
+        private final Query query;
+        private final String tableName;
+        private final long cost;
+        private final double count;
+        private final long size;
+
+        /**
+         * Constructor.
+         *
+         * @param key the IQL of the skeleton, or null for a table with no recent queries
+         * @param query the skeleton, or null for a table with no recent queries
+         * @param tableName the name of the precomputed table, or null if it doesn't exist yet
+         * @param cost the estimated cost of computing the skeleton, which a precomputed table
+         * saves for each query
+         * @param count the number of sampled queries that use the skeleton
+         * @param size the size of the precomputed table in bytes, estimated or measured
+         */
+        public Candidate(String key, Query query, String tableName, long cost, double count,
+                long size) {
+            this.key = key;
+            this.query = query;
+            this.tableName = tableName;
+            this.cost = cost;
+            this.count = count;
+            this.size = size;
+        }
+
+        private Candidate addCount(double extra) {
+            return new Candidate(key, query, tableName, cost, count + extra, size);
+        }
+
+        /**
+         * @return the IQL of the skeleton, or null
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the skeleton Query, or null
+         */
+        public Query getQuery() {
+            return query;
+        }
+
+        /**
+         * @return the name of the existing precomputed table, or null
+         */
+        public String getTableName() {
+            return tableName;
+        }
+
+        /**
+         * @return the estimated cost saved - the cost of the skeleton times the number of
+         * queries using it
+         */
+        public double getBenefit() {
+            return cost * count;
+        }
+
+        /**
+         * @return the size in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the benefit divided by the size
+         */
+        public double getBenefitPerByte() {
+            return getBenefit() / Math.max(size, 1L);
+        }
+    }
+
+    /**
+     * A proposal to create or drop a precomputed table.
+     */
+    public static class Proposal
+    {
+        private final boolean create;
+        private final Candidate candidate;
+
+        /**
+         * Constructor.
+         *
+         * @param create true to create a table, false to drop one
+         * @param candidate the Candidate concerned
+         */
+        public Proposal(boolean create, Candidate candidate) {
+            this.create = create;
+            this.candidate = candidate;
+        }
+
+        /**
+         * @return true if this is a proposal to create a table, false to drop one
+         */
+        public boolean isCreate() {
+            return create;
+        }
+
+        /**
+         * @return the skeleton Query to precompute, or null
+         */
+        public Query getQuery() {
+            return candidate.getQuery();
+        }
+
+        /**
+         * @return the name of the table to drop, or null
+         */
+        public String getTableName() {
+            return candidate.getTableName();
+        }
+
+        /**
+         * @return the Candidate concerned
+         */
+        public Candidate getCandidate() {
+            return candidate;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return (create ? "create " + candidate.getKey() : "drop " + candidate.getTableName())
+                + " (benefit " + candidate.getBenefit() + ", size " + candidate.getSize() + ")";
+        }
+    }
+}
@@ -135,8 +135,10 @@ public final class ResultsConverter
                                             obj = NotXmlParser.parse(objectField, os);
                                             //if (objectField.length() < ObjectStoreInterMineImpl
                                             //        .CACHE_LARGEST_OBJECT) {
+                                            // A String costs two bytes per character
                                             os.cacheObjectById(((InterMineObject) obj).getId(),
-                                                    (InterMineObject) obj);
+                                                    (InterMineObject) obj,
+                                                    2 * objectField.length());
                                             //} else {
                                             //    LOG.debug("Not cacheing large object "
                                             //            + obj.getId() + " on read" + " (size = "
@@ -18,6 +18,7 @@ import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.CLOBV
 import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.CLOB_TABLE_NAME;
 import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.INT_BAG_TABLE_NAME;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -308,25 +309,7 @@ public final class SqlGenerator
         if (newFirstOrderBy instanceof QueryClass) {
             newFirstOrderBy = new QueryField((QueryClass) newFirstOrderBy, "id");
         }
-        boolean hasNulls = true;
-        if ((newFirstOrderBy instanceof QueryField) && (!reverse)) {
-            FromElement qc = ((QueryField) newFirstOrderBy).getFromElement();
-            if (qc instanceof QueryClass) {
-                if ("id".equals(((QueryField) newFirstOrderBy).getFieldName())) {
-                    hasNulls = false;
-                } else if ("class".equals(((QueryField) newFirstOrderBy).getFieldName())) {
-                    hasNulls = false;
-                } else {
-                    AttributeDescriptor desc = (AttributeDescriptor) schema
-                        .getModel().getFieldDescriptorsForClass(((QueryClass) qc)
-                        .getType()).get(((QueryField) newFirstOrderBy)
-                                        .getFieldName());
-                    if (desc.isPrimitive()) {
-                        hasNulls = false;
-                    }
-                }
-            }
-        }
+        boolean hasNulls = reverse || canBeNull(newFirstOrderBy, schema);
         if (reverse) {
             return new SimpleConstraint((QueryEvaluable) newFirstOrderBy,
                     ConstraintOp.LESS_THAN, new QueryValue(value));
@@ -351,6 +334,191 @@ public final class SqlGenerator
         }
     }
 
+    /**
+     * Returns false if the given ORDER BY element is known never to be null - an id or class
+     * field, or a field of a primitive type.
+     *
+     * @param orderBy an element of an ORDER BY list, without any OrderDescending
+     * @param schema the DatabaseSchema in which to look up metadata
+     * @return a boolean
+     */
+    private static boolean canBeNull(QueryOrderable orderBy, DatabaseSchema schema) {
+        if (orderBy instanceof QueryField) {
+            FromElement qc = ((QueryField) orderBy).getFromElement();
+            if (qc instanceof QueryClass) {
+                String fieldName = ((QueryField) orderBy).getFieldName();
+                if ("id".equals(fieldName) || "class".equals(fieldName)) {
+                    return false;
+                }
+                AttributeDescriptor desc = (AttributeDescriptor) schema.getModel()
+                    .getFieldDescriptorsForClass(((QueryClass) qc).getType()).get(fieldName);
+                return !desc.isPrimitive();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers the position reached when paging forward through a query, as a keyset (seek)
+     * constraint on every column of the effective ORDER BY, so that the next page can be fetched
+     * with no OFFSET at all. This is only possible when the ORDER BY columns identify a row
+     * uniquely, and their values can be found in the row - otherwise this returns false, and
+     * registerOffset should be used instead, which only constrains the first ORDER BY column.
+     *
+     * @param q the Query
+     * @param start the offset of the row after lastRow
+     * @param schema the DatabaseSchema in which to look up metadata
+     * @param db the Database that the ObjectStore uses
+     * @param lastRow the last row of the results before the offset
+     * @param bagTableNames a Map from BagConstraints to table names, where the table contains the
+     *        contents of the bag that are relevant for the BagConstraint
+     * @return true if a keyset was registered
+     */
+    public static boolean registerKeyset(Query q, int start, DatabaseSchema schema, Database db,
+            List<?> lastRow, Map<Object, String> bagTableNames) {
+        try {
+            synchronized (q) {
+                Constraint keyset = getKeysetConstraint(q, lastRow, schema);
+                if (keyset == null) {
+                    return false;
+                }
+                String sql = generate(q, schema, db, keyset, QUERY_NORMAL, bagTableNames);
+                Map<Query, CacheEntry> schemaCache = getCacheForSchema(schema);
+                CacheEntry cacheEntry = schemaCache.get(q);
+                if (cacheEntry == null) {
+                    cacheEntry = new CacheEntry(start, sql);
+                    schemaCache.put(q, cacheEntry);
+                } else {
+                    cacheEntry.setLast(start, sql);
+                }
+                // Keep some positions along the way, for paging back
+                SortedMap<Integer, String> headMap = cacheEntry.getCached()
+                    .headMap(new Integer(start + 1));
+                if (headMap.isEmpty() || (start - headMap.lastKey().intValue() >= 100000)) {
+                    cacheEntry.getCached().put(new Integer(start), sql);
+                }
+                return true;
+            }
+        } catch (ObjectStoreException e) {
+            LOG.warn("Error while registering keyset for query " + q + ": " + e);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Error while registering keyset for query " + q + ": " + e);
+        }
+        return false;
+    }
+
+    /**
+     * Create a constraint that selects the rows of a query that come after the given row in the
+     * order of the effective ORDER BY, following Postgres in putting nulls last in ascending
+     * order and first in descending order. For ORDER BY c1, c2 this is
+     * '(c1 &gt; v1 OR (c1 = v1 AND c2 &gt; v2))', with 'c IS NULL' alternatives for nullable
+     * columns.
+     *
+     * @param q the Query
+     * @param lastRow a row of the results of the query
+     * @param schema the DatabaseSchema in which to look up metadata
+     * @return a constraint, or null if the ORDER BY does not identify rows uniquely, or its values
+     *         are not all in the row
+     */
+    protected static Constraint getKeysetConstraint(Query q, List<?> lastRow,
+            DatabaseSchema schema) {
+        if (!q.getGroupBy().isEmpty()) {
+            return null;
+        }
+        List<QuerySelectable> select = q.getSelect();
+        Set<FromElement> identified = new HashSet<FromElement>();
+        Set<QueryField> seen = new HashSet<QueryField>();
+        ConstraintSet keyset = new ConstraintSet(ConstraintOp.OR);
+        List<Constraint> equal = new ArrayList<Constraint>();
+        for (Object orderBy : q.getEffectiveOrderBy()) {
+            boolean reverse = false;
+            if (orderBy instanceof OrderDescending) {
+                orderBy = ((OrderDescending) orderBy).getQueryOrderable();
+                reverse = true;
+            }
+            QueryField column;
+            Object value;
+            if (orderBy instanceof QueryClass) {
+                QueryClass qc = (QueryClass) orderBy;
+                int index = select.indexOf(qc);
+                if ((index == -1) || (!InterMineObject.class.isAssignableFrom(qc.getType()))) {
+                    return null;
+                }
+                column = new QueryField(qc, "id");
+                value = ((InterMineObject) lastRow.get(index)).getId();
+            } else if (orderBy instanceof QueryField) {
+                column = (QueryField) orderBy;
+                FromElement from = column.getFromElement();
+                int index = select.indexOf(column);
+                if (index != -1) {
+                    value = lastRow.get(index);
+                } else if ((from instanceof QueryClass) && select.contains(from)) {
+                    Object o = lastRow.get(select.indexOf(from));
+                    try {
+                        value = TypeUtil.getFieldValue(o, column.getFieldName());
+                    } catch (IllegalAccessException e) {
+                        return null;
+                    }
+                } else {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+            if (!seen.add(column)) {
+                // Already ordered by, in the ORDER BY as well as the SELECT list
+                continue;
+            }
+            if ("id".equals(column.getFieldName())) {
+                identified.add(column.getFromElement());
+            }
+            // Floats don't survive being written out as SQL, and booleans can't be compared
+            if ((value != null) && (!(value instanceof String)) && (!(value instanceof Date))
+                    && (!(value instanceof Integer)) && (!(value instanceof Long))
+                    && (!(value instanceof Short)) && (!(value instanceof BigDecimal))) {
+                return null;
+            }
+            if (value == null) {
+                if (reverse) {
+                    keyset.addConstraint(and(equal, new SimpleConstraint(column,
+                                    ConstraintOp.IS_NOT_NULL)));
+                }
+                equal.add(new SimpleConstraint(column, ConstraintOp.IS_NULL));
+            } else {
+                keyset.addConstraint(and(equal, new SimpleConstraint(column,
+                                reverse ? ConstraintOp.LESS_THAN : ConstraintOp.GREATER_THAN,
+                                new QueryValue(value))));
+                if ((!reverse) && canBeNull(column, schema)) {
+                    keyset.addConstraint(and(equal, new SimpleConstraint(column,
+                                    ConstraintOp.IS_NULL)));
+                }
+                equal.add(new SimpleConstraint(column, ConstraintOp.EQUALS,
+                            new QueryValue(value)));
+            }
+        }
+        if (!q.isDistinct()) {
+            // Rows can only be told apart by the ids of everything in the FROM list
+            for (FromElement from : q.getFrom()) {
+                if (!identified.contains(from)) {
+                    return null;
+                }
+            }
+        }
+        return keyset;
+    }
+
+    private static Constraint and(List<Constraint> equal, Constraint last) {
+        if (equal.isEmpty()) {
+            return last;
+        }
+        ConstraintSet retval = new ConstraintSet(ConstraintOp.AND);
+        for (Constraint c : equal) {
+            retval.addConstraint(c);
+        }
+        retval.addConstraint(last);
+        return retval;
+    }
+
     /**
      * Converts a Query object into an SQL String. To produce an SQL query that does not have
      * OFFSET and LIMIT clauses, set start to 0, and limit to Integer.MAX_VALUE.
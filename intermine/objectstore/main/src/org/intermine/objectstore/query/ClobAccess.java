@@ -72,6 +72,24 @@ public class ClobAccess implements CharSequence, Lazy
         subSequence = true;
     }
 
+    /**
+     * Construct a ClobAccess object representing a subsequence of a Clob whose offset and length
+     * are already known, for example from the database. The Clob is not read until the
+     * characters are needed, and its length is never looked up.
+     *
+     * @param os the ObjectStore that the Clob is stored in
+     * @param clob the Clob to access
+     * @param offset the offset
+     * @param length the length
+     */
+    private ClobAccess(ObjectStore os, Clob clob, int offset, int length) {
+        this.os = os;
+        this.clob = clob;
+        this.offset = offset;
+        this.length = length;
+        subSequence = true;
+    }
+
     /**
      * Initialises the state of this object. This is done lazily, because it requires the use of a
      * database connection to discover the length of the clob, and that cannot be done while inside
@@ -82,6 +100,10 @@ public class ClobAccess implements CharSequence, Lazy
             Query q = new Query();
             q.addToSelect(clob);
             results = os.executeSingleton(q, 20, false, false, true);
+            if (subSequence) {
+                // the length of a subsequence is already known
+                return;
+            }
             int pageCount = results.size();
             if (pageCount == 0) {
                 length = 0;
@@ -298,11 +320,15 @@ public class ClobAccess implements CharSequence, Lazy
      */
     public static ClobAccess decodeDbDescription(ObjectStore os, String description) {
         String[] parts = description.split(",");
-        ClobAccess clob = new ClobAccess(os, new Clob(Integer.parseInt(parts[0])));
+        ClobAccess clob;
         if (parts.length >= 3) {
+            // Don't use subSequence() here, as that would look up the length of the whole Clob
+            // for every object read from the database
             int offset = Integer.parseInt(parts[1]);
             int length = Integer.parseInt(parts[2]);
-            clob = clob.subSequence(offset, offset + length);
+            clob = new ClobAccess(os, new Clob(Integer.parseInt(parts[0])), offset, length);
+        } else {
+            clob = new ClobAccess(os, new Clob(Integer.parseInt(parts[0])));
         }
         String className = null;
         if (parts.length == 2) {
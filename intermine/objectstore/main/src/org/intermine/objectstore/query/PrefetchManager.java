@@ -35,9 +35,15 @@ public final class PrefetchManager
      * synchronised on any global object, so it must be able to handle concurrent access. */
     protected static Set<Request> serviced = Collections.synchronizedSet(new HashSet<Request>());
     protected static int serviceThreads = 0;
+    /** Number of service threads waiting for a request - always accessed inside a synchronise on
+     * sync. */
+    protected static int waitingThreads = 0;
     private static Object sync = new Object();
 
     protected static final int LOADING = 3;
+    /** While there are fewer service threads than this, a request that no waiting thread can take
+     * gets a new thread, so several batches can be fetched in parallel. */
+    protected static final int MIN_PARALLEL_THREADS = 8;
 
     /*
      * This class provides methods for cancelling requests, so here is an explanation of how this
@@ -104,7 +110,9 @@ public final class PrefetchManager
                         //            + request);
                         //}
                         pending.add(request);
-                        if ((pending.size() + serviced.size()) > (serviceThreads * LOADING)) {
+                        if (((pending.size() + serviced.size()) > (serviceThreads * LOADING))
+                                || ((pending.size() > waitingThreads)
+                                    && (serviceThreads < MIN_PARALLEL_THREADS))) {
                             // There are too many requests for the servicing threads.
                             Thread newThread = new ServiceThread();
                             newThread.setDaemon(true);
@@ -274,10 +282,13 @@ public final class PrefetchManager
             while (pending.isEmpty()) {
                 // There are no requests to get - wait for a notify.
                 //LOG.debug("getRequest - waiting for a request");
+                waitingThreads++;
                 try {
                     sync.wait();
                 } catch (InterruptedException e) {
                     // Ignore interruption.
+                } finally {
+                    waitingThreads--;
                 }
             }
             // Get a request from the pending set. We know there is something in there, because we
@@ -22,6 +22,7 @@ import java.util.Random;
 import org.apache.log4j.Logger;
 import org.intermine.objectstore.DataChangedException;
 import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreAbstractImpl;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.proxy.LazyCollection;
 
@@ -44,6 +45,7 @@ public class Results extends AbstractList<Object> implements LazyCollection<Obje
     protected boolean optimise = true;
     protected boolean explain = true;
     protected boolean prefetch = true;
+    protected int prefetchDepth = 1;
 
     protected boolean immutable = false;
 
@@ -52,8 +54,8 @@ public class Results extends AbstractList<Object> implements LazyCollection<Obje
     protected int sequential = 0;
     private static final int PREFETCH_SEQUENTIAL_THRESHOLD = 6;
     // Basically, this keeps a tally of how many times in a row accesses have been sequential.
-    // If sequential gets above a PREFETCH_SEQUENTIAL_THRESHOLD, then we prefetch the batch after
-    // the one we are currently using.
+    // If sequential gets above a PREFETCH_SEQUENTIAL_THRESHOLD, then we prefetch the
+    // prefetchDepth batches after the one we are currently using.
 
     /**
      * No argument constructor for testing purposes
@@ -80,6 +82,7 @@ public class Results extends AbstractList<Object> implements LazyCollection<Obje
         }
 
         resultsBatches = new ResultsBatches(query, os, sequence);
+        initPrefetchDepth();
     }
 
     /**
@@ -95,6 +98,14 @@ public class Results extends AbstractList<Object> implements LazyCollection<Obje
         this.optimise = optimise;
         this.explain = explain;
         this.prefetch = prefetch;
+        initPrefetchDepth();
+    }
+
+    private void initPrefetchDepth() {
+        if (resultsBatches.getObjectStore() instanceof ObjectStoreAbstractImpl) {
+            prefetchDepth = ((ObjectStoreAbstractImpl) resultsBatches.getObjectStore())
+                .getPrefetchDepth();
+        }
     }
 
     /**
@@ -117,6 +128,23 @@ public class Results extends AbstractList<Object> implements LazyCollection<Obje
         explain = false;
     }
 
+    /**
+     * Sets the number of batches ahead to prefetch when this Results object is read
+     * sequentially. Each batch is fetched by a separate thread, with its own connection.
+     *
+     * @param prefetchDepth a number of batches
+     */
+    public synchronized void setPrefetchDepth(int prefetchDepth) {
+        if (immutable) {
+            throw new IllegalArgumentException("Cannot change settings of Results object in cache");
+        }
+        if (prefetchDepth < 1) {
+            throw new IllegalArgumentException("Prefetch depth must be at least one - tried to set"
+                    + " to " + prefetchDepth);
+        }
+        this.prefetchDepth = prefetchDepth;
+    }
+
     /**
      * Tells this Results object to never do any background prefetching.
      * This means that Query cancellation via the ObjectStoreInterMineImpl.cancelRequest()
@@ -205,9 +233,11 @@ public class Results extends AbstractList<Object> implements LazyCollection<Obje
         if ((resultsBatches.getObjectStore() != null)
                 && prefetch
                 && resultsBatches.getObjectStore().isMultiConnection()
-                && (sequential > PREFETCH_SEQUENTIAL_THRESHOLD)
-                && (getBatchNoForRow(resultsBatches.getMaxSize()) > endBatch)) {
-            resultsBatches.prefetch(endBatch + 1, optimise, explain);
+                && (sequential > PREFETCH_SEQUENTIAL_THRESHOLD)) {
+            int lastBatch = getBatchNoForRow(resultsBatches.getMaxSize());
+            for (int i = endBatch + 1; (i <= endBatch + prefetchDepth) && (i <= lastBatch); i++) {
+                resultsBatches.prefetch(i, optimise, explain);
+            }
         }
         lastGet = end;
 
@@ -16,9 +16,12 @@ import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
 
+import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.DataChangedException;
 import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreAbstractImpl;
 import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.cache.InterMineObjectWeigher;
 import org.intermine.util.CacheMap;
 
 /**
@@ -31,6 +34,16 @@ public class ResultsBatches
 {
     /** This is the default batch size for Results objects */
     public static final int DEFAULT_BATCH_SIZE = 1000;
+    /** With adaptive fetching, the number of batches per query is adjusted towards this time */
+    public static final long TARGET_FETCH_TIME = 1000;
+    /** With adaptive fetching, queries are kept below this estimated size of results */
+    public static final long MAX_FETCH_BYTES = 32L * 1024L * 1024L;
+    /** With adaptive fetching, the largest number of batches fetched in one query */
+    public static final int MAX_FETCH_BATCHES = 64;
+    private static final int ROW_WIDTH_SAMPLE = 16;
+    private static final int FIELD_WIDTH = 16;
+    private static final int STRING_WIDTH = 40;
+    private static final InterMineObjectWeigher WEIGHER = new InterMineObjectWeigher();
 
     protected Query query;
     protected ObjectStore os;
@@ -41,6 +54,10 @@ public class ResultsBatches
     protected int maxSize = Integer.MAX_VALUE;
     protected int batchSize = DEFAULT_BATCH_SIZE;
     protected boolean initialised = false;
+    protected boolean adaptiveFetch = false;
+    // The number of batches to fetch in one query, and the estimated size of a row in bytes
+    protected int fetchBatches = 1;
+    protected long rowWidth = 0;
 
     protected ResultsInfo info;
 
@@ -59,6 +76,9 @@ public class ResultsBatches
         this.query = query;
         this.os = os;
         this.sequence = sequence;
+        if (os instanceof ObjectStoreAbstractImpl) {
+            adaptiveFetch = ((ObjectStoreAbstractImpl) os).isAdaptiveFetch();
+        }
     }
 
     /**
@@ -167,7 +187,8 @@ public class ResultsBatches
     }
 
     /**
-     * Gets a batch from the ObjectStore.
+     * Gets a batch from the ObjectStore. With adaptive fetching, this may fetch the following
+     * batches in the same query, and put them in the batch cache too.
      *
      * @param batchNo the batch number to get (zero-indexed)
      * @param optimise true if queries should be optimised
@@ -178,7 +199,8 @@ public class ResultsBatches
     protected List<Object> fetchBatchFromObjectStore(int batchNo, boolean optimise, boolean explain)
         throws ObjectStoreException {
         int start = batchNo * batchSize;
-        int limit = batchSize;
+        int batchCount = getFetchBatchCount(batchNo);
+        int limit = batchSize * batchCount;
         //int end = start + batchSize - 1;
         initialised = true;
         // We now have 3 possibilities:
@@ -189,13 +211,15 @@ public class ResultsBatches
 
         List<Object> rows = null;
         try {
+            long startTime = System.currentTimeMillis();
             @SuppressWarnings("unchecked") List<Object> tmpRows =
                 (List) os.execute(query, start, limit, optimise, explain, sequence);
             rows = tmpRows;
+            long time = System.currentTimeMillis() - startTime;
 
             synchronized (this) {
                 // Now deal with a partial batch, so we can update the maximum size
-                if (rows.size() != batchSize) {
+                if (rows.size() != limit) {
                     int size = start + rows.size();
                     maxSize = (maxSize > size ? size : maxSize);
                 }
@@ -205,8 +229,23 @@ public class ResultsBatches
                     minSize = (minSize > size ? minSize : size);
                 }
 
-                Integer key = new Integer(batchNo);
-                batches.put(key, rows);
+                if (batchCount == 1) {
+                    Integer key = new Integer(batchNo);
+                    batches.put(key, rows);
+                } else {
+                    List<Object> allRows = rows;
+                    for (int i = batchCount - 1; i >= 0; i--) {
+                        int from = i * batchSize;
+                        if ((i == 0) || (from < allRows.size())) {
+                            rows = new ArrayList<Object>(allRows.subList(from,
+                                        Math.min(allRows.size(), from + batchSize)));
+                            batches.put(new Integer(batchNo + i), rows);
+                        }
+                    }
+                }
+                if (adaptiveFetch) {
+                    adaptFetchBatches(rows, batchCount, time);
+                }
             }
         } catch (IndexOutOfBoundsException e) {
             synchronized (this) {
@@ -220,6 +259,74 @@ public class ResultsBatches
         return rows;
     }
 
+    /**
+     * Returns the number of batches to fetch in one query, starting with the given batch. This
+     * stops short of batches that are already cached, or known to be past the end of the results.
+     *
+     * @param batchNo the first batch to fetch
+     * @return a number of batches
+     */
+    protected synchronized int getFetchBatchCount(int batchNo) {
+        int count = Math.min(fetchBatches, Math.max(1, os.getMaxLimit() / batchSize));
+        for (int i = 1; i < count; i++) {
+            if ((batchNo + i) * batchSize >= maxSize
+                    || batches.containsKey(new Integer(batchNo + i))) {
+                return i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adjusts the number of batches fetched in one query after a fetch, so that fetches take
+     * about TARGET_FETCH_TIME, up to a total of MAX_FETCH_BYTES of estimated row data.
+     *
+     * @param firstBatch the first batch that was fetched
+     * @param batchCount the number of batches that were asked for
+     * @param time the time taken by the fetch, in milliseconds
+     */
+    private void adaptFetchBatches(List<Object> firstBatch, int batchCount, long time) {
+        int sampled = 0;
+        long sampleWidth = 0;
+        for (int i = 0; (i < firstBatch.size()) && (sampled < ROW_WIDTH_SAMPLE);
+                i += Math.max(1, firstBatch.size() / ROW_WIDTH_SAMPLE)) {
+            sampleWidth += estimateWidth(firstBatch.get(i));
+            sampled++;
+        }
+        if (sampled > 0) {
+            long width = sampleWidth / sampled;
+            rowWidth = (rowWidth == 0 ? width : (rowWidth + width) / 2);
+        }
+        if (batchCount != fetchBatches || maxSize < Integer.MAX_VALUE) {
+            // Cut short by the cache or the end of the results, so the time isn't comparable
+            return;
+        }
+        if (time < TARGET_FETCH_TIME / 2) {
+            fetchBatches *= 2;
+        } else if (time > TARGET_FETCH_TIME * 2) {
+            fetchBatches = Math.max(1, fetchBatches / 2);
+        }
+        long maxByWidth = MAX_FETCH_BYTES / Math.max(1L, rowWidth * batchSize);
+        int maxByLimit = Math.max(1, os.getMaxLimit() / batchSize);
+        fetchBatches = (int) Math.max(1L, Math.min(Math.min(fetchBatches, MAX_FETCH_BATCHES),
+                    Math.min(maxByWidth, maxByLimit)));
+    }
+
+    private static long estimateWidth(Object value) {
+        if (value instanceof List<?>) {
+            long width = FIELD_WIDTH;
+            for (Object o : (List<?>) value) {
+                width += estimateWidth(o);
+            }
+            return width;
+        } else if (value instanceof InterMineObject) {
+            return WEIGHER.weigh(null, (InterMineObject) value);
+        } else if (value instanceof String) {
+            return STRING_WIDTH + 2L * ((String) value).length();
+        }
+        return FIELD_WIDTH;
+    }
+
     /**
      * Gets the number of results rows in this Results object.
      *
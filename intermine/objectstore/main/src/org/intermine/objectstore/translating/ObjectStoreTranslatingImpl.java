@@ -131,10 +131,14 @@ public class ObjectStoreTranslatingImpl extends ObjectStoreAbstractImpl
 
     /**
      * {@inheritDoc}
+     *
+     * This method is synchronized, as the Translator is not thread-safe, and objects from this
+     * ObjectStore may be used by several threads at once, each following proxies back to it.
      */
     @Override
-    public List<ResultsRow<Object>> execute(Query q, int start, int limit, boolean optimise,
-            boolean explain, Map<Object, Integer> sequence) throws ObjectStoreException {
+    public synchronized List<ResultsRow<Object>> execute(Query q, int start, int limit,
+            boolean optimise, boolean explain, Map<Object, Integer> sequence)
+        throws ObjectStoreException {
         //if (start == 0) {
         //    LOG.error("Fetching batch 0 for query " + q.toString());
         //}
@@ -251,15 +255,13 @@ public class ObjectStoreTranslatingImpl extends ObjectStoreAbstractImpl
         //e.printStackTrace(pw);
         //pw.flush();
         //LOG.error(sw.toString());
-        synchronized (cache) {
-            Exception e = new Exception();
-            e.fillInStackTrace();
-            LOG.warn("Probable inefficiency: internalGetObjectById called "
-                    + (retval == null ? "" : "to fetch a " + Util.getFriendlyName(retval
-                            .getClass())) + " with id " + id + ", clazz " + clazz.toString()
-                    + ", cache size = " + cache.size() + " - maybe you should use"
-                    + " ObjectStoreFastCollectionsForTranslatorImpl", e);
-        }
+        Exception e = new Exception();
+        e.fillInStackTrace();
+        LOG.warn("Probable inefficiency: internalGetObjectById called "
+                + (retval == null ? "" : "to fetch a " + Util.getFriendlyName(retval
+                        .getClass())) + " with id " + id + ", clazz " + clazz.toString()
+                + ", cache size = " + cache.size() + " - maybe you should use"
+                + " ObjectStoreFastCollectionsForTranslatorImpl", e);
         internalGetObjectByIdCount++;
         if (internalGetObjectByIdCount % 1000 == 0) {
             LOG.info("internalGetObjectById run " + internalGetObjectByIdCount + " times");
@@ -23,6 +23,9 @@ import org.intermine.sql.query.Query;
  */
 public abstract class BestQuery
 {
+    private long optimiseTime = -1;
+    private String cacheStatus = null;
+
     /**
      * Allows a Query to be added to this tracker.
      *
@@ -56,4 +59,42 @@ public abstract class BestQuery
      * @throws SQLException if error occurs in the underlying database
      */
     public abstract String getBestQueryString() throws SQLException;
+
+    /**
+     * Returns the time that the QueryOptimiser took to produce this object, including any time
+     * spent parsing the query and asking the database for query plans.
+     *
+     * @return a time in milliseconds, or -1 if not set
+     */
+    public long getOptimiseTime() {
+        return optimiseTime;
+    }
+
+    /**
+     * Sets the time that the QueryOptimiser took to produce this object.
+     *
+     * @param optimiseTime a time in milliseconds
+     */
+    public void setOptimiseTime(long optimiseTime) {
+        this.optimiseTime = optimiseTime;
+    }
+
+    /**
+     * Returns how the QueryOptimiser's cache was used to produce this object - one of "hit",
+     * "normalised hit", "miss", or "unparsable".
+     *
+     * @return a String, or null if not set
+     */
+    public String getCacheStatus() {
+        return cacheStatus;
+    }
+
+    /**
+     * Sets how the QueryOptimiser's cache was used to produce this object.
+     *
+     * @param cacheStatus a String
+     */
+    public void setCacheStatus(String cacheStatus) {
+        this.cacheStatus = cacheStatus;
+    }
 }
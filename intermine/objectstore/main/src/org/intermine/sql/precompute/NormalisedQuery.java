@@ -0,0 +1,183 @@
+package org.intermine.sql.precompute;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A class for use with the OptimiserCache, which splits a SQL string into its shape (the SQL with
+ * the constant values taken out) and the list of constant values, so that queries that differ
+ * only in their constants can be recognised as the same query.
+ */
+public final class NormalisedQuery
+{
+    /** The character that marks the position of a constant in a shape. */
+    public static final char PLACEHOLDER = '\u0000';
+
+    private final String shape;
+    private final List<String> constants;
+
+    private NormalisedQuery(String shape, List<String> constants) {
+        this.shape = shape;
+        this.constants = constants;
+    }
+
+    /**
+     * Splits a SQL string into its shape and constants. String constants are single-quoted, with
+     * quotes escaped by doubling them, and numeric constants are numbers that are not part of an
+     * identifier. Double-quoted identifiers are left alone.
+     *
+     * @param sql a SQL string
+     * @return a NormalisedQuery, or null if the string contains something that can't be safely
+     * separated, such as a placeholder character or a string with a prefix like E'...'
+     */
+    public static NormalisedQuery normalise(String sql) {
+        if (sql.indexOf(PLACEHOLDER) != -1) {
+            return null;
+        }
+        StringBuilder shape = new StringBuilder();
+        List<String> constants = new ArrayList<String>();
+        int length = sql.length();
+        int pos = 0;
+        while (pos < length) {
+            char c = sql.charAt(pos);
+            char previous = (pos == 0 ? ' ' : sql.charAt(pos - 1));
+            if (c == '\'') {
+                if (isIdentifierChar(previous)) {
+                    return null;
+                }
+                int end = pos + 1;
+                while (true) {
+                    if (end >= length) {
+                        return null;
+                    }
+                    if (sql.charAt(end) == '\'') {
+                        if ((end + 1 < length) && (sql.charAt(end + 1) == '\'')) {
+                            end += 2;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        end++;
+                    }
+                }
+                constants.add(sql.substring(pos, end + 1));
+                shape.append(PLACEHOLDER);
+                pos = end + 1;
+            } else if (c == '"') {
+                int end = sql.indexOf('"', pos + 1);
+                if (end == -1) {
+                    return null;
+                }
+                shape.append(sql, pos, end + 1);
+                pos = end + 1;
+            } else if (isDigit(c) && (!isIdentifierChar(previous)) && (previous != '.')) {
+                int end = pos;
+                while ((end < length) && isDigit(sql.charAt(end))) {
+                    end++;
+                }
+                if ((end < length) && (sql.charAt(end) == '.')) {
+                    end++;
+                    while ((end < length) && isDigit(sql.charAt(end))) {
+                        end++;
+                    }
+                }
+                if ((end < length) && ((sql.charAt(end) == 'E') || (sql.charAt(end) == 'e'))) {
+                    int exponent = end + 1;
+                    if ((exponent < length) && ((sql.charAt(exponent) == '+')
+                                || (sql.charAt(exponent) == '-'))) {
+                        exponent++;
+                    }
+                    if ((exponent < length) && isDigit(sql.charAt(exponent))) {
+                        end = exponent;
+                        while ((end < length) && isDigit(sql.charAt(end))) {
+                            end++;
+                        }
+                    }
+                }
+                if ((end < length) && isIdentifierChar(sql.charAt(end))) {
+                    // Something like 1abc - leave it to the database to make sense of it
+                    return null;
+                }
+                constants.add(sql.substring(pos, end));
+                shape.append(PLACEHOLDER);
+                pos = end;
+            } else {
+                shape.append(c);
+                pos++;
+            }
+        }
+        return new NormalisedQuery(shape.toString(), Collections.unmodifiableList(constants));
+    }
+
+    private static boolean isDigit(char c) {
+        return (c >= '0') && (c <= '9');
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || (c == '_') || (c == '$');
+    }
+
+    /**
+     * Returns the shape of the query - the SQL with every constant replaced by PLACEHOLDER.
+     *
+     * @return a String
+     */
+    public String getShape() {
+        return shape;
+    }
+
+    /**
+     * Returns the constants of the query, in the order they appear.
+     *
+     * @return an unmodifiable List of SQL constants, including the quotes of string constants
+     */
+    public List<String> getConstants() {
+        return constants;
+    }
+
+    /**
+     * Returns true if no constant value appears more than once in the query, so that constants
+     * can be told apart by their values.
+     *
+     * @return a boolean
+     */
+    public boolean hasDistinctConstants() {
+        return constants.size() == new HashSet<String>(constants).size();
+    }
+
+    /**
+     * Puts constants into a shape, as produced by getShape.
+     *
+     * @param shape a query shape
+     * @param values the constants to put into the shape, in order
+     * @return a SQL string, or null if the number of constants does not match the shape
+     */
+    public static String reconstruct(String shape, List<String> values) {
+        StringBuilder retval = new StringBuilder();
+        int valueNo = 0;
+        for (int i = 0; i < shape.length(); i++) {
+            char c = shape.charAt(i);
+            if (c == PLACEHOLDER) {
+                if (valueNo >= values.size()) {
+                    return null;
+                }
+                retval.append(values.get(valueNo++));
+            } else {
+                retval.append(c);
+            }
+        }
+        return (valueNo == values.size() ? retval.toString() : null);
+    }
+}
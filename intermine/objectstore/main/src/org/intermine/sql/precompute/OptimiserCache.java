@@ -54,11 +54,19 @@ public class OptimiserCache
      */
     protected Map<String, Set<OptimiserCacheLine>> cacheLines;
 
+    /**
+     * A Map that holds a mapping from the shape of an unoptimised query string (with LIMIT and
+     * OFFSET stripped off, and constants taken out) to a Set of OptimiserCacheLine objects holding
+     * the shape of the optimised query.
+     */
+    protected Map<String, Set<OptimiserCacheLine>> normalisedCacheLines;
+
     /**
      * Constructor for this object.
      */
     public OptimiserCache() {
         cacheLines = new CacheMap<String, Set<OptimiserCacheLine>>();
+        normalisedCacheLines = new CacheMap<String, Set<OptimiserCacheLine>>();
     }
 
     /**
@@ -66,6 +74,7 @@ public class OptimiserCache
      */
     public synchronized void flush() {
         cacheLines.clear();
+        normalisedCacheLines.clear();
     }
 
     /**
@@ -93,6 +102,45 @@ public class OptimiserCache
         lines.add(line);
     }
 
+    /**
+     * Adds a new cache line that can be used for any query that differs from the original only in
+     * its constant values. The line is only added if the optimised query contains the same
+     * constants as the original in the same order, and no constant appears twice, so that the
+     * constants of a later query can be put into the optimised query by position. The caller must
+     * make sure that the choice of precomputed tables in the optimised query does not depend on
+     * the constants, that is that none of the precomputed tables used have constants of their own.
+     *
+     * @param original the original SQL string (stripped of LIMIT and OFFSET)
+     * @param optimised the optimised SQL string (stripped of LIMIT and OFFSET)
+     * @param limit the limit that was used during the optimisation
+     * @return true if the line was added
+     */
+    public synchronized boolean addNormalisedCacheLine(String original, String optimised,
+            int limit) {
+        if (original.toUpperCase().startsWith("EXPLAIN ")) {
+            original = original.substring(8);
+        }
+        if (optimised.toUpperCase().startsWith("EXPLAIN ")) {
+            optimised = optimised.substring(8);
+        }
+        NormalisedQuery normalOriginal = NormalisedQuery.normalise(original);
+        NormalisedQuery normalOptimised = NormalisedQuery.normalise(optimised);
+        if ((normalOriginal == null) || (normalOptimised == null)
+                || normalOriginal.getConstants().isEmpty()
+                || (!normalOriginal.hasDistinctConstants())
+                || (!normalOriginal.getConstants().equals(normalOptimised.getConstants()))) {
+            return false;
+        }
+        Set<OptimiserCacheLine> lines = normalisedCacheLines.get(normalOriginal.getShape());
+        if (lines == null) {
+            lines = new HashSet<OptimiserCacheLine>();
+            normalisedCacheLines.put(normalOriginal.getShape(), lines);
+        }
+        lines.add(new OptimiserCacheLine(normalOptimised.getShape(), limit,
+                    normalOriginal.getShape()));
+        return true;
+    }
+
     /**
      * Attempts to find a match in the cache for an original query.
      *
@@ -108,7 +156,46 @@ public class OptimiserCache
             original = original.substring(8);
             originalWasExplain = true;
         }
-        Set<OptimiserCacheLine> lines = cacheLines.get(original);
+        OptimiserCacheLine bestLine = findBestLine(cacheLines.get(original), limit);
+        if (bestLine == null) {
+            return null;
+        }
+        //LOG.debug("Cache hit");
+        return (originalWasExplain ? "EXPLAIN " : "") + bestLine.getOptimised();
+    }
+
+    /**
+     * Attempts to find a match in the cache for a query that differs from an earlier query only
+     * in its constant values, as added by addNormalisedCacheLine.
+     *
+     * @param original the original SQL string (minus LIMIT and OFFSET)
+     * @param limit the limit required
+     * @return a possible optimised SQL string (minus LIMIT and OFFSET)
+     */
+    public synchronized String lookupNormalised(String original, int limit) {
+        boolean originalWasExplain = false;
+        if (original.toUpperCase().startsWith("EXPLAIN ")) {
+            original = original.substring(8);
+            originalWasExplain = true;
+        }
+        NormalisedQuery normalOriginal = NormalisedQuery.normalise(original);
+        if (normalOriginal == null) {
+            return null;
+        }
+        OptimiserCacheLine bestLine = findBestLine(normalisedCacheLines.get(normalOriginal
+                    .getShape()), limit);
+        if (bestLine == null) {
+            return null;
+        }
+        String optimised = NormalisedQuery.reconstruct(bestLine.getOptimised(),
+                normalOriginal.getConstants());
+        if (optimised == null) {
+            return null;
+        }
+        return (originalWasExplain ? "EXPLAIN " : "") + optimised;
+    }
+
+    private static OptimiserCacheLine findBestLine(Set<OptimiserCacheLine> lines, int limit) {
         if (lines == null) {
             // Couldn't find anything.
             //LOG.debug("Complete cache miss");
@@ -127,7 +214,6 @@ public class OptimiserCache
             //LOG.debug("Cache didn't have anything near enough");
             return null;
         }
-        //LOG.debug("Cache hit");
-        return (originalWasExplain ? "EXPLAIN " : "") + bestLine.getOptimised();
+        return bestLine;
     }
 }
@@ -15,18 +15,26 @@ import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
+import org.intermine.sql.query.AbstractConstraint;
 import org.intermine.sql.query.AbstractTable;
 import org.intermine.sql.query.AbstractValue;
+import org.intermine.sql.query.ConstraintSet;
 import org.intermine.sql.query.Field;
+import org.intermine.sql.query.NotConstraint;
 import org.intermine.sql.query.OrderDescending;
 import org.intermine.sql.query.Query;
 import org.intermine.sql.query.SQLStringable;
 import org.intermine.sql.query.SelectValue;
+import org.intermine.sql.query.SubQuery;
+import org.intermine.sql.query.SubQueryConstraint;
 import org.intermine.sql.query.Table;
 
 /**
@@ -45,6 +53,8 @@ public class PrecomputedTable implements SQLStringable, Comparable<PrecomputedTa
     protected String name;
     protected String category;
     protected Map<AbstractValue, SelectValue> valueMap;
+    protected Map<String, Integer> tableSignature;
+    protected Set<String> dependencies;
     protected String orderByField;
     protected String generationSqlString;
     protected boolean firstOrderByHasNoNulls = false;
@@ -81,6 +91,10 @@ public class PrecomputedTable implements SQLStringable, Comparable<PrecomputedTa
         for (SelectValue value : q.getSelect()) {
             valueMap.put(value.getValue(), value);
         }
+        tableSignature = PrecomputedTableIndex.getSignature(q);
+        Set<String> tables = new TreeSet<String>();
+        addDependencies(q, tables);
+        dependencies = Collections.unmodifiableSet(tables);
 
         // Now we should work out if we can create an order by field. First, we need to make sure
         // that all the fields in the order by list are integer numbers (that is SMALLINT, INTEGER,
@@ -277,6 +291,63 @@ public class PrecomputedTable implements SQLStringable, Comparable<PrecomputedTa
         return valueMap;
     }
 
+    /**
+     * Gets the table signature of the Query in this PrecomputedTable - a Map from table name to
+     * the number of times the table appears in the FROM list.
+     *
+     * @return the table signature, as produced by PrecomputedTableIndex.getSignature
+     */
+    public Map<String, Integer> getTableSignature() {
+        return tableSignature;
+    }
+
+    /**
+     * Gets the names of all the tables that the contents of this PrecomputedTable depend on,
+     * including tables used in subqueries in the FROM and WHERE clauses and in UNIONs. A change to
+     * any of these tables makes this PrecomputedTable out of date.
+     *
+     * @return an unmodifiable Set of table names
+     */
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Adds the names of all the tables that a Query reads from to a Set.
+     *
+     * @param query a Query
+     * @param tables a Set of table names to add to
+     */
+    protected static void addDependencies(Query query, Set<String> tables) {
+        for (Query union : query.getUnion()) {
+            for (AbstractTable table : union.getFrom()) {
+                if (table instanceof Table) {
+                    tables.add(((Table) table).getName());
+                } else if (table instanceof SubQuery) {
+                    addDependencies(((SubQuery) table).getQuery(), tables);
+                }
+            }
+            for (AbstractConstraint con : union.getWhere()) {
+                addDependencies(con, tables);
+            }
+            for (AbstractConstraint con : union.getHaving()) {
+                addDependencies(con, tables);
+            }
+        }
+    }
+
+    private static void addDependencies(AbstractConstraint con, Set<String> tables) {
+        if (con instanceof SubQueryConstraint) {
+            addDependencies(((SubQueryConstraint) con).getQuery(), tables);
+        } else if (con instanceof NotConstraint) {
+            addDependencies(((NotConstraint) con).getConstraint(), tables);
+        } else if (con instanceof ConstraintSet) {
+            for (AbstractConstraint subCon : ((ConstraintSet) con).getConstraints()) {
+                addDependencies(subCon, tables);
+            }
+        }
+    }
+
     /**
      * Get a "CREATE TABLE" SQL statement for this PrecomputedTable.
      *
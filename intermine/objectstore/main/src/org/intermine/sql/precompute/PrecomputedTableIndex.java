@@ -0,0 +1,175 @@
+package org.intermine.sql.precompute;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.intermine.sql.query.AbstractTable;
+import org.intermine.sql.query.Query;
+import org.intermine.sql.query.Table;
+
+/**
+ * An index of PrecomputedTables by the tables in their FROM lists, used by the QueryOptimiser to
+ * find the PrecomputedTables that could possibly fit a query without trying to merge every one.
+ * A PrecomputedTable can only be merged into a query if every table in its FROM list can be mapped
+ * onto a different table of the same name in the query, so its table signature (the number of
+ * times each table name appears) must be covered by that of the query. Each PrecomputedTable is
+ * filed under the table in its signature that is least common among all the PrecomputedTables, so
+ * only the tables filed under the names in the query need to be looked at.
+ * This object is not altered after construction, so may be shared between threads.
+ */
+public class PrecomputedTableIndex
+{
+    /** The signature key used for all subqueries in a FROM list. */
+    public static final String SUBQUERY_KEY = "(subquery)";
+
+    private final Set<PrecomputedTable> precomputedTables;
+    private final Map<String, List<PrecomputedTable>> byTable
+        = new HashMap<String, List<PrecomputedTable>>();
+    private final List<PrecomputedTable> noTables = new ArrayList<PrecomputedTable>();
+    private final List<PrecomputedTable> withConstants = new ArrayList<PrecomputedTable>();
+
+    /**
+     * Constructs an index of the given PrecomputedTables.
+     *
+     * @param precomputedTables a Collection of PrecomputedTable objects
+     */
+    public PrecomputedTableIndex(Collection<PrecomputedTable> precomputedTables) {
+        this.precomputedTables = Collections.unmodifiableSet(new TreeSet<PrecomputedTable>(
+                    precomputedTables));
+        Map<String, Integer> frequencies = new HashMap<String, Integer>();
+        for (PrecomputedTable pt : this.precomputedTables) {
+            for (String key : pt.getTableSignature().keySet()) {
+                Integer count = frequencies.get(key);
+                frequencies.put(key, new Integer(count == null ? 1 : count.intValue() + 1));
+            }
+            NormalisedQuery normalised = NormalisedQuery.normalise(pt.getOriginalSql());
+            if ((normalised == null) || (!normalised.getConstants().isEmpty())) {
+                withConstants.add(pt);
+            }
+        }
+        for (PrecomputedTable pt : this.precomputedTables) {
+            String rarest = null;
+            int rarestCount = Integer.MAX_VALUE;
+            for (String key : pt.getTableSignature().keySet()) {
+                int count = frequencies.get(key).intValue();
+                if (count < rarestCount) {
+                    rarest = key;
+                    rarestCount = count;
+                }
+            }
+            if (rarest == null) {
+                noTables.add(pt);
+            } else {
+                List<PrecomputedTable> list = byTable.get(rarest);
+                if (list == null) {
+                    list = new ArrayList<PrecomputedTable>();
+                    byTable.put(rarest, list);
+                }
+                list.add(pt);
+            }
+        }
+    }
+
+    /**
+     * Returns all the PrecomputedTables in this index.
+     *
+     * @return an unmodifiable Set of PrecomputedTable objects
+     */
+    public Set<PrecomputedTable> getPrecomputedTables() {
+        return precomputedTables;
+    }
+
+    /**
+     * Returns the PrecomputedTables whose table signatures are covered by that of the given
+     * query. Only these PrecomputedTables can possibly be merged into the query.
+     *
+     * @param query a Query
+     * @return a new Set of PrecomputedTable objects
+     */
+    public Set<PrecomputedTable> getCandidates(Query query) {
+        Map<String, Integer> signature = getSignature(query);
+        Set<PrecomputedTable> retval = new TreeSet<PrecomputedTable>(noTables);
+        for (String key : signature.keySet()) {
+            List<PrecomputedTable> list = byTable.get(key);
+            if (list != null) {
+                for (PrecomputedTable pt : list) {
+                    if (covers(signature, pt.getTableSignature())) {
+                        retval.add(pt);
+                    }
+                }
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns true if the given SQL string may refer to a PrecomputedTable in this index that has
+     * constants of its own. Such a PrecomputedTable may only fit a query because of the constants
+     * in the query, so the optimised query can't be reused for other constant values. The check
+     * looks for the table names as substrings, so may give a false positive, but never a false
+     * negative.
+     *
+     * @param sql a SQL string
+     * @return a boolean
+     */
+    public boolean usesTableWithConstants(String sql) {
+        for (PrecomputedTable pt : withConstants) {
+            if (sql.contains(pt.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the table signature of a query - a Map from table name to the number of times that
+     * table appears in the FROM list. Subqueries all have the same key, SUBQUERY_KEY.
+     *
+     * @param query a Query
+     * @return a SortedMap from String to Integer
+     */
+    public static Map<String, Integer> getSignature(Query query) {
+        Map<String, Integer> retval = new TreeMap<String, Integer>();
+        for (AbstractTable table : query.getFrom()) {
+            String key = (table instanceof Table ? ((Table) table).getName() : SUBQUERY_KEY);
+            Integer count = retval.get(key);
+            retval.put(key, new Integer(count == null ? 1 : count.intValue() + 1));
+        }
+        return retval;
+    }
+
+    /**
+     * Returns true if every table in one signature appears at least as many times in another.
+     *
+     * @param signature the signature of a query
+     * @param tables the signature of a PrecomputedTable
+     * @return true if the tables of the PrecomputedTable could all be mapped onto different tables
+     * in the query
+     */
+    public static boolean covers(Map<String, Integer> signature, Map<String, Integer> tables) {
+        for (Map.Entry<String, Integer> entry : tables.entrySet()) {
+            Integer count = signature.get(entry.getKey());
+            if ((count == null) || (count.intValue() < entry.getValue().intValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
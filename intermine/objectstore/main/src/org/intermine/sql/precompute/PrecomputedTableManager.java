@@ -20,25 +20,33 @@ import java.sql.Statement;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 import org.intermine.sql.Database;
 import org.intermine.sql.DatabaseUtil;
-import org.intermine.sql.query.AbstractTable;
 import org.intermine.sql.query.AbstractValue;
 import org.intermine.sql.query.OrderDescending;
 import org.intermine.sql.query.Query;
 import org.intermine.sql.query.SelectValue;
-import org.intermine.sql.query.Table;
 
 /**
  * Manages all the Precomputed tables in a given database.
+ * <p>
+ * By default, a change to any table that a precomputed table depends on causes the precomputed
+ * table to be dropped. If a refresher is started with startRefresher, such precomputed tables are
+ * instead marked as stale, which stops the optimiser from using them, and are rebuilt in the
+ * background. The rebuilt table is swapped in for the stale one in a single transaction.
  *
  * @author Andrew Varley
  * @author Matthew Wakeling
@@ -48,11 +56,26 @@ public class PrecomputedTableManager
     private static final Logger LOG = Logger.getLogger(PrecomputedTableManager.class);
 
     protected TreeSet<PrecomputedTable> precomputedTables = new TreeSet<PrecomputedTable>();
+    protected volatile PrecomputedTableIndex index = null;
     protected Map<String, Map<String, PrecomputedTable>> types
         = new HashMap<String, Map<String, PrecomputedTable>>();
     protected Database database = null;
     protected Connection conn = null;
+    protected Map<String, StaleTable> staleTables = new LinkedHashMap<String, StaleTable>();
+    protected volatile Thread refresher = null;
+    protected long refreshDelay = 0;
     protected static final String TABLE_INDEX = "precompute_index";
+    /** The prefix added to the category in the index table of a stale precomputed table */
+    protected static final String STALE_PREFIX = "stale:";
+    /** The status of a precomputed table that can be used by the optimiser */
+    public static final String VALID = "valid";
+    /** The status of a precomputed table that is out of date and waiting to be rebuilt */
+    public static final String STALE = "stale";
+    /** The status of a precomputed table that is out of date and being rebuilt */
+    public static final String REFRESHING = "refreshing";
+    /** The status of a precomputed table that is out of date and could not be rebuilt */
+    public static final String FAILED = "failed";
+    private static final Pattern REFRESH_SUFFIX = Pattern.compile("^(.*)_r([0-9]+)$");
     protected static Map<Object, PrecomputedTableManager> instances
         = new HashMap<Object, PrecomputedTableManager>();
 
@@ -161,17 +184,27 @@ public class PrecomputedTableManager
             throw new NullPointerException("PrecomputedTable cannot be null");
         }
         String queryString = pt.getOriginalSql();
-        Map<String, PrecomputedTable> queryStrings = types.get(pt.getCategory());
-        if (queryStrings == null) {
-            queryStrings = new HashMap<String, PrecomputedTable>();
-            types.put(pt.getCategory(), queryStrings);
+        synchronized (this) {
+            if (getCategoryMap(pt.getCategory()).containsKey(queryString)) {
+                throw new IllegalArgumentException("Precomputed table already exists");
+            }
+        }
+        dropStale(pt.getCategory(), queryString);
+        addTableToDatabase(pt, indexes, true);
+        boolean added = false;
+        synchronized (this) {
+            Map<String, PrecomputedTable> queryStrings = getCategoryMap(pt.getCategory());
+            if (!queryStrings.containsKey(queryString)) {
+                precomputedTables.add(pt);
+                index = null;
+                queryStrings.put(queryString, pt);
+                added = true;
+            }
         }
-        if (queryStrings.containsKey(queryString)) {
+        if (!added) {
+            // Another thread has precomputed the same SQL while the table was being built
+            deleteTableFromDatabase(pt.getName());
             throw new IllegalArgumentException("Precomputed table already exists");
-        } else {
-            addTableToDatabase(pt, indexes, true);
-            precomputedTables.add(pt);
-            queryStrings.put(queryString, pt);
         }
     }
 
@@ -181,13 +214,17 @@ public class PrecomputedTableManager
      * @throws SQLException if something goes wrong
      */
     public void dropEverything() throws SQLException {
-        Iterator<PrecomputedTable> iter = precomputedTables.iterator();
-        while (iter.hasNext()) {
-            PrecomputedTable pt = iter.next();
+        List<PrecomputedTable> toDrop;
+        synchronized (this) {
+            toDrop = new ArrayList<PrecomputedTable>(precomputedTables);
+            precomputedTables.clear();
+            types.clear();
+            index = null;
+        }
+        for (PrecomputedTable pt : toDrop) {
             deleteTableFromDatabase(pt.getName());
-            iter.remove();
         }
-        types.clear();
+        dropStale(null, null);
     }
 
     /**
@@ -198,29 +235,366 @@ public class PrecomputedTableManager
      * @throws SQLException if something goes wrong
      */
     public void dropAffected(Set<String> tablesAltered) throws SQLException {
-        Iterator<PrecomputedTable> iter = precomputedTables.iterator();
-        while (iter.hasNext()) {
-            PrecomputedTable pt = iter.next();
-            Query q = pt.getQuery();
-            boolean drop = false;
-            for (AbstractTable table : q.getFrom()) {
-                if (table instanceof Table) {
-                    if (tablesAltered.contains(((Table) table).getName())) {
-                        drop = true;
-                        break;
+        List<PrecomputedTable> toDrop = new ArrayList<PrecomputedTable>();
+        synchronized (this) {
+            Iterator<PrecomputedTable> iter = precomputedTables.iterator();
+            while (iter.hasNext()) {
+                PrecomputedTable pt = iter.next();
+                if (isAffected(pt, tablesAltered)) {
+                    iter.remove();
+                    index = null;
+                    types.get(pt.getCategory()).remove(pt.getOriginalSql());
+                    toDrop.add(pt);
+                }
+            }
+        }
+        for (PrecomputedTable pt : toDrop) {
+            deleteTableFromDatabase(pt.getName());
+        }
+    }
+
+    /**
+     * Deals with all precomputed tables that would be affected by changes in any table in a given
+     * list of table names. If a refresher is running, the tables are marked as stale to be rebuilt
+     * in the background, otherwise they are dropped.
+     *
+     * @param tablesAltered a Set of table names that may have alterations
+     * @throws SQLException if something goes wrong
+     */
+    public void tablesAltered(Set<String> tablesAltered) throws SQLException {
+        if (refresher == null) {
+            dropAffected(tablesAltered);
+        } else {
+            invalidateAffected(tablesAltered);
+        }
+    }
+
+    /**
+     * Marks as stale all precomputed tables that would be affected by changes in any table in a
+     * given list of table names. Stale tables are kept in the database, but are not used by the
+     * optimiser until they have been rebuilt by the refresher.
+     *
+     * @param tablesAltered a Set of table names that may have alterations
+     * @throws SQLException if something goes wrong
+     */
+    public void invalidateAffected(Set<String> tablesAltered) throws SQLException {
+        long now = System.currentTimeMillis();
+        List<PrecomputedTable> invalidated = new ArrayList<PrecomputedTable>();
+        synchronized (this) {
+            Iterator<PrecomputedTable> iter = precomputedTables.iterator();
+            while (iter.hasNext()) {
+                PrecomputedTable pt = iter.next();
+                if (isAffected(pt, tablesAltered)) {
+                    iter.remove();
+                    types.get(pt.getCategory()).remove(pt.getOriginalSql());
+                    staleTables.put(pt.getName(), new StaleTable(pt, now));
+                    invalidated.add(pt);
+                }
+            }
+            for (StaleTable stale : staleTables.values()) {
+                if (isAffected(stale.getTable(), tablesAltered)) {
+                    // Any refresh in progress will have missed this change
+                    stale.setStaleSince(now);
+                }
+            }
+            if (!invalidated.isEmpty()) {
+                index = null;
+            }
+            notifyAll();
+        }
+        if (!invalidated.isEmpty()) {
+            OptimiserCache.getInstance(database).flush();
+            Connection con = null;
+            try {
+                con = (conn == null ? database.getConnection() : conn);
+                for (PrecomputedTable pt : invalidated) {
+                    setCategory(con, pt, STALE_PREFIX + pt.getCategory());
+                }
+                if (!con.getAutoCommit()) {
+                    con.commit();
+                }
+            } finally {
+                if ((con != null) && (conn == null)) {
+                    con.close();
+                }
+            }
+            LOG.info("Marked " + invalidated.size() + " precomputed tables as stale after changes"
+                    + " to " + tablesAltered);
+        }
+    }
+
+    /**
+     * Returns true if a precomputed table depends on any of the given tables.
+     *
+     * @param pt a PrecomputedTable
+     * @param tablesAltered a Set of table names
+     * @return a boolean
+     */
+    protected static boolean isAffected(PrecomputedTable pt, Set<String> tablesAltered) {
+        for (String table : pt.getDependencies()) {
+            if (tablesAltered.contains(table)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops stale tables with the given category and original SQL, which have been superseded by
+     * a new precomputed table.
+     *
+     * @param category the category, or null to drop all stale tables
+     * @param sql the original SQL string, or null to drop all stale tables
+     * @throws SQLException if something goes wrong
+     */
+    protected void dropStale(String category, String sql) throws SQLException {
+        List<String> toDrop = new ArrayList<String>();
+        synchronized (this) {
+            Iterator<StaleTable> iter = staleTables.values().iterator();
+            while (iter.hasNext()) {
+                StaleTable stale = iter.next();
+                PrecomputedTable pt = stale.getTable();
+                if (((category == null) || (category.equals(pt.getCategory())
+                        && sql.equals(pt.getOriginalSql()))) && (!stale.isRefreshing())) {
+                    iter.remove();
+                    toDrop.add(pt.getName());
+                }
+            }
+        }
+        for (String name : toDrop) {
+            deleteTableFromDatabase(name);
+        }
+    }
+
+    /**
+     * Starts a background thread that rebuilds stale precomputed tables. From now on, changes to
+     * the tables that a precomputed table depends on cause it to be marked as stale rather than
+     * dropped.
+     *
+     * @param delay the time in milliseconds to wait after the last change to a stale table's
+     * dependencies before rebuilding it, so that a series of writes only causes one rebuild
+     */
+    public synchronized void startRefresher(long delay) {
+        refreshDelay = delay;
+        if (refresher == null) {
+            refresher = new Thread(new Refresher(), "PrecomputedTableManager refresher");
+            refresher.setDaemon(true);
+            refresher.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stops the background thread that rebuilds stale precomputed tables. Tables that are
+     * already stale are left in the database, and will be rebuilt if the refresher is started
+     * again.
+     */
+    public synchronized void stopRefresher() {
+        refresher = null;
+        notifyAll();
+    }
+
+    /**
+     * Returns the status of every precomputed table in the database - VALID, STALE, REFRESHING,
+     * or FAILED followed by the error message.
+     *
+     * @return a SortedMap from table name to status
+     */
+    public synchronized Map<String, String> getStatus() {
+        Map<String, String> retval = new TreeMap<String, String>();
+        for (PrecomputedTable pt : precomputedTables) {
+            retval.put(pt.getName(), VALID);
+        }
+        for (StaleTable stale : staleTables.values()) {
+            retval.put(stale.getTable().getName(), stale.getStatus());
+        }
+        return retval;
+    }
+
+    /**
+     * Rebuilds the stale table that has been stale for longest, if there is one whose
+     * dependencies have not changed for the refresh delay.
+     *
+     * @return true if a table was rebuilt or failed to be rebuilt, false if there was nothing to do
+     */
+    protected boolean refreshNext() {
+        StaleTable next = null;
+        long since;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (StaleTable stale : staleTables.values()) {
+                if ((!stale.isRefreshing()) && (stale.getError() == null)
+                        && (stale.getStaleSince() + refreshDelay <= now)) {
+                    next = stale;
+                    break;
+                }
+            }
+            if (next == null) {
+                return false;
+            }
+            since = next.getStaleSince();
+            next.setRefreshing(true);
+        }
+        PrecomputedTable old = next.getTable();
+        try {
+            refresh(old, since);
+        } catch (Exception e) {
+            LOG.error("Failed to refresh precomputed table " + old.getName(), e);
+            synchronized (this) {
+                next.setError(e.toString());
+            }
+        } finally {
+            synchronized (this) {
+                next.setRefreshing(false);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rebuilds a stale table under a new name, and swaps it in for the stale table. If the
+     * dependencies of the table change again while it is being rebuilt, the new table is also
+     * recorded as stale. The database work is done without holding the lock on this manager,
+     * which is only held to swap the tables in memory.
+     *
+     * @param old the stale PrecomputedTable
+     * @param since the time that the dependencies of the table last changed when the rebuild
+     * started
+     * @throws SQLException if something goes wrong
+     */
+    protected void refresh(PrecomputedTable old, long since) throws SQLException {
+        long start = System.currentTimeMillis();
+        Connection con = null;
+        try {
+            con = (conn == null ? database.getConnection() : conn);
+            con.setAutoCommit(true);
+            List<String> indexes = new ArrayList<String>();
+            PreparedStatement pstmt = con.prepareStatement("SELECT indexdef FROM pg_indexes"
+                    + " WHERE tablename = ?");
+            pstmt.setString(1, old.getName());
+            ResultSet res = pstmt.executeQuery();
+            while (res.next()) {
+                String columns = getIndexColumns(res.getString(1));
+                if (columns != null) {
+                    indexes.add(columns);
+                }
+            }
+            String newName = getRefreshName(old.getName());
+            // A previous refresh may have died part-way through
+            con.createStatement().execute("DROP TABLE IF EXISTS " + newName);
+            PrecomputedTable fresh = new PrecomputedTable(old.getQuery(), old.getOriginalSql(),
+                    newName, old.getCategory(), con);
+            addTableToDatabase(fresh, indexes, false);
+
+            // The new table is recorded as stale until it has been swapped in, so that it is
+            // not used after a restart if it turns out to be stale already
+            con.setAutoCommit(false);
+            try {
+                pstmt = con.prepareStatement("INSERT INTO " + TABLE_INDEX + " VALUES(?,?,?)");
+                pstmt.setString(1, fresh.getName());
+                pstmt.setString(2, fresh.getOriginalSql());
+                pstmt.setString(3, STALE_PREFIX + fresh.getCategory());
+                pstmt.execute();
+                pstmt = con.prepareStatement("DELETE FROM " + TABLE_INDEX + " WHERE name = ?");
+                pstmt.setString(1, old.getName());
+                pstmt.execute();
+                con.createStatement().execute("DROP TABLE " + old.getName());
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+
+            // Only the swap in memory is done holding the lock, so that getIndex() is not held
+            // up by the database
+            boolean superseded;
+            boolean stillStale = false;
+            synchronized (this) {
+                StaleTable stale = staleTables.remove(old.getName());
+                superseded = getCategoryMap(fresh.getCategory()).containsKey(
+                        fresh.getOriginalSql());
+                if (!superseded) {
+                    stillStale = (stale == null) || (stale.getStaleSince() != since);
+                    if (stillStale) {
+                        staleTables.put(fresh.getName(), new StaleTable(fresh,
+                                    (stale == null ? System.currentTimeMillis()
+                                     : stale.getStaleSince())));
+                    } else {
+                        precomputedTables.add(fresh);
+                        getCategoryMap(fresh.getCategory()).put(fresh.getOriginalSql(), fresh);
+                        index = null;
                     }
                 }
             }
-            if (drop) {
-                deleteTableFromDatabase(pt.getName());
-                iter.remove();
-                String queryString = pt.getOriginalSql();
-                Map<String, PrecomputedTable> queryStrings = types.get(pt.getCategory());
-                queryStrings.remove(queryString);
+            if (superseded) {
+                // The table has been precomputed again while we were rebuilding it
+                deleteTableFromDatabase(fresh.getName());
+                return;
+            }
+            if (!stillStale) {
+                OptimiserCache.getInstance(database).flush();
+                setCategory(con, fresh, fresh.getCategory());
+                synchronized (this) {
+                    stillStale = staleTables.containsKey(fresh.getName());
+                }
+                if (stillStale) {
+                    // Invalidated since the swap, possibly before the category was written
+                    setCategory(con, fresh, STALE_PREFIX + fresh.getCategory());
+                }
+            }
+            LOG.info("Refreshed precomputed table " + old.getName() + " as " + fresh.getName()
+                    + (stillStale ? ", which is already stale again," : "") + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            if ((con != null) && (conn == null)) {
+                con.close();
             }
         }
     }
 
+    private static void setCategory(Connection con, PrecomputedTable pt, String category)
+        throws SQLException {
+        PreparedStatement pstmt = con.prepareStatement("UPDATE " + TABLE_INDEX
+                + " SET category = ? WHERE name = ?");
+        pstmt.setString(1, category);
+        pstmt.setString(2, pt.getName());
+        pstmt.execute();
+    }
+
+    /**
+     * Returns the name to give to the rebuilt version of a precomputed table. The names of
+     * rebuilt tables end in "_r" and a number that increases with each rebuild, so that the new
+     * table and its indexes do not clash with the table it is replacing.
+     *
+     * @param name the name of the table being rebuilt
+     * @return a new table name
+     */
+    protected static String getRefreshName(String name) {
+        Matcher m = REFRESH_SUFFIX.matcher(name);
+        if (m.matches()) {
+            return m.group(1) + "_r" + (Long.parseLong(m.group(2)) + 1);
+        }
+        return name + "_r1";
+    }
+
+    /**
+     * Extracts the list of indexed columns from an index definition, as returned by pg_indexes.
+     *
+     * @param indexDef a CREATE INDEX statement
+     * @return the columns, suitable for passing to addTableToDatabase, or null if the index is
+     * not of a type that addTableToDatabase can recreate, or is one that it creates automatically
+     */
+    protected static String getIndexColumns(String indexDef) {
+        int using = indexDef.indexOf(" USING btree (");
+        if ((using == -1) || (!indexDef.endsWith(")"))
+                || indexDef.contains(" text_pattern_ops")) {
+            return null;
+        }
+        return indexDef.substring(using + 14, indexDef.length() - 1);
+    }
+
     /**
      * Delete a precomputed table from the underlying database.
      *
@@ -233,15 +607,14 @@ public class PrecomputedTableManager
         if (pt == null) {
             throw new NullPointerException("PrecomputedTable cannot be null");
         }
-        if (!precomputedTables.contains(pt)) {
-            throw new IllegalArgumentException("Table is not valid: " + pt);
+        synchronized (this) {
+            if (!precomputedTables.remove(pt)) {
+                throw new IllegalArgumentException("Table is not valid: " + pt);
+            }
+            index = null;
+            types.get(pt.getCategory()).remove(pt.getOriginalSql());
         }
-
         deleteTableFromDatabase(pt.getName());
-        precomputedTables.remove(pt);
-        String queryString = pt.getOriginalSql();
-        Map<String, PrecomputedTable> queryStrings = types.get(pt.getCategory());
-        queryStrings.remove(queryString);
     }
 
     /**
@@ -249,8 +622,21 @@ public class PrecomputedTableManager
      *
      * @return a Set of PrecomputedTables present in the database
      */
-    public Set<PrecomputedTable> getPrecomputedTables() {
-        return precomputedTables;
+    public synchronized Set<PrecomputedTable> getPrecomputedTables() {
+        return new TreeSet<PrecomputedTable>(precomputedTables);
+    }
+
+    /**
+     * Get an index of all the precomputed tables in the underlying database, for finding the
+     * tables that could fit a query. The index is rebuilt after tables are added or deleted.
+     *
+     * @return a PrecomputedTableIndex
+     */
+    public synchronized PrecomputedTableIndex getIndex() {
+        if (index == null) {
+            index = new PrecomputedTableIndex(precomputedTables);
+        }
+        return index;
     }
 
     /**
@@ -495,10 +881,19 @@ public class PrecomputedTableManager
             String tableName = res.getString(1);
             String queryString = res.getString(2);
             String category = res.getString(3);
+            boolean stale = (category != null) && category.startsWith(STALE_PREFIX);
+            if (stale) {
+                category = category.substring(STALE_PREFIX.length());
+            }
             try {
                 PrecomputedTable pt = new PrecomputedTable(new Query(queryString, true),
                             queryString, tableName, category, con);
+                if (stale) {
+                    staleTables.put(tableName, new StaleTable(pt, start));
+                    continue;
+                }
                 precomputedTables.add(pt);
+                index = null;
                 Map<String, PrecomputedTable> queryStrings = types.get(category);
                 if (queryStrings == null) {
                     queryStrings = new HashMap<String, PrecomputedTable>();
@@ -511,7 +906,8 @@ public class PrecomputedTableManager
             }
         }
         LOG.info("Loaded " + precomputedTables.size() + " precomputed table descriptions (plus "
-                + failedCount + " failed) in " + (System.currentTimeMillis() - start) + " ms");
+                + staleTables.size() + " stale and " + failedCount + " failed) in "
+                + (System.currentTimeMillis() - start) + " ms");
     }
 
     /**
@@ -537,7 +933,7 @@ public class PrecomputedTableManager
      * @param sql the original SQL string used to create the PrecomputedTable
      * @return a PrecomputedTable or null
      */
-    public PrecomputedTable lookupSql(String category, String sql) {
+    public synchronized PrecomputedTable lookupSql(String category, String sql) {
         Map<String, PrecomputedTable> queryStrings = types.get(category);
         if (queryStrings != null) {
             return queryStrings.get(sql);
@@ -552,7 +948,7 @@ public class PrecomputedTableManager
      * @param sql the original SQL string used to create the PrecomputedTable
      * @return a PrecomputedTable or null
      */
-    public PrecomputedTable lookupSql(String sql) {
+    public synchronized PrecomputedTable lookupSql(String sql) {
         for (Map<String, PrecomputedTable> queryStrings : types.values()) {
             PrecomputedTable pt = queryStrings.get(sql);
             if (pt != null) {
@@ -566,9 +962,13 @@ public class PrecomputedTableManager
      * Returns a Map from original SQL to PrecomputedTable for a given category in the manager.
      *
      * @param category a String
-     * @return a Map
+     * @return a new Map
      */
-    public Map<String, PrecomputedTable> lookupCategory(String category) {
+    public synchronized Map<String, PrecomputedTable> lookupCategory(String category) {
+        return new HashMap<String, PrecomputedTable>(getCategoryMap(category));
+    }
+
+    private Map<String, PrecomputedTable> getCategoryMap(String category) {
         Map<String, PrecomputedTable> queryStrings = types.get(category);
         if (queryStrings == null) {
             queryStrings = new HashMap<String, PrecomputedTable>();
@@ -576,4 +976,132 @@ public class PrecomputedTableManager
         }
         return queryStrings;
     }
+
+    /**
+     * A precomputed table that is out of date, with the progress of its rebuild.
+     */
+    protected static class StaleTable
+    {
+        private final PrecomputedTable table;
+        private long staleSince;
+        private boolean refreshing = false;
+        private String error = null;
+
+        /**
+         * Constructor.
+         *
+         * @param table the stale PrecomputedTable
+         * @param staleSince the time its dependencies last changed
+         */
+        public StaleTable(PrecomputedTable table, long staleSince) {
+            this.table = table;
+            this.staleSince = staleSince;
+        }
+
+        /**
+         * Returns the stale PrecomputedTable.
+         *
+         * @return a PrecomputedTable
+         */
+        public PrecomputedTable getTable() {
+            return table;
+        }
+
+        /**
+         * Returns the time that the dependencies of the table last changed.
+         *
+         * @return a time in milliseconds
+         */
+        public long getStaleSince() {
+            return staleSince;
+        }
+
+        /**
+         * Records a new change to the dependencies of the table, which also clears any error from
+         * a previous rebuild so that it will be tried again.
+         *
+         * @param staleSince the time of the change
+         */
+        public void setStaleSince(long staleSince) {
+            this.staleSince = staleSince;
+            error = null;
+        }
+
+        /**
+         * Returns whether the table is being rebuilt.
+         *
+         * @return a boolean
+         */
+        public boolean isRefreshing() {
+            return refreshing;
+        }
+
+        /**
+         * Sets whether the table is being rebuilt.
+         *
+         * @param refreshing a boolean
+         */
+        public void setRefreshing(boolean refreshing) {
+            this.refreshing = refreshing;
+        }
+
+        /**
+         * Returns the error from the last attempt to rebuild the table.
+         *
+         * @return an error message, or null if the last attempt did not fail
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Sets the error from the last attempt to rebuild the table.
+         *
+         * @param error an error message
+         */
+        public void setError(String error) {
+            this.error = error;
+        }
+
+        /**
+         * Returns the status of the table, as reported by getStatus.
+         *
+         * @return a String
+         */
+        public String getStatus() {
+            if (refreshing) {
+                return REFRESHING;
+            } else if (error != null) {
+                return FAILED + ": " + error;
+            }
+            return STALE;
+        }
+    }
+
+    /**
+     * The background task that rebuilds stale tables until the refresher is stopped.
+     */
+    private class Refresher implements Runnable
+    {
+        public void run() {
+            Thread me = Thread.currentThread();
+            while (true) {
+                synchronized (PrecomputedTableManager.this) {
+                    if (refresher != me) {
+                        return;
+                    }
+                }
+                if (!refreshNext()) {
+                    synchronized (PrecomputedTableManager.this) {
+                        try {
+                            PrecomputedTableManager.this.wait(Math.max(1000L,
+                                        Math.min(refreshDelay, 60000L)));
+                        } catch (InterruptedException e) {
+                            // Check whether we have been stopped
+                        }
+                    }
+                }
+            }
+        }
+    }
 }
@@ -63,11 +63,23 @@ public final class QueryOptimiser
     private QueryOptimiser() {
     }
 
+    /** Cache status of a query found in the OptimiserCache. */
+    public static final String CACHE_HIT = "cache hit";
+    /** Cache status of a query found in the OptimiserCache with different constant values. */
+    public static final String CACHE_NORMALISED_HIT = "normalised cache hit";
+    /** Cache status of a query that had to be optimised. */
+    public static final String CACHE_MISS = "cache miss";
+    /** Cache status of a query that could not be parsed. */
+    public static final String UNPARSABLE = "unparsable";
+
     private static final Logger LOG = Logger.getLogger(QueryOptimiser.class);
     private static final int REPORT_INTERVAL = 10000;
 
     private static final String ALIAS_PREFIX = "P";
     private static int callCount = 0;
+    private static int cacheHits = 0;
+    private static int normalisedCacheHits = 0;
+    private static long totalTime = 0;
 
     /**
      * Runs the optimiser through the query represented in the String, given the database. If
@@ -157,10 +169,9 @@ public final class QueryOptimiser
             }
             return new BestQueryFallback(null, query);
         }
-        Set<PrecomputedTable> precomputedTables = ptm.getPrecomputedTables();
         OptimiserCache cache = OptimiserCache.getInstance(database);
         return optimiseWith(query, originalQuery, database, explainConnection, context,
-                            precomputedTables, cache);
+                            ptm.getIndex(), cache);
     }
 
     /**
@@ -180,12 +191,54 @@ public final class QueryOptimiser
     public static BestQuery optimiseWith(String query, Query originalQuery, Database database,
             Connection connection, QueryOptimiserContext context,
             Set<PrecomputedTable> precomputedTables, OptimiserCache cache) throws SQLException {
-        Connection explainConnection = connection;
-        Query optimiseQuery = originalQuery;
-        callCount++;
-        if (callCount % REPORT_INTERVAL == 0) {
-            LOG.info("Optimiser called " + callCount + " times");
+        return optimiseWith(query, originalQuery, database, connection, context,
+                new PrecomputedTableIndex(precomputedTables), cache);
+    }
+
+    /**
+     * Runs the optimiser through the query repesented in the String and Query, given the Connection
+     * and an index of PrecomputedTables. The time taken is recorded in the returned BestQuery,
+     * along with whether the OptimiserCache was used.
+     *
+     * @param query the query String to optimise
+     * @param originalQuery the Query object to optimise - or optionally null
+     * @param database a Database
+     * @param connection the database connection to use, or null if database is a Database
+     * @param context a QueryOptimiserContext, to alter settings
+     * @param index a PrecomputedTableIndex of the PrecomputedTables to use
+     * @param cache an OptimiserCache
+     * @return a BestQuery object
+     * @throws SQLException if a database error occurs
+     */
+    public static BestQuery optimiseWith(String query, Query originalQuery, Database database,
+            Connection connection, QueryOptimiserContext context,
+            PrecomputedTableIndex index, OptimiserCache cache) throws SQLException {
+        long start = System.currentTimeMillis();
+        BestQuery retval = doOptimiseWith(query, originalQuery, database, connection, context,
+                index, cache);
+        long time = System.currentTimeMillis() - start;
+        retval.setOptimiseTime(time);
+        synchronized (QueryOptimiser.class) {
+            callCount++;
+            totalTime += time;
+            if (CACHE_HIT.equals(retval.getCacheStatus())) {
+                cacheHits++;
+            } else if (CACHE_NORMALISED_HIT.equals(retval.getCacheStatus())) {
+                normalisedCacheHits++;
+            }
+            if (callCount % REPORT_INTERVAL == 0) {
+                LOG.info("Optimiser called " + callCount + " times, with " + cacheHits
+                        + " cache hits and " + normalisedCacheHits + " normalised cache hits, "
+                        + "taking " + totalTime + " ms in total");
+            }
         }
+        return retval;
+    }
+
+    private static BestQuery doOptimiseWith(String query, Query originalQuery, Database database,
+            Connection connection, QueryOptimiserContext context,
+            PrecomputedTableIndex index, OptimiserCache cache) throws SQLException {
+        Connection explainConnection = connection;
         long start = new Date().getTime();
         long parseTime = 0;
         // If we want to do any query caching, here is where we should do it.
@@ -193,14 +246,23 @@ public final class QueryOptimiser
         LOG.debug("Original Query: " + limitOffsetQuery.getQuery() + ", "
                 + limitOffsetQuery.getLimit() + ", " + limitOffsetQuery.getOffset());
         String cachedQuery = null;
+        String cacheStatus = CACHE_HIT;
         if (!context.isVerbose()) {
             cachedQuery = cache.lookup(limitOffsetQuery.getQuery(), limitOffsetQuery.getLimit());
+            if (cachedQuery == null) {
+                cachedQuery = cache.lookupNormalised(limitOffsetQuery.getQuery(),
+                        limitOffsetQuery.getLimit());
+                cacheStatus = CACHE_NORMALISED_HIT;
+            }
         }
         // TODO: fix so that the OptimiserCache is updated when precomputed tables are deleted
         if (cachedQuery != null) {
             LOG.debug("Optimising query took " + ((new Date()).getTime() - start)
-                    + " ms - cache hit: " + query);
-            return new BestQueryFallback(null, limitOffsetQuery.reconstruct(cachedQuery));
+                    + " ms - " + cacheStatus + ": " + query);
+            BestQuery retval = new BestQueryFallback(null,
+                    limitOffsetQuery.reconstruct(cachedQuery));
+            retval.setCacheStatus(cacheStatus);
+            return retval;
         }
         try {
             boolean openedConnection = false;
@@ -229,7 +291,7 @@ public final class QueryOptimiser
                     originalQuery = new Query(query, context.getMaxQueryParseTime());
                 }
                 parseTime = new Date().getTime();
-                recursiveOptimiseCheckSubquery(precomputedTables, originalQuery, bestQuery);
+                recursiveOptimiseCheckSubquery(index, originalQuery, bestQuery);
             } catch (BestQueryException e) {
                 // Ignore - bestQuery decided to cut short the search
                 //if (bestQuery instanceof BestQueryExplainer) {
@@ -267,10 +329,17 @@ public final class QueryOptimiser
             LOG.debug("New cache line produced - limit = " + limitOffsetQuery.getLimit());
             cache.addCacheLine(limitOffsetQuery.getQuery(), limitOffsetOptimisedQuery.getQuery(),
                     limitOffsetQuery.getLimit());
+            // The same optimisation can be used for other constant values, as long as no
+            // precomputed table was chosen because of the constants.
+            if (!index.usesTableWithConstants(limitOffsetOptimisedQuery.getQuery())) {
+                cache.addNormalisedCacheLine(limitOffsetQuery.getQuery(),
+                        limitOffsetOptimisedQuery.getQuery(), limitOffsetQuery.getLimit());
+            }
             LOG.debug("Optimising " + (expectedTime == 0 ? "" : expectedTime + " ms ")
                     + "query took " + ((new Date()).getTime() - start)
                     + (parseTime == 0 ? " ms without parsing " : " ms including "
                         + (parseTime - start) + " ms for parse ") + "- cache miss: " + query);
+            bestQuery.setCacheStatus(CACHE_MISS);
             return bestQuery;
         } catch (RuntimeException e) {
             if (context.isVerbose()) {
@@ -286,7 +355,9 @@ public final class QueryOptimiser
         if (context.isVerbose()) {
             System.out .println("QueryOptimiser: unparsable query");
         }
-        return new BestQueryFallback(originalQuery, query);
+        BestQuery retval = new BestQueryFallback(originalQuery, query);
+        retval.setCacheStatus(UNPARSABLE);
+        return retval;
     }
 
     /**
@@ -316,6 +387,23 @@ public final class QueryOptimiser
      */
     public static void recursiveOptimiseCheckSubquery(Set<PrecomputedTable> precomputedTables,
             Query query, BestQuery bestQuery) throws BestQueryException, SQLException {
+        recursiveOptimiseCheckSubquery(new PrecomputedTableIndex(precomputedTables), query,
+                bestQuery);
+    }
+
+    /**
+     * Recursively optimises the query, given an index of precomputed tables, and updates the
+     * BestQuery object with each Query found. This method looks for simple subqueries to
+     * optimise, and calls recursiveOptimise with only those precomputed tables that could fit.
+     *
+     * @param index a PrecomputedTableIndex of the PrecomputedTable objects to use
+     * @param query a query to optimise
+     * @param bestQuery a BestQuery object to update with each optimised Query object
+     * @throws BestQueryException if the BestQuery decides to cut short the search
+     * @throws SQLException if a database error occurs
+     */
+    public static void recursiveOptimiseCheckSubquery(PrecomputedTableIndex index,
+            Query query, BestQuery bestQuery) throws BestQueryException, SQLException {
         if (query.getFrom().size() == 1) {
             AbstractTable at = query.getFrom().iterator().next();
             if (at instanceof SubQuery) {
@@ -326,12 +414,12 @@ public final class QueryOptimiser
                 bestQuery = new EncloseSubqueryBestQuery(bestQuery,
                         originalQuery.substring(0, position),
                         originalQuery.substring(position + subQueryString.length()));
-                recursiveOptimiseCheckSubquery(precomputedTables, subQuery, bestQuery);
+                recursiveOptimiseCheckSubquery(index, subQuery, bestQuery);
                 return;
             }
         }
         remapAliasesToAvoidPrecomputePrefix(query);
-        recursiveOptimise(precomputedTables, query, bestQuery, query);
+        recursiveOptimise(index.getCandidates(query), query, bestQuery, query);
     }
 
     /**
@@ -398,8 +486,13 @@ public final class QueryOptimiser
                 return b.getQuery().getFrom().size() - a.getQuery().getFrom().size();
             }
         });
+        // A precomputed table can only fit if the query has all of its tables
+        Map<String, Integer> signature = PrecomputedTableIndex.getSignature(query);
         for (int i = 0; i < sorted.length; i++) {
             PrecomputedTable p = sorted[i];
+            if (!PrecomputedTableIndex.covers(signature, p.getTableSignature())) {
+                continue;
+            }
             Set<Query> mergeResult = merge(p, query, originalQuery);
             if (!mergeResult.isEmpty()) {
                 result.put(p, mergeResult);
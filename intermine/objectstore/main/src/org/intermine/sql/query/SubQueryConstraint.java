@@ -57,6 +57,15 @@ public class SubQueryConstraint extends AbstractConstraint
         return left.getSQLString() + " IN (" + right.getSQLString() + ")";
     }
 
+    /**
+     * Returns the Query containing the results.
+     *
+     * @return the Query on the right of the constraint
+     */
+    public Query getQuery() {
+        return right;
+    }
+
     /**
      * Compare this SubQueryConstraint with another AbstractConstraint, ignoring aliases in member
      * fields and tables.
@@ -72,17 +72,10 @@ public class BatchWriterPostgresCopyImpl extends BatchWriterPreparedStatementImp
                             .entrySet()) {
                         Object inserts = insertEntry.getValue();
                         if (inserts instanceof Object[]) {
-                            Object[] values = (Object[]) inserts;
-                            dos.writeShort(colNames.length);
-                            for (int i = 0; i < colNames.length; i++) {
-                                writeObject(dos, values[i]);
-                            }
+                            writeRow(dos, (Object[]) inserts, colNames.length);
                         } else {
                             for (Object[] values : ((List<Object[]>) inserts)) {
-                                dos.writeShort(colNames.length);
-                                for (int i = 0; i < colNames.length; i++) {
-                                    writeObject(dos, values[i]);
-                                }
+                                writeRow(dos, values, colNames.length);
                             }
                         }
                     }
@@ -108,6 +101,22 @@ public class BatchWriterPostgresCopyImpl extends BatchWriterPreparedStatementImp
         return 0;
     }
 
+    /**
+     * Writes one row in the PostgreSQL binary COPY format.
+     *
+     * @param dos the stream to write to
+     * @param values the values of the row
+     * @param columns the number of columns in the table
+     * @throws IOException if the stream cannot be written
+     */
+    static void writeRow(PostgresDataOutputStream dos, Object[] values,
+            int columns) throws IOException {
+        dos.writeShort(columns);
+        for (int i = 0; i < columns; i++) {
+            writeObject(dos, values[i]);
+        }
+    }
+
     // TODO: Add support for UUID.
     private static void writeObject(PostgresDataOutputStream dos, Object o) throws IOException {
         if (o == null) {
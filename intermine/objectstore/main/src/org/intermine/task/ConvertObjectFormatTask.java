@@ -0,0 +1,197 @@
+package org.intermine.task;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Task;
+import org.intermine.metadata.ClassDescriptor;
+import org.intermine.metadata.Model;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreFactory;
+import org.intermine.objectstore.intermine.BinaryObjectParser;
+import org.intermine.objectstore.intermine.BinaryObjectRenderer;
+import org.intermine.objectstore.intermine.NotXmlParser;
+import org.intermine.objectstore.intermine.NotXmlRenderer;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.sql.DatabaseUtil;
+
+/**
+ * A Task that rewrites the OBJECT column of every table in an objectstore database into either
+ * the binary object format or NotXml. Readers handle both formats, so the objectstore can be in
+ * use while this runs, and an interrupted run can simply be started again. Precomputed tables are
+ * not rewritten, as they are rebuilt from the main tables.
+ */
+public class ConvertObjectFormatTask extends Task
+{
+    private static final Logger LOG = Logger.getLogger(ConvertObjectFormatTask.class);
+
+    protected String alias;
+    protected String format = "binary";
+    protected int batchSize = 1000;
+
+    /**
+     * Set the ObjectStore alias.
+     *
+     * @param alias the ObjectStore alias
+     */
+    public void setAlias(String alias) {
+        this.alias = alias;
+    }
+
+    /**
+     * Set the format to convert to - "binary" (the default) or "notxml".
+     *
+     * @param format the format
+     */
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    /**
+     * Set the number of rows to convert in each transaction.
+     *
+     * @param batchSize the number of rows
+     */
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize.intValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute() {
+        if (alias == null) {
+            throw new BuildException("alias attribute is not set");
+        }
+        if (!("binary".equals(format) || "notxml".equals(format))) {
+            throw new BuildException("format attribute must be \"binary\" or \"notxml\"");
+        }
+
+        ObjectStore os;
+        try {
+            os = ObjectStoreFactory.getObjectStore(alias);
+        } catch (Exception e) {
+            throw new BuildException("Exception while creating ObjectStore", e);
+        }
+        if (!(os instanceof ObjectStoreInterMineImpl)) {
+            throw new BuildException(alias + " isn't an ObjectStoreInterMineImpl");
+        }
+        ObjectStoreInterMineImpl osii = (ObjectStoreInterMineImpl) os;
+
+        Connection c = null;
+        try {
+            c = osii.getConnection();
+            for (String tableName : getTablesWithObjects(c, os.getModel())) {
+                convertTable(c, osii, tableName);
+            }
+        } catch (Exception e) {
+            throw new BuildException("Failed to convert objects in " + alias, e);
+        } finally {
+            osii.releaseConnection(c);
+        }
+    }
+
+    /**
+     * Returns the names of the tables in the database that have an OBJECT column.
+     *
+     * @param c a Connection
+     * @param model the Model of the objectstore
+     * @return a Set of table names
+     * @throws SQLException if something goes wrong
+     */
+    protected Set<String> getTablesWithObjects(Connection c, Model model) throws SQLException {
+        Set<String> tableNames = new LinkedHashSet<String>();
+        for (ClassDescriptor cld : model.getTopDownLevelTraversal()) {
+            String tableName = DatabaseUtil.getTableName(cld).toLowerCase();
+            if (DatabaseUtil.columnExists(c, tableName, "object")) {
+                tableNames.add(tableName);
+            }
+        }
+        return tableNames;
+    }
+
+    /**
+     * Converts the OBJECT column of one table, in batches of rows in id order.
+     *
+     * @param c a Connection
+     * @param os the ObjectStore to parse objects with
+     * @param tableName the name of the table
+     * @throws Exception if something goes wrong
+     */
+    protected void convertTable(Connection c, ObjectStoreInterMineImpl os, String tableName)
+        throws Exception {
+        boolean toBinary = "binary".equals(format);
+        PreparedStatement select = c.prepareStatement("SELECT id, OBJECT FROM " + tableName
+                + " WHERE id > ? ORDER BY id LIMIT " + batchSize);
+        PreparedStatement update = c.prepareStatement("UPDATE " + tableName
+                + " SET OBJECT = ? WHERE id = ?");
+        long start = System.currentTimeMillis();
+        int converted = 0;
+        int lastId = Integer.MIN_VALUE;
+        boolean finished = false;
+        try {
+            while (!finished) {
+                select.setInt(1, lastId);
+                ResultSet r = select.executeQuery();
+                List<Object[]> rows = new ArrayList<Object[]>();
+                while (r.next()) {
+                    lastId = r.getInt(1);
+                    rows.add(new Object[] {new Integer(lastId), r.getString(2)});
+                }
+                r.close();
+                finished = rows.size() < batchSize;
+                boolean autoCommit = c.getAutoCommit();
+                c.setAutoCommit(false);
+                int pending = 0;
+                for (Object[] row : rows) {
+                    String current = (String) row[1];
+                    if ((current == null) || (BinaryObjectParser.isBinary(current) == toBinary)) {
+                        continue;
+                    }
+                    InterMineObject obj = NotXmlParser.parse(current, os);
+                    String replacement;
+                    if (toBinary) {
+                        replacement = BinaryObjectRenderer.render(obj, os.getModel()).toString();
+                    } else {
+                        replacement = NotXmlRenderer.render(obj).toString();
+                    }
+                    update.setString(1, replacement);
+                    update.setInt(2, ((Integer) row[0]).intValue());
+                    update.addBatch();
+                    pending++;
+                }
+                if (pending > 0) {
+                    update.executeBatch();
+                }
+                c.commit();
+                c.setAutoCommit(autoCommit);
+                converted += pending;
+            }
+        } finally {
+            select.close();
+            update.close();
+        }
+        LOG.info("Converted " + converted + " objects in table " + tableName + " to " + format
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
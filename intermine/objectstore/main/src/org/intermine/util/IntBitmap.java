@@ -0,0 +1,598 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed set of ints, held in order. The ints are split into chunks by their top 16 bits.
+ * Each chunk holds its bottom 16 bits either as a sorted array, when the chunk has up to 4096
+ * entries, or as a bitmap of 65536 bits when it has more, so that a set never uses much more than
+ * two bytes per entry, and dense sets use less. Union, intersection and difference are performed
+ * chunk by chunk, without looking at the individual ints of bitmap chunks.
+ * <p>
+ * This class is not thread-safe, but the methods that combine two sets do not alter either of them,
+ * so a set that is no longer being added to may be shared between threads.
+ */
+public class IntBitmap implements Iterable<Integer>
+{
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final int OR = 0;
+    private static final int AND = 1;
+    private static final int ANDNOT = 2;
+    private static final int XOR = 3;
+
+    private int[] keys = new int[4];
+    private Chunk[] chunks = new Chunk[4];
+    private int chunkCount = 0;
+    private int size = 0;
+
+    /**
+     * Constructor for this class. Creates an empty set.
+     */
+    public IntBitmap() {
+    }
+
+    /**
+     * Adds an int to the set. Adding ints in ascending order is fastest.
+     *
+     * @param value the int to add
+     * @return true if the int was not already present
+     */
+    public boolean add(int value) {
+        int key = value >> 16;
+        int chunkNo;
+        if ((chunkCount > 0) && (keys[chunkCount - 1] == key)) {
+            chunkNo = chunkCount - 1;
+        } else {
+            chunkNo = Arrays.binarySearch(keys, 0, chunkCount, key);
+            if (chunkNo < 0) {
+                chunkNo = -chunkNo - 1;
+                insertChunk(chunkNo, key, new Chunk(new char[4], null, 0));
+            }
+        }
+        if (chunks[chunkNo].add((char) value)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds all the given ints to the set.
+     *
+     * @param values an array of ints
+     */
+    public void addAll(int[] values) {
+        for (int value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * Returns whether the given int is present in the set.
+     *
+     * @param value any int
+     * @return true or false
+     */
+    public boolean contains(int value) {
+        int chunkNo = Arrays.binarySearch(keys, 0, chunkCount, value >> 16);
+        return (chunkNo >= 0) && chunks[chunkNo].contains((char) value);
+    }
+
+    /**
+     * Returns the number of ints present.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the set is empty.
+     *
+     * @return true if there are no ints in the set
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns an approximation of the amount of memory used by this set.
+     *
+     * @return a number of bytes
+     */
+    public long getSizeInBytes() {
+        long retval = 32 + 8L * keys.length;
+        for (int i = 0; i < chunkCount; i++) {
+            Chunk chunk = chunks[i];
+            retval += 32 + (chunk.bits == null ? 2L * chunk.array.length : 8L * BITMAP_WORDS);
+        }
+        return retval;
+    }
+
+    /**
+     * Returns a new set containing the ints present in either this set or the given set.
+     *
+     * @param other another IntBitmap
+     * @return a new IntBitmap
+     */
+    public IntBitmap or(IntBitmap other) {
+        return combine(this, other, OR);
+    }
+
+    /**
+     * Returns a new set containing the ints present in both this set and the given set.
+     *
+     * @param other another IntBitmap
+     * @return a new IntBitmap
+     */
+    public IntBitmap and(IntBitmap other) {
+        return combine(this, other, AND);
+    }
+
+    /**
+     * Returns a new set containing the ints present in this set but not the given set.
+     *
+     * @param other another IntBitmap
+     * @return a new IntBitmap
+     */
+    public IntBitmap andNot(IntBitmap other) {
+        return combine(this, other, ANDNOT);
+    }
+
+    /**
+     * Returns a new set containing the ints present in exactly one of this set and the given set.
+     *
+     * @param other another IntBitmap
+     * @return a new IntBitmap
+     */
+    public IntBitmap xor(IntBitmap other) {
+        return combine(this, other, XOR);
+    }
+
+    /**
+     * Returns the number of ints present in both this set and the given set, without building the
+     * intersection.
+     *
+     * @param other another IntBitmap
+     * @return the size of the intersection
+     */
+    public int andSize(IntBitmap other) {
+        int retval = 0;
+        int i = 0;
+        int j = 0;
+        while ((i < chunkCount) && (j < other.chunkCount)) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (other.keys[j] < keys[i]) {
+                j++;
+            } else {
+                retval += Chunk.andSize(chunks[i], other.chunks[j]);
+                i++;
+                j++;
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns all the ints in the set, in ascending order.
+     *
+     * @return a new array of ints
+     */
+    public int[] toArray() {
+        return toArray(0, size);
+    }
+
+    /**
+     * Returns a range of the ints in the set, in ascending order.
+     *
+     * @param start the position in the set of the first int to return, from zero
+     * @param limit the maximum number of ints to return
+     * @return a new array of ints
+     */
+    public int[] toArray(int start, int limit) {
+        int end = (int) Math.min((long) start + limit, size);
+        if (start >= end) {
+            return new int[0];
+        }
+        int[] retval = new int[end - start];
+        int pos = 0;
+        int skipped = 0;
+        for (int i = 0; (i < chunkCount) && (pos < retval.length); i++) {
+            Chunk chunk = chunks[i];
+            if (skipped + chunk.size <= start) {
+                skipped += chunk.size;
+                continue;
+            }
+            int high = keys[i] << 16;
+            if (chunk.bits == null) {
+                for (int o = Math.max(0, start - skipped); (o < chunk.size)
+                        && (pos < retval.length); o++) {
+                    retval[pos++] = high | chunk.array[o];
+                }
+            } else {
+                int toSkip = Math.max(0, start - skipped);
+                for (int w = 0; (w < BITMAP_WORDS) && (pos < retval.length); w++) {
+                    long word = chunk.bits[w];
+                    int count = Long.bitCount(word);
+                    if (toSkip >= count) {
+                        toSkip -= count;
+                        continue;
+                    }
+                    while ((word != 0) && (pos < retval.length)) {
+                        int bit = Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        if (toSkip > 0) {
+                            toSkip--;
+                        } else {
+                            retval[pos++] = high | (w << 6) | bit;
+                        }
+                    }
+                }
+            }
+            skipped += chunk.size;
+        }
+        return retval;
+    }
+
+    /**
+     * Returns an Iterator over the ints in the set, in ascending order. The Iterator does not
+     * support removal, and must not be used while the set is being altered.
+     *
+     * @return an Iterator of Integers
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private int chunkNo = 0;
+            private int low = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (chunkNo < chunkCount) {
+                    int next = chunks[chunkNo].nextFrom(low);
+                    if (next != -1) {
+                        low = next;
+                        return true;
+                    }
+                    chunkNo++;
+                    low = 0;
+                }
+                return false;
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return new Integer((keys[chunkNo] << 16) | (low++));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof IntBitmap)) {
+            return false;
+        }
+        IntBitmap other = (IntBitmap) o;
+        return (size == other.size) && combine(this, other, XOR).isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int retval = size;
+        for (int i = 0; i < chunkCount; i++) {
+            retval = 31 * retval + keys[i] * 7 + chunks[i].size;
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuffer retval = new StringBuffer("[");
+        boolean needComma = false;
+        for (Integer value : this) {
+            if (needComma) {
+                retval.append(", ");
+            }
+            needComma = true;
+            retval.append(value);
+        }
+        retval.append("]");
+        return retval.toString();
+    }
+
+    private void insertChunk(int chunkNo, int key, Chunk chunk) {
+        if (chunkCount == keys.length) {
+            keys = Arrays.copyOf(keys, chunkCount * 2);
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        System.arraycopy(keys, chunkNo, keys, chunkNo + 1, chunkCount - chunkNo);
+        System.arraycopy(chunks, chunkNo, chunks, chunkNo + 1, chunkCount - chunkNo);
+        keys[chunkNo] = key;
+        chunks[chunkNo] = chunk;
+        chunkCount++;
+    }
+
+    private void appendChunk(int key, Chunk chunk) {
+        if (chunk != null) {
+            insertChunk(chunkCount, key, chunk);
+            size += chunk.size;
+        }
+    }
+
+    private static IntBitmap combine(IntBitmap a, IntBitmap b, int op) {
+        IntBitmap retval = new IntBitmap();
+        int i = 0;
+        int j = 0;
+        while ((i < a.chunkCount) || (j < b.chunkCount)) {
+            if ((j >= b.chunkCount) || ((i < a.chunkCount) && (a.keys[i] < b.keys[j]))) {
+                if (op != AND) {
+                    retval.appendChunk(a.keys[i], a.chunks[i].copy());
+                }
+                i++;
+            } else if ((i >= a.chunkCount) || (b.keys[j] < a.keys[i])) {
+                if ((op == OR) || (op == XOR)) {
+                    retval.appendChunk(b.keys[j], b.chunks[j].copy());
+                }
+                j++;
+            } else {
+                retval.appendChunk(a.keys[i], Chunk.combine(a.chunks[i], b.chunks[j], op));
+                i++;
+                j++;
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * The bottom 16 bits of the ints in a chunk, held either as a sorted array or as a bitmap.
+     */
+    private static final class Chunk
+    {
+        private char[] array;
+        private long[] bits;
+        private int size;
+
+        Chunk(char[] array, long[] bits, int size) {
+            this.array = array;
+            this.bits = bits;
+            this.size = size;
+        }
+
+        boolean contains(char low) {
+            if (bits != null) {
+                return (bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, size, low) >= 0;
+        }
+
+        boolean add(char low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) != 0) {
+                    return false;
+                }
+                bits[low >>> 6] |= mask;
+                size++;
+                return true;
+            }
+            int pos;
+            if ((size == 0) || (array[size - 1] < low)) {
+                pos = size;
+            } else {
+                pos = Arrays.binarySearch(array, 0, size, low);
+                if (pos >= 0) {
+                    return false;
+                }
+                pos = -pos - 1;
+            }
+            if (size == ARRAY_MAX) {
+                bits = getBits();
+                array = null;
+                bits[low >>> 6] |= 1L << low;
+                size++;
+                return true;
+            }
+            if (size == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX, size * 2));
+            }
+            System.arraycopy(array, pos, array, pos + 1, size - pos);
+            array[pos] = low;
+            size++;
+            return true;
+        }
+
+        /**
+         * Returns the smallest value in the chunk that is at least the given value, or -1.
+         */
+        int nextFrom(int low) {
+            if (low > 0xFFFF) {
+                return -1;
+            }
+            if (bits == null) {
+                int pos = Arrays.binarySearch(array, 0, size, (char) low);
+                if (pos < 0) {
+                    pos = -pos - 1;
+                }
+                return (pos < size ? array[pos] : -1);
+            }
+            int w = low >>> 6;
+            long word = bits[w] & (-1L << low);
+            while (word == 0) {
+                w++;
+                if (w >= BITMAP_WORDS) {
+                    return -1;
+                }
+                word = bits[w];
+            }
+            return (w << 6) | Long.numberOfTrailingZeros(word);
+        }
+
+        Chunk copy() {
+            if (bits != null) {
+                return new Chunk(null, bits.clone(), size);
+            }
+            return new Chunk(Arrays.copyOf(array, size), null, size);
+        }
+
+        long[] getBits() {
+            if (bits != null) {
+                return bits.clone();
+            }
+            long[] retval = new long[BITMAP_WORDS];
+            for (int i = 0; i < size; i++) {
+                char low = array[i];
+                retval[low >>> 6] |= 1L << low;
+            }
+            return retval;
+        }
+
+        static int andSize(Chunk a, Chunk b) {
+            int retval = 0;
+            if ((a.bits != null) && (b.bits != null)) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    retval += Long.bitCount(a.bits[w] & b.bits[w]);
+                }
+            } else if (a.bits != null) {
+                for (int i = 0; i < b.size; i++) {
+                    retval += (a.contains(b.array[i]) ? 1 : 0);
+                }
+            } else if (b.bits != null) {
+                for (int i = 0; i < a.size; i++) {
+                    retval += (b.contains(a.array[i]) ? 1 : 0);
+                }
+            } else {
+                int i = 0;
+                int j = 0;
+                while ((i < a.size) && (j < b.size)) {
+                    if (a.array[i] < b.array[j]) {
+                        i++;
+                    } else if (a.array[i] > b.array[j]) {
+                        j++;
+                    } else {
+                        retval++;
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            return retval;
+        }
+
+        static Chunk combine(Chunk a, Chunk b, int op) {
+            if ((a.bits == null) && (b.bits == null)) {
+                char[] out = new char[op == AND ? Math.min(a.size, b.size)
+                    : (op == ANDNOT ? a.size : a.size + b.size)];
+                int n = 0;
+                int i = 0;
+                int j = 0;
+                while ((i < a.size) && (j < b.size)) {
+                    char x = a.array[i];
+                    char y = b.array[j];
+                    if (x < y) {
+                        if (op != AND) {
+                            out[n++] = x;
+                        }
+                        i++;
+                    } else if (x > y) {
+                        if ((op == OR) || (op == XOR)) {
+                            out[n++] = y;
+                        }
+                        j++;
+                    } else {
+                        if ((op == OR) || (op == AND)) {
+                            out[n++] = x;
+                        }
+                        i++;
+                        j++;
+                    }
+                }
+                if (op != AND) {
+                    while (i < a.size) {
+                        out[n++] = a.array[i++];
+                    }
+                }
+                if ((op == OR) || (op == XOR)) {
+                    while (j < b.size) {
+                        out[n++] = b.array[j++];
+                    }
+                }
+                if (n == 0) {
+                    return null;
+                }
+                Chunk retval = new Chunk(out, null, n);
+                if (n > ARRAY_MAX) {
+                    retval.bits = retval.getBits();
+                    retval.array = null;
+                }
+                return retval;
+            }
+            long[] x = a.getBits();
+            long[] y = (b.bits != null ? b.bits : b.getBits());
+            int count = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                switch (op) {
+                    case OR:
+                        x[w] |= y[w];
+                        break;
+                    case AND:
+                        x[w] &= y[w];
+                        break;
+                    case ANDNOT:
+                        x[w] &= ~y[w];
+                        break;
+                    default:
+                        x[w] ^= y[w];
+                        break;
+                }
+                count += Long.bitCount(x[w]);
+            }
+            if (count == 0) {
+                return null;
+            } else if (count > ARRAY_MAX) {
+                return new Chunk(null, x, count);
+            }
+            char[] out = new char[count];
+            int n = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = x[w];
+                while (word != 0) {
+                    out[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new Chunk(out, null, count);
+        }
+    }
+}
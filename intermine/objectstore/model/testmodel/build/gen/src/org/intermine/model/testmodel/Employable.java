@@ -0,0 +1,8 @@
+package org.intermine.model.testmodel;
+
+public interface Employable extends org.intermine.model.testmodel.Thing
+{
+    public java.lang.String getName();
+    public void setName(final java.lang.String name);
+
+}
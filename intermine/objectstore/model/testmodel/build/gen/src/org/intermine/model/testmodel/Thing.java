@@ -0,0 +1,5 @@
+package org.intermine.model.testmodel;
+
+public interface Thing extends org.intermine.model.InterMineObject
+{
+}
@@ -11,8 +11,10 @@ package org.intermine.objectstore;
  */
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -23,9 +25,13 @@ import org.intermine.model.testmodel.CEO;
 import org.intermine.model.testmodel.Employee;
 import org.intermine.model.testmodel.Manager;
 import org.intermine.model.testmodel.Types;
+import org.intermine.modelproduction.MetadataManager;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.SingletonResults;
+import org.intermine.sql.Database;
+import org.intermine.util.PropertiesUtil;
 
 public class ObjectStoreSummaryTest extends StoreDataTestCase
 {
@@ -153,4 +159,54 @@ public class ObjectStoreSummaryTest extends StoreDataTestCase
         assertEquals(10, oss.maxValues);
         assertEquals(10, ossFromProps.maxValues);
     }
+
+    public void testThreads() throws Exception {
+        Properties config = new Properties();
+        config.put("max.field.values", "10");
+        ObjectStore os = ObjectStoreFactory.getObjectStore("os.unittest");
+        Properties expected = new ObjectStoreSummary(os, config).toProperties();
+        config.put("summary.threads", "4");
+        assertEquals(expected, new ObjectStoreSummary(os, config).toProperties());
+    }
+
+    public void testResume() throws Exception {
+        ObjectStore os = ObjectStoreFactory.getObjectStore("os.unittest");
+        Database db = ((ObjectStoreInterMineImpl) os).getDatabase();
+        Properties checkpoint = new Properties();
+        checkpoint.put("checkpoint.key", SummaryJobRunner.getCheckpointKey(db,
+                    ObjectStoreSummary.DEFAULT_MAX_VALUES + "/false/[]"));
+        checkpoint.put("count.org.intermine.model.testmodel.Company", "42");
+        MetadataManager.store(db, MetadataManager.OS_SUMMARY_CHECKPOINT, PropertiesUtil.serialize(checkpoint));
+        ObjectStoreSummary oss = new ObjectStoreSummary(os, new Properties());
+        assertEquals(42, oss.getClassCount("org.intermine.model.testmodel.Company"));
+        assertNull(MetadataManager.retrieve(db, MetadataManager.OS_SUMMARY_CHECKPOINT));
+
+        // saved results for other settings are ignored
+        checkpoint.put("checkpoint.key", SummaryJobRunner.getCheckpointKey(db,
+                    ObjectStoreSummary.DEFAULT_MAX_VALUES + "/false/[Company.name]"));
+        MetadataManager.store(db, MetadataManager.OS_SUMMARY_CHECKPOINT, PropertiesUtil.serialize(checkpoint));
+        oss = new ObjectStoreSummary(os, new Properties());
+        assertEquals(2, oss.getClassCount("org.intermine.model.testmodel.Company"));
+    }
+
+    public void testEncodeFieldValues() throws Exception {
+        // a field whose only value is the empty string is not mistaken for one with no values
+        assertEquals(Collections.singletonList(""), ObjectStoreSummary.decodeFieldValues(
+                    ObjectStoreSummary.encodeFieldValues(Collections.<Object>singletonList(""))));
+        assertEquals(Collections.emptyList(), ObjectStoreSummary.decodeFieldValues(
+                    ObjectStoreSummary.encodeFieldValues(Collections.emptyList())));
+        List<Object> values = Arrays.asList(new Object[] {"a", null, "", "b"});
+        assertEquals(values, ObjectStoreSummary.decodeFieldValues(
+                    ObjectStoreSummary.encodeFieldValues(values)));
+    }
+
+    public void testApproximate() throws Exception {
+        Properties config = new Properties();
+        config.put("summary.approximate", "true");
+        ObjectStore os = ObjectStoreFactory.getObjectStore("os.unittest");
+        ObjectStoreSummary oss = new ObjectStoreSummary(os, config);
+        assertTrue(oss.getClassCount("org.intermine.model.testmodel.Company") >= 0);
+        assertEquals(Arrays.asList(new Object [] {"Mr.", null}),
+                     oss.getFieldValues("org.intermine.model.testmodel.Manager", "title"));
+    }
 }
@@ -0,0 +1,72 @@
+package org.intermine.objectstore;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class SummaryJobRunnerTest extends TestCase
+{
+    public SummaryJobRunnerTest(String arg) {
+        super(arg);
+    }
+
+    public void testRun() throws Exception {
+        SummaryJobRunner runner = new SummaryJobRunner(3, null, "");
+        try {
+            // the jobs only finish if all three run at once
+            final CountDownLatch latch = new CountDownLatch(3);
+            Map<String, Callable<String>> jobs = new LinkedHashMap<String, Callable<String>>();
+            for (final String key : new String[] {"c", "a", "b"}) {
+                jobs.put(key, new Callable<String>() {
+                    public String call() throws Exception {
+                        latch.countDown();
+                        assertTrue(latch.await(10, TimeUnit.SECONDS));
+                        return key.toUpperCase();
+                    }
+                });
+            }
+            Map<String, String> results = runner.run(jobs);
+            assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<String>(results.keySet()));
+            assertEquals(Arrays.asList("C", "A", "B"), new ArrayList<String>(results.values()));
+            assertEquals(0, runner.getResumedCount());
+        } finally {
+            runner.close();
+        }
+    }
+
+    public void testFailure() throws Exception {
+        SummaryJobRunner runner = new SummaryJobRunner(2, null, "");
+        try {
+            Map<String, Callable<String>> jobs = new LinkedHashMap<String, Callable<String>>();
+            jobs.put("fail", new Callable<String>() {
+                public String call() throws Exception {
+                    throw new ObjectStoreException("broken");
+                }
+            });
+            try {
+                runner.run(jobs);
+                fail("Expected ObjectStoreException");
+            } catch (ObjectStoreException e) {
+                assertEquals("broken", e.getMessage());
+            }
+        } finally {
+            runner.close();
+        }
+    }
+}
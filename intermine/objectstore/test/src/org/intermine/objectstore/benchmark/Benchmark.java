@@ -0,0 +1,47 @@
+package org.intermine.objectstore.benchmark;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+
+/**
+ * A microbenchmark of a single operation, run repeatedly by a BenchmarkRunner. All the data the
+ * operation needs should be built in setUp, so that run measures nothing but the operation.
+ */
+public abstract class Benchmark
+{
+    /**
+     * @return the name to report the results under
+     */
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Prepare the data for the operation. The ObjectStore provides the model, schema and database
+     * to work against.
+     *
+     * @param os an ObjectStore on the testmodel
+     * @throws Exception if anything goes wrong
+     */
+    public void setUp(ObjectStoreInterMineImpl os) throws Exception {
+        // nothing to prepare by default
+    }
+
+    /**
+     * Perform the operation once.
+     *
+     * @return the result of the operation, which the runner consumes so that it can't be
+     * optimised away
+     * @throws Exception if anything goes wrong
+     */
+    public abstract Object run() throws Exception;
+}
@@ -0,0 +1,142 @@
+package org.intermine.objectstore.benchmark;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.text.DecimalFormat;
+
+/**
+ * Runs Benchmarks in the usual way: a number of warmup iterations so that the JIT compiler has
+ * settled, then a number of measured iterations of fixed length, reporting the mean throughput
+ * and its standard deviation across the measured iterations.
+ */
+public class BenchmarkRunner
+{
+    private int warmupIterations = 5;
+    private int iterations = 10;
+    private long iterationTime = 1000;
+    private volatile int sink = 0;
+
+    /**
+     * @param warmupIterations the number of iterations to run before measuring
+     */
+    public void setWarmupIterations(int warmupIterations) {
+        this.warmupIterations = warmupIterations;
+    }
+
+    /**
+     * @param iterations the number of iterations to measure
+     */
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * @param iterationTime the length of each iteration, in milliseconds
+     */
+    public void setIterationTime(long iterationTime) {
+        this.iterationTime = iterationTime;
+    }
+
+    /**
+     * Run a Benchmark, which must already have been set up.
+     *
+     * @param benchmark the Benchmark
+     * @return the measured throughput
+     * @throws Exception if the operation fails
+     */
+    public Result run(Benchmark benchmark) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            iterate(benchmark);
+        }
+        double[] opsPerSecond = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            opsPerSecond[i] = iterate(benchmark);
+        }
+        return new Result(benchmark.getName(), opsPerSecond);
+    }
+
+    private double iterate(Benchmark benchmark) throws Exception {
+        long ops = 0;
+        int consumed = 0;
+        long start = System.nanoTime();
+        long end = start + iterationTime * 1000000L;
+        long now;
+        do {
+            consumed ^= System.identityHashCode(benchmark.run());
+            ops++;
+            now = System.nanoTime();
+        } while (now < end);
+        sink ^= consumed;
+        return ops * 1000000000.0 / (now - start);
+    }
+
+    /**
+     * The throughput of a Benchmark over the measured iterations.
+     */
+    public static class Result
+    {
+        private final String name;
+        private final double mean;
+        private final double deviation;
+
+        /**
+         * Constructor.
+         *
+         * @param name the name of the Benchmark
+         * @param opsPerSecond the throughput of each measured iteration
+         */
+        public Result(String name, double[] opsPerSecond) {
+            this.name = name;
+            double total = 0.0;
+            for (double ops : opsPerSecond) {
+                total += ops;
+            }
+            mean = total / opsPerSecond.length;
+            double squares = 0.0;
+            for (double ops : opsPerSecond) {
+                squares += (ops - mean) * (ops - mean);
+            }
+            deviation = opsPerSecond.length > 1
+                ? Math.sqrt(squares / (opsPerSecond.length - 1)) : 0.0;
+        }
+
+        /**
+         * @return the name of the Benchmark
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the mean number of operations per second
+         */
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * @return the standard deviation of the number of operations per second
+         */
+        public double getDeviation() {
+            return deviation;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            DecimalFormat format = new DecimalFormat("#0.0");
+            return name + ": " + format.format(mean) + " +/- " + format.format(deviation)
+                + " ops/s (" + new DecimalFormat("#0.000").format(1000000.0 / mean) + " us/op)";
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.intermine.objectstore.cache;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class BoundedObjectCacheTest extends TestCase
+{
+    private static final Weigher<Integer, String> WEIGHER = new Weigher<Integer, String>() {
+        public int weigh(Integer key, String value) {
+            return value == null ? 1 : value.length();
+        }
+    };
+
+    public BoundedObjectCacheTest(String arg) {
+        super(arg);
+    }
+
+    public void testGetPut() throws Exception {
+        BoundedObjectCache<Integer, String> cache = new BoundedObjectCache<Integer, String>(1000,
+                4, WEIGHER);
+        assertNull(cache.get(1));
+        assertFalse(cache.containsKey(1));
+        cache.put(1, "one");
+        cache.put(2, null);
+        assertEquals("one", cache.get(1));
+        assertNull(cache.get(2));
+        assertTrue(cache.containsKey(2));
+        assertEquals(2, cache.size());
+        assertEquals(4, cache.getWeight());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.put(1, "uno!");
+        assertEquals("uno!", cache.get(1));
+        assertEquals(5, cache.getWeight());
+
+        cache.remove(1);
+        assertFalse(cache.containsKey(1));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+
+    public void testGetEntry() throws Exception {
+        BoundedObjectCache<Integer, String> cache = new BoundedObjectCache<Integer, String>(1000,
+                4, WEIGHER);
+        assertNull(cache.getEntry(1));
+        assertNull(cache.putIfAbsent(1, "one"));
+        assertNull(cache.putIfAbsent(2, null));
+        assertEquals("one", cache.putIfAbsent(1, "uno").getValue());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+
+        Map.Entry<Integer, String> entry = cache.getEntry(2);
+        assertNotNull(entry);
+        assertNull(entry.getValue());
+        assertEquals("one", cache.getEntry(1).getValue());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    public void testWeightBound() throws Exception {
+        BoundedObjectCache<Integer, String> cache = new BoundedObjectCache<Integer, String>(100,
+                1, WEIGHER);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, "0123456789");
+            assertTrue(cache.getWeight() <= 100);
+        }
+        assertEquals(10, cache.size());
+        assertEquals(990, cache.getEvictionCount());
+
+        // Entries larger than the whole cache are not kept
+        cache.put(5000, "012345678901234567890123456789012345678901234567890123456789"
+                + "0123456789012345678901234567890123456789012345678901234567890123456789");
+        assertFalse(cache.containsKey(5000));
+    }
+
+    public void testFrequentEntriesSurviveScan() throws Exception {
+        BoundedObjectCache<Integer, String> cache = new BoundedObjectCache<Integer, String>(1000,
+                1, WEIGHER);
+        // One more entry than the hot set, so that all of the hot set leaves the window
+        for (int i = 0; i < 51; i++) {
+            cache.put(i, "0123456789");
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get(i);
+            }
+        }
+        // A scan of many entries that are each used only once
+        for (int i = 1000; i < 11000; i++) {
+            cache.get(i);
+            cache.put(i, "0123456789");
+        }
+        int survivors = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.containsKey(i)) {
+                survivors++;
+            }
+        }
+        assertEquals(50, survivors);
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        final BoundedObjectCache<Integer, String> cache
+            = new BoundedObjectCache<Integer, String>(5000, 8, WEIGHER);
+        Thread[] threads = new Thread[8];
+        final Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            Integer key = new Integer((i * 7 + offset) % 3000);
+                            String value = cache.get(key);
+                            if (value == null) {
+                                cache.put(key, key.toString());
+                            } else {
+                                assertEquals(key.toString(), value);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure[0] != null) {
+            throw new Exception(failure[0]);
+        }
+        assertTrue(cache.getWeight() <= cache.getMaxWeight());
+        assertEquals(8 * 20000, cache.getHitCount() + cache.getMissCount());
+    }
+}
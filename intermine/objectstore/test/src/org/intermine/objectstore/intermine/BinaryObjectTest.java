@@ -0,0 +1,117 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.model.testmodel.Company;
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.model.testmodel.Types;
+import org.intermine.objectstore.ObjectStoreFactory;
+import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.util.DynamicBean;
+import org.intermine.util.DynamicUtil;
+
+public class BinaryObjectTest extends TestCase
+{
+    ObjectStoreInterMineImpl os;
+
+    public void setUp() throws Exception {
+        os = (ObjectStoreInterMineImpl) ObjectStoreFactory.getObjectStore("os.unittest");
+    }
+
+    public void testRoundTrip() throws Exception {
+        Employee e = new Employee();
+        Department d = new Department();
+        e.setId(new Integer(1234));
+        e.setName("Employee1 $_^ with a delimiter and a \u00e9");
+        e.setAge(-42);
+        e.setFullTime(true);
+        d.setId(new Integer(5678));
+        e.setDepartment(d);
+
+        String encoded = BinaryObjectRenderer.render(e, os.getModel()).toString();
+        assertTrue(BinaryObjectParser.isBinary(encoded));
+        assertTrue(encoded.length() < NotXmlRenderer.render(e).length());
+        assertEquals(-1, encoded.indexOf('\u0000'));
+
+        // NotXmlParser must accept the binary format too
+        Employee reparsed = (Employee) NotXmlParser.parse(encoded, os);
+        assertEquals(e.getName(), reparsed.getName());
+        assertEquals(e.getId(), reparsed.getId());
+        assertEquals(-42, reparsed.getAge());
+        assertTrue(reparsed.getFullTime());
+        ProxyReference o = (ProxyReference) reparsed.getFieldProxy("department");
+        assertEquals(new Integer(5678), o.getId());
+    }
+
+    public void testDifferentModel() throws Exception {
+        Employee e = new Employee();
+        e.setId(new Integer(1234));
+        e.setName("Employee1");
+        String encoded = BinaryObjectRenderer.render(e, os.getModel()).toString();
+
+        // the same object as if written with another version of the model
+        BinaryObjectLayout.Reader in = new BinaryObjectLayout.Reader(encoded, 1);
+        long fingerprint = in.readVarLong();
+        StringBuilder sb = new StringBuilder();
+        sb.append(BinaryObjectParser.FORMAT_VERSION_1);
+        BinaryObjectLayout.writeVarLong(sb, fingerprint ^ 1);
+        sb.append(encoded.substring(in.getPosition()));
+        try {
+            NotXmlParser.parse(sb.toString(), os);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    public void testRoundTripTypes() throws Exception {
+        Types t = new Types();
+        t.setId(new Integer(1));
+        t.setIntType(Integer.MIN_VALUE);
+        t.setLongType(Long.MAX_VALUE);
+        t.setDoubleType(Math.PI);
+        t.setFloatType(-1.5F);
+        t.setShortType((short) 300);
+        t.setBooleanObjType(Boolean.FALSE);
+        t.setDateObjType(new java.util.Date(1000000000000L));
+        t.setBigDecimalObjType(new java.math.BigDecimal("9876543210.0123456789"));
+
+        String encoded = BinaryObjectRenderer.render(t, os.getModel()).toString();
+        Types reparsed = (Types) NotXmlParser.parse(encoded, os);
+        assertEquals(NotXmlRenderer.render(t).toString(),
+                NotXmlRenderer.render(reparsed).toString());
+    }
+
+    public void testRoundTripDynamic() throws Exception {
+        Company c = (Company) DynamicUtil.createObject(Company.class);
+        c.setId(new Integer(74350));
+        c.setName("CompanyC");
+        c.setVatNumber(100);
+        ProxyReference address = new ProxyReference(os, new Integer(74328),
+                org.intermine.model.InterMineObject.class);
+        c.setFieldValue("address", address);
+
+        String encoded = BinaryObjectRenderer.render(c, os.getModel()).toString();
+        Company reparsed = (Company) NotXmlParser.parse(encoded, os);
+
+        assertEquals("CompanyC", reparsed.getName());
+        assertEquals(100, reparsed.getVatNumber());
+        assertEquals(new Integer(74350), reparsed.getId());
+        Map<?, ?> fieldMap = ((DynamicBean) ((net.sf.cglib.proxy.Factory) reparsed)
+                .getCallback(0)).getMap();
+        ProxyReference addressRef = (ProxyReference) fieldMap.get("address");
+        assertEquals(new Integer(74328), addressRef.getId());
+    }
+}
@@ -0,0 +1,73 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.benchmark.Benchmark;
+
+/**
+ * Measures either NotXmlRenderer rendering an Employee, or NotXmlParser parsing it back again.
+ */
+public class NotXmlBenchmark extends Benchmark
+{
+    private final boolean parse;
+    private ObjectStoreInterMineImpl os;
+    private Employee employee;
+    private String notXml;
+
+    /**
+     * Constructor.
+     *
+     * @param parse true to measure parsing, false to measure rendering
+     */
+    public NotXmlBenchmark(boolean parse) {
+        this.parse = parse;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return parse ? "NotXmlParser.parse" : "NotXmlRenderer.render";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) {
+        this.os = os;
+        Department department = new Department();
+        department.setId(new Integer(2));
+        employee = new Employee();
+        employee.setId(new Integer(1));
+        employee.setName("Employee1");
+        employee.setAge(42);
+        employee.setFullTime(true);
+        employee.setEnd("Some longer text which doesn't really say much about Employee1 but is"
+                + " just taking up space.");
+        employee.setDepartment(department);
+        notXml = NotXmlRenderer.render(employee).toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object run() throws ClassNotFoundException {
+        if (parse) {
+            return NotXmlParser.parse(notXml, os);
+        }
+        return NotXmlRenderer.render(employee);
+    }
+}
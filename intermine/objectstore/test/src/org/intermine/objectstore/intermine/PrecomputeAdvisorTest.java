@@ -0,0 +1,115 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.model.testmodel.Company;
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.intermine.PrecomputeAdvisor.Candidate;
+import org.intermine.objectstore.intermine.PrecomputeAdvisor.Proposal;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryCollectionReference;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.SimpleConstraint;
+
+public class PrecomputeAdvisorTest extends TestCase
+{
+    public PrecomputeAdvisorTest(String arg) {
+        super(arg);
+    }
+
+    private static Query employeesOf(String companyName, int minAge) {
+        Query q = new Query();
+        QueryClass qcCompany = new QueryClass(Company.class);
+        QueryClass qcDepartment = new QueryClass(Department.class);
+        QueryClass qcEmployee = new QueryClass(Employee.class);
+        q.addFrom(qcCompany, "a1_");
+        q.addFrom(qcDepartment, "a2_");
+        q.addFrom(qcEmployee, "a3_");
+        q.addToSelect(new QueryField(qcEmployee, "name"));
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+        cs.addConstraint(new ContainsConstraint(new QueryCollectionReference(qcCompany,
+                        "departments"), ConstraintOp.CONTAINS, qcDepartment));
+        cs.addConstraint(new ContainsConstraint(new QueryObjectReference(qcEmployee,
+                        "department"), ConstraintOp.CONTAINS, qcDepartment));
+        cs.addConstraint(new SimpleConstraint(new QueryField(qcCompany, "name"),
+                    ConstraintOp.EQUALS, new QueryValue(companyName)));
+        ConstraintSet or = new ConstraintSet(ConstraintOp.OR);
+        or.addConstraint(new SimpleConstraint(new QueryField(qcEmployee, "age"),
+                    ConstraintOp.GREATER_THAN, new QueryValue(new Integer(minAge))));
+        or.addConstraint(new SimpleConstraint(new QueryField(qcEmployee, "fullTime"),
+                    ConstraintOp.EQUALS, new QueryValue(Boolean.TRUE)));
+        cs.addConstraint(or);
+        q.setConstraint(cs);
+        return q;
+    }
+
+    public void testSkeleton() throws Exception {
+        Query skeleton = PrecomputeAdvisor.getSkeleton(employeesOf("CompanyA", 30));
+        assertEquals("SELECT a1_, a2_, a3_ FROM org.intermine.model.testmodel.Company AS a1_, org.intermine.model.testmodel.Department AS a2_, org.intermine.model.testmodel.Employee AS a3_ WHERE (a1_.departments CONTAINS a2_ AND a3_.department CONTAINS a2_)",
+                skeleton.toString());
+        // queries differing only in their values have the same skeleton
+        assertEquals(skeleton.toString(),
+                PrecomputeAdvisor.getSkeleton(employeesOf("CompanyB", 50)).toString());
+    }
+
+    public void testNoSkeleton() throws Exception {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        assertNull(PrecomputeAdvisor.getSkeleton(q));
+
+        // two classes, but not joined
+        QueryClass qc2 = new QueryClass(Department.class);
+        q.addFrom(qc2);
+        q.setConstraint(new SimpleConstraint(new QueryField(qc2, "name"), ConstraintOp.EQUALS,
+                    new QueryValue("DepartmentA")));
+        assertNull(PrecomputeAdvisor.getSkeleton(q));
+    }
+
+    public void testChoose() throws Exception {
+        Candidate hot = new Candidate("hot", null, null, 1000, 10.0, 100);
+        Candidate big = new Candidate("big", null, null, 1000, 10.0, 10000);
+        Candidate kept = new Candidate("kept", null, "precomp_1", 100, 5.0, 200);
+        Candidate cold = new Candidate(null, null, "precomp_2", 0, 0.0, 50);
+        List<Proposal> proposals = PrecomputeAdvisor.choose(Arrays.asList(big, cold, kept, hot),
+                1000);
+        List<String> descriptions = new ArrayList<String>();
+        for (Proposal proposal : proposals) {
+            descriptions.add(proposal.isCreate() ? "create " + proposal.getCandidate().getKey()
+                    : "drop " + proposal.getTableName());
+        }
+        assertEquals(Arrays.asList("drop precomp_2", "create hot"), descriptions);
+
+        // with a smaller budget the existing table gives way to the better one
+        proposals = PrecomputeAdvisor.choose(Arrays.asList(big, cold, kept, hot), 250);
+        descriptions.clear();
+        for (Proposal proposal : proposals) {
+            descriptions.add(proposal.isCreate() ? "create " + proposal.getCandidate().getKey()
+                    : "drop " + proposal.getTableName());
+        }
+        assertEquals(Arrays.asList("drop precomp_1", "drop precomp_2", "create hot"),
+                descriptions);
+    }
+}
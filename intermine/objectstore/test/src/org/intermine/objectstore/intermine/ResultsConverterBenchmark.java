@@ -0,0 +1,78 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.benchmark.Benchmark;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.sql.DatabaseUtil;
+
+import com.mockobjects.sql.MockMultiRowResultSet;
+
+/**
+ * Measures ResultsConverter turning a batch of rows into ResultsRows, from a synthetic ResultSet
+ * holding an Employee object column and two attribute columns. The object cache is flushed before
+ * each conversion, so every object is parsed.
+ */
+public class ResultsConverterBenchmark extends Benchmark
+{
+    private static final int ROWS = 1000;
+
+    private ObjectStoreInterMineImpl os;
+    private Query q;
+    private String[] columnNames;
+    private Object[][] rows;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) {
+        this.os = os;
+        q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        QueryField name = new QueryField(qc, "name");
+        QueryField age = new QueryField(qc, "age");
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        q.addToSelect(name);
+        q.addToSelect(age);
+        String alias = DatabaseUtil.generateSqlCompatibleName(q.getAliases().get(qc));
+        columnNames = new String[] {alias + "id", alias,
+            DatabaseUtil.generateSqlCompatibleName(q.getAliases().get(name)),
+            DatabaseUtil.generateSqlCompatibleName(q.getAliases().get(age))};
+        rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            Employee e = new Employee();
+            e.setId(new Integer(i + 1));
+            e.setName("Employee" + i);
+            e.setAge(i % 70);
+            e.setFullTime(i % 2 == 0);
+            rows[i] = new Object[] {e.getId(), NotXmlRenderer.render(e).toString(), e.getName(),
+                new Integer(e.getAge())};
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object run() throws ObjectStoreException {
+        os.flushObjectById();
+        MockMultiRowResultSet sqlResults = new MockMultiRowResultSet();
+        sqlResults.setupColumnNames(columnNames);
+        sqlResults.setupRows(rows);
+        return ResultsConverter.convert(sqlResults, q, os, null, null, false, null, null, null);
+    }
+}
@@ -0,0 +1,81 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.model.testmodel.Company;
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.benchmark.Benchmark;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryCollectionReference;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.SimpleConstraint;
+import org.intermine.sql.Database;
+
+/**
+ * Measures SqlGenerator converting a three-class join with attribute and bag constraints into
+ * SQL. This uses the uncached generate method, so every operation does the whole conversion.
+ */
+public class SqlGeneratorBenchmark extends Benchmark
+{
+    private Query q;
+    private DatabaseSchema schema;
+    private Database db;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) {
+        schema = os.getSchema();
+        db = os.getDatabase();
+        q = new Query();
+        QueryClass qcCompany = new QueryClass(Company.class);
+        QueryClass qcDepartment = new QueryClass(Department.class);
+        QueryClass qcEmployee = new QueryClass(Employee.class);
+        q.addFrom(qcCompany);
+        q.addFrom(qcDepartment);
+        q.addFrom(qcEmployee);
+        q.addToSelect(qcCompany);
+        q.addToSelect(qcDepartment);
+        q.addToSelect(new QueryField(qcEmployee, "name"));
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+        cs.addConstraint(new ContainsConstraint(new QueryCollectionReference(qcCompany,
+                        "departments"), ConstraintOp.CONTAINS, qcDepartment));
+        cs.addConstraint(new ContainsConstraint(new QueryCollectionReference(qcDepartment,
+                        "employees"), ConstraintOp.CONTAINS, qcEmployee));
+        cs.addConstraint(new SimpleConstraint(new QueryField(qcEmployee, "age"),
+                    ConstraintOp.GREATER_THAN, new QueryValue(new Integer(30))));
+        cs.addConstraint(new BagConstraint(new QueryField(qcCompany, "name"), ConstraintOp.IN,
+                    Arrays.asList("CompanyA", "CompanyB", "CompanyC")));
+        q.setConstraint(cs);
+        q.addToOrderBy(new QueryField(qcEmployee, "name"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object run() throws ObjectStoreException {
+        return SqlGenerator.generate(q, schema, db, null, SqlGenerator.QUERY_NORMAL,
+                Collections.<Object, String>emptyMap());
+    }
+}
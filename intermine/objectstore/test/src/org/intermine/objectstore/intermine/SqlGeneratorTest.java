@@ -893,6 +893,33 @@ public class SqlGeneratorTest extends SetupDataTestCase
         assertEquals("SELECT DISTINCT a1_.name AS a2_ FROM " + getRegisterOffset3() + " " + getRegisterOffset4() + " a1_.name < 'flibble' ORDER BY a1_.name DESC OFFSET 5", SqlGenerator.generate(q, 10, Integer.MAX_VALUE, schema, db, Collections.EMPTY_MAP));
     }
 
+    public void testRegisterKeyset() throws Exception {
+        DatabaseSchema schema = getSchema();
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(new QueryField(qc, "name"));
+        q.addToSelect(new QueryField(qc, "age"));
+        assertTrue(SqlGenerator.registerKeyset(q, 1000, schema, db,
+                    Arrays.asList("flibble", new Integer(34)), Collections.EMPTY_MAP));
+        String expected = "SELECT DISTINCT a1_.name AS a2_, a1_.age AS a3_ FROM "
+            + getRegisterOffset3() + " " + getRegisterOffset4()
+            + " (a1_.name > 'flibble' OR a1_.name IS NULL OR (a1_.name = 'flibble' AND a1_.age > 34))"
+            + " ORDER BY a1_.name, a1_.age";
+        assertEquals(expected, SqlGenerator.generate(q, 1000, Integer.MAX_VALUE, schema, db, Collections.EMPTY_MAP));
+        assertEquals(expected + " LIMIT 10 OFFSET 5", SqlGenerator.generate(q, 1005, 10, schema, db, Collections.EMPTY_MAP));
+
+        // Without DISTINCT, rows with the same name and age can't be told apart
+        q = new Query();
+        qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(new QueryField(qc, "name"));
+        q.addToSelect(new QueryField(qc, "age"));
+        q.setDistinct(false);
+        assertFalse(SqlGenerator.registerKeyset(q, 1000, schema, db,
+                    Arrays.asList("flibble", new Integer(34)), Collections.EMPTY_MAP));
+    }
+
     public void testForPrecomp() throws Exception {
         DatabaseSchema schema = getSchema();
         Query q = (Query) queries.get("SelectSimpleObject");
@@ -226,6 +226,27 @@ public class ResultsTest extends TestCase
         assertEquals(0, list.size());
     }
 
+    public void testAdaptiveFetch() throws Exception {
+        Query q = new Query();
+        q.addFrom(new QueryClass(Department.class));
+        Results res = os.execute(q, 2, true, true, false);
+        res.resultsBatches.adaptiveFetch = true;
+
+        assertEquals("0", ((ResultsRow) res.get(0)).get(0));
+        assertEquals(1, os.getExecuteCalls());
+        // The first batch was quick, so the next query fetches two batches
+        assertEquals("2", ((ResultsRow) res.get(2)).get(0));
+        assertEquals("5", ((ResultsRow) res.get(5)).get(0));
+        assertEquals(2, os.getExecuteCalls());
+        // Then four, which reaches the end of the results
+        assertEquals("6", ((ResultsRow) res.get(6)).get(0));
+        assertEquals("9", ((ResultsRow) res.get(9)).get(0));
+        assertEquals(3, os.getExecuteCalls());
+        assertEquals(10, res.size());
+        assertEquals(3, os.getExecuteCalls());
+        assertEquals(2, res.resultsBatches.getBatchFromCache(4).size());
+        assertNull(res.resultsBatches.getBatchFromCache(5));
+    }
 
     public void testSetBatchSizeWhenInitialised() throws Exception {
         Query q = new Query();
@@ -0,0 +1,35 @@
+package org.intermine.objectstore.query.iql;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.intermine.objectstore.benchmark.Benchmark;
+
+/**
+ * Measures IqlQueryParser lexing, parsing and building a Query from a join with a subquery.
+ */
+public class IqlQueryParserBenchmark extends Benchmark
+{
+    private static final String IQL = "SELECT DISTINCT a1_, a2_.name AS a3_"
+        + " FROM Company AS a1_, Department AS a2_ WHERE a1_.departments CONTAINS a2_"
+        + " AND (a2_.name = 'DepartmentA1' OR a2_.name LIKE 'Dep%') AND a1_.vatNumber IN"
+        + " (SELECT a4_.vatNumber AS a5_ FROM Company AS a4_ WHERE a4_.name > 'CompanyA')"
+        + " ORDER BY a1_.name, a2_.name";
+
+    private final IqlQuery iq = new IqlQuery(IQL, "org.intermine.model.testmodel");
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object run() {
+        return IqlQueryParser.parse(iq);
+    }
+}
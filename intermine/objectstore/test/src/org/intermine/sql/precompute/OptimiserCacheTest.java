@@ -10,6 +10,8 @@ package org.intermine.sql.precompute;
  *
  */
 
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 public class OptimiserCacheTest extends TestCase
@@ -28,4 +30,40 @@ public class OptimiserCacheTest extends TestCase
         assertNull(cache.lookup("original1", 10));
         assertNull(cache.lookup("somethingelse", 1000));
     }
+
+    public void testNormalised() throws Exception {
+        OptimiserCache cache = new OptimiserCache();
+        assertTrue(cache.addNormalisedCacheLine("SELECT a.id FROM a WHERE a.name = 'fred' AND a.x > 5",
+                    "SELECT P1.id FROM precomp1 AS P1 WHERE P1.name = 'fred' AND P1.x > 5", 1000));
+        assertNull(cache.lookup("SELECT a.id FROM a WHERE a.name = 'bob''s' AND a.x > 17", 1000));
+        assertEquals("SELECT P1.id FROM precomp1 AS P1 WHERE P1.name = 'bob''s' AND P1.x > 17",
+                cache.lookupNormalised("SELECT a.id FROM a WHERE a.name = 'bob''s' AND a.x > 17", 1000));
+        assertEquals("EXPLAIN SELECT P1.id FROM precomp1 AS P1 WHERE P1.name = 'x' AND P1.x > 1.5",
+                cache.lookupNormalised("EXPLAIN SELECT a.id FROM a WHERE a.name = 'x' AND a.x > 1.5", 1000));
+        assertNull(cache.lookupNormalised("SELECT a.id FROM a WHERE a.name = 'x' AND a.x > 1", 10));
+        assertNull(cache.lookupNormalised("SELECT a.id FROM a WHERE a.name = 'x' AND a.y > 1", 1000));
+
+        // constants must survive optimisation unchanged, in order, and be distinguishable
+        assertFalse(cache.addNormalisedCacheLine("SELECT a.id FROM a WHERE a.x = 5",
+                    "SELECT P1.id FROM precomp1 AS P1", 1000));
+        assertFalse(cache.addNormalisedCacheLine("SELECT a.id FROM a WHERE a.x = 5 AND a.y = 6",
+                    "SELECT P1.id FROM precomp1 AS P1 WHERE P1.y = 6 AND P1.x = 5", 1000));
+        assertFalse(cache.addNormalisedCacheLine("SELECT a.id FROM a WHERE a.x = 5 AND a.y = 5",
+                    "SELECT P1.id FROM precomp1 AS P1 WHERE P1.x = 5 AND P1.y = 5", 1000));
+        assertFalse(cache.addNormalisedCacheLine("SELECT a.id FROM a WHERE a.x = E'\\'",
+                    "SELECT P1.id FROM precomp1 AS P1 WHERE P1.x = E'\\'", 1000));
+
+        cache.flush();
+        assertNull(cache.lookupNormalised("SELECT a.id FROM a WHERE a.name = 'x' AND a.x > 1", 1000));
+    }
+
+    public void testNormalisedQuery() throws Exception {
+        NormalisedQuery q = NormalisedQuery.normalise("SELECT a1_.id AS \"3\" FROM t2 AS a1_ WHERE a1_.x IN (1, -2.5e10, 'it''s')");
+        assertEquals(Arrays.asList("1", "2.5e10", "'it''s'"), q.getConstants());
+        assertEquals("SELECT a1_.id AS \"3\" FROM t2 AS a1_ WHERE a1_.x IN (\u0000, -\u0000, \u0000)", q.getShape());
+        assertEquals("SELECT a1_.id AS \"3\" FROM t2 AS a1_ WHERE a1_.x IN (4, -5, 'six')",
+                NormalisedQuery.reconstruct(q.getShape(), Arrays.asList("4", "5", "'six'")));
+        assertNull(NormalisedQuery.reconstruct(q.getShape(), Arrays.asList("4", "5")));
+        assertNull(NormalisedQuery.normalise("SELECT 'unterminated"));
+    }
 }
@@ -0,0 +1,77 @@
+package org.intermine.sql.precompute;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.sql.query.Query;
+
+public class PrecomputedTableIndexTest extends TestCase
+{
+    private PrecomputedTable ptA, ptAB, ptAA, ptC, ptConst;
+    private PrecomputedTableIndex index;
+
+    public PrecomputedTableIndexTest(String arg1) {
+        super(arg1);
+    }
+
+    public void setUp() throws Exception {
+        ptA = precomp("SELECT a.id AS a_id FROM a", "precomp_a");
+        ptAB = precomp("SELECT a.id AS a_id, b.id AS b_id FROM a, b WHERE a.bid = b.id", "precomp_ab");
+        ptAA = precomp("SELECT a1.id AS a1_id, a2.id AS a2_id FROM a AS a1, a AS a2 WHERE a1.aid = a2.id", "precomp_aa");
+        ptC = precomp("SELECT c.id AS c_id FROM c", "precomp_c");
+        ptConst = precomp("SELECT b.id AS b_id FROM b WHERE b.x = 5", "precomp_const");
+        index = new PrecomputedTableIndex(Arrays.asList(ptA, ptAB, ptAA, ptC, ptConst));
+    }
+
+    private static PrecomputedTable precomp(String sql, String name) {
+        return new PrecomputedTable(new Query(sql), sql, name, null, null);
+    }
+
+    public void testCandidates() throws Exception {
+        assertEquals(new HashSet<PrecomputedTable>(Arrays.asList(ptA)),
+                index.getCandidates(new Query("SELECT a.id AS a_id FROM a WHERE a.x = 1")));
+        assertEquals(new HashSet<PrecomputedTable>(Arrays.asList(ptA, ptAB, ptConst)),
+                index.getCandidates(new Query("SELECT a.id AS a_id FROM a, b WHERE a.bid = b.id")));
+        assertEquals(new HashSet<PrecomputedTable>(Arrays.asList(ptA, ptAB, ptAA, ptConst)),
+                index.getCandidates(new Query("SELECT a1.id AS x FROM a AS a1, a AS a2, b WHERE a1.aid = a2.id")));
+        assertTrue(index.getCandidates(new Query("SELECT d.id AS d_id FROM d")).isEmpty());
+    }
+
+    public void testCandidatesMatchMerge() throws Exception {
+        // every precomputed table that merge can use must be a candidate
+        List<PrecomputedTable> all = Arrays.asList(ptA, ptAB, ptAA, ptC, ptConst);
+        String[] queries = new String[] {"SELECT a.id AS a_id FROM a",
+            "SELECT a.id AS a_id, b.id AS b_id FROM a, b WHERE a.bid = b.id",
+            "SELECT c.id AS c_id FROM c, b WHERE b.x = 5"};
+        for (String sql : queries) {
+            List<PrecomputedTable> merged = new ArrayList<PrecomputedTable>();
+            for (PrecomputedTable pt : all) {
+                Query q = new Query(sql);
+                if (!QueryOptimiser.merge(pt, q, q).isEmpty()) {
+                    merged.add(pt);
+                }
+            }
+            assertFalse(merged.isEmpty());
+            assertTrue(index.getCandidates(new Query(sql)).containsAll(merged));
+        }
+    }
+
+    public void testUsesTableWithConstants() throws Exception {
+        assertTrue(index.usesTableWithConstants("SELECT P1.b_id FROM precomp_const AS P1"));
+        assertFalse(index.usesTableWithConstants("SELECT P1.a_id FROM precomp_ab AS P1 WHERE P1.a_id = 5"));
+    }
+}
@@ -0,0 +1,69 @@
+package org.intermine.sql.precompute;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.intermine.sql.query.Query;
+
+public class PrecomputedTableRefreshTest extends TestCase
+{
+    public PrecomputedTableRefreshTest(String arg1) {
+        super(arg1);
+    }
+
+    public void testDependencies() throws Exception {
+        String sql = "SELECT a.id AS a FROM a, (SELECT b.id AS id FROM b) AS c WHERE a.id = c.id AND (a.x = 1 OR a.id IN (SELECT d.id FROM d WHERE d.id NOT IN (SELECT e.id FROM e))) UNION SELECT f.id AS a FROM f";
+        PrecomputedTable pt = new PrecomputedTable(new Query(sql), sql, "precomp_1", "test", null);
+        assertEquals(new TreeSet<String>(Arrays.asList("a", "b", "d", "e", "f")), pt.getDependencies());
+
+        assertTrue(PrecomputedTableManager.isAffected(pt, Collections.singleton("e")));
+        assertTrue(PrecomputedTableManager.isAffected(pt, new HashSet<String>(Arrays.asList("x", "b"))));
+        assertFalse(PrecomputedTableManager.isAffected(pt, Collections.singleton("c")));
+        assertFalse(PrecomputedTableManager.isAffected(pt, Collections.<String>emptySet()));
+    }
+
+    public void testRefreshName() throws Exception {
+        assertEquals("precomp_12_r1", PrecomputedTableManager.getRefreshName("precomp_12"));
+        assertEquals("precomp_12_r2", PrecomputedTableManager.getRefreshName("precomp_12_r1"));
+        assertEquals("precomp_12_r10", PrecomputedTableManager.getRefreshName("precomp_12_r9"));
+        assertEquals("precomp_r_r1", PrecomputedTableManager.getRefreshName("precomp_r"));
+    }
+
+    public void testIndexColumns() throws Exception {
+        assertEquals("a1_id", PrecomputedTableManager.getIndexColumns("CREATE INDEX precomp_12_a1_id ON public.precomp_12 USING btree (a1_id)"));
+        assertEquals("a1_id, a2_id", PrecomputedTableManager.getIndexColumns("CREATE INDEX precomp_12_a1_id_a2_id ON public.precomp_12 USING btree (a1_id, a2_id)"));
+        assertEquals("lower((a1_name)::text)", PrecomputedTableManager.getIndexColumns("CREATE INDEX precomp_12_lower_a1_name_ ON public.precomp_12 USING btree (lower((a1_name)::text))"));
+        assertNull(PrecomputedTableManager.getIndexColumns("CREATE INDEX precomp_12_x ON public.precomp_12 USING btree (lower((a1_name)::text) text_pattern_ops)"));
+        assertNull(PrecomputedTableManager.getIndexColumns("CREATE INDEX precomp_12_x ON public.precomp_12 USING gist (a1_loc)"));
+    }
+
+    public void testStatus() throws Exception {
+        String sql = "SELECT a.id AS a FROM a";
+        PrecomputedTable pt = new PrecomputedTable(new Query(sql), sql, "precomp_1", "test", null);
+        PrecomputedTableManager.StaleTable stale = new PrecomputedTableManager.StaleTable(pt, 10L);
+        assertEquals(PrecomputedTableManager.STALE, stale.getStatus());
+        stale.setRefreshing(true);
+        assertEquals(PrecomputedTableManager.REFRESHING, stale.getStatus());
+        stale.setRefreshing(false);
+        stale.setError("broken");
+        assertEquals(PrecomputedTableManager.FAILED + ": broken", stale.getStatus());
+        stale.setStaleSince(20L);
+        assertEquals(PrecomputedTableManager.STALE, stale.getStatus());
+        assertEquals(20L, stale.getStaleSince());
+    }
+}
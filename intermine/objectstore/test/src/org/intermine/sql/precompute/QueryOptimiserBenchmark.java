@@ -0,0 +1,64 @@
+package org.intermine.sql.precompute;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.intermine.objectstore.benchmark.Benchmark;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.sql.query.Query;
+
+/**
+ * Measures QueryOptimiser parsing a query on the testmodel tables and finding every way of
+ * rewriting it to use a canned set of precomputed tables. A BestQueryStorer collects the
+ * rewrites, so no time is spent asking the database to EXPLAIN them.
+ */
+public class QueryOptimiserBenchmark extends Benchmark
+{
+    private static final String QUERY = "SELECT a1_.name AS a4_, a2_.name AS a5_, a3_.name AS a6_"
+        + " FROM Company AS a1_, Department AS a2_, Employee AS a3_"
+        + " WHERE a1_.id = a2_.companyId AND a2_.id = a3_.departmentId AND a3_.age > 30"
+        + " ORDER BY a1_.name, a2_.name, a3_.name LIMIT 1000 OFFSET 0";
+    private static final String[] PRECOMPUTED = new String[] {
+        "SELECT a1_.id AS a1_id, a1_.name AS a1_name, a2_.id AS a2_id, a2_.name AS a2_name"
+            + " FROM Company AS a1_, Department AS a2_ WHERE a1_.id = a2_.companyId",
+        "SELECT a2_.id AS a2_id, a2_.name AS a2_name, a3_.id AS a3_id, a3_.name AS a3_name,"
+            + " a3_.age AS a3_age FROM Department AS a2_, Employee AS a3_"
+            + " WHERE a2_.id = a3_.departmentId",
+        "SELECT a3_.id AS a3_id, a3_.name AS a3_name FROM Employee AS a3_ WHERE a3_.age > 30",
+        "SELECT a1_.id AS a1_id, a1_.vatNumber AS a1_vatNumber FROM Company AS a1_"};
+
+    private final Set<PrecomputedTable> precomputedTables = new HashSet<PrecomputedTable>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUp(ObjectStoreInterMineImpl os) {
+        for (int i = 0; i < PRECOMPUTED.length; i++) {
+            Query pq = new Query(PRECOMPUTED[i]);
+            precomputedTables.add(new PrecomputedTable(pq, pq.getSQLString(), "precomp" + i,
+                        "benchmark", null));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object run() throws Exception {
+        BestQueryStorer bestQuery = new BestQueryStorer();
+        QueryOptimiser.recursiveOptimiseCheckSubquery(precomputedTables, new Query(QUERY),
+                bestQuery);
+        return bestQuery.getQueries();
+    }
+}
@@ -0,0 +1,53 @@
+package org.intermine.sql.writebatch;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import org.intermine.objectstore.benchmark.Benchmark;
+
+/**
+ * Measures BatchWriterPostgresCopyImpl encoding a batch of rows with a typical mix of column
+ * types into the PostgreSQL binary COPY format.
+ */
+public class PostgresCopyEncodingBenchmark extends Benchmark
+{
+    private static final int ROWS = 1000;
+
+    private final Object[][] rows = new Object[ROWS][];
+
+    /**
+     * Constructor.
+     */
+    public PostgresCopyEncodingBenchmark() {
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new Object[] {new Integer(i), "Employee" + i, new Integer(i % 70),
+                Boolean.valueOf(i % 2 == 0), new Long(i * 1000L), new Double(i / 7.0),
+                new BigDecimal(i).movePointLeft(3), (i % 10 == 0 ? null : "Some longer text"
+                    + " which doesn't really say much about Employee" + i)};
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object run() throws IOException {
+        PostgresByteArrayOutputStream baos = new PostgresByteArrayOutputStream();
+        PostgresDataOutputStream dos = new PostgresDataOutputStream(baos);
+        for (Object[] row : rows) {
+            BatchWriterPostgresCopyImpl.writeRow(dos, row, row.length);
+        }
+        dos.flush();
+        return baos.getBuffer();
+    }
+}
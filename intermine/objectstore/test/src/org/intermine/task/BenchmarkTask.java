@@ -0,0 +1,116 @@
+package org.intermine.task;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Task;
+import org.intermine.objectstore.ObjectStoreFactory;
+import org.intermine.objectstore.benchmark.Benchmark;
+import org.intermine.objectstore.benchmark.BenchmarkRunner;
+import org.intermine.objectstore.intermine.NotXmlBenchmark;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.intermine.ResultsConverterBenchmark;
+import org.intermine.objectstore.intermine.SqlGeneratorBenchmark;
+import org.intermine.objectstore.query.iql.IqlQueryParserBenchmark;
+import org.intermine.sql.precompute.QueryOptimiserBenchmark;
+import org.intermine.sql.writebatch.PostgresCopyEncodingBenchmark;
+
+/**
+ * Ant task to run the ObjectStore microbenchmarks and print their throughput, so that the numbers
+ * can be compared before and after a change.
+ */
+public class BenchmarkTask extends Task
+{
+    protected String osAlias;
+    protected String include;
+    protected BenchmarkRunner runner = new BenchmarkRunner();
+
+    /**
+     * Set the ObjectStore alias.
+     *
+     * @param osAlias the ObjectStore alias
+     */
+    public void setOsAlias(String osAlias) {
+        this.osAlias = osAlias;
+    }
+
+    /**
+     * Set a regular expression to choose which benchmarks to run, by name.
+     *
+     * @param include the regular expression
+     */
+    public void setInclude(String include) {
+        this.include = include;
+    }
+
+    /**
+     * @param warmupIterations the number of iterations to run before measuring
+     */
+    public void setWarmupIterations(int warmupIterations) {
+        runner.setWarmupIterations(warmupIterations);
+    }
+
+    /**
+     * @param iterations the number of iterations to measure
+     */
+    public void setIterations(int iterations) {
+        runner.setIterations(iterations);
+    }
+
+    /**
+     * @param iterationTime the length of each iteration, in milliseconds
+     */
+    public void setIterationTime(long iterationTime) {
+        runner.setIterationTime(iterationTime);
+    }
+
+    /**
+     * @return all the benchmarks
+     */
+    protected List<Benchmark> getBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new SqlGeneratorBenchmark());
+        benchmarks.add(new IqlQueryParserBenchmark());
+        benchmarks.add(new NotXmlBenchmark(false));
+        benchmarks.add(new NotXmlBenchmark(true));
+        benchmarks.add(new ResultsConverterBenchmark());
+        benchmarks.add(new QueryOptimiserBenchmark());
+        benchmarks.add(new PostgresCopyEncodingBenchmark());
+        return benchmarks;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute() {
+        if (osAlias == null) {
+            throw new BuildException("osAlias attribute is not set");
+        }
+        Pattern pattern = (include == null ? null : Pattern.compile(include));
+        try {
+            ObjectStoreInterMineImpl os = (ObjectStoreInterMineImpl) ObjectStoreFactory
+                .getObjectStore(osAlias);
+            for (Benchmark benchmark : getBenchmarks()) {
+                if ((pattern == null) || pattern.matcher(benchmark.getName()).find()) {
+                    benchmark.setUp(os);
+                    System.out.println(runner.run(benchmark));
+                }
+            }
+        } catch (Exception e) {
+            throw new BuildException(e);
+        }
+    }
+}
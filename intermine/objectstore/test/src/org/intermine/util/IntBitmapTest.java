@@ -0,0 +1,119 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class IntBitmapTest extends TestCase
+{
+    public IntBitmapTest(String arg1) {
+        super(arg1);
+    }
+
+    public void testSimple() throws Exception {
+        IntBitmap set = new IntBitmap();
+        assertTrue(set.add(42));
+        assertTrue(set.add(28673452));
+        assertTrue(set.add(-5));
+        assertFalse(set.add(42));
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(42));
+        assertTrue(set.contains(28673452));
+        assertTrue(set.contains(-5));
+        assertFalse(set.contains(63));
+        assertEquals("[-5, 42, 28673452]", set.toString());
+        assertEquals(42, set.toArray(1, 1)[0]);
+        assertEquals(0, set.toArray(3, 10).length);
+    }
+
+    public void testDense() throws Exception {
+        IntBitmap set = new IntBitmap();
+        for (int i = 100000; i < 200000; i += 2) {
+            set.add(i);
+        }
+        assertEquals(50000, set.size());
+        assertTrue(set.contains(100000));
+        assertFalse(set.contains(100001));
+        assertTrue(set.getSizeInBytes() < 50000 * 2);
+        int[] range = set.toArray(10000, 3);
+        assertEquals(120000, range[0]);
+        assertEquals(120002, range[1]);
+        assertEquals(120004, range[2]);
+    }
+
+    public void testCombine() throws Exception {
+        Random rand = new Random(1234);
+        for (int round = 0; round < 20; round++) {
+            // Alternate between sparse and dense sets, so both chunk types get combined
+            int spread = (round % 2 == 0 ? 1000000 : 150000);
+            int count = 2000 + rand.nextInt(60000);
+            TreeSet<Integer> expectedA = new TreeSet<Integer>();
+            TreeSet<Integer> expectedB = new TreeSet<Integer>();
+            IntBitmap a = new IntBitmap();
+            IntBitmap b = new IntBitmap();
+            for (int i = 0; i < count; i++) {
+                int value = rand.nextInt(spread);
+                expectedA.add(new Integer(value));
+                a.add(value);
+                value = rand.nextInt(spread) + spread / 3;
+                expectedB.add(new Integer(value));
+                b.add(value);
+            }
+            assertEquals(expectedA.size(), a.size());
+            assertEquals(toList(expectedA), toList(a));
+
+            TreeSet<Integer> expected = new TreeSet<Integer>(expectedA);
+            expected.addAll(expectedB);
+            assertEquals(toList(expected), toList(a.or(b)));
+            assertEquals(expected.size(), a.or(b).size());
+
+            expected = new TreeSet<Integer>(expectedA);
+            expected.retainAll(expectedB);
+            assertEquals(toList(expected), toList(a.and(b)));
+            assertEquals(expected.size(), a.and(b).size());
+            assertEquals(expected.size(), a.andSize(b));
+
+            expected = new TreeSet<Integer>(expectedA);
+            expected.removeAll(expectedB);
+            assertEquals(toList(expected), toList(a.andNot(b)));
+            assertEquals(expected.size(), a.andNot(b).size());
+
+            TreeSet<Integer> onlyB = new TreeSet<Integer>(expectedB);
+            onlyB.removeAll(expectedA);
+            expected.addAll(onlyB);
+            assertEquals(toList(expected), toList(a.xor(b)));
+            assertEquals(expected.size(), a.xor(b).size());
+
+            int[] all = a.toArray();
+            int start = rand.nextInt(all.length);
+            int[] range = a.toArray(start, 1000);
+            for (int i = 0; i < range.length; i++) {
+                assertEquals(all[start + i], range[i]);
+            }
+            assertEquals(a, a.or(a.and(b)));
+            assertEquals(expectedA.size(), a.size());
+        }
+    }
+
+    private static List<Integer> toList(Iterable<Integer> set) {
+        List<Integer> retval = new ArrayList<Integer>();
+        for (Integer i : set) {
+            retval.add(i);
+        }
+        return retval;
+    }
+}
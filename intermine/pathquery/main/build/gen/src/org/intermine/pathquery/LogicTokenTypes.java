@@ -0,0 +1,16 @@
+// $ANTLR 2.7.6 (20060327): "logic.g" -> "LogicLexer.java"$
+
+package org.intermine.pathquery;
+
+public interface LogicTokenTypes {
+	int EOF = 1;
+	int NULL_TREE_LOOKAHEAD = 3;
+	int OR_EXPR = 4;
+	int AND_EXPR = 5;
+	int LITERAL_or = 6;
+	int LITERAL_and = 7;
+	int IDENTIFIER = 8;
+	int OPEN_PAREN = 9;
+	int CLOSE_PAREN = 10;
+	int WS = 11;
+}
@@ -1333,18 +1333,17 @@ public class AjaxServices
     public String[] getContent(String suffix, boolean wholeList, String field, String className) {
         ServletContext servletContext = WebContextFactory.get().getServletContext();
         AutoCompleter ac = SessionMethods.getAutoCompleter(servletContext);
-        ac.createRAMIndex(className + "." + field);
 
         // swap "-" for spaces, ticket #2357
         suffix = suffix.replace("-", " ");
 
         if (!wholeList && suffix.length() > 0) {
-            String[] shortList = ac.getFastList(suffix, field, 31);
+            String[] shortList = ac.getFastList(suffix, className, field, 31);
             return shortList;
         } else if (suffix.length() > 2 && wholeList) {
             // String[] longList = ac.getList(suffix, field);
             // #451 I don't know what I am doing...
-            String[] longList = ac.getFastList(suffix, field, 500);
+            String[] longList = ac.getFastList(suffix, className, field, 500);
             return longList;
         }
         String[] defaultList = {""};
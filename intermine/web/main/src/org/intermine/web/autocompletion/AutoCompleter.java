@@ -9,26 +9,29 @@ package org.intermine.web.autocompletion;
  * information or http://www.gnu.org/copyleft/lesser.html.
  *
  */
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import org.apache.log4j.Logger;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.queryParser.ParseException;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.store.RAMDirectory;
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
@@ -39,22 +42,26 @@ import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 
 /**
- * Autocompleter class for initializing and using the autocompletion
+ * Autocompleter class for initializing and using the autocompletion.
+ * <p>
+ * There is a PrefixIndex for each class and field to autocomplete. The indexes are built by the
+ * create-autocomplete-index postprocess and written as one file, which the webapp extracts from
+ * the database into a directory and memory-maps, so the indexes are not held on the heap and every
+ * webapp on a host that reads the same database shares one copy of the file.
  *
  * @author Dominik Grimm
  * @author Michael Menden
  */
 public class AutoCompleter
 {
-    private  HashMap<String, String> fieldIndexMap = new HashMap<String, String>();
-    private HashMap<String, LuceneSearchEngine> ramIndexMap =
-                                        new HashMap<String, LuceneSearchEngine>();
-    private HashMap<String, RAMDirectory> blobMap = new HashMap<String, RAMDirectory>();
-    private Properties prob;
-    private LuceneSearchEngine search = null;
+    private static final int MAGIC = 0x494d4143;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".autocomplete";
 
-    private static final File TEMP_DIR =
-        new File("build" + File.separatorChar + "autocompleteIndexes");
+    private Map<String, PrefixIndex> indexes = new HashMap<String, PrefixIndex>();
+    private Map<String, PrefixIndex.Builder> builders =
+        new LinkedHashMap<String, PrefixIndex.Builder>();
+    private Properties prob;
 
     private static final Logger LOG = Logger.getLogger(AutoCompleter.class);
 
@@ -84,117 +91,128 @@ public class AutoCompleter
     }
 
     /**
-     * Autocompleter rebuild constructor.
-     * @param blobInput InputStream from database
+     * Autocompleter constructor for a file written by write(). The indexes are memory-mapped
+     * rather than read into the heap.
+     * @param file the file
+     * @throws IOException if the file cannot be read or is not an autocompletion index
      */
-    @SuppressWarnings("unchecked")
-    public AutoCompleter(InputStream blobInput) {
+    public AutoCompleter(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
         try {
-            ObjectInputStream objectInput = new ObjectInputStream(blobInput);
-
-            Object object = objectInput.readObject();
-
-            blobInput.close();
-
-            if (object instanceof HashMap<?, ?>) {
-                blobMap = (HashMap<String, RAMDirectory>) object;
-
-                for (Iterator<Map.Entry<String, RAMDirectory>> iter = blobMap.entrySet().iterator();
-                        iter.hasNext();) {
-                    Map.Entry<String, RAMDirectory> entry =
-                        iter.next();
-                    String key = entry.getKey();
-                    RAMDirectory value = null;
-                    value = entry.getValue();
-                    search = null;
-                    search = new LuceneSearchEngine(value);
-                    ramIndexMap.put(key, search);
-                    fieldIndexMap.put(key, key);
-                    LOG.info("AutoCompleter read index for: " + key);
-                }
+            checkHeader(raf);
+            raf.readLong();
+            byte[] header = new byte[raf.readInt()];
+            raf.readFully(header);
+            long offset = raf.getFilePointer();
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(header));
+            int count = data.readInt();
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < count; i++) {
+                String classAndField = data.readUTF();
+                int length = data.readInt();
+                // the mapping stays valid after the channel is closed
+                indexes.put(classAndField, new PrefixIndex(channel.map(
+                        FileChannel.MapMode.READ_ONLY, offset, length)));
+                offset += length;
+                LOG.info("AutoCompleter mapped index for: " + classAndField);
             }
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+        } finally {
+            raf.close();
         }
     }
 
     /**
-     * create the RAMIndex for the search engine
-     * @param classDes String of the class and the field (e.g. GOTerm.name)
+     * Returns an AutoCompleter for an index read from the database, copying the index into a file
+     * in the given directory first unless a webapp has already done so. The file is named after
+     * the database and the time the index was built, so that webapps reading the same database
+     * share it, and files for older indexes of the database are deleted.
+     * @param in the index, as written by write(), which is closed by this method
+     * @param directory the directory to keep the file in
+     * @param name a name for the database, to use in the name of the file
+     * @return an AutoCompleter, or null if the index was written by an older version
+     * @throws IOException if the index cannot be read or the file written
      */
-    public void createRAMIndex(String classDes) {
-        if (ramIndexMap.get(classDes) != null) {
-            search = null;
-            search = ramIndexMap.get(classDes);
-        } else {
+    public static AutoCompleter getInstance(InputStream in, File directory, String name)
+        throws IOException {
+        String prefix = name.replaceAll("[^A-Za-z0-9_.]", "_") + "-";
+        File file;
+        try {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(in));
             try {
-                String indexFile = TEMP_DIR.toString() + File.separatorChar + classDes;
-                RAMDirectory ram = new RAMDirectory(FSDirectory.open(new File(indexFile)));
-                search = new LuceneSearchEngine(ram);
-                ramIndexMap.put(classDes, search);
-                blobMap.put(classDes, ram);
+                checkHeader(data);
             } catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                LOG.warn("Ignoring an autocompletion index in an old format - run the "
+                        + "create-autocomplete-index postprocess again");
+                return null;
             }
-        }
-    }
-
-    /**
-     * returns a string array with the search results of the query in the field
-     * @param query is the string used for search
-     * @param field is the field in which you like to search (e.g. name)
-     * @return stringList string array with the whole search results including
-     *           an error flag at position 0
-     */
-    public String[] getList(String query, String field) {
-        String[] stringList = null;
-        String status = "true";
-        int counter = 1;
-
-        TopDocs topDocs = null;
-        try {
-            topDocs = search.performSearch(query, field);
-        } catch (IOException e) {
-
-        } catch (ParseException e) {
-            status = "Please type in more characters to get results.";
-        }
-
-        if (topDocs != null) {
-            stringList = new String[topDocs.totalHits + 1];
-
-            for (int i = 0; i < topDocs.totalHits; i++) {
-                ScoreDoc scoreDoc = topDocs.scoreDocs[i];
-                Document doc;
+            long created = data.readLong();
+            file = new File(directory, prefix + created + SUFFIX);
+            if (!file.exists()) {
+                if (!directory.exists() && !directory.mkdirs()) {
+                    throw new IOException("Could not create directory " + directory);
+                }
+                File temp = File.createTempFile(prefix, ".tmp", directory);
                 try {
-                    doc = search.getIndexSearch().doc(scoreDoc.doc);
-
-                    stringList[counter] = doc.get(field);
-                    counter++;
-                } catch (IOException e) {
-                    //TODO: shouldn't this go outside the for loop?
-                    status = "No results! Please try again.";
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                                new FileOutputStream(temp)));
+                    try {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeLong(created);
+                        byte[] buffer = new byte[65536];
+                        int length;
+                        while ((length = data.read(buffer)) != -1) {
+                            out.write(buffer, 0, length);
+                        }
+                    } finally {
+                        out.close();
+                    }
+                    // another webapp may have got there first, with the same contents
+                    if (!temp.renameTo(file) && !file.exists()) {
+                        throw new IOException("Could not rename " + temp + " to " + file);
+                    }
+                    LOG.info("Copied autocompletion index to " + file);
+                } finally {
+                    temp.delete();
                 }
             }
+        } finally {
+            in.close();
         }
-        stringList[0] = status;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File old : files) {
+                String oldName = old.getName();
+                if (oldName.startsWith(prefix) && oldName.endsWith(SUFFIX) && !old.equals(file)
+                        && old.delete()) {
+                    LOG.info("Deleted old autocompletion index " + old);
+                }
+            }
+        }
+        return new AutoCompleter(file);
+    }
 
-        return stringList;
+    private static void checkHeader(DataInput data) throws IOException {
+        if ((data.readInt() != MAGIC) || (data.readInt() != VERSION)) {
+            throw new IOException("Not an autocompletion index of version " + VERSION);
+        }
     }
 
     /**
      * Returns n search results
      * @param query is the string used for search
+     * @param className the unqualified name of the class to search
      * @param field is the field in which you like to search (e.g. name)
      * @param n number of the first n search results
-     * @return string array with search results and an error flag at position 0
+     * @return string array with search results and an error flag at position 0, or null if
+     * there is no index for the field or the query is empty
      */
-    public String[] getFastList(String query, String field, int n) {
-        return search.fastSearch(query, field, n);
+    public String[] getFastList(String query, String className, String field, int n) {
+        PrefixIndex index = indexes.get(className + "." + field);
+        if (index == null) {
+            return null;
+        }
+        return index.search(query, n);
     }
 
     /**
@@ -207,14 +225,6 @@ public class AutoCompleter
     public void buildIndex(ObjectStore os)
         throws IOException, ObjectStoreException, ClassNotFoundException {
 
-        if (TEMP_DIR.exists()) {
-            if (!TEMP_DIR.isDirectory()) {
-                throw new RuntimeException(TEMP_DIR + " exists but isn't a directory - remove it");
-            }
-        } else {
-            TEMP_DIR.mkdirs();
-        }
-
         for (Map.Entry<Object, Object> entry: prob.entrySet()) {
             String key = (String) entry.getKey();
             String value = (String) entry.getValue();
@@ -233,8 +243,6 @@ public class AutoCompleter
                 String fieldName = i.next();
                 String classAndField = cld.getUnqualifiedName() + "." + fieldName;
                 System.out .println("Indexing " + classAndField);
-                fieldIndexMap.put(classAndField, classAndField);
-
 
                 Query q = new Query();
                 q.setDistinct(true);
@@ -243,40 +251,43 @@ public class AutoCompleter
                 q.addFrom(qc);
                 Results results = os.execute(q);
 
-                LuceneObjectClass objectClass = new LuceneObjectClass(classAndField);
-                objectClass.addField(fieldName);
-
+                PrefixIndex.Builder builder = new PrefixIndex.Builder();
                 for (Object resRow: results) {
                     @SuppressWarnings("rawtypes")
                     Object fieldValue = ((ResultsRow) resRow).get(0);
                     if (fieldValue != null) {
-                        objectClass.addValueToField(objectClass.getFieldName(0), fieldValue
-                                .toString());
+                        builder.add(fieldValue.toString());
                     }
                 }
-
-                String indexFileName = TEMP_DIR.getPath() + File.separatorChar + classAndField;
-                LuceneIndex indexer = new LuceneIndex(indexFileName);
-                indexer.addClass(objectClass);
-                indexer.rebuildClassIndexes();
-
-                createRAMIndex(classAndField);
+                builders.put(classAndField, builder);
             }
         }
     }
 
     /**
-     * Returns byte array of the RAMIndexMap
-     * @return Returns byte array of the RAMIndexMap
-     * @throws IOException IOException
+     * Writes the indexes built by buildIndex() in the form read by getInstance().
+     * @param out the stream to write to, which is flushed but not closed
+     * @throws IOException if the stream cannot be written to
      */
-    public byte[] getBinaryIndexMap() throws IOException {
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        ObjectOutputStream objectStream = new ObjectOutputStream(byteStream);
-        objectStream.writeObject(blobMap);
-        objectStream.close();
-
-        return byteStream.toByteArray();
+    public void write(OutputStream out) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(builders.size());
+        for (Map.Entry<String, PrefixIndex.Builder> entry : builders.entrySet()) {
+            headerData.writeUTF(entry.getKey());
+            headerData.writeInt(entry.getValue().getLength());
+        }
+        headerData.close();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(System.currentTimeMillis());
+        data.writeInt(header.size());
+        header.writeTo(data);
+        for (PrefixIndex.Builder builder : builders.values()) {
+            builder.write(data);
+        }
+        data.flush();
     }
 
     /**
@@ -286,10 +297,8 @@ public class AutoCompleter
      * @return whether an autocompletion exists
      */
     public boolean hasAutocompleter(String type, String field) {
-        if (fieldIndexMap.get(type + "." + field) != null) {
-            return true;
-        }
-        return false;
+        String classAndField = type + "." + field;
+        return indexes.containsKey(classAndField) || builders.containsKey(classAndField);
     }
 
 
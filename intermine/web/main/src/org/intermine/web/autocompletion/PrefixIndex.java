@@ -0,0 +1,341 @@
+package org.intermine.web.autocompletion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.util.Version;
+
+/**
+ * A read-only prefix index of the values of one field, for autocompletion. Each value is split into
+ * words as the Lucene StandardAnalyzer would index it, and a search returns the values that have a
+ * word starting with each word of the query.
+ * <p>
+ * The index is a flat block of sorted words, each with the list of values it appears in, and is
+ * read in place from a ByteBuffer, so that it can be memory-mapped from a file rather than held on
+ * the heap. All offsets are ints, so a single index cannot be more than 2GB. The layout is:
+ * value count, word count, value offsets, word offsets, posting offsets, postings, word bytes and
+ * value bytes, with the words sorted by their UTF-8 bytes and the values sorted ignoring case.
+ */
+public final class PrefixIndex
+{
+    /**
+     * The most words a query word may match, as Lucene's BooleanQuery limit did for a prefix query.
+     */
+    public static final int MAX_WORDS = 4096;
+
+    private static final String MORE_CHARACTERS = "Please type in more characters to get results.";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final int valueCount;
+    private final int wordCount;
+    private final int valueOffsetsStart;
+    private final int wordOffsetsStart;
+    private final int postingOffsetsStart;
+    private final int postingsStart;
+    private final int wordsStart;
+    private final int valuesStart;
+
+    /**
+     * Construct an index to read from a buffer holding data written by a Builder. The buffer is
+     * only read with absolute gets, so the index can be searched by many threads at once.
+     *
+     * @param buffer the data of the index, starting at position 0
+     */
+    public PrefixIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        valueCount = buffer.getInt(0);
+        wordCount = buffer.getInt(4);
+        valueOffsetsStart = 8;
+        wordOffsetsStart = valueOffsetsStart + 4 * (valueCount + 1);
+        postingOffsetsStart = wordOffsetsStart + 4 * (wordCount + 1);
+        postingsStart = postingOffsetsStart + 4 * (wordCount + 1);
+        wordsStart = postingsStart + 4 * getInt(postingOffsetsStart, wordCount);
+        valuesStart = wordsStart + getInt(wordOffsetsStart, wordCount);
+    }
+
+    /**
+     * Returns the number of distinct values in the index.
+     *
+     * @return the number of values
+     */
+    public int getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * Returns the first n values that have a word starting with every word of the query, in the
+     * form that the Lucene autocompletion search returned: a status at position 0, which is "true"
+     * unless the query is too short, followed by the values.
+     *
+     * @param query the words typed so far
+     * @param n the maximum number of values to return
+     * @return the status and values, or null if the query is empty or starts with a wildcard
+     */
+    public String[] search(String query, int n) {
+        String trimmed = query.trim();
+        if ("".equals(trimmed) || trimmed.startsWith("*")) {
+            return null;
+        }
+        BitSet matches = null;
+        for (String word : trimmed.toLowerCase().split(" +")) {
+            byte[] prefix = word.getBytes(UTF8);
+            int first = findFirst(prefix);
+            int last = first;
+            while ((last < wordCount) && startsWith(last, prefix)) {
+                last++;
+                if (last - first > MAX_WORDS) {
+                    return new String[] {MORE_CHARACTERS};
+                }
+            }
+            BitSet wordMatches = new BitSet(valueCount);
+            for (int i = getInt(postingOffsetsStart, first);
+                    i < getInt(postingOffsetsStart, last); i++) {
+                wordMatches.set(getInt(postingsStart, i));
+            }
+            if (matches == null) {
+                matches = wordMatches;
+            } else {
+                matches.and(wordMatches);
+            }
+        }
+        List<String> results = new ArrayList<String>();
+        results.add("true");
+        for (int i = matches.nextSetBit(0); (i >= 0) && (results.size() <= n);
+                i = matches.nextSetBit(i + 1)) {
+            results.add(getValue(i));
+        }
+        return results.toArray(new String[results.size()]);
+    }
+
+    private int getInt(int arrayStart, int i) {
+        return buffer.getInt(arrayStart + 4 * i);
+    }
+
+    // the first word that is not less than the prefix
+    private int findFirst(byte[] prefix) {
+        int low = 0;
+        int high = wordCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareWord(mid, prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compareWord(int word, byte[] bytes) {
+        int start = wordsStart + getInt(wordOffsetsStart, word);
+        int length = wordsStart + getInt(wordOffsetsStart, word + 1) - start;
+        for (int i = 0; (i < length) && (i < bytes.length); i++) {
+            int a = buffer.get(start + i) & 0xff;
+            int b = bytes[i] & 0xff;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return length - bytes.length;
+    }
+
+    private boolean startsWith(int word, byte[] prefix) {
+        int start = wordsStart + getInt(wordOffsetsStart, word);
+        int length = wordsStart + getInt(wordOffsetsStart, word + 1) - start;
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getValue(int value) {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(valuesStart + getInt(valueOffsetsStart, value + 1));
+        bytes.position(valuesStart + getInt(valueOffsetsStart, value));
+        return UTF8.decode(bytes).toString();
+    }
+
+    /**
+     * Collects the values of a field and writes them out as a PrefixIndex.
+     */
+    public static final class Builder
+    {
+        private static final Comparator<byte[]> UNSIGNED_ORDER = new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] a, byte[] b) {
+                for (int i = 0; (i < a.length) && (i < b.length); i++) {
+                    int diff = (a[i] & 0xff) - (b[i] & 0xff);
+                    if (diff != 0) {
+                        return diff;
+                    }
+                }
+                return a.length - b.length;
+            }
+        };
+        private static final Comparator<String> VALUE_ORDER = new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int retval = String.CASE_INSENSITIVE_ORDER.compare(a, b);
+                return (retval == 0 ? a.compareTo(b) : retval);
+            }
+        };
+
+        private final Collection<String> values = new TreeSet<String>(VALUE_ORDER);
+        private byte[][] valueBytes = null;
+        private byte[][] wordBytes = null;
+        private int[][] postings = null;
+        private long length = 0;
+
+        /**
+         * Adds a value to the index. Values that have already been added are ignored.
+         *
+         * @param value the value
+         */
+        public void add(String value) {
+            values.add(value);
+            valueBytes = null;
+        }
+
+        /**
+         * Returns the number of bytes that write() will write.
+         *
+         * @return the length of the index
+         * @throws IOException if the index would be too large
+         */
+        public int getLength() throws IOException {
+            prepare();
+            return (int) length;
+        }
+
+        /**
+         * Writes the index.
+         *
+         * @param out the DataOutput to write to
+         * @throws IOException if the output cannot be written to or the index would be too large
+         */
+        public void write(DataOutput out) throws IOException {
+            prepare();
+            out.writeInt(valueBytes.length);
+            out.writeInt(wordBytes.length);
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] bytes : valueBytes) {
+                offset += bytes.length;
+                out.writeInt(offset);
+            }
+            offset = 0;
+            out.writeInt(offset);
+            for (byte[] bytes : wordBytes) {
+                offset += bytes.length;
+                out.writeInt(offset);
+            }
+            offset = 0;
+            out.writeInt(offset);
+            for (int[] wordPostings : postings) {
+                offset += wordPostings.length;
+                out.writeInt(offset);
+            }
+            for (int[] wordPostings : postings) {
+                for (int value : wordPostings) {
+                    out.writeInt(value);
+                }
+            }
+            for (byte[] bytes : wordBytes) {
+                out.write(bytes);
+            }
+            for (byte[] bytes : valueBytes) {
+                out.write(bytes);
+            }
+        }
+
+        private void prepare() throws IOException {
+            if (valueBytes != null) {
+                return;
+            }
+            Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_30);
+            Map<String, int[]> wordPostings = new HashMap<String, int[]>();
+            byte[][] newValueBytes = new byte[values.size()][];
+            int valueId = 0;
+            long postingCount = 0;
+            length = 8 + 4 * (values.size() + 1);
+            for (String value : values) {
+                newValueBytes[valueId] = value.getBytes(UTF8);
+                length += newValueBytes[valueId].length;
+                TokenStream tokens = analyzer.tokenStream("value", new StringReader(value));
+                TermAttribute term = tokens.addAttribute(TermAttribute.class);
+                while (tokens.incrementToken()) {
+                    String word = term.term();
+                    // the first element of each array is the number of postings in it
+                    int[] ids = wordPostings.get(word);
+                    if (ids == null) {
+                        ids = new int[4];
+                        wordPostings.put(word, ids);
+                    } else if (ids[ids[0]] == valueId) {
+                        continue;
+                    } else if (ids[0] + 1 == ids.length) {
+                        ids = Arrays.copyOf(ids, ids.length * 2);
+                        wordPostings.put(word, ids);
+                    }
+                    ids[0]++;
+                    ids[ids[0]] = valueId;
+                    postingCount++;
+                }
+                tokens.close();
+                valueId++;
+            }
+            Map<byte[], int[]> sorted = new TreeMap<byte[], int[]>(UNSIGNED_ORDER);
+            for (Map.Entry<String, int[]> entry : wordPostings.entrySet()) {
+                int[] ids = entry.getValue();
+                sorted.put(entry.getKey().getBytes(UTF8), Arrays.copyOfRange(ids, 1, ids[0] + 1));
+            }
+            wordBytes = new byte[sorted.size()][];
+            postings = new int[sorted.size()][];
+            int wordId = 0;
+            for (Map.Entry<byte[], int[]> entry : sorted.entrySet()) {
+                wordBytes[wordId] = entry.getKey();
+                postings[wordId] = entry.getValue();
+                length += entry.getKey().length;
+                wordId++;
+            }
+            length += 8 * (wordBytes.length + 1) + 4 * postingCount;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Autocompletion index of " + values.size()
+                        + " values is too large");
+            }
+            valueBytes = newValueBytes;
+        }
+    }
+}
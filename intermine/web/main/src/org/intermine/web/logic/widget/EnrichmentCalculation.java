@@ -15,7 +15,6 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.math3.distribution.HypergeometricDistribution;
 
 /**
  * Calculate enrichment of an attribute applied to members of a sample that is a subset of a larger
@@ -24,7 +23,8 @@ import org.apache.commons.math3.distribution.HypergeometricDistribution;
  * occurrences in the population as a whole.  Thus a low p-value indicates that the attribute may
  * be characteristic of the items in the sample.
  *
- * Enrichment is implemented using a Hypergeometric test.
+ * Enrichment is implemented using a Hypergeometric test. The probabilities are summed in doubles
+ * from a table of log factorials that is built once per calculation and shared by every attribute.
  *
  * @author Julie Sullivan
  * @author Richard Smith
@@ -84,21 +84,76 @@ public final class EnrichmentCalculation
             int populationSize, Map<String, Integer> sampleCounts,
             Map<String, PopulationInfo> annotatedPopulationInfo) {
         Map<String, BigDecimal> rawResults = new HashMap<String, BigDecimal>();
+        if (sampleCounts.isEmpty()) {
+            return rawResults;
+        }
+        double[] logFactorials = getLogFactorials(populationSize);
         for (Map.Entry<String, Integer> entry : sampleCounts.entrySet()) {
             String attribute = entry.getKey();
 
-            Integer sampleCount = entry.getValue();
+            int sampleCount = entry.getValue().intValue();
             PopulationInfo pi = annotatedPopulationInfo.get(attribute);
-            Integer populationCount = (pi != null) ? pi.getSize() : 0;
+            int populationCount = (pi != null) ? pi.getSize() : 0;
 
-            HypergeometricDistribution h =
-                new HypergeometricDistribution(populationSize, populationCount, sampleSize);
-            Double pValue = h.upperCumulativeProbability(sampleCount);
+            double pValue = upperCumulativeProbability(logFactorials, populationSize,
+                    populationCount, sampleSize, sampleCount);
             rawResults.put(attribute, new BigDecimal(pValue));
         }
         return rawResults;
     }
 
+    /**
+     * Returns a table of the natural logs of the factorials of 0 to n.
+     *
+     * @param n the largest number needed
+     * @return an array of n + 1 doubles
+     */
+    protected static double[] getLogFactorials(int n) {
+        double[] retval = new double[n + 1];
+        for (int i = 2; i <= n; i++) {
+            retval[i] = retval[i - 1] + Math.log(i);
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the probability of drawing at least sampleCount annotated items in a sample of
+     * sampleSize items taken without replacement from a population of populationSize items, of
+     * which populationCount are annotated. This is the same as the upperCumulativeProbability
+     * method of the commons-math HypergeometricDistribution.
+     *
+     * @param logFactorials a table of log factorials, from getLogFactorials(populationSize)
+     * @param populationSize the number of items in the population
+     * @param populationCount the number of annotated items in the population
+     * @param sampleSize the number of items in the sample
+     * @param sampleCount the number of annotated items in the sample
+     * @return a p-value
+     */
+    protected static double upperCumulativeProbability(double[] logFactorials,
+            int populationSize, int populationCount, int sampleSize, int sampleCount) {
+        if ((populationCount > populationSize) || (sampleSize > populationSize)) {
+            throw new IllegalArgumentException("Population of " + populationSize
+                    + " is too small for " + populationCount + " annotated items and a sample of "
+                    + sampleSize);
+        }
+        int lowest = Math.max(0, sampleSize - (populationSize - populationCount));
+        int highest = Math.min(populationCount, sampleSize);
+        if (sampleCount <= lowest) {
+            return 1.0;
+        }
+        double logTotal = logFactorials[populationSize] - logFactorials[sampleSize]
+            - logFactorials[populationSize - sampleSize];
+        double retval = 0.0;
+        for (int k = sampleCount; k <= highest; k++) {
+            double logP = logFactorials[populationCount] - logFactorials[k]
+                - logFactorials[populationCount - k]
+                + logFactorials[populationSize - populationCount] - logFactorials[sampleSize - k]
+                - logFactorials[populationSize - populationCount - sampleSize + k] - logTotal;
+            retval += Math.exp(logP);
+        }
+        return Math.min(1.0, retval);
+    }
+
     private static ErrorCorrection.Strategy getStrategy(String errorCorrection) {
         ErrorCorrection.Strategy strategy = null;
         StringUtils.defaultIfBlank(errorCorrection, "None");
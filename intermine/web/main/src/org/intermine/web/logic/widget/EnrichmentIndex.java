@@ -0,0 +1,194 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.util.CacheMap;
+import org.intermine.util.IntBitmap;
+
+/**
+ * An in-memory index of the annotations used by an enrichment widget, from each term to a bitmap
+ * of the ids of the objects annotated with it. The index covers every object in the database, so
+ * one index serves every list, and the sample and population counts for a list are worked out by
+ * intersecting bitmaps rather than by running queries. Indexes are built from the query returned
+ * by EnrichmentWidgetImplLdr.getIndexQuery, and cached by that query, so there is one for each
+ * widget and filter value.
+ * <p>
+ * List constraints, which restrict the population to the objects sharing a value (such as an
+ * organism) with an object in the list, are held as a bitmap of objects for each value.
+ */
+public final class EnrichmentIndex
+{
+    private static final Logger LOG = Logger.getLogger(EnrichmentIndex.class);
+    private static final int BATCH_SIZE = 20000;
+
+    private static CacheMap<String, EnrichmentIndex> indexes
+        = new CacheMap<String, EnrichmentIndex>();
+
+    private final Map<String, IntBitmap> terms = new HashMap<String, IntBitmap>();
+    private final Map<String, String> labels = new HashMap<String, String>();
+    private final IntBitmap annotated = new IntBitmap();
+    private final List<Map<String, IntBitmap>> listConstraintValues
+        = new ArrayList<Map<String, IntBitmap>>();
+
+    private EnrichmentIndex(ObjectStore os, Query indexQuery, List<Query> listQueries) {
+        long start = System.currentTimeMillis();
+        Results results = os.execute(indexQuery, BATCH_SIZE, true, true, true);
+        for (Object o : results) {
+            @SuppressWarnings("rawtypes")
+            ResultsRow row = (ResultsRow) o;
+            int id = ((Integer) row.get(0)).intValue();
+            String term = String.valueOf(row.get(1));
+            IntBitmap items = terms.get(term);
+            if (items == null) {
+                items = new IntBitmap();
+                terms.put(term, items);
+            }
+            items.add(id);
+            annotated.add(id);
+            labels.put(term, String.valueOf(row.size() > 2 ? row.get(2) : row.get(1)));
+        }
+        for (Query listQuery : listQueries) {
+            Map<String, IntBitmap> values = new HashMap<String, IntBitmap>();
+            results = os.execute(listQuery, BATCH_SIZE, true, true, true);
+            for (Object o : results) {
+                @SuppressWarnings("rawtypes")
+                ResultsRow row = (ResultsRow) o;
+                String value = String.valueOf(row.get(1));
+                IntBitmap items = values.get(value);
+                if (items == null) {
+                    items = new IntBitmap();
+                    values.put(value, items);
+                }
+                items.add(((Integer) row.get(0)).intValue());
+            }
+            listConstraintValues.add(values);
+        }
+        LOG.info("Built enrichment index of " + terms.size() + " terms for " + annotated.size()
+                + " objects in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Returns the index for the widget that the given loader was built for, building it if it
+     * is not in the cache.
+     *
+     * @param os the ObjectStore to run the index queries in
+     * @param ldr the loader for the widget
+     * @return an EnrichmentIndex
+     */
+    public static EnrichmentIndex getInstance(ObjectStore os, EnrichmentWidgetImplLdr ldr) {
+        Query indexQuery = ldr.getIndexQuery();
+        List<Query> listQueries = ldr.getListConstraintQueries();
+        String key = indexQuery.toString() + listQueries.toString();
+        EnrichmentIndex retval;
+        synchronized (indexes) {
+            retval = indexes.get(key);
+        }
+        if (retval == null) {
+            retval = new EnrichmentIndex(os, indexQuery, listQueries);
+            synchronized (indexes) {
+                indexes.put(key, retval);
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the contents of a list as a bitmap of object ids.
+     *
+     * @param os the ObjectStore that the list is in
+     * @param bag a list
+     * @return an IntBitmap, which must not be altered
+     * @throws ObjectStoreException if there is a problem fetching the contents of the list
+     */
+    public static IntBitmap getBitmap(ObjectStore os, InterMineBag bag)
+        throws ObjectStoreException {
+        if (os instanceof ObjectStoreInterMineImpl) {
+            return ((ObjectStoreInterMineImpl) os).getBagBitmap(bag.getOsb());
+        }
+        IntBitmap retval = new IntBitmap();
+        for (Integer id : bag.getContentsAsIds()) {
+            retval.add(id.intValue());
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the objects that have any annotation.
+     *
+     * @return an IntBitmap, which must not be altered
+     */
+    public IntBitmap getAnnotated() {
+        return annotated;
+    }
+
+    /**
+     * Returns the population to test a sample against - every annotated object, restricted to
+     * a population list if there is one, and by the list constraints of the widget.
+     *
+     * @param sample the objects in the list being analysed
+     * @param populationBag the objects in the population list, or null to use every object
+     * @return a new IntBitmap
+     */
+    public IntBitmap getPopulation(IntBitmap sample, IntBitmap populationBag) {
+        IntBitmap retval = (populationBag == null ? annotated : annotated.and(populationBag));
+        for (Map<String, IntBitmap> values : listConstraintValues) {
+            IntBitmap allowed = new IntBitmap();
+            for (IntBitmap items : values.values()) {
+                if (items.andSize(sample) > 0) {
+                    allowed = allowed.or(items);
+                }
+            }
+            retval = retval.and(allowed);
+        }
+        return retval;
+    }
+
+    /**
+     * Counts the objects annotated with each term in a set of objects.
+     *
+     * @param items a set of object ids
+     * @return a Map from term to the number of objects with that term, for every term that at
+     * least one of the objects has
+     */
+    public Map<String, Integer> count(IntBitmap items) {
+        Map<String, Integer> retval = new HashMap<String, Integer>();
+        for (Map.Entry<String, IntBitmap> entry : terms.entrySet()) {
+            int count = entry.getValue().andSize(items);
+            if (count > 0) {
+                retval.put(entry.getKey(), new Integer(count));
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the display label for a term.
+     *
+     * @param term a term
+     * @return the label
+     */
+    public String getLabel(String term) {
+        return labels.get(term);
+    }
+}
@@ -0,0 +1,93 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.intermine.util.IntBitmap;
+
+/**
+ * Summarises data for an enrichment calculation by intersecting the bitmaps of an
+ * EnrichmentIndex with the contents of the list, without running any queries. This gives the same
+ * counts as EnrichmentInputWidgetLdr, except that it cannot supply the extra attribute needed by
+ * a correction coefficient.
+ */
+public class EnrichmentInputBitmap implements EnrichmentInput
+{
+    private final EnrichmentIndex index;
+    private final IntBitmap sample;
+    private final IntBitmap population;
+    private Map<String, Integer> sampleCounts = null;
+    private Map<String, PopulationInfo> populationCounts = null;
+    private Map<String, String> labels = null;
+
+    /**
+     * Construct from an index and the contents of the lists.
+     *
+     * @param index the EnrichmentIndex for the widget
+     * @param sample the contents of the list being analysed
+     * @param populationBag the contents of the population list, or null to use every object
+     */
+    public EnrichmentInputBitmap(EnrichmentIndex index, IntBitmap sample,
+            IntBitmap populationBag) {
+        this.index = index;
+        this.sample = sample;
+        this.population = index.getPopulation(sample, populationBag);
+    }
+
+    @Override
+    public PopulationInfo getPopulationInfo() {
+        return new PopulationInfo(population.size(), 0);
+    }
+
+    @Override
+    public int getSampleSize() {
+        return index.getAnnotated().andSize(sample);
+    }
+
+    @Override
+    public Map<String, Integer> getAnnotatedCountsInSample() {
+        if (sampleCounts == null) {
+            sampleCounts = index.count(sample);
+            labels = new HashMap<String, String>();
+            for (String term : sampleCounts.keySet()) {
+                labels.put(term, index.getLabel(term));
+            }
+        }
+        return sampleCounts;
+    }
+
+    @Override
+    public Map<String, PopulationInfo> getAnnotatedCountsInPopulation() {
+        if (populationCounts == null) {
+            populationCounts = new HashMap<String, PopulationInfo>();
+            for (Map.Entry<String, Integer> entry : index.count(population).entrySet()) {
+                populationCounts.put(entry.getKey(),
+                        new PopulationInfo(entry.getValue().intValue(), 0));
+            }
+        }
+        return populationCounts;
+    }
+
+    @Override
+    public Map<String, String> getLabels() {
+        if (labels == null) {
+            getAnnotatedCountsInSample();
+        }
+        return labels;
+    }
+
+    @Override
+    public int getTestCount() {
+        return getAnnotatedCountsInPopulation().size();
+    }
+}
@@ -34,6 +34,8 @@ import org.intermine.pathquery.Constraints;
 import org.intermine.pathquery.OrderDirection;
 import org.intermine.pathquery.PathConstraint;
 import org.intermine.pathquery.PathQuery;
+import org.intermine.util.CacheMap;
+import org.intermine.util.IntBitmap;
 import org.intermine.web.logic.widget.config.EnrichmentWidgetConfig;
 import org.intermine.web.logic.widget.config.WidgetConfig;
 import org.intermine.web.logic.widget.config.WidgetConfigUtil;
@@ -57,6 +59,10 @@ public class EnrichmentWidget extends Widget
     private String pathConstraint;
     private ClassDescriptor typeDescriptor;
 
+    // results of previous calculations, by list, widget and options
+    private static CacheMap<String, CachedResults> resultsCache
+        = new CacheMap<String, CachedResults>();
+
 
     /**
      * @param config widget config
@@ -149,15 +155,66 @@ public class EnrichmentWidget extends Widget
             ldr = new EnrichmentWidgetImplLdr(bag, populationBag, os,
                   (EnrichmentWidgetConfig) config, filter, extraCorrectionCoefficient,
                   correctionCoefficient);
-            EnrichmentInput input = new EnrichmentInputWidgetLdr(os, ldr);
-            results = EnrichmentCalculation.calculate(input, max, errorCorrection,
-                                           extraCorrectionCoefficient, correctionCoefficient);
+            if (extraCorrectionCoefficient) {
+                // the correction coefficient needs extra attributes that the index doesn't have
+                EnrichmentInput input = new EnrichmentInputWidgetLdr(os, ldr);
+                results = EnrichmentCalculation.calculate(input, max, errorCorrection,
+                                               extraCorrectionCoefficient, correctionCoefficient);
+            } else {
+                results = calculateWithIndex();
+            }
             setNotAnalysed(bag.getSize() - results.getAnalysedTotal());
         } catch (ObjectStoreException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private EnrichmentResults calculateWithIndex() throws ObjectStoreException {
+        IntBitmap sample = EnrichmentIndex.getBitmap(os, bag);
+        IntBitmap population = (populationBag == null ? null
+                : EnrichmentIndex.getBitmap(os, populationBag));
+        String key = config.getId() + "\t" + bag.getOsb().getBagId() + "\t"
+            + (populationBag == null ? "" : populationBag.getOsb().getBagId()) + "\t" + filter
+            + "\t" + errorCorrection + "\t" + max;
+        CachedResults cached;
+        synchronized (resultsCache) {
+            cached = resultsCache.get(key);
+        }
+        if ((cached != null) && cached.matches(sample, population)) {
+            return cached.results;
+        }
+        EnrichmentInput input = new EnrichmentInputBitmap(EnrichmentIndex.getInstance(os, ldr),
+                sample, population);
+        EnrichmentResults retval = EnrichmentCalculation.calculate(input, max, errorCorrection,
+                false, correctionCoefficient);
+        synchronized (resultsCache) {
+            resultsCache.put(key, new CachedResults(sample, population, retval));
+        }
+        return retval;
+    }
+
+    /**
+     * The results of an enrichment calculation, with the list contents they were calculated for.
+     */
+    private static final class CachedResults
+    {
+        private final IntBitmap sample;
+        private final IntBitmap population;
+        private final EnrichmentResults results;
+
+        CachedResults(IntBitmap sample, IntBitmap population, EnrichmentResults results) {
+            this.sample = sample;
+            this.population = population;
+            this.results = results;
+        }
+
+        boolean matches(IntBitmap sample, IntBitmap population) {
+            return ((this.sample == sample) || this.sample.equals(sample))
+                && ((this.population == population)
+                        || ((population != null) && population.equals(this.population)));
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -9,6 +9,7 @@ package org.intermine.web.logic.widget;
  * information or http://www.gnu.org/copyleft/lesser.html.
  *
  */
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -131,7 +132,9 @@ public class EnrichmentWidgetImplLdr extends WidgetLdr
         }
 
         QueryField qfStartClassId = new QueryField(startClass, "id");
-        if (!action.startsWith("population")) {
+        if ("index".equals(action)) {
+            // the index covers every object, and is intersected with the bags later
+        } else if (!action.startsWith("population")) {
             cs.addConstraint(new BagConstraint(qfStartClassId, ConstraintOp.IN, bag.getOsb()));
         } else if (populationBag != null) {
             cs.addConstraint(new BagConstraint(qfStartClassId,
@@ -161,6 +164,14 @@ public class EnrichmentWidgetImplLdr extends WidgetLdr
             subQ.addToSelect(qfStartClassId);
             subQ.addToOrderBy(qfEnrichId);
             return subQ;
+        // index query: return every gene with each term, for the EnrichmentIndex
+        } else if ("index".equals(action)) {
+            subQ.addToSelect(qfStartClassId);
+            subQ.addToSelect(qfEnrichId);
+            if (qfEnrichId != qfEnrich) {
+                subQ.addToSelect(qfEnrich);
+            }
+            return subQ;
         // analysed query:  return the gene only
         } else if ("analysed".equals(action)) {
             subQ.addToSelect(qfStartClassId);
@@ -308,6 +319,40 @@ public class EnrichmentWidgetImplLdr extends WidgetLdr
         return getQuery(actionLocal, null);
     }
 
+    /**
+     * @return the query for the EnrichmentIndex - every object of the start class that is
+     * annotated, with its terms, ignoring the list and the list constraints
+     */
+    public Query getIndexQuery() {
+        return getQuery("index", null);
+    }
+
+    /**
+     * Returns a query for each list constraint in the config, which restricts the population to
+     * the objects with the same value for a path as any object in the list. Each query returns
+     * the id of every object of the start class, and its value for the path.
+     *
+     * @return a List of queries, empty if there are no list constraints
+     */
+    public List<Query> getListConstraintQueries() {
+        List<Query> retval = new ArrayList<Query>();
+        for (PathConstraint pc : config.getPathConstraints()) {
+            if (WidgetConfigUtil.isListConstraint(pc)) {
+                queryClassInQuery = new HashMap<String, QueryClass>();
+                queryClassInQuery.put(startClass.getType().getSimpleName(), startClass);
+                Query query = new Query();
+                query.setConstraint(new ConstraintSet(ConstraintOp.AND));
+                query.addFrom(startClass);
+                QueryField qfValue = createQueryFieldByPath(pc.getPath(), query, false);
+                query.addToSelect(new QueryField(startClass, "id"));
+                query.addToSelect(qfValue);
+                query.setDistinct(true);
+                retval.add(query);
+            }
+        }
+        return retval;
+    }
+
     /**
      * @param keys the keys to the records to be exported
      * @return the query representing the records to be exported
@@ -10,6 +10,7 @@ package org.intermine.web.struts;
  *
  */
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -66,6 +67,7 @@ import org.intermine.api.tag.TagNames;
 import org.intermine.api.tag.TagTypes;
 import org.intermine.api.tracker.Tracker;
 import org.intermine.api.tracker.TrackerDelegate;
+import org.intermine.api.tracker.TrackerLogger;
 import org.intermine.api.tracker.util.TrackerUtil;
 import org.intermine.api.types.ClassKeys;
 import org.intermine.metadata.ClassDescriptor;
@@ -205,7 +207,7 @@ public class InitialiserPlugin implements PlugIn
 
         servletContext.setAttribute(Constants.GRAPH_CACHE, new HashMap<String, String>());
 
-        loadAutoCompleter(servletContext, os);
+        loadAutoCompleter(servletContext, os, webProperties);
         LOG.debug("LOADED AUTO COMPLETER");
 
         cleanTags(im.getTagManager());
@@ -413,24 +415,32 @@ public class InitialiserPlugin implements PlugIn
     }
 
     private void loadAutoCompleter(ServletContext servletContext,
-            ObjectStore os) throws ServletException {
+            ObjectStore os, Properties webProperties) throws ServletException {
         if (os instanceof ObjectStoreInterMineImpl) {
             Database db = ((ObjectStoreInterMineImpl) os).getDatabase();
             try {
-                InputStream is = MetadataManager.retrieveBLOBInputStream(db,
-                        MetadataManager.AUTOCOMPLETE_INDEX);
-                AutoCompleter ac;
-
-                if (is != null) {
-                    ac = new AutoCompleter(is);
+                // indexes written before they were large binaries are ignored
+                String value = MetadataManager.retrieve(db, MetadataManager.AUTOCOMPLETE_INDEX);
+                AutoCompleter ac = null;
+
+                if (value != null) {
+                    File directory = new File(webProperties.getProperty(
+                            "webapp.autocomplete.directory", System.getProperty("java.io.tmpdir")
+                            + File.separator + "intermine-autocomplete"));
+                    InputStream is = MetadataManager.readLargeBinary(db,
+                            MetadataManager.AUTOCOMPLETE_INDEX);
+                    ac = AutoCompleter.getInstance(is, directory, db.getURL());
+                }
+                if (ac != null) {
                     SessionMethods.setAutoCompleter(servletContext, ac);
                 } else {
-                    ac = null;
                     LOG.warn("No AutoCompleter index found in database.");
                 }
             } catch (SQLException e) {
                 LOG.error("Problem with database", e);
                 throw new ServletException("Problem with database", e);
+            } catch (IOException e) {
+                LOG.error("Could not load the AutoCompleter index", e);
             }
         }
     }
@@ -1005,7 +1015,16 @@ public class InitialiserPlugin implements PlugIn
         LOG.info("initializeTrackers: trackerList is" + trackerList);
         if (trackerList != null) {
             String[] trackerClassNames = trackerList.split(",");
-            TrackerDelegate td = new TrackerDelegate(trackerClassNames, userprofileOSW);
+            int queueSize = Integer.parseInt(webProperties.getProperty("webapp.tracker.queueSize",
+                    String.valueOf(TrackerDelegate.DEFAULT_QUEUE_SIZE)));
+            long maxWait = Long.parseLong(webProperties.getProperty("webapp.tracker.maxWait",
+                    "0"));
+            int batchSize = Integer.parseInt(webProperties.getProperty("webapp.tracker.batchSize",
+                    String.valueOf(TrackerLogger.DEFAULT_BATCH_SIZE)));
+            long flushInterval = Long.parseLong(webProperties.getProperty(
+                    "webapp.tracker.flushInterval", "0"));
+            TrackerDelegate td = new TrackerDelegate(trackerClassNames, userprofileOSW, queueSize,
+                    maxWait, batchSize, flushInterval);
             return td;
         }
         return null;
@@ -39,7 +39,11 @@ public enum Format {
     /** JSON Table format constant **/
     TABLE("application/json;format=table"),
     /** JSON Row format constant **/
-    ROWS("application/json;format=rows");
+    ROWS("application/json;format=rows"),
+    /** Newline-delimited JSON, one array per row **/
+    NDJSON("application/x-ndjson"),
+    /** Apache Arrow IPC stream **/
+    ARROW("application/vnd.apache.arrow.stream");
 
     /** The basic formats: HTML, TEXT, XML, JSON **/
     public static final Set<Format> BASIC_FORMATS = new HashSet<Format>(Arrays.asList(
@@ -56,6 +60,11 @@ public enum Format {
         TSV, CSV
     ));
 
+    /** Bulk row formats, written straight from the result columns: NDJSON, ARROW **/
+    public static final Set<Format> BULK_FORMATS = new HashSet<Format>(Arrays.asList(
+        NDJSON, ARROW
+    ));
+
     private final String contentType;
 
     private Format(String contentType) {
@@ -54,6 +54,7 @@ import org.intermine.webservice.server.exceptions.NotAcceptableException;
 import org.intermine.webservice.server.exceptions.ServiceException;
 import org.intermine.webservice.server.exceptions.ServiceForbiddenException;
 import org.intermine.webservice.server.exceptions.UnauthorizedException;
+import org.intermine.webservice.server.output.ArrowOutput;
 import org.intermine.webservice.server.output.CSVFormatter;
 import org.intermine.webservice.server.output.HTMLTableFormatter;
 import org.intermine.webservice.server.output.JSONFormatter;
@@ -61,6 +62,7 @@ import org.intermine.webservice.server.output.JSONObjectFormatter;
 import org.intermine.webservice.server.output.JSONResultFormatter;
 import org.intermine.webservice.server.output.JSONRowFormatter;
 import org.intermine.webservice.server.output.JSONTableFormatter;
+import org.intermine.webservice.server.output.NDJSONOutput;
 import org.intermine.webservice.server.output.Output;
 import org.intermine.webservice.server.output.PlainFormatter;
 import org.intermine.webservice.server.output.StreamedOutput;
@@ -872,6 +874,22 @@ public abstract class WebService
                     ResponseUtil.setJSONHeader(response, "result.json", formatIsJSONP());
                 }
                 break;
+            case NDJSON:
+                output = new NDJSONOutput(out);
+                filename += ".ndjson";
+                if (isUncompressed()) {
+                    ResponseUtil.setCustomTypeHeader(response, filename,
+                            Format.NDJSON.getContentType());
+                }
+                break;
+            case ARROW:
+                output = new ArrowOutput(os);
+                filename += ".arrow";
+                if (isUncompressed()) {
+                    ResponseUtil.setCustomTypeHeader(response, filename,
+                            Format.ARROW.getContentType());
+                }
+                break;
             default:
                 output = getDefaultOutput(out, os, separator);
         }
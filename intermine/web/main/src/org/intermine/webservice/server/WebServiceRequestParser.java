@@ -66,6 +66,12 @@ public class WebServiceRequestParser
     /** Value of parameter when user wants comma separated output to be returned. **/
     public static final String FORMAT_PARAMETER_COUNT = "count";
 
+    /** Value of parameter when user wants newline-delimited json to be returned. **/
+    public static final String FORMAT_PARAMETER_NDJSON = "ndjson";
+
+    /** Value of parameter when user wants an Apache Arrow stream to be returned. **/
+    public static final String FORMAT_PARAMETER_ARROW = "arrow";
+
     /**
      * Value of parameter when user wants json data
     **/
@@ -200,6 +206,8 @@ public class WebServiceRequestParser
             put(FORMAT_PARAMETER_CSV, Format.CSV);
             put(FORMAT_PARAMETER_TEXT, Format.TEXT);
             put(FORMAT_PARAMETER_COUNT, Format.TEXT);
+            put(FORMAT_PARAMETER_NDJSON, Format.NDJSON);
+            put(FORMAT_PARAMETER_ARROW, Format.ARROW);
             put(FORMAT_PARAMETER_JSON_OBJ, Format.OBJECTS);
             put(FORMAT_PARAMETER_JSONP_OBJ, Format.OBJECTS);
             put(FORMAT_PARAMETER_JSON_TABLE, Format.TABLE);
@@ -290,6 +298,10 @@ public class WebServiceRequestParser
                     String type = parts[0].trim();
                     if (ACCEPT_TYPES.containsKey(type)) {
                         areAcceptable.add(Format.valueOf(ACCEPT_TYPES.get(type)));
+                    } else if (Format.NDJSON.getContentType().equals(type)) {
+                        areAcceptable.add(Format.NDJSON);
+                    } else if (Format.ARROW.getContentType().equals(type)) {
+                        areAcceptable.add(Format.ARROW);
                     } else if ("application/json".equals(type)
                             || "text/javascript".equals(type)
                             || "application/javascript".equals(type)
@@ -325,9 +337,9 @@ public class WebServiceRequestParser
 
     /**
      * Parse a format from the path-info of the request. By default, if the
-     * path-info is one of "xml", "json", "jsonp", "tsv" or "csv", then an
-     * appropriate format will be returned. All other values will cause null to
-     * be returned.
+     * path-info is one of "xml", "json", "jsonp", "tsv", "csv", "txt", "ndjson"
+     * or "arrow", then an appropriate format will be returned. All other values
+     * will cause null to be returned.
      *
      * @param request the incoming request.
      * @return A format string.
@@ -353,6 +365,10 @@ public class WebServiceRequestParser
                 return Format.CSV;
             } else if (pathInfo.endsWith("/txt")) {
                 return Format.TEXT;
+            } else if (pathInfo.endsWith("/ndjson")) {
+                return Format.NDJSON;
+            } else if (pathInfo.endsWith("/arrow")) {
+                return Format.ARROW;
             }
         }
         return null;
@@ -0,0 +1,334 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Encodes the metadata messages of the Apache Arrow IPC format (Schema and RecordBatch), which
+ * are flatbuffers. This writes just the tables that ArrowOutput needs, laid out front to back:
+ * each table is preceded by its vtable and followed by the things it refers to.
+ */
+final class ArrowMessageEncoder
+{
+    private ArrowMessageEncoder() {
+    }
+
+    /** Type union value for 64 bit signed integers **/
+    static final byte TYPE_INT = 2;
+    /** Type union value for doubles **/
+    static final byte TYPE_FLOATING_POINT = 3;
+    /** Type union value for strings **/
+    static final byte TYPE_UTF8 = 5;
+    /** Type union value for booleans **/
+    static final byte TYPE_BOOL = 6;
+
+    private static final byte HEADER_SCHEMA = 1;
+    private static final byte HEADER_RECORD_BATCH = 3;
+    private static final short METADATA_V5 = 4;
+    private static final short PRECISION_DOUBLE = 2;
+
+    /**
+     * Encode a Schema message.
+     * @param names The names of the columns.
+     * @param types The type union values of the columns.
+     * @return The flatbuffer bytes.
+     */
+    static byte[] schema(List<String> names, byte[] types) {
+        List<Node> fields = new ArrayList<Node>();
+        for (int i = 0; i < names.size(); i++) {
+            Table type = new Table();
+            if (types[i] == TYPE_INT) {
+                type.add(0, 4, 64).add(1, 1, 1);
+            } else if (types[i] == TYPE_FLOATING_POINT) {
+                type.add(0, 2, PRECISION_DOUBLE);
+            }
+            fields.add(new Table()
+                .add(0, new StringNode(names.get(i)))
+                .add(1, 1, 1)
+                .add(2, 1, types[i])
+                .add(3, type)
+                .add(5, new OffsetVector(Collections.<Node>emptyList())));
+        }
+        Table schema = new Table().add(0, 2, 0).add(1, new OffsetVector(fields));
+        return message(HEADER_SCHEMA, schema, 0);
+    }
+
+    /**
+     * Encode a RecordBatch message.
+     * @param length The number of rows.
+     * @param nodes The length and null count of each column.
+     * @param buffers The offset and length within the body of each buffer.
+     * @param bodyLength The length of the body, including padding.
+     * @return The flatbuffer bytes.
+     */
+    static byte[] recordBatch(long length, long[] nodes, long[] buffers, long bodyLength) {
+        Table batch = new Table()
+            .add(0, 8, length)
+            .add(1, new StructVector(nodes))
+            .add(2, new StructVector(buffers));
+        return message(HEADER_RECORD_BATCH, batch, bodyLength);
+    }
+
+    private static byte[] message(byte headerType, Table header, long bodyLength) {
+        Table message = new Table()
+            .add(0, 2, METADATA_V5)
+            .add(1, 1, headerType)
+            .add(2, header)
+            .add(3, 8, bodyLength);
+        Buffer b = new Buffer();
+        b.putInt(0);
+        int root = message.write(b);
+        b.patchInt(0, root);
+        return b.toByteArray();
+    }
+
+    /**
+     * A growable little-endian byte buffer.
+     */
+    private static class Buffer
+    {
+        private byte[] bytes = new byte[256];
+        private int pos = 0;
+
+        int position() {
+            return pos;
+        }
+
+        void putByte(int b) {
+            if (pos == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[pos++] = (byte) b;
+        }
+
+        void putShort(int s) {
+            putByte(s);
+            putByte(s >> 8);
+        }
+
+        void putInt(int i) {
+            putShort(i);
+            putShort(i >> 16);
+        }
+
+        void putLong(long l) {
+            putInt((int) l);
+            putInt((int) (l >> 32));
+        }
+
+        void put(int size, long value) {
+            switch (size) {
+                case 1:
+                    putByte((int) value);
+                    break;
+                case 2:
+                    putShort((int) value);
+                    break;
+                case 4:
+                    putInt((int) value);
+                    break;
+                default:
+                    putLong(value);
+            }
+        }
+
+        void patchInt(int at, int value) {
+            bytes[at] = (byte) value;
+            bytes[at + 1] = (byte) (value >> 8);
+            bytes[at + 2] = (byte) (value >> 16);
+            bytes[at + 3] = (byte) (value >> 24);
+        }
+
+        /** Pad until the position plus the offset is a multiple of the alignment. */
+        void align(int alignment, int offset) {
+            while ((pos + offset) % alignment != 0) {
+                putByte(0);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, pos);
+        }
+    }
+
+    /**
+     * Something that can be referred to by an offset.
+     */
+    private abstract static class Node
+    {
+        /**
+         * Write this node, and everything it refers to.
+         * @return The position that offsets to this node should point at.
+         */
+        abstract int write(Buffer b);
+    }
+
+    /**
+     * A field of a table - either a scalar, or an offset to another node.
+     */
+    private static class Field
+    {
+        final int slot;
+        final int size;
+        final long value;
+        final Node child;
+        int offset;
+
+        Field(int slot, int size, long value, Node child) {
+            this.slot = slot;
+            this.size = size;
+            this.value = value;
+            this.child = child;
+        }
+    }
+
+    private static class Table extends Node
+    {
+        private final List<Field> fields = new ArrayList<Field>();
+
+        Table add(int slot, int size, long value) {
+            fields.add(new Field(slot, size, value, null));
+            return this;
+        }
+
+        Table add(int slot, Node child) {
+            fields.add(new Field(slot, 4, 0, child));
+            return this;
+        }
+
+        @Override
+        int write(Buffer b) {
+            // Largest fields first, so each is aligned with no more than the initial padding
+            List<Field> sorted = new ArrayList<Field>(fields);
+            Collections.sort(sorted, new Comparator<Field>() {
+                public int compare(Field a, Field o) {
+                    return o.size - a.size;
+                }
+            });
+            int slots = 0;
+            int inlineSize = 4;
+            for (Field f : sorted) {
+                slots = Math.max(slots, f.slot + 1);
+                while (inlineSize % f.size != 0) {
+                    inlineSize++;
+                }
+                f.offset = inlineSize;
+                inlineSize += f.size;
+            }
+            int[] slotOffsets = new int[slots];
+            for (Field f : sorted) {
+                slotOffsets[f.slot] = f.offset;
+            }
+            b.align(2, 0);
+            int vtable = b.position();
+            b.putShort(4 + 2 * slots);
+            b.putShort(inlineSize);
+            for (int slotOffset : slotOffsets) {
+                b.putShort(slotOffset);
+            }
+            b.align(8, 0);
+            int table = b.position();
+            b.putInt(table - vtable);
+            for (Field f : sorted) {
+                while (b.position() < table + f.offset) {
+                    b.putByte(0);
+                }
+                b.put(f.size, f.value);
+            }
+            for (Field f : sorted) {
+                if (f.child != null) {
+                    int at = table + f.offset;
+                    b.patchInt(at, f.child.write(b) - at);
+                }
+            }
+            return table;
+        }
+    }
+
+    private static class StringNode extends Node
+    {
+        private final byte[] utf8;
+
+        StringNode(String s) {
+            try {
+                utf8 = s.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        int write(Buffer b) {
+            b.align(4, 0);
+            int retval = b.position();
+            b.putInt(utf8.length);
+            for (byte c : utf8) {
+                b.putByte(c);
+            }
+            b.putByte(0);
+            return retval;
+        }
+    }
+
+    private static class OffsetVector extends Node
+    {
+        private final List<Node> elements;
+
+        OffsetVector(List<Node> elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        int write(Buffer b) {
+            b.align(4, 0);
+            int retval = b.position();
+            b.putInt(elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                b.putInt(0);
+            }
+            for (int i = 0; i < elements.size(); i++) {
+                int at = retval + 4 + 4 * i;
+                b.patchInt(at, elements.get(i).write(b) - at);
+            }
+            return retval;
+        }
+    }
+
+    /**
+     * A vector of structs made of two longs, such as FieldNode and Buffer.
+     */
+    private static class StructVector extends Node
+    {
+        private final long[] pairs;
+
+        StructVector(long[] pairs) {
+            this.pairs = pairs;
+        }
+
+        @Override
+        int write(Buffer b) {
+            // The length comes just before the first element, which must be 8-byte aligned
+            b.align(8, 4);
+            int retval = b.position();
+            b.putInt(pairs.length / 2);
+            for (long l : pairs) {
+                b.putLong(l);
+            }
+            return retval;
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.intermine.api.results.ResultElement;
+import org.intermine.webservice.server.exceptions.ServiceException;
+
+/**
+ * Streams results in the Apache Arrow IPC stream format. Rows are collected into columns, and
+ * each batch of rows is written as a record batch as soon as it is full, so memory use depends
+ * on the batch size and not on the size of the result set.
+ * <p>
+ * Columns are typed from the model types given in the KEY_COLUMN_TYPES header attribute:
+ * integer types become 64 bit integers, floating point types become doubles, booleans become
+ * booleans, and everything else (including dates, in ISO-8601 format) becomes UTF-8 strings. If
+ * an error occurs the stream is closed without its end marker, so clients see it as truncated.
+ */
+public class ArrowOutput extends RowOutput
+{
+    private static final Logger LOG = Logger.getLogger(ArrowOutput.class);
+
+    /** The default number of rows in a record batch **/
+    public static final int DEFAULT_BATCH_SIZE = 8192;
+
+    private final OutputStream os;
+    private final int batchSize;
+    private Column[] columns = null;
+    private int rowsInBatch = 0;
+    private int resultsCount = 0;
+
+    /**
+     * Constructor.
+     * @param os The stream to write to.
+     */
+    public ArrowOutput(OutputStream os) {
+        this(os, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param os The stream to write to.
+     * @param batchSize The number of rows in each record batch.
+     */
+    public ArrowOutput(OutputStream os, int batchSize) {
+        this.os = os;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void addResultElements(List<ResultElement> row) {
+        ensureSchemaIsWritten(row.size());
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].add(i < row.size() ? getValue(row.get(i)) : null);
+        }
+        rowAdded();
+    }
+
+    @Override
+    public void addResultItem(List<String> item) {
+        ensureSchemaIsWritten(item.size());
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].add(i < item.size() ? item.get(i) : null);
+        }
+        rowAdded();
+    }
+
+    @Override
+    public void flush() {
+        try {
+            if (getCode() != SC_OK) {
+                LOG.warn("Ending Arrow stream early: " + getCode() + " " + getError());
+            } else {
+                ensureSchemaIsWritten(0);
+                if (rowsInBatch > 0) {
+                    writeBatch();
+                }
+                writeInt(-1);
+                writeInt(0);
+            }
+            os.flush();
+            os.close();
+        } catch (IOException e) {
+            throw new ServiceException(e);
+        }
+    }
+
+    @Override
+    protected int getResultsCount() {
+        return resultsCount;
+    }
+
+    private void rowAdded() {
+        resultsCount++;
+        rowsInBatch++;
+        if (rowsInBatch >= batchSize) {
+            try {
+                writeBatch();
+            } catch (IOException e) {
+                throw new ServiceException(e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void ensureSchemaIsWritten(int width) {
+        if (columns != null) {
+            return;
+        }
+        List<String> names = (List<String>) getHeaderAttributes().get(KEY_COLUMN_NAMES);
+        List<String> types = (List<String>) getHeaderAttributes().get(KEY_COLUMN_TYPES);
+        if (names == null) {
+            names = new ArrayList<String>();
+            for (int i = 0; i < width; i++) {
+                names.add("column" + i);
+            }
+        }
+        columns = new Column[names.size()];
+        byte[] typeIds = new byte[names.size()];
+        for (int i = 0; i < columns.length; i++) {
+            String type = (types == null || i >= types.size()) ? null : types.get(i);
+            columns[i] = makeColumn(type);
+            typeIds[i] = columns[i].getType();
+        }
+        try {
+            writeMessage(ArrowMessageEncoder.schema(names, typeIds), null, 0);
+        } catch (IOException e) {
+            throw new ServiceException(e);
+        }
+    }
+
+    private static Column makeColumn(String type) {
+        if (type == null) {
+            return new Utf8Column();
+        }
+        String t = type.startsWith("java.lang.") ? type.substring(10) : type;
+        if ("int".equals(t) || "Integer".equals(t) || "long".equals(t) || "Long".equals(t)
+                || "short".equals(t) || "Short".equals(t)) {
+            return new Int64Column();
+        } else if ("double".equals(t) || "Double".equals(t) || "float".equals(t)
+                || "Float".equals(t)) {
+            return new Float64Column();
+        } else if ("boolean".equals(t) || "Boolean".equals(t)) {
+            return new BoolColumn();
+        }
+        return new Utf8Column();
+    }
+
+    private void writeBatch() throws IOException {
+        Body body = new Body();
+        List<Long> buffers = new ArrayList<Long>();
+        long[] nodes = new long[columns.length * 2];
+        for (int i = 0; i < columns.length; i++) {
+            nodes[2 * i] = rowsInBatch;
+            nodes[2 * i + 1] = columns[i].getNullCount();
+            columns[i].writeBuffers(body, buffers, rowsInBatch);
+            columns[i].reset();
+        }
+        long[] bufferArray = new long[buffers.size()];
+        for (int i = 0; i < bufferArray.length; i++) {
+            bufferArray[i] = buffers.get(i).longValue();
+        }
+        writeMessage(ArrowMessageEncoder.recordBatch(rowsInBatch, nodes, bufferArray,
+                    body.length), body.bytes, body.length);
+        rowsInBatch = 0;
+    }
+
+    /**
+     * Write an encapsulated message: continuation marker, metadata length, metadata padded to
+     * eight bytes, and the body.
+     */
+    private void writeMessage(byte[] metadata, byte[] body, int bodyLength) throws IOException {
+        int padded = (metadata.length + 7) & ~7;
+        writeInt(-1);
+        writeInt(padded);
+        os.write(metadata);
+        os.write(new byte[padded - metadata.length]);
+        if (body != null) {
+            os.write(body, 0, bodyLength);
+        }
+    }
+
+    private void writeInt(int i) throws IOException {
+        os.write(i);
+        os.write(i >> 8);
+        os.write(i >> 16);
+        os.write(i >> 24);
+    }
+
+    /**
+     * The body of a record batch, with each buffer padded to eight bytes.
+     */
+    private static class Body
+    {
+        byte[] bytes = new byte[1024];
+        int length = 0;
+
+        void addBuffer(List<Long> buffers, byte[] data, int dataLength) {
+            int padded = (dataLength + 7) & ~7;
+            if (length + padded > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + padded));
+            }
+            System.arraycopy(data, 0, bytes, length, dataLength);
+            Arrays.fill(bytes, length + dataLength, length + padded, (byte) 0);
+            buffers.add(new Long(length));
+            buffers.add(new Long(dataLength));
+            length += padded;
+        }
+    }
+
+    /**
+     * Bits, least significant first, as used for validity and boolean buffers.
+     */
+    private static class Bitmap
+    {
+        byte[] bytes = new byte[64];
+
+        void set(int index, boolean value) {
+            int b = index >> 3;
+            if (b >= bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, b + 1));
+            }
+            if (value) {
+                bytes[b] |= 1 << (index & 7);
+            } else {
+                bytes[b] &= ~(1 << (index & 7));
+            }
+        }
+
+        void write(Body body, List<Long> buffers, int length) {
+            body.addBuffer(buffers, bytes, (length + 7) >> 3);
+        }
+
+        void reset() {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    /**
+     * The values of one column in the current batch.
+     */
+    private abstract static class Column
+    {
+        protected final Bitmap validity = new Bitmap();
+        protected int size = 0;
+        protected int nullCount = 0;
+
+        abstract byte getType();
+
+        /** Add a value, which may be a String or a value of the column's own type. */
+        void add(Object value) {
+            boolean valid = (value != null) && addValue(value);
+            if (!valid) {
+                addNull();
+                nullCount++;
+            }
+            validity.set(size, valid);
+            size++;
+        }
+
+        /** Add a non-null value, returning false if it could not be converted. */
+        protected abstract boolean addValue(Object value);
+
+        protected abstract void addNull();
+
+        int getNullCount() {
+            return nullCount;
+        }
+
+        void writeBuffers(Body body, List<Long> buffers, int length) {
+            validity.write(body, buffers, length);
+        }
+
+        void reset() {
+            validity.reset();
+            size = 0;
+            nullCount = 0;
+        }
+
+        protected static void putLong(byte[] bytes, int index, long value) {
+            int at = index * 8;
+            for (int i = 0; i < 8; i++) {
+                bytes[at + i] = (byte) (value >> (8 * i));
+            }
+        }
+    }
+
+    private static class Int64Column extends Column
+    {
+        private byte[] data = new byte[8 * 64];
+
+        @Override
+        byte getType() {
+            return ArrowMessageEncoder.TYPE_INT;
+        }
+
+        @Override
+        protected boolean addValue(Object value) {
+            long l;
+            if (value instanceof Number) {
+                l = ((Number) value).longValue();
+            } else {
+                try {
+                    l = Long.parseLong(value.toString().trim());
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            put(l);
+            return true;
+        }
+
+        @Override
+        protected void addNull() {
+            put(0L);
+        }
+
+        private void put(long l) {
+            if ((size + 1) * 8 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            putLong(data, size, l);
+        }
+
+        @Override
+        void writeBuffers(Body body, List<Long> buffers, int length) {
+            super.writeBuffers(body, buffers, length);
+            body.addBuffer(buffers, data, length * 8);
+        }
+    }
+
+    private static class Float64Column extends Column
+    {
+        private byte[] data = new byte[8 * 64];
+
+        @Override
+        byte getType() {
+            return ArrowMessageEncoder.TYPE_FLOATING_POINT;
+        }
+
+        @Override
+        protected boolean addValue(Object value) {
+            double d;
+            if (value instanceof Number) {
+                d = ((Number) value).doubleValue();
+            } else {
+                try {
+                    d = Double.parseDouble(value.toString().trim());
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            put(Double.doubleToLongBits(d));
+            return true;
+        }
+
+        @Override
+        protected void addNull() {
+            put(0L);
+        }
+
+        private void put(long bits) {
+            if ((size + 1) * 8 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            putLong(data, size, bits);
+        }
+
+        @Override
+        void writeBuffers(Body body, List<Long> buffers, int length) {
+            super.writeBuffers(body, buffers, length);
+            body.addBuffer(buffers, data, length * 8);
+        }
+    }
+
+    private static class BoolColumn extends Column
+    {
+        private final Bitmap data = new Bitmap();
+
+        @Override
+        byte getType() {
+            return ArrowMessageEncoder.TYPE_BOOL;
+        }
+
+        @Override
+        protected boolean addValue(Object value) {
+            if (value instanceof Boolean) {
+                data.set(size, ((Boolean) value).booleanValue());
+            } else {
+                data.set(size, "true".equalsIgnoreCase(value.toString().trim()));
+            }
+            return true;
+        }
+
+        @Override
+        protected void addNull() {
+            data.set(size, false);
+        }
+
+        @Override
+        void writeBuffers(Body body, List<Long> buffers, int length) {
+            super.writeBuffers(body, buffers, length);
+            data.write(body, buffers, length);
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            data.reset();
+        }
+    }
+
+    private static class Utf8Column extends Column
+    {
+        private byte[] offsets = new byte[4 * 65];
+        private byte[] data = new byte[1024];
+        private int dataLength = 0;
+
+        @Override
+        byte getType() {
+            return ArrowMessageEncoder.TYPE_UTF8;
+        }
+
+        @Override
+        protected boolean addValue(Object value) {
+            String s = (value instanceof Date) ? formatDate((Date) value) : value.toString();
+            byte[] utf8;
+            try {
+                utf8 = s.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            if (dataLength + utf8.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + utf8.length));
+            }
+            System.arraycopy(utf8, 0, data, dataLength, utf8.length);
+            dataLength += utf8.length;
+            putOffset();
+            return true;
+        }
+
+        @Override
+        protected void addNull() {
+            putOffset();
+        }
+
+        /** Record the end of the value being added, which is the start of the next. */
+        private void putOffset() {
+            if ((size + 2) * 4 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            int at = (size + 1) * 4;
+            offsets[at] = (byte) dataLength;
+            offsets[at + 1] = (byte) (dataLength >> 8);
+            offsets[at + 2] = (byte) (dataLength >> 16);
+            offsets[at + 3] = (byte) (dataLength >> 24);
+        }
+
+        @Override
+        void writeBuffers(Body body, List<Long> buffers, int length) {
+            super.writeBuffers(body, buffers, length);
+            body.addBuffer(buffers, offsets, (length + 1) * 4);
+            body.addBuffer(buffers, data, dataLength);
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            dataLength = 0;
+        }
+    }
+}
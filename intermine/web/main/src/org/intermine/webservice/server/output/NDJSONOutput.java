@@ -0,0 +1,134 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.PrintWriter;
+import java.util.Date;
+import java.util.List;
+
+import org.intermine.api.results.ResultElement;
+
+/**
+ * Streams results as newline-delimited JSON: each row is written as a JSON array on its own line,
+ * straight to the writer, so no JSON object is built for a row. If an error occurs, the last
+ * line is an object with "error" and "statusCode" properties.
+ */
+public class NDJSONOutput extends RowOutput
+{
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final PrintWriter writer;
+    private int resultsCount = 0;
+
+    /**
+     * Constructor.
+     * @param writer The writer to stream the rows to.
+     */
+    public NDJSONOutput(PrintWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void addResultElements(List<ResultElement> row) {
+        writer.write('[');
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeValue(getValue(row.get(i)));
+        }
+        writer.write("]\n");
+        resultsCount++;
+    }
+
+    @Override
+    public void addResultItem(List<String> item) {
+        writer.write('[');
+        for (int i = 0; i < item.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeValue(item.get(i));
+        }
+        writer.write("]\n");
+        resultsCount++;
+    }
+
+    @Override
+    public void flush() {
+        if (getCode() != SC_OK) {
+            writer.write("{\"error\":");
+            writeValue(getError());
+            writer.write(",\"statusCode\":" + getCode() + "}\n");
+        }
+        writer.flush();
+        writer.close();
+    }
+
+    @Override
+    protected int getResultsCount() {
+        return resultsCount;
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            writer.write("null");
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            // JSON has no representation for these
+            writer.write(Double.isNaN(d) || Double.isInfinite(d) ? "null" : value.toString());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            writer.write(value.toString());
+        } else if (value instanceof Date) {
+            writeString(formatDate((Date) value));
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeString(String s) {
+        writer.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            writer.write(s, start, i - start);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    writer.write("\\u");
+                    writer.write(HEX[(c >> 12) & 0xf]);
+                    writer.write(HEX[(c >> 8) & 0xf]);
+                    writer.write(HEX[(c >> 4) & 0xf]);
+                    writer.write(HEX[c & 0xf]);
+            }
+        }
+        writer.write(s, start, s.length() - start);
+        writer.write('"');
+    }
+}
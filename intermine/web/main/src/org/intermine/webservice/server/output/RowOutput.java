@@ -0,0 +1,61 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Date;
+import java.util.List;
+
+import org.intermine.api.results.ResultElement;
+import org.intermine.pathquery.ConstraintValueParser;
+
+/**
+ * An output that can take result rows as the values of their cells, rather than as strings, so
+ * that it can write each value in its own type without building any intermediate objects.
+ */
+public abstract class RowOutput extends Output
+{
+    /** The header attribute key for the list of column names **/
+    public static final String KEY_COLUMN_NAMES = "columnNames";
+    /** The header attribute key for the list of column types, as model attribute types **/
+    public static final String KEY_COLUMN_TYPES = "columnTypes";
+
+    /**
+     * Adds a row of results to the output.
+     * @param row The cells of the row. Cells may be null for outer-joined columns.
+     */
+    public abstract void addResultElements(List<ResultElement> row);
+
+    /**
+     * Get the value of a cell, forcing evaluation of Clobs.
+     * @param cell A result cell, possibly null.
+     * @return The value, which is null, a Number, a Boolean, a Date or a String.
+     */
+    protected static Object getValue(ResultElement cell) {
+        if (cell == null) {
+            return null;
+        }
+        Object field = cell.getField();
+        if (field == null || field instanceof Number || field instanceof Boolean
+                || field instanceof Date) {
+            return field;
+        }
+        return field.toString();
+    }
+
+    /**
+     * Format a date the same way as the flat file formats do.
+     * @param date The date.
+     * @return An ISO-8601 date string.
+     */
+    protected static String formatDate(Date date) {
+        return ConstraintValueParser.ISO_DATE_FORMAT.format(date);
+    }
+}
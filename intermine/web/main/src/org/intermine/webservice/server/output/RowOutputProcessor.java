@@ -0,0 +1,36 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.intermine.api.results.ResultElement;
+import org.intermine.webservice.server.core.ResultProcessor;
+
+/**
+ * A result processor that hands rows straight to a RowOutput, without converting the cells to
+ * strings first. Other outputs get the same strings as from a plain ResultProcessor.
+ */
+public class RowOutputProcessor extends ResultProcessor
+{
+    @Override
+    public void write(Iterator<List<ResultElement>> resultIt, Output output) {
+        if (!(output instanceof RowOutput)) {
+            super.write(resultIt, output);
+            return;
+        }
+        RowOutput rowOutput = (RowOutput) output;
+        while (resultIt.hasNext()) {
+            rowOutput.addResultElements(resultIt.next());
+        }
+    }
+}
@@ -58,6 +58,8 @@ import org.intermine.webservice.server.output.JSONTableFormatter;
 import org.intermine.webservice.server.output.JSONTableResultProcessor;
 import org.intermine.webservice.server.output.Output;
 import org.intermine.webservice.server.output.FilteringResultIterator;
+import org.intermine.webservice.server.output.RowOutput;
+import org.intermine.webservice.server.output.RowOutputProcessor;
 import org.intermine.webservice.server.output.StreamedOutput;
 import org.intermine.webservice.server.query.AbstractQueryService;
 
@@ -123,6 +125,7 @@ public class QueryResultService extends AbstractQueryService
             addAll(Format.BASIC_FORMATS);
             addAll(Format.FLAT_FILES);
             addAll(Format.JSON_FORMATS);
+            addAll(Format.BULK_FORMATS);
         }
     };
 
@@ -183,20 +186,14 @@ public class QueryResultService extends AbstractQueryService
                     attributes.put(FlatFileFormatter.COLUMN_HEADERS, pq.getView());
                 }
             }
+        } else if (Format.BULK_FORMATS.contains(getFormat())) {
+            attributes.put(RowOutput.KEY_COLUMN_NAMES, pq.getView());
+            attributes.put(RowOutput.KEY_COLUMN_TYPES, getViewTypes(pq));
         }
 
         switch(getFormat()) {
             case TABLE:
-                List<String> viewTypes = new ArrayList<String>();
-                for (String v: pq.getView()) {
-                    try {
-                        Path p = pq.makePath(v);
-                        AttributeDescriptor ad = (AttributeDescriptor) p.getEndFieldDescriptor();
-                        viewTypes.add(ad.getType());
-                    } catch (PathException e) {
-                        throw new ServiceException(e);
-                    }
-                }
+                List<String> viewTypes = getViewTypes(pq);
                 String title = pq.getTitle();
                 String description = StringUtils.defaultString(pq.getDescription(), pq.toString());
                 attributes.put("viewTypes", viewTypes);
@@ -240,6 +237,9 @@ public class QueryResultService extends AbstractQueryService
                     attributes.put(JSONTableFormatter.KEY_COLUMN_HEADERS, colHeaders);
                 } else if (formatIsFlatFile() && wantsColumnHeaders()) {
                     attributes.put(FlatFileFormatter.COLUMN_HEADERS, colHeaders);
+                } else if (Format.BULK_FORMATS.contains(getFormat())) {
+                    attributes.put(RowOutput.KEY_COLUMN_NAMES, colHeaders);
+                    attributes.remove(RowOutput.KEY_COLUMN_TYPES);
                 }
             }
         }
@@ -247,6 +247,20 @@ public class QueryResultService extends AbstractQueryService
         output.setHeaderAttributes(attributes);
     }
 
+    private static List<String> getViewTypes(PathQuery pq) {
+        List<String> viewTypes = new ArrayList<String>();
+        for (String v: pq.getView()) {
+            try {
+                Path p = pq.makePath(v);
+                AttributeDescriptor ad = (AttributeDescriptor) p.getEndFieldDescriptor();
+                viewTypes.add(ad.getType());
+            } catch (PathException e) {
+                throw new ServiceException(e);
+            }
+        }
+        return viewTypes;
+    }
+
     @Override
     protected Output makeJSONOutput(PrintWriter out, String separator) {
         if (wantsCount) {
@@ -378,6 +392,10 @@ public class QueryResultService extends AbstractQueryService
                     processor = new JSONRowResultProcessor(im);
                 }
                 break;
+            case NDJSON:
+            case ARROW:
+                processor = new RowOutputProcessor();
+                break;
             default:
                 processor = new ResultProcessor();
         }
@@ -0,0 +1,86 @@
+package org.intermine.web.autocompletion;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class PrefixIndexTest extends TestCase
+{
+    private PrefixIndex index;
+
+    public PrefixIndexTest(String arg1) {
+        super(arg1);
+    }
+
+    public void setUp() throws Exception {
+        PrefixIndex.Builder builder = new PrefixIndex.Builder();
+        for (String value : new String[] {"protein binding", "DNA binding", "Protein kinase activity", "kinase", "binding", "DNA binding", "cdc2"}) {
+            builder.add(value);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        builder.write(new DataOutputStream(out));
+        assertEquals(builder.getLength(), out.size());
+        index = new PrefixIndex(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    public void testSearch() throws Exception {
+        assertEquals(6, index.getValueCount());
+        assertEquals(Arrays.asList("true", "binding", "DNA binding", "protein binding"), Arrays.asList(index.search("bind", 10)));
+        assertEquals(Arrays.asList("true", "protein binding", "Protein kinase activity"), Arrays.asList(index.search("PROT", 10)));
+        assertEquals(Arrays.asList("true", "protein binding"), Arrays.asList(index.search("bin  prot ", 10)));
+        assertEquals(Arrays.asList("true", "binding"), Arrays.asList(index.search("b", 1)));
+        assertEquals(Arrays.asList("true"), Arrays.asList(index.search("xyz", 10)));
+        assertNull(index.search(" ", 10));
+        assertNull(index.search("*bind", 10));
+    }
+
+    public void testTooManyWords() throws Exception {
+        PrefixIndex.Builder builder = new PrefixIndex.Builder();
+        for (int i = 0; i <= PrefixIndex.MAX_WORDS; i++) {
+            builder.add("gene" + i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        builder.write(new DataOutputStream(out));
+        PrefixIndex big = new PrefixIndex(ByteBuffer.wrap(out.toByteArray()));
+        assertEquals(1, big.search("gene", 10).length);
+        assertEquals(Arrays.asList("true", "gene4096"), Arrays.asList(big.search("gene4096", 10)));
+    }
+
+    public void testGetInstance() throws Exception {
+        File directory = File.createTempFile("autocomplete", "");
+        directory.delete();
+        File stale = new File(directory, "test_db-1.autocomplete");
+        try {
+            directory.mkdirs();
+            stale.createNewFile();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new AutoCompleter().write(out);
+            AutoCompleter ac = AutoCompleter.getInstance(new ByteArrayInputStream(out.toByteArray()), directory, "test/db");
+            assertNotNull(ac);
+            assertFalse(ac.hasAutocompleter("Gene", "symbol"));
+            assertFalse(stale.exists());
+            assertEquals(1, directory.listFiles().length);
+            assertNull(AutoCompleter.getInstance(new ByteArrayInputStream(new byte[] {0, 0, 0, 0, 0, 0, 0, 0}), directory, "test/db"));
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2015 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+import org.apache.commons.math3.distribution.HypergeometricDistribution;
+
+public class EnrichmentCalculationTest extends TestCase
+{
+    public EnrichmentCalculationTest(String arg1) {
+        super(arg1);
+    }
+
+    public void testUpperCumulativeProbability() throws Exception {
+        int[][] cases = new int[][] {{20000, 150, 40, 3}, {20000, 150, 40, 0}, {20000, 150, 40, 40}, {500, 490, 30, 25}, {500, 490, 30, 30}, {1, 1, 1, 1}, {100, 0, 10, 1}, {100000, 2000, 1500, 60}};
+        double[] logFactorials = EnrichmentCalculation.getLogFactorials(100000);
+        for (int[] c : cases) {
+            double expected = new HypergeometricDistribution(c[0], c[1], c[2]).upperCumulativeProbability(c[3]);
+            double actual = EnrichmentCalculation.upperCumulativeProbability(logFactorials, c[0], c[1], c[2], c[3]);
+            assertEquals("Case " + c[0] + ", " + c[1] + ", " + c[2] + ", " + c[3], expected, actual, Math.max(1e-12, expected * 1e-9));
+        }
+    }
+
+    public void testTooSmallPopulation() throws Exception {
+        double[] logFactorials = EnrichmentCalculation.getLogFactorials(10);
+        try {
+            EnrichmentCalculation.upperCumulativeProbability(logFactorials, 10, 5, 11, 2);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
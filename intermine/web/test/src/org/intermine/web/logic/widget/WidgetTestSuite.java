@@ -9,6 +9,7 @@ public class WidgetTestSuite extends TestSuite{
     {
         TestSuite suite = new TestSuite();
         //suite.addTestSuite(EnrichmentWidgetTest.class);
+        suite.addTestSuite(EnrichmentCalculationTest.class);
         suite.addTestSuite(WidgetConfigTest.class);
         suite.addTestSuite(WidgetConfigUtilTest.class);
         suite.addTestSuite(WidgetLdrTest.class);
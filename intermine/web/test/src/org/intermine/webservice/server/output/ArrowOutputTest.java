@@ -0,0 +1,99 @@
+package org.intermine.webservice.server.output;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.results.ResultElement;
+
+public class ArrowOutputTest extends TestCase {
+
+    ByteArrayOutputStream bytes;
+    Map<String, Object> attributes;
+
+    @Override
+    protected void setUp() throws Exception {
+        bytes = new ByteArrayOutputStream();
+        attributes = new HashMap<String, Object>();
+        attributes.put(RowOutput.KEY_COLUMN_NAMES, Arrays.asList("Employee.name", "Employee.age"));
+        attributes.put(RowOutput.KEY_COLUMN_TYPES, Arrays.asList("java.lang.String", "int"));
+    }
+
+    public void testMessages() {
+        ArrowOutput out = new ArrowOutput(bytes, 2);
+        out.setHeaderAttributes(attributes);
+        for (int i = 0; i < 5; i++) {
+            List<ResultElement> row = Arrays.asList(new ResultElement("Employee" + i),
+                    i == 3 ? null : new ResultElement(new Integer(i)));
+            out.addResultElements(row);
+        }
+        out.flush();
+
+        // A schema, three record batches and the end of stream marker
+        assertEquals(5, out.getResultsCount());
+        assertEquals(5, countMessages(bytes.toByteArray()));
+    }
+
+    public void testEmpty() {
+        ArrowOutput out = new ArrowOutput(bytes);
+        out.setHeaderAttributes(attributes);
+        out.flush();
+
+        assertEquals(2, countMessages(bytes.toByteArray()));
+    }
+
+    public void testWithProblem() {
+        ArrowOutput out = new ArrowOutput(bytes, 2);
+        out.setHeaderAttributes(attributes);
+        out.addResultItem(Arrays.asList("Employee0", "0"));
+        out.setError("Our bad", 500);
+        out.flush();
+
+        // No end of stream marker, so readers see the stream is truncated
+        byte[] data = bytes.toByteArray();
+        assertEquals(1, countMessages(data));
+        assertFalse(readInt(data, data.length - 8) == -1 && readInt(data, data.length - 4) == 0);
+    }
+
+    private static int countMessages(byte[] data) {
+        int count = 0;
+        int pos = 0;
+        while (pos < data.length) {
+            assertEquals(0, pos % 8);
+            assertEquals(-1, readInt(data, pos));
+            int metadataLength = readInt(data, pos + 4);
+            count++;
+            if (metadataLength == 0) {
+                assertEquals(data.length, pos + 8);
+                break;
+            }
+            pos += 8 + metadataLength + (int) readBodyLength(data, pos + 8);
+        }
+        return count;
+    }
+
+    private static int readInt(byte[] data, int pos) {
+        return (data[pos] & 0xff) | ((data[pos + 1] & 0xff) << 8)
+            | ((data[pos + 2] & 0xff) << 16) | ((data[pos + 3] & 0xff) << 24);
+    }
+
+    /** Read the bodyLength field (slot 3) of a Message flatbuffer. */
+    private static long readBodyLength(byte[] data, int start) {
+        int table = start + readInt(data, start);
+        int vtable = table - readInt(data, table);
+        int vtableSize = (data[vtable] & 0xff) | ((data[vtable + 1] & 0xff) << 8);
+        if (vtableSize <= 10) {
+            return 0;
+        }
+        int offset = (data[vtable + 10] & 0xff) | ((data[vtable + 11] & 0xff) << 8);
+        if (offset == 0) {
+            return 0;
+        }
+        return (readInt(data, table + offset) & 0xffffffffL)
+            | (((long) readInt(data, table + offset + 4)) << 32);
+    }
+}
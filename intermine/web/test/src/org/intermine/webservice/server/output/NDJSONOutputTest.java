@@ -0,0 +1,61 @@
+package org.intermine.webservice.server.output;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.api.results.ResultElement;
+
+public class NDJSONOutputTest extends TestCase {
+
+    StringWriter sw;
+    PrintWriter pw;
+    List<List<ResultElement>> rows;
+
+    @Override
+    protected void setUp() throws Exception {
+        sw = new StringWriter();
+        pw = new PrintWriter(sw);
+        rows = new ArrayList<List<ResultElement>>();
+        rows.add(Arrays.asList(new ResultElement("Tim Canterbury"),
+                new ResultElement(new Integer(30)), new ResultElement(Boolean.TRUE)));
+        rows.add(Arrays.asList(new ResultElement("Gareth \"Keenan\"\t"),
+                new ResultElement(new Double(32.5)), null));
+    }
+
+    public void testWriteRows() {
+        NDJSONOutput out = new NDJSONOutput(pw);
+        new RowOutputProcessor().write(rows.iterator(), out);
+        out.flush();
+
+        String expected =
+              "[\"Tim Canterbury\",30,true]\n"
+            + "[\"Gareth \\\"Keenan\\\"\\t\",32.5,null]\n";
+        assertEquals(2, out.getResultsCount());
+        assertEquals(expected, sw.toString());
+    }
+
+    public void testWriteStrings() {
+        NDJSONOutput out = new NDJSONOutput(pw);
+        out.addResultItem(Arrays.asList("one", "\u0001"));
+        out.flush();
+        assertEquals("[\"one\",\"\\u0001\"]\n", sw.toString());
+    }
+
+    public void testWriteWithProblem() {
+        NDJSONOutput out = new NDJSONOutput(pw);
+        new RowOutputProcessor().write(rows.iterator(), out);
+        out.setError("Our bad", 500);
+        out.flush();
+
+        String expected =
+              "[\"Tim Canterbury\",30,true]\n"
+            + "[\"Gareth \\\"Keenan\\\"\\t\",32.5,null]\n"
+            + "{\"error\":\"Our bad\",\"statusCode\":500}\n";
+        assertEquals(expected, sw.toString());
+    }
+}
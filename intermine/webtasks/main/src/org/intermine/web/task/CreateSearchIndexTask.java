@@ -12,10 +12,12 @@ package org.intermine.web.task;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Task;
 import org.intermine.api.config.ClassKeyHelper;
@@ -35,6 +37,8 @@ public class CreateSearchIndexTask extends Task
 
     protected String osAlias = null;
     protected ObjectStore os;
+    protected boolean incremental = false;
+    protected String reindexSources = null;
 
     /**
      * Set the alias of the main object store.
@@ -44,6 +48,24 @@ public class CreateSearchIndexTask extends Task
         this.osAlias = osAlias;
     }
 
+    /**
+     * Set whether to update the saved index with new and changed objects rather than build
+     * a new index.
+     * @param incremental true to update the saved index
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Set the names of data sources whose objects should be re-indexed when updating the index,
+     * for sources that have been loaded again under the same name.
+     * @param reindexSources comma separated data source names
+     */
+    public void setReindexSources(String reindexSources) {
+        this.reindexSources = reindexSources;
+    }
+
     private ObjectStore getObjectStore() throws Exception {
         if (osAlias == null) {
             throw new BuildException("objectStoreWriter attribute is not set");
@@ -96,7 +118,17 @@ public class CreateSearchIndexTask extends Task
             ClassKeyHelper.readKeys(objectStore.getModel(), classKeyProperties);
 
         //index and save
-        KeywordSearch.saveIndexToDatabase(objectStore, classKeys);
+        if (incremental) {
+            List<String> sources = new ArrayList<String>();
+            if (!StringUtils.isBlank(reindexSources)) {
+                for (String source : reindexSources.split(",")) {
+                    sources.add(source.trim());
+                }
+            }
+            KeywordSearch.updateIndexInDatabase(objectStore, classKeys, sources);
+        } else {
+            KeywordSearch.saveIndexToDatabase(objectStore, classKeys);
+        }
         KeywordSearch.deleteIndexDirectory();
     }
 